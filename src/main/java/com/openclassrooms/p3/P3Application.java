@@ -3,9 +3,11 @@ package com.openclassrooms.p3;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @ComponentScan(basePackages = "com.openclassrooms.p3")
+@EnableScheduling
 public class P3Application {
 
 	public static void main(String[] args) {
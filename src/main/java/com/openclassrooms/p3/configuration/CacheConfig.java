@@ -0,0 +1,78 @@
+package com.openclassrooms.p3.configuration;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * This class is a configuration class that sets up the in-process caches of the
+ * application.
+ * The caches are bounded both in size and in time, and record their
+ * hit/miss/eviction statistics which are published as "cache.*" metrics by the
+ * actuator.
+ * Puts and evictions made within a transaction are applied once it commits,
+ * so that a read racing a change cannot cache the row being replaced or
+ * deleted again.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    /**
+     * Name of the cache holding the rental responses, keyed by rental ID.
+     */
+    public static final String RENTALS_CACHE = "rentals";
+
+    /**
+     * Name of the cache holding the IDs of the users found by the
+     * JwtAuthenticationFilter, when it checks that they still exist.
+     */
+    public static final String AUTHENTICATED_USERS_CACHE = "authenticatedUsers";
+
+    @Value("${rentals.cache.maximum-size:10000}")
+    private long rentalsCacheMaximumSize;
+
+    @Value("${rentals.cache.time-to-live:10m}")
+    private Duration rentalsCacheTimeToLive;
+
+    @Value("${auth.user-check.maximum-size:10000}")
+    private long authenticatedUsersCacheMaximumSize;
+
+    @Value("${auth.user-check.time-to-live:30s}")
+    private Duration authenticatedUsersCacheTimeToLive;
+
+    /**
+     * Creates the Caffeine cache manager backing the Spring cache abstraction,
+     * made transaction-aware.
+     *
+     * @return the CacheManager bean
+     */
+    @Bean
+    public CacheManager cacheManager() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager(RENTALS_CACHE);
+
+        cacheManager.setCaffeine(Caffeine.newBuilder()
+                .maximumSize(rentalsCacheMaximumSize)
+                .expireAfterWrite(rentalsCacheTimeToLive)
+                .recordStats());
+
+        // Kept short, so that a deleted user is rejected soon after
+        cacheManager.registerCustomCache(AUTHENTICATED_USERS_CACHE, Caffeine.newBuilder()
+                .maximumSize(authenticatedUsersCacheMaximumSize)
+                .expireAfterWrite(authenticatedUsersCacheTimeToLive)
+                .recordStats()
+                .build());
+
+        // @CacheEvict and @Transactional run in no defined order, the eviction is
+        // deferred to the commit rather than relying on it
+        return new TransactionAwareCacheManagerProxy(cacheManager);
+    }
+}
@@ -0,0 +1,93 @@
+package com.openclassrooms.p3.configuration;
+
+import java.net.URI;
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+/**
+ * This class is a configuration class that sets up the S3 client shared by the
+ * uploads.
+ * The client keeps a pool of HTTP connections to the bucket, so that the
+ * uploads reuse open TLS connections, and is closed with the application.
+ */
+@Configuration
+public class S3Config {
+
+    @Value("${aws.s3.accessKey}")
+    private String accessKeyId;
+
+    @Value("${aws.s3.secretKey}")
+    private String secretKey;
+
+    @Value("${aws.s3.region:eu-north-1}")
+    private String region;
+
+    /**
+     * Endpoint of an S3-compatible store, the AWS endpoint of the region being
+     * used when empty.
+     */
+    @Value("${aws.s3.endpoint:}")
+    private String endpoint;
+
+    @Value("${aws.s3.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${aws.s3.connection-timeout:2s}")
+    private Duration connectionTimeout;
+
+    /**
+     * Longest wait for a pooled connection when they are all in use.
+     */
+    @Value("${aws.s3.connection-acquisition-timeout:10s}")
+    private Duration connectionAcquisitionTimeout;
+
+    @Value("${aws.s3.socket-timeout:30s}")
+    private Duration socketTimeout;
+
+    /**
+     * Longest duration of an upload, retries included.
+     */
+    @Value("${aws.s3.api-call-timeout:60s}")
+    private Duration apiCallTimeout;
+
+    /**
+     * Creates the S3 client, closed with its connection pool when the
+     * application stops.
+     *
+     * @return the S3Client bean
+     */
+    @Bean(destroyMethod = "close")
+    public S3Client s3Client() {
+        S3ClientBuilder s3ClientBuilder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(
+                        StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKeyId, secretKey)))
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(maxConnections)
+                        .connectionTimeout(connectionTimeout)
+                        .connectionAcquisitionTimeout(connectionAcquisitionTimeout)
+                        .socketTimeout(socketTimeout))
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .apiCallTimeout(apiCallTimeout)
+                        .build());
+
+        Boolean hasCustomEndpoint = !endpoint.isBlank();
+        if (hasCustomEndpoint) {
+            // S3-compatible stores rarely serve the bucket as a subdomain
+            s3ClientBuilder.endpointOverride(URI.create(endpoint)).forcePathStyle(true);
+        }
+
+        return s3ClientBuilder.build();
+    }
+}
@@ -1,27 +1,43 @@
 package com.openclassrooms.p3.configuration;
 
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+
+import com.openclassrooms.p3.security.AuthenticatedUser;
+import com.openclassrooms.p3.security.JwtAuthenticationEntryPoint;
+import com.openclassrooms.p3.security.JwtAuthenticationFilter;
+
+import jakarta.servlet.DispatcherType;
 
 /**
  * This class is a configuration class that sets up the security configuration
  * for a Spring Boot application.
  * It enables web security and defines the necessary security filters and rules.
+ * The JWT of each request is validated once by the JwtAuthenticationFilter,
+ * every route but the public ones then requires an authenticated user.
+ * Actuator endpoints other than health require an authenticated user too, and
+ * their write and delete operations an administrator, whatever the port they
+ * are served on.
  */
 @Configuration
 @EnableWebSecurity
 public class SpringSecurityConfig {
 
-    private static final String[] AUTHENTICATION_NEEDED_ROUTES = {
-            "/api/messages/**",
-            "/api/rentals/**",
-            "/api/user/**",
-            "/api/auth/**",
+    private static final String[] PUBLIC_ROUTES = {
+            "/api/auth/register",
+            "/api/auth/login",
             "/swagger-ui/**",
             "/swagger-ui.html",
             "/v3/api-docs/swagger-config",
@@ -31,33 +47,67 @@ public class SpringSecurityConfig {
 
     /**
      * Configures the security filter chain by disabling CSRF protection, setting
-     * the session creation policy to stateless,
-     * and defining authorization rules for specific routes.
+     * the session creation policy to stateless, authenticating the requests with
+     * their JWT and defining authorization rules for specific routes.
      * 
-     * @param http the HttpSecurity object to configure the security filter chain
+     * @param http                        the HttpSecurity object to configure the
+     *                                    security filter chain
+     * @param jwtAuthenticationFilter     the filter authenticating the requests
+     *                                    with their JWT
+     * @param jwtAuthenticationEntryPoint the entry point rejecting the
+     *                                    unauthenticated requests
      * @return the configured SecurityFilterChain
      * @throws Exception if an error occurs during configuration
      */
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, JwtAuthenticationFilter jwtAuthenticationFilter,
+            JwtAuthenticationEntryPoint jwtAuthenticationEntryPoint) throws Exception {
 
         http.csrf(csrf -> csrf.disable())
                 .sessionManagement(session -> session
                         .sessionCreationPolicy(SessionCreationPolicy.STATELESS))
-                .authorizeHttpRequests((authorize) -> authorize.requestMatchers(
-                        AUTHENTICATION_NEEDED_ROUTES).permitAll().anyRequest().authenticated());
+                .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
+                .exceptionHandling(exceptions -> exceptions.authenticationEntryPoint(jwtAuthenticationEntryPoint))
+                .authorizeHttpRequests((authorize) -> authorize
+                        // The async dispatches of the streamed responses and the error pages
+                        // follow an already authorized request
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
+                        .requestMatchers(PUBLIC_ROUTES).permitAll()
+                        .requestMatchers(EndpointRequest.to(HealthEndpoint.class)).permitAll()
+                        .requestMatchers(new AndRequestMatcher(EndpointRequest.toAnyEndpoint(),
+                                request -> !HttpMethod.GET.matches(request.getMethod())))
+                        .hasRole(AuthenticatedUser.ADMIN_ROLE)
+                        .anyRequest().authenticated());
 
         return http.build();
     }
 
     /**
-     * Creates a BCryptPasswordEncoder bean.
+     * Prevents Spring Boot from registering the JwtAuthenticationFilter a second
+     * time, outside of the security filter chain.
+     *
+     * @param filter the JwtAuthenticationFilter bean
+     * @return the disabled registration of the filter
+     */
+    @Bean
+    FilterRegistrationBean<JwtAuthenticationFilter> jwtAuthenticationFilterRegistration(
+            JwtAuthenticationFilter filter) {
+        FilterRegistrationBean<JwtAuthenticationFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setEnabled(false);
+
+        return registration;
+    }
+
+    /**
+     * Creates a BCryptPasswordEncoder bean. Raising the strength rehashes the
+     * password of each user on their next login.
      * 
+     * @param strength the log2 of the number of BCrypt rounds
      * @return the BCryptPasswordEncoder bean
      */
     @Bean
-    BCryptPasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    BCryptPasswordEncoder passwordEncoder(@Value("${auth.password.bcrypt-strength:10}") int strength) {
+        return new BCryptPasswordEncoder(strength);
     }
 
 }
\ No newline at end of file
@@ -10,6 +10,9 @@ import com.openclassrooms.p3.payload.request.AuthLoginRequest;
 import com.openclassrooms.p3.payload.request.AuthRegisterRequest;
 import com.openclassrooms.p3.payload.response.AuthResponse;
 import com.openclassrooms.p3.payload.response.UserInfoResponse;
+import com.openclassrooms.p3.security.AuthenticatedUser;
+import com.openclassrooms.p3.security.LoginThrottle;
+import com.openclassrooms.p3.service.TokenRevocationService;
 import com.openclassrooms.p3.service.UserService;
 import com.openclassrooms.p3.utils.JwtUtil;
 
@@ -21,17 +24,24 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.validation.BindingResult;
 
 /**
  * Controller for handling authentication-related operations.
+ *
+ * Registration and login answer asynchronously: the request thread is released
+ * while the password is hashed by the password hashing threads.
  */
 @CrossOrigin("*")
 @RestController
@@ -45,11 +55,28 @@ public class AuthController {
     @Autowired
     private UserMapper userMapper;
 
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    /**
+     * Absent when the login throttling is disabled.
+     */
+    @Autowired(required = false)
+    private LoginThrottle loginThrottle;
+
+    /**
+     * Whether the issued tokens embed the information of their user, /me then
+     * being answered from the token.
+     */
+    @Value("${auth.token.user-claims.enabled:true}")
+    private boolean userClaimsAreEnabled;
+
     /**
      * Registers a new user.
      *
      * @param request The registration request containing user details.
-     * @return ResponseEntity<AuthResponse> A JWT if registration is successful.
+     * @return ResponseEntity<AuthResponse> A JWT if registration is successful,
+     *         once the password is hashed.
      */
     @PostMapping("/register")
     @Operation(description = "Registers a new user", summary = "Registers a new user", responses = {
@@ -58,35 +85,35 @@ public class AuthController {
             }),
             @ApiResponse(description = "Bad payload", responseCode = "400"),
             @ApiResponse(description = "User already registered", responseCode = "409"),
+            @ApiResponse(description = "Too many passwords being hashed", responseCode = "503"),
     })
-    public ResponseEntity<?> register(@Valid @RequestBody AuthRegisterRequest request,
+    public CompletableFuture<ResponseEntity<?>> register(@Valid @RequestBody AuthRegisterRequest request,
             BindingResult bindingResult) {
 
         try {
             checkBodyPayloadErrors(bindingResult);
 
-            checkIfEmailIsInUse(request.email());
+            // An email already in use is rejected by the insert itself
+            return userService.saveUserBySignUp(request).<ResponseEntity<?>>thenApply(user -> {
+                String jwtToken = generateJwtToken(user);
 
-            Users user = userService.saveUserBySignUp(request);
+                AuthResponse authResponse = new AuthResponse(jwtToken);
 
-            UserInfoResponse userEntity = userMapper.toDtoUser(user);
-
-            String jwtToken = JwtUtil.generateJwtToken(userEntity.id());
-
-            AuthResponse authResponse = new AuthResponse(jwtToken);
-
-            // Return the saved user with a 201 Created status
-            return ResponseEntity.status(HttpStatus.CREATED).body(authResponse);
+                // Return the saved user with a 201 Created status
+                return ResponseEntity.status(HttpStatus.CREATED).body(authResponse);
+            });
         } catch (ApiException ex) {
-            return GlobalExceptionHandler.handleApiException(ex);
+            return CompletableFuture.completedFuture(GlobalExceptionHandler.handleApiException(ex));
         }
     }
 
     /**
      * Logs in an existing user.
      *
-     * @param request The login request containing user credentials.
-     * @return ResponseEntity<AuthResponse> A JWT if login is successful.
+     * @param request     The login request containing user credentials.
+     * @param httpRequest The HTTP request, holding the IP address of the client.
+     * @return ResponseEntity<AuthResponse> A JWT if login is successful, once the
+     *         password is verified.
      */
     @PostMapping("/login")
     @Operation(description = "Logs in an existing user", summary = "Logs in an existing user", responses = {
@@ -95,17 +122,37 @@ public class AuthController {
             }),
             @ApiResponse(description = "Bad payload", responseCode = "400"),
             @ApiResponse(description = "User with inputted email not found", responseCode = "404"),
+            @ApiResponse(description = "Too many login attempts for this email or IP address", responseCode = "429"),
+            @ApiResponse(description = "Too many passwords being hashed", responseCode = "503"),
     })
-    public ResponseEntity<?> login(@Valid @RequestBody AuthLoginRequest request, BindingResult bindingResult) {
+    public CompletableFuture<ResponseEntity<?>> login(@Valid @RequestBody AuthLoginRequest request,
+            BindingResult bindingResult, HttpServletRequest httpRequest) {
         try {
             checkBodyPayloadErrors(bindingResult);
 
+            checkLoginAttemptsLimit(request.email(), httpRequest.getRemoteAddr());
+
             Users user = getUserByEmail(request.email());
-            checkUserPassword(request.password(), user);
 
-            UserInfoResponse userEntity = userMapper.toDtoUser(user);
+            return userService.isPasswordValid(request.password(), user)
+                    .thenApply(passwordIsValid -> buildLoginResponse(passwordIsValid, user));
+        } catch (ApiException ex) {
+            return CompletableFuture.completedFuture(GlobalExceptionHandler.handleApiException(ex));
+        }
+    }
+
+    /**
+     * Answers a login once the password of the user has been verified.
+     *
+     * @param passwordIsValid Whether the provided password is correct.
+     * @param user            The user logging in.
+     * @return ResponseEntity<AuthResponse> A JWT if the password is correct.
+     */
+    private ResponseEntity<?> buildLoginResponse(Boolean passwordIsValid, Users user) {
+        try {
+            checkUserPassword(passwordIsValid);
 
-            String jwtToken = JwtUtil.generateJwtToken(userEntity.id());
+            String jwtToken = generateJwtToken(user);
 
             AuthResponse authResponse = new AuthResponse(jwtToken);
             return ResponseEntity.status(HttpStatus.OK).body(authResponse);
@@ -117,6 +164,7 @@ public class AuthController {
     /**
      * Retrieves information about the currently authenticated user.
      *
+     * @param authenticatedUser The user authenticated by the JWT token.
      * @return ResponseEntity<AuthResponse> containing the user info.
      */
     @GetMapping("/me")
@@ -127,10 +175,12 @@ public class AuthController {
             @ApiResponse(description = "Unauthorized", responseCode = "401"),
             @ApiResponse(description = "User not found", responseCode = "404"),
     }, security = { @SecurityRequirement(name = "bearerAuth") })
-    public ResponseEntity<?> getMe(@RequestHeader("Authorization") String authorizationHeader) {
+    public ResponseEntity<?> getMe(@AuthenticationPrincipal AuthenticatedUser authenticatedUser) {
         try {
-            Long userIdFromToken = getUserIdFromAuthorizationHeader(authorizationHeader);
-            UserInfoResponse userEntity = verifyAndGetUserByTokenId(userIdFromToken);
+            // Tokens issued before the user claims were enabled fall back to the database
+            Boolean isAnsweredByToken = userClaimsAreEnabled && authenticatedUser.hasUserInfo();
+            UserInfoResponse userEntity = isAnsweredByToken ? authenticatedUser.userInfo()
+                    : verifyAndGetUserByTokenId(authenticatedUser.id());
 
             return ResponseEntity.status(HttpStatus.OK).body(userEntity);
         } catch (ApiException ex) {
@@ -139,36 +189,83 @@ public class AuthController {
     }
 
     /**
-     * Checks if there are any payload errors in the request body.
+     * Logs out the current session by revoking the JWT of the request.
      *
-     * @param bindingResult The BindingResult object that holds the validation
-     *                      errors.
+     * @param authenticatedUser The user authenticated by the JWT token.
+     * @return An empty ResponseEntity once the token is revoked.
      */
-    private void checkBodyPayloadErrors(BindingResult bindingResult) {
-        Boolean payloadIsInvalid = bindingResult.hasErrors();
-        if (payloadIsInvalid) {
-            GlobalExceptionHandler.handlePayloadError("Bad request", bindingResult, HttpStatus.BAD_REQUEST);
+    @PostMapping("/logout")
+    @Operation(description = "Revokes the JWT of the request, until it expires", summary = "Logs out the current session", responses = {
+            @ApiResponse(description = "Successfully logged out", responseCode = "204"),
+            @ApiResponse(description = "Token issued without ID, log out of all the sessions instead", responseCode = "400"),
+            @ApiResponse(description = "Unauthorized", responseCode = "401"),
+    }, security = { @SecurityRequirement(name = "bearerAuth") })
+    public ResponseEntity<?> logout(@AuthenticationPrincipal AuthenticatedUser authenticatedUser) {
+        try {
+            // Tokens issued before the token IDs can only be revoked with the others
+            Boolean tokenHasNoId = authenticatedUser.tokenId() == null;
+            if (tokenHasNoId) {
+                GlobalExceptionHandler.handleLogicError("Bad request", HttpStatus.BAD_REQUEST);
+            }
+
+            tokenRevocationService.revokeToken(authenticatedUser.id(), authenticatedUser.tokenId(),
+                    authenticatedUser.tokenExpiresAt());
+
+            return ResponseEntity.noContent().build();
+        } catch (ApiException ex) {
+            return GlobalExceptionHandler.handleApiException(ex);
         }
     }
 
     /**
-     * Retrieves the user ID from the authorization header.
+     * Logs out every session of the current user by revoking all their JWTs,
+     * including the one of the request.
      *
-     * @param authorizationHeader The authorization header containing the JWT token.
-     * @return The user ID extracted from the JWT token.
+     * @param authenticatedUser The user authenticated by the JWT token.
+     * @return An empty ResponseEntity once the tokens are revoked.
      */
-    private Long getUserIdFromAuthorizationHeader(String authorizationHeader) {
-        String jwtToken = JwtUtil.extractJwtFromHeader(authorizationHeader);
-
-        // Extract user ID from JWT
-        Optional<Long> optionalUserIdFromToken = JwtUtil.extractUserId(jwtToken);
+    @PostMapping("/logout-all")
+    @Operation(description = "Revokes every JWT issued so far to the current user, including the one of the request", summary = "Logs out all the sessions", responses = {
+            @ApiResponse(description = "Successfully logged out", responseCode = "204"),
+            @ApiResponse(description = "Unauthorized", responseCode = "401"),
+            @ApiResponse(description = "User not found", responseCode = "404"),
+    }, security = { @SecurityRequirement(name = "bearerAuth") })
+    public ResponseEntity<?> logoutAll(@AuthenticationPrincipal AuthenticatedUser authenticatedUser) {
+        try {
+            Boolean userNotFound = !tokenRevocationService.revokeUserTokens(authenticatedUser.id());
+            if (userNotFound) {
+                GlobalExceptionHandler.handleLogicError("Not found", HttpStatus.NOT_FOUND);
+            }
 
-        Boolean hasJwtExtractionError = optionalUserIdFromToken.isEmpty();
-        if (hasJwtExtractionError) {
-            GlobalExceptionHandler.handleLogicError("Unauthorized", HttpStatus.UNAUTHORIZED);
+            return ResponseEntity.noContent().build();
+        } catch (ApiException ex) {
+            return GlobalExceptionHandler.handleApiException(ex);
         }
+    }
+
+    /**
+     * Generates the JWT of a user, carrying their token version and embedding
+     * their information if the user claims are enabled.
+     *
+     * @param user The user.
+     * @return The JWT generated.
+     */
+    private String generateJwtToken(Users user) {
+        return userClaimsAreEnabled ? JwtUtil.generateJwtToken(userMapper.toDtoUser(user), user.getTokenVersion())
+                : JwtUtil.generateJwtToken(user.getId(), user.getTokenVersion());
+    }
 
-        return optionalUserIdFromToken.get();
+    /**
+     * Checks if there are any payload errors in the request body.
+     *
+     * @param bindingResult The BindingResult object that holds the validation
+     *                      errors.
+     */
+    private void checkBodyPayloadErrors(BindingResult bindingResult) {
+        Boolean payloadIsInvalid = bindingResult.hasErrors();
+        if (payloadIsInvalid) {
+            GlobalExceptionHandler.handlePayloadError("Bad request", bindingResult, HttpStatus.BAD_REQUEST);
+        }
     }
 
     /**
@@ -198,14 +295,16 @@ public class AuthController {
     }
 
     /**
-     * Checks if an email is already registered in the system.
+     * Checks if a login attempt is within the limits of its email and IP address,
+     * before the user is looked up or their password verified.
      *
-     * @param email The email to check if it is already registered.
+     * @param email     The email of the attempt.
+     * @param ipAddress The IP address of the client.
      */
-    private void checkIfEmailIsInUse(String email) {
-        Boolean hasAlreadyRegistered = userService.isEmailInUse(email);
-        if (hasAlreadyRegistered) {
-            GlobalExceptionHandler.handleLogicError("Conflict", HttpStatus.CONFLICT);
+    private void checkLoginAttemptsLimit(String email, String ipAddress) {
+        Boolean hasTooManyAttempts = loginThrottle != null && !loginThrottle.tryAcquire(email, ipAddress);
+        if (hasTooManyAttempts) {
+            GlobalExceptionHandler.handleLogicError("Too many requests", HttpStatus.TOO_MANY_REQUESTS);
         }
     }
 
@@ -228,13 +327,12 @@ public class AuthController {
     }
 
     /**
-     * Checks if the provided password is correct for the given user.
+     * Checks if the provided password was found correct for the user.
      *
-     * @param requestPassword The password to check.
-     * @param user            The user to check the password against.
+     * @param passwordIsValid Whether the password matches the one of the user.
      */
-    private void checkUserPassword(String requestPassword, Users user) {
-        Boolean passwordIsIncorrect = !userService.isPasswordValid(requestPassword, user);
+    private void checkUserPassword(Boolean passwordIsValid) {
+        Boolean passwordIsIncorrect = !passwordIsValid;
         if (passwordIsIncorrect) {
             GlobalExceptionHandler.handleLogicError("Unauthorized", HttpStatus.UNAUTHORIZED);
         }
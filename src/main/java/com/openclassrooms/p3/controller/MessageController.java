@@ -1,25 +1,35 @@
 package com.openclassrooms.p3.controller;
 
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.openclassrooms.p3.exception.ApiException;
 import com.openclassrooms.p3.exception.GlobalExceptionHandler;
-import com.openclassrooms.p3.mapper.UserMapper;
-import com.openclassrooms.p3.model.Rental;
-import com.openclassrooms.p3.model.Users;
 import com.openclassrooms.p3.payload.request.MessageRequest;
+import com.openclassrooms.p3.payload.response.MessageAllResponse;
+import com.openclassrooms.p3.payload.response.MessageResponse;
+import com.openclassrooms.p3.payload.response.MessageUnreadResponse;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
 import com.openclassrooms.p3.payload.response.ResponseMessage;
-import com.openclassrooms.p3.payload.response.UserInfoResponse;
+import com.openclassrooms.p3.security.AuthenticatedUser;
+import com.openclassrooms.p3.service.IdempotencyService;
+import com.openclassrooms.p3.service.MessageCounterService;
 import com.openclassrooms.p3.service.MessageService;
+import com.openclassrooms.p3.service.MessageStreamService;
 import com.openclassrooms.p3.service.RentalService;
-import com.openclassrooms.p3.service.UserService;
-import com.openclassrooms.p3.utils.JwtUtil;
+import com.openclassrooms.p3.utils.CursorUtil;
 
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -34,17 +44,21 @@ import jakarta.validation.Valid;
 /**
  * Controller for handling message-related operations.
  */
-@CrossOrigin("*")
+@CrossOrigin(origins = "*", exposedHeaders = IdempotencyService.IDEMPOTENT_REPLAYED_HEADER)
 @RestController
 @RequestMapping("/api/messages")
 @Tag(name = "Messages")
 public class MessageController {
 
-    @Autowired
-    private UserService userService;
+    /**
+     * Number of messages returned per page when the client does not specify it.
+     */
+    private static final int DEFAULT_PAGE_SIZE = 20;
 
-    @Autowired
-    private UserMapper userMapper;
+    /**
+     * Upper bound of the number of messages returned per page.
+     */
+    private static final int MAX_PAGE_SIZE = 100;
 
     @Autowired
     private RentalService rentalService;
@@ -52,37 +66,87 @@ public class MessageController {
     @Autowired
     private MessageService messageService;
 
+    @Autowired(required = false)
+    private MessageStreamService messageStreamService;
+
+    @Autowired(required = false)
+    private MessageCounterService messageCounterService;
+
+    @Autowired(required = false)
+    private IdempotencyService idempotencyService;
+
     /**
      * Posts a message.
      *
-     * @param request The message request containing details.
+     * @param request           The message request containing details.
+     * @param bindingResult     The result of the validation of the request.
+     * @param idempotencyKey    The optional key of the request and its retries.
+     * @param authenticatedUser The user authenticated by the JWT token.
      * @return
      * @return ResponseEntity<ResponseMessage> with information about
-     *         the message post.
+     *         the message post, or the one of the first request made with the
+     *         same Idempotency-Key.
      */
     @PostMapping("")
     @Operation(description = "Sends a message to the owner's rental", summary = "Sends a message to the owner's rental", responses = {
             @ApiResponse(description = "Successfully sent the message", responseCode = "201", content = {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = ApiResponse.class), examples = @ExampleObject(value = "{\"message\":\"Successfully created a new message!\"}")) }),
+            @ApiResponse(description = "Accepted the message, saved shortly (write-behind mode)", responseCode = "202", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = ApiResponse.class), examples = @ExampleObject(value = "{\"message\":\"Successfully accepted a new message!\"}")) }),
             @ApiResponse(description = "Bad payload", responseCode = "400"),
             @ApiResponse(description = "Unauthorized", responseCode = "401"),
             @ApiResponse(description = "Forbidden", responseCode = "403"),
             @ApiResponse(description = "Not found", responseCode = "404"),
+            @ApiResponse(description = "Message with the same Idempotency-Key still being posted", responseCode = "409"),
+            @ApiResponse(description = "Idempotency-Key already used with another message", responseCode = "422"),
+            @ApiResponse(description = "Service unavailable", responseCode = "503"),
     }, security = { @SecurityRequirement(name = "bearerAuth") })
     public ResponseEntity<?> postMessage(@Valid @RequestBody MessageRequest request, BindingResult bindingResult,
-            @RequestHeader("Authorization") String authorizationHeader) {
+            @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @AuthenticationPrincipal AuthenticatedUser authenticatedUser) {
         try {
-            checkBodyPayloadErrors(bindingResult);
+            Boolean isIdempotent = idempotencyService != null && idempotencyKey != null;
+            if (!isIdempotent) {
+                return createMessage(request, bindingResult, authenticatedUser);
+            }
 
-            Long userIdFromToken = getUserIdFromAuthorizationHeader(authorizationHeader);
+            // The retries get the response of the first request, the message being posted once
+            return idempotencyService.execute("POST /api/messages", authenticatedUser.id(), idempotencyKey,
+                    IdempotencyService.fingerprint(request),
+                    () -> createMessage(request, bindingResult, authenticatedUser));
+        } catch (ApiException ex) {
+            return GlobalExceptionHandler.handleApiException(ex);
+        }
+    }
+
+    /**
+     * Validates and saves, or queues, a message.
+     *
+     * @param request           The message request containing details.
+     * @param bindingResult     The result of the validation of the request.
+     * @param authenticatedUser The user authenticated by the JWT token.
+     * @return ResponseEntity<ResponseMessage> with information about the message
+     *         post.
+     */
+    private ResponseEntity<?> createMessage(MessageRequest request, BindingResult bindingResult,
+            AuthenticatedUser authenticatedUser) {
+        try {
+            checkBodyPayloadErrors(bindingResult);
 
-            verifyAndGetUserByTokenId(userIdFromToken);
+            Long userIdFromToken = authenticatedUser.id();
 
             checkUserIdMismatch(userIdFromToken, request.user_id());
 
-            verifyAndGetRentalById(request.rental_id());
+            // Served from the rental cache when possible, the message insert then being the
+            // only query
+            RentalSingleResponse rental = verifyAndGetRentalResponseById(request.rental_id());
 
-            messageService.saveMessage(request);
+            Boolean messageIsQueued = messageService.queueOrSaveMessage(request, rental.owner_id());
+            if (messageIsQueued) {
+                ResponseMessage response = new ResponseMessage("Successfully accepted a new message!");
+                // Return a 202 Accepted status, the message being written shortly
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+            }
 
             ResponseMessage response = new ResponseMessage("Successfully created a new message!");
             // Return the saved user with a 201 Created status
@@ -92,6 +156,128 @@ public class MessageController {
         }
     }
 
+    /**
+     * Retrieves a page of the messages sent about the rentals of the authenticated
+     * user, ordered by rental then creation date.
+     *
+     * @param limit             The maximum number of messages of the page.
+     * @param cursor            The opaque cursor returned with the previous page,
+     *                          omitted for the first page.
+     * @param authenticatedUser The user authenticated by the JWT token.
+     * @return ResponseEntity<MessageAllResponse> with an array of messages and the
+     *         cursor of the next page.
+     */
+    @GetMapping("/inbox")
+    @Operation(description = "Retrieves a page of the messages sent about the rentals of the authenticated user, use the \"next\" cursor to fetch the following page", summary = "Retrieves the inbox of the owner", responses = {
+            @ApiResponse(description = "Successfully retrieved the messages", responseCode = "200", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = MessageAllResponse.class), examples = @ExampleObject(value = "{\"messages\":[{\"id\":1,\"rental_id\":1,\"user_id\":2,\"message\":\"Is it still available?\",\"created_at\":\"2023-01-01T12:00:00\",\"updated_at\":\"2023-01-01T12:00:00\"}],\"next\":\"MXwyMDIzLTAxLTAxVDEyOjAwfDE\"}"))
+            }),
+            @ApiResponse(description = "Bad limit or cursor", responseCode = "400"),
+            @ApiResponse(description = "Unauthorized", responseCode = "401"),
+    }, security = { @SecurityRequirement(name = "bearerAuth") })
+    public ResponseEntity<?> getInbox(
+            @RequestParam(value = "limit", defaultValue = "" + DEFAULT_PAGE_SIZE) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @AuthenticationPrincipal AuthenticatedUser authenticatedUser) {
+        try {
+            Integer pageSize = getPageSize(limit);
+
+            Long cursorRentalId = null;
+            LocalDateTime cursorCreatedAt = null;
+            Long cursorId = null;
+            if (cursor != null) {
+                String[] keyset = decodeCursorValues(cursor, 3);
+                try {
+                    cursorRentalId = Long.parseLong(keyset[0]);
+                    cursorCreatedAt = LocalDateTime.parse(keyset[1]);
+                    cursorId = Long.parseLong(keyset[2]);
+                } catch (DateTimeParseException | NumberFormatException e) {
+                    GlobalExceptionHandler.handleLogicError("Bad request", HttpStatus.BAD_REQUEST);
+                }
+            }
+
+            // Fetch one extra message to know if there is a next page
+            List<MessageResponse> messages = messageService.getInboxMessages(authenticatedUser.id(), cursorRentalId,
+                    cursorCreatedAt, cursorId, pageSize + 1);
+
+            String nextCursor = null;
+            Boolean hasNextPage = messages.size() > pageSize;
+            if (hasNextPage) {
+                messages = messages.subList(0, pageSize);
+
+                MessageResponse lastMessage = messages.get(pageSize - 1);
+                nextCursor = CursorUtil.encodeCursor(String.valueOf(lastMessage.rental_id()),
+                        lastMessage.created_at().toString(), String.valueOf(lastMessage.id()));
+            }
+
+            MessageAllResponse messageAllResponse = new MessageAllResponse(messages, nextCursor);
+
+            return ResponseEntity.status(HttpStatus.OK).body(messageAllResponse);
+        } catch (ApiException ex) {
+            return GlobalExceptionHandler.handleApiException(ex);
+        }
+    }
+
+    /**
+     * Retrieves the number of messages sent about the rentals of the authenticated
+     * user that they have not read yet, in total and by rental.
+     *
+     * @param authenticatedUser The user authenticated by the JWT token.
+     * @return ResponseEntity<MessageUnreadResponse> with the total and the counts
+     *         of the rentals having unread messages.
+     */
+    @GetMapping("/unread")
+    @Operation(description = "Retrieves the number of unread messages sent about the rentals of the authenticated user, in total and by rental ID", summary = "Retrieves the unread counts of the owner", responses = {
+            @ApiResponse(description = "Successfully retrieved the unread counts", responseCode = "200", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = MessageUnreadResponse.class), examples = @ExampleObject(value = "{\"unread\":3,\"rentals\":{\"1\":2,\"4\":1}}"))
+            }),
+            @ApiResponse(description = "Unauthorized", responseCode = "401"),
+            @ApiResponse(description = "Unread counters disabled", responseCode = "404"),
+    }, security = { @SecurityRequirement(name = "bearerAuth") })
+    public ResponseEntity<?> getUnreadCounts(@AuthenticationPrincipal AuthenticatedUser authenticatedUser) {
+        try {
+            Boolean countersAreDisabled = messageCounterService == null;
+            if (countersAreDisabled) {
+                GlobalExceptionHandler.handleLogicError("Not found", HttpStatus.NOT_FOUND);
+            }
+
+            // Read from the in-memory counters, without counting the messages
+            MessageUnreadResponse unreadResponse = messageCounterService.getUnreadMessages(authenticatedUser.id());
+
+            return ResponseEntity.status(HttpStatus.OK).body(unreadResponse);
+        } catch (ApiException ex) {
+            return GlobalExceptionHandler.handleApiException(ex);
+        }
+    }
+
+    /**
+     * Opens a stream of the new messages sent about the rentals of the
+     * authenticated user, as Server-Sent Events.
+     *
+     * @param authenticatedUser The user authenticated by the JWT token.
+     * @return ResponseEntity<SseEmitter> sending a "message" event for each new
+     *         message.
+     * @throws ApiException if the message streams are disabled.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(description = "Streams the new messages sent about the rentals of the authenticated user as Server-Sent Events, use the inbox to catch up after a reconnection", summary = "Streams the new messages of the owner", responses = {
+            @ApiResponse(description = "Successfully opened the stream", responseCode = "200", content = {
+                    @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE, schema = @Schema(implementation = MessageResponse.class), examples = @ExampleObject(value = "id:1\nevent:message\ndata:{\"id\":1,\"rental_id\":1,\"user_id\":2,\"message\":\"Is it still available?\",\"created_at\":\"2023-01-01T12:00:00\",\"updated_at\":\"2023-01-01T12:00:00\"}")) }),
+            @ApiResponse(description = "Unauthorized", responseCode = "401"),
+            @ApiResponse(description = "Streams disabled", responseCode = "404"),
+    }, security = { @SecurityRequirement(name = "bearerAuth") })
+    public ResponseEntity<SseEmitter> streamMessages(@AuthenticationPrincipal AuthenticatedUser authenticatedUser) {
+        Boolean streamsAreDisabled = messageStreamService == null;
+        if (streamsAreDisabled) {
+            GlobalExceptionHandler.handleLogicError("Not found", HttpStatus.NOT_FOUND);
+        }
+
+        // The request thread is released once the stream is open
+        SseEmitter emitter = messageStreamService.subscribe(authenticatedUser.id());
+
+        return ResponseEntity.status(HttpStatus.OK).body(emitter);
+    }
+
     /**
      * Checks if there is a mismatch between the user ID extracted from the JWT
      * token and the user ID provided in the request.
@@ -100,7 +286,7 @@ public class MessageController {
      * @param requestId       (Long) The user ID provided in the request.
      */
     private void checkUserIdMismatch(Long userIdFromToken, Long requestId) {
-        Boolean hasUserIdMismatch = userIdFromToken != requestId;
+        Boolean hasUserIdMismatch = !Objects.equals(userIdFromToken, requestId);
         if (hasUserIdMismatch) {
             GlobalExceptionHandler.handleLogicError("Forbidden", HttpStatus.FORBIDDEN);
         }
@@ -120,66 +306,55 @@ public class MessageController {
     }
 
     /**
-     * Retrieves the user ID from the authorization header.
+     * Retrieves the response of a rental by its ID.
      *
-     * @param authorizationHeader The authorization header containing the JWT token.
-     * @return The user ID extracted from the JWT token.
+     * @param rentalId The ID of the rental to retrieve.
+     * @return The response of the rental with the given ID.
+     * @throws ApiException if the rental with the given ID does not exist.
      */
-    private Long getUserIdFromAuthorizationHeader(String authorizationHeader) {
-        String jwtToken = JwtUtil.extractJwtFromHeader(authorizationHeader);
-
-        // Extract user ID from JWT
-        Optional<Long> optionalUserIdFromToken = JwtUtil.extractUserId(jwtToken);
-
-        Boolean hasJwtExtractionError = optionalUserIdFromToken.isEmpty();
-        if (hasJwtExtractionError) {
-            GlobalExceptionHandler.handleLogicError("Unauthorized", HttpStatus.UNAUTHORIZED);
+    private RentalSingleResponse verifyAndGetRentalResponseById(Long rentalId) {
+        Optional<RentalSingleResponse> optionalRental = rentalService.getRentalResponse(rentalId);
+        Boolean rentalDoesNotExist = optionalRental.isEmpty();
+        if (rentalDoesNotExist) {
+            GlobalExceptionHandler.handleLogicError("Not found",
+                    HttpStatus.NOT_FOUND);
         }
 
-        return optionalUserIdFromToken.get();
+        return optionalRental.get();
     }
 
     /**
-     * Retrieves the user information as a DTO entity based on the user ID extracted
-     * from the JWT
-     * token.
-     * 
-     * @param userIdFromToken The user ID extracted from the JWT token.
-     * @return The user information as a UserInfoResponse object.
-     * @throws ApiException If the user with the given ID does not exist or if there
-     *                      is a mismatch between the user ID and the token.
+     * Validates the page size requested by the client and caps it to the maximum
+     * page size.
+     *
+     * @param limit The page size requested by the client.
+     * @return The page size to use.
      */
-    private UserInfoResponse verifyAndGetUserByTokenId(Long userIdFromToken) {
-        // Fetch user information based on the user ID
-        Optional<Users> optionalSpecificUser = userService.getUserById(userIdFromToken);
-        Boolean userWithIdDoesNotExist = optionalSpecificUser.isEmpty();
-        if (userWithIdDoesNotExist) {
-            GlobalExceptionHandler.handleLogicError("Not found",
-                    HttpStatus.NOT_FOUND);
+    private Integer getPageSize(Integer limit) {
+        Boolean limitIsInvalid = limit < 1;
+        if (limitIsInvalid) {
+            GlobalExceptionHandler.handleLogicError("Bad request", HttpStatus.BAD_REQUEST);
         }
 
-        Users user = optionalSpecificUser.get();
-        // Convert user information to DTO
-        UserInfoResponse userEntity = userMapper.toDtoUser(user);
-
-        return userEntity;
+        return Math.min(limit, MAX_PAGE_SIZE);
     }
 
     /**
-     * Retrieves a rental by its ID.
+     * Decodes an opaque cursor sent by the client into its sort key values.
      *
-     * @param rentalId The ID of the rental to retrieve.
-     * @return The rental with the given ID.
-     * @throws ApiException if the rental with the given ID does not exist.
+     * @param cursor         The opaque cursor sent by the client.
+     * @param expectedValues The number of sort key values the cursor must hold.
+     * @return The sort key values of the last message of the previous page.
+     * @throws ApiException if the cursor is malformed.
      */
-    private Rental verifyAndGetRentalById(Long rentalId) {
-        Optional<Rental> optionalRental = rentalService.getRental(rentalId);
-        Boolean rentalDoesNotExist = optionalRental.isEmpty();
-        if (rentalDoesNotExist) {
-            GlobalExceptionHandler.handleLogicError("Not found",
-                    HttpStatus.NOT_FOUND);
+    private String[] decodeCursorValues(String cursor, int expectedValues) {
+        Optional<String[]> optionalKeyset = CursorUtil.decodeCursor(cursor, expectedValues);
+
+        Boolean cursorIsInvalid = optionalKeyset.isEmpty();
+        if (cursorIsInvalid) {
+            GlobalExceptionHandler.handleLogicError("Bad request", HttpStatus.BAD_REQUEST);
         }
 
-        return optionalRental.get();
+        return optionalKeyset.get();
     }
 }
@@ -1,29 +1,72 @@
 package com.openclassrooms.p3.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 
 import com.openclassrooms.p3.exception.ApiException;
 import com.openclassrooms.p3.exception.GlobalExceptionHandler;
+import com.openclassrooms.p3.index.RentalSearchIndex;
 import com.openclassrooms.p3.mapper.RentalMapper;
-import com.openclassrooms.p3.mapper.UserMapper;
 import com.openclassrooms.p3.model.Rental;
-import com.openclassrooms.p3.model.Users;
+import com.openclassrooms.p3.model.RentalCatalogStats;
+import com.openclassrooms.p3.model.RentalCatalogVersion;
+import com.openclassrooms.p3.model.RentalChangeSet;
+import com.openclassrooms.p3.model.RentalFilter;
+import com.openclassrooms.p3.model.RentalSort;
+import com.openclassrooms.p3.payload.request.RentalImportRequest;
 import com.openclassrooms.p3.payload.request.RentalUpdateRequest;
+import com.openclassrooms.p3.payload.response.MessageAllResponse;
+import com.openclassrooms.p3.payload.response.MessageResponse;
 import com.openclassrooms.p3.payload.response.RentalAllResponse;
+import com.openclassrooms.p3.payload.response.RentalChangesResponse;
+import com.openclassrooms.p3.payload.response.RentalImportResponse;
+import com.openclassrooms.p3.payload.response.RentalSearchResponse;
 import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+import com.openclassrooms.p3.payload.response.RentalStatsResponse;
 import com.openclassrooms.p3.payload.response.ResponseMessage;
-import com.openclassrooms.p3.payload.response.UserInfoResponse;
+import com.openclassrooms.p3.security.AuthenticatedUser;
+import com.openclassrooms.p3.service.IdempotencyService;
+import com.openclassrooms.p3.service.MessageCounterService;
+import com.openclassrooms.p3.service.MessageService;
 import com.openclassrooms.p3.service.RentalService;
 import com.openclassrooms.p3.service.S3Service;
-import com.openclassrooms.p3.service.UserService;
-import com.openclassrooms.p3.utils.JwtUtil;
+import com.openclassrooms.p3.utils.CursorUtil;
+import com.openclassrooms.p3.utils.ETagUtil;
 
 import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -35,20 +78,52 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
 /**
  * Controller for handling rental-related operations.
  */
-@CrossOrigin("*")
+@CrossOrigin(origins = "*", exposedHeaders = { HttpHeaders.ETAG, IdempotencyService.IDEMPOTENT_REPLAYED_HEADER })
 @RestController
 @RequestMapping("/api/rentals")
 @Tag(name = "Rentals")
 public class RentalController {
+    private static final Logger logger = LoggerFactory.getLogger(RentalController.class);
 
-    @Autowired
-    private S3Service s3Service;
+    /**
+     * Number of rentals returned per page when the client does not specify it.
+     */
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    /**
+     * Upper bound of the number of rentals returned per page.
+     */
+    private static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * Media type of the streamed catalog, one JSON rental per line.
+     */
+    private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+    /**
+     * Media type of the bulk imports sent as CSV.
+     */
+    private static final String CSV_MEDIA_TYPE = "text/csv";
+
+    /**
+     * Reads the rentals of a CSV bulk import, the columns being named by the
+     * header row.
+     */
+    private static final ObjectReader CSV_READER = CsvMapper.builder()
+            .enable(CsvParser.Feature.TRIM_SPACES)
+            .enable(CsvParser.Feature.EMPTY_STRING_AS_NULL)
+            .build()
+            .readerFor(RentalImportRequest.class)
+            .with(CsvSchema.emptySchema().withHeader());
 
     @Autowired
-    private UserMapper userMapper;
+    private S3Service s3Service;
 
     @Autowired
     private RentalMapper rentalMapper;
@@ -57,33 +132,298 @@ public class RentalController {
     private RentalService rentalService;
 
     @Autowired
-    private UserService userService;
+    private MessageService messageService;
+
+    @Autowired(required = false)
+    private MessageCounterService messageCounterService;
+
+    @Autowired(required = false)
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private RentalSearchIndex rentalSearchIndex;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Validator validator;
+
+    @Value("${rentals.import.max-rentals:10000}")
+    private int maxImportedRentals;
 
     /**
-     * Retrieves all rentals.
+     * Retrieves a page of rentals, optionally filtered on their price and surface,
+     * ordered by creation date unless another order is requested.
      *
-     * @return ResponseEntity<RentalAllResponse> with an array of rentals.
+     * @param minPrice            The minimum price of the rentals, if any.
+     * @param maxPrice            The maximum price of the rentals, if any.
+     * @param minSurface          The minimum surface of the rentals, if any.
+     * @param maxSurface          The maximum surface of the rentals, if any.
+     * @param sortParameter       The order of the rentals: "created_at", "price",
+     *                            "-price", "surface" or "-surface".
+     * @param limit               The maximum number of rentals of the page.
+     * @param cursor              The opaque cursor returned with the previous
+     *                            page, omitted for the first page.
+     * @param ifNoneMatchHeader   The entity tag of the page held by the client, if
+     *                            any.
+     * @return ResponseEntity<RentalAllResponse> with an array of rentals and the
+     *         cursor of the next page, or an empty 304 response if the page held
+     *         by the client is up to date.
      */
     @GetMapping("")
-    @Operation(description = "Retrieves all rentals", summary = "Retrieves all rentals", responses = {
+    @Operation(description = "Retrieves a page of rentals, optionally filtered on their price and surface and sorted, use the \"next\" cursor to fetch the following page", summary = "Retrieves all rentals", responses = {
             @ApiResponse(description = "Successfully retrieved all rentals", responseCode = "200", content = {
-                    @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = RentalSingleResponse.class)), examples = @ExampleObject(value = "rentals:[{\"id\":1,\"name\":\"Example Rental\",\"surface\":100,\"price\":1000.00,\"picture\":\"example.jpg\",\"description\":\"Example description\",\"owner_id\":1,\"created_at\":\"2023-01-01T12:00:00\",\"updated_at\":\"2023-01-01T13:00:00\"}]"))
+                    @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = RentalSingleResponse.class)), examples = @ExampleObject(value = "{\"rentals\":[{\"id\":1,\"name\":\"Example Rental\",\"surface\":100,\"price\":1000.00,\"picture\":\"example.jpg\",\"description\":\"Example description\",\"owner_id\":1,\"created_at\":\"2023-01-01T12:00:00\",\"updated_at\":\"2023-01-01T13:00:00\"}],\"next\":\"MjAyMy0wMS0wMVQxMjowMHwx\"}"))
+            }),
+            @ApiResponse(description = "Not modified since the given entity tag", responseCode = "304"),
+            @ApiResponse(description = "Bad filter, sort, limit or cursor", responseCode = "400"),
+            @ApiResponse(description = "Unauthorized", responseCode = "401"),
+    }, security = { @SecurityRequirement(name = "bearerAuth") })
+    public ResponseEntity<?> getRentals(
+            @RequestParam(value = "min_price", required = false) BigDecimal minPrice,
+            @RequestParam(value = "max_price", required = false) BigDecimal maxPrice,
+            @RequestParam(value = "min_surface", required = false) Integer minSurface,
+            @RequestParam(value = "max_surface", required = false) Integer maxSurface,
+            @RequestParam(value = "sort", defaultValue = "created_at") String sortParameter,
+            @RequestParam(value = "limit", defaultValue = "" + DEFAULT_PAGE_SIZE) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatchHeader) {
+        try {
+            Integer pageSize = getPageSize(limit);
+
+            RentalFilter filter = new RentalFilter(minPrice, maxPrice, minSurface, maxSurface);
+            Optional<RentalSort> optionalSort = RentalSort.fromParameter(sortParameter);
+
+            Boolean filterOrSortIsInvalid = !filter.isValid() || optionalSort.isEmpty();
+            if (filterOrSortIsInvalid) {
+                GlobalExceptionHandler.handleLogicError("Bad request", HttpStatus.BAD_REQUEST);
+            }
+            RentalSort sort = optionalSort.get();
+
+            Comparable<?> cursorSortValue = null;
+            Long cursorId = null;
+            if (cursor != null) {
+                String[] keyset = decodeCursorValues(cursor, 2);
+                try {
+                    cursorSortValue = sort.parseSortValue(keyset[0]);
+                    cursorId = Long.parseLong(keyset[1]);
+                } catch (DateTimeParseException | NumberFormatException e) {
+                    GlobalExceptionHandler.handleLogicError("Bad request", HttpStatus.BAD_REQUEST);
+                }
+            }
+
+            // The page only changes when the catalog does, which is answered by an aggregate
+            // query without reading the rentals
+            RentalCatalogVersion catalogVersion = rentalService.getCatalogVersion();
+            String eTag = ETagUtil.generateETag(catalogVersion.lastUpdatedAt(), catalogVersion.count(), cursor,
+                    pageSize, filter, sort);
+
+            Boolean isNotModified = ETagUtil.matches(ifNoneMatchHeader, eTag);
+            if (isNotModified) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
+
+            // Fetch one extra rental to know if there is a next page
+            List<RentalSingleResponse> rentals = rentalService.getRentals(filter, sort, cursorSortValue, cursorId,
+                    pageSize + 1);
+
+            String nextCursor = null;
+            Boolean hasNextPage = rentals.size() > pageSize;
+            if (hasNextPage) {
+                rentals = rentals.subList(0, pageSize);
+
+                RentalSingleResponse lastRental = rentals.get(pageSize - 1);
+                nextCursor = CursorUtil.encodeCursor(sort.formatSortValue(lastRental),
+                        String.valueOf(lastRental.id()));
+            }
+
+            RentalAllResponse rentalAllResponse = new RentalAllResponse(rentals, nextCursor);
+
+            return ResponseEntity.status(HttpStatus.OK).eTag(eTag).body(rentalAllResponse);
+        } catch (ApiException ex) {
+            return GlobalExceptionHandler.handleApiException(ex);
+        }
+    }
+
+    /**
+     * Streams the whole catalog as newline-delimited JSON, one rental per line.
+     *
+     * Rentals are written as soon as they are read from the database, so the
+     * response starts right away and the memory used does not depend on the size
+     * of the catalog.
+     *
+     * @return ResponseEntity<StreamingResponseBody> writing every rental.
+     */
+    @GetMapping(value = "", produces = NDJSON_MEDIA_TYPE)
+    @Operation(description = "Streams all the rentals as newline-delimited JSON when requested with \"Accept: application/x-ndjson\"", summary = "Streams all rentals", responses = {
+            @ApiResponse(description = "Successfully streamed all rentals", responseCode = "200", content = {
+                    @Content(mediaType = NDJSON_MEDIA_TYPE, schema = @Schema(implementation = RentalSingleResponse.class), examples = @ExampleObject(value = "{\"id\":1,\"name\":\"Example Rental\",\"surface\":100,\"price\":1000.00,\"picture\":\"example.jpg\",\"description\":\"Example description\",\"owner_id\":1,\"created_at\":\"2023-01-01T12:00:00\",\"updated_at\":\"2023-01-01T13:00:00\"}"))
+            }),
+            @ApiResponse(description = "Unauthorized", responseCode = "401"),
+    }, security = { @SecurityRequirement(name = "bearerAuth") })
+    public ResponseEntity<StreamingResponseBody> streamRentals() {
+        ObjectWriter rentalWriter = objectMapper.writerFor(RentalSingleResponse.class);
+
+        StreamingResponseBody responseBody = outputStream -> {
+            AtomicBoolean isFirstLine = new AtomicBoolean(true);
+
+            rentalService.streamRentals(rentalDto -> {
+                try {
+                    outputStream.write(rentalWriter.writeValueAsBytes(rentalDto));
+                    outputStream.write('\n');
+
+                    // Send the first line right away, the following ones are flushed with the
+                    // response buffer
+                    if (isFirstLine.getAndSet(false)) {
+                        outputStream.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            outputStream.flush();
+        };
+
+        return ResponseEntity.status(HttpStatus.OK)
+                .contentType(MediaType.parseMediaType(NDJSON_MEDIA_TYPE))
+                .body(responseBody);
+    }
+
+    /**
+     * Retrieves the changes made to the catalog since a given time: the rentals
+     * created or updated and the rentals deleted, so that clients can keep their
+     * copy of the catalog in sync without downloading it again.
+     *
+     * @param since               The time of the last synchronization of the
+     *                            client.
+     * @param limit               The maximum number of changes of the page.
+     * @param cursor              The opaque cursor returned with the previous
+     *                            page, omitted for the first page.
+     * @return ResponseEntity<RentalChangesResponse> with the changed rentals, the
+     *         deleted rentals and the cursor of the next page.
+     */
+    @GetMapping("/changes")
+    @Operation(description = "Retrieves the rentals created, updated or deleted since a given time, use the \"next\" cursor to fetch the following page", summary = "Retrieves the changes of the rentals", responses = {
+            @ApiResponse(description = "Successfully retrieved the changes", responseCode = "200", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = RentalChangesResponse.class), examples = @ExampleObject(value = "{\"rentals\":[{\"id\":1,\"name\":\"Example Rental\",\"surface\":100,\"price\":1000.00,\"picture\":\"example.jpg\",\"description\":\"Example description\",\"owner_id\":1,\"created_at\":\"2023-01-01T12:00:00\",\"updated_at\":\"2023-01-01T13:00:00\"}],\"deleted\":[{\"id\":2,\"deleted_at\":\"2023-01-01T14:00:00\"}],\"next\":null}"))
+            }),
+            @ApiResponse(description = "Bad since, limit or cursor", responseCode = "400"),
+            @ApiResponse(description = "Unauthorized", responseCode = "401"),
+    }, security = { @SecurityRequirement(name = "bearerAuth") })
+    public ResponseEntity<?> getRentalChanges(
+            @RequestParam("since") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            @RequestParam(value = "limit", defaultValue = "" + DEFAULT_PAGE_SIZE) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        try {
+            Integer pageSize = getPageSize(limit);
+
+            LocalDateTime cursorChangedAt = since;
+            Long cursorRentalId = null;
+            if (cursor != null) {
+                String[] keyset = decodeCursorValues(cursor, 2);
+                try {
+                    cursorChangedAt = LocalDateTime.parse(keyset[0]);
+                    cursorRentalId = Long.parseLong(keyset[1]);
+                } catch (DateTimeParseException | NumberFormatException e) {
+                    GlobalExceptionHandler.handleLogicError("Bad request", HttpStatus.BAD_REQUEST);
+                }
+            }
+
+            RentalChangeSet changeSet = rentalService.getRentalChanges(cursorChangedAt, cursorRentalId, pageSize);
+
+            String nextCursor = null;
+            if (changeSet.hasMore()) {
+                nextCursor = CursorUtil.encodeCursor(changeSet.lastChangedAt().toString(),
+                        String.valueOf(changeSet.lastRentalId()));
+            }
+
+            RentalChangesResponse rentalChangesResponse = new RentalChangesResponse(changeSet.rentals(),
+                    rentalMapper.toDtoTombstones(changeSet.tombstones()), nextCursor);
+
+            return ResponseEntity.status(HttpStatus.OK).body(rentalChangesResponse);
+        } catch (ApiException ex) {
+            return GlobalExceptionHandler.handleApiException(ex);
+        }
+    }
+
+    /**
+     * Retrieves the number of rentals within a price and surface range, along with
+     * their price and surface aggregates.
+     *
+     * @param minPrice            The minimum price of the rentals, if any.
+     * @param maxPrice            The maximum price of the rentals, if any.
+     * @param minSurface          The minimum surface of the rentals, if any.
+     * @param maxSurface          The maximum surface of the rentals, if any.
+     * @return ResponseEntity<RentalStatsResponse> with the aggregates of the
+     *         matching rentals.
+     */
+    @GetMapping("/stats")
+    @Operation(description = "Retrieves the count, price and surface aggregates of the rentals, optionally filtered on their price and surface", summary = "Retrieves rental statistics", responses = {
+            @ApiResponse(description = "Successfully retrieved the statistics", responseCode = "200", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = RentalStatsResponse.class), examples = @ExampleObject(value = "{\"count\":2,\"min_price\":500.00,\"max_price\":1000.00,\"average_price\":750.00,\"min_surface\":50,\"max_surface\":100,\"average_surface\":75.0,\"owners\":1}"))
             }),
+            @ApiResponse(description = "Bad filter", responseCode = "400"),
             @ApiResponse(description = "Unauthorized", responseCode = "401"),
     }, security = { @SecurityRequirement(name = "bearerAuth") })
-    public ResponseEntity<?> getRentals(@RequestHeader("Authorization") String authorizationHeader) {
+    public ResponseEntity<?> getRentalStats(
+            @RequestParam(value = "min_price", required = false) BigDecimal minPrice,
+            @RequestParam(value = "max_price", required = false) BigDecimal maxPrice,
+            @RequestParam(value = "min_surface", required = false) Integer minSurface,
+            @RequestParam(value = "max_surface", required = false) Integer maxSurface) {
         try {
+            RentalFilter filter = new RentalFilter(minPrice, maxPrice, minSurface, maxSurface);
+
+            Boolean filterIsInvalid = !filter.isValid();
+            if (filterIsInvalid) {
+                GlobalExceptionHandler.handleLogicError("Bad request", HttpStatus.BAD_REQUEST);
+            }
+
+            RentalCatalogStats stats = rentalService.getRentalStats(filter);
 
-            Long userIdFromToken = getUserIdFromAuthorizationHeader(authorizationHeader);
-            // Fetch user information based on the user ID
-            verifyAndGetUserByTokenId(userIdFromToken);
+            return ResponseEntity.status(HttpStatus.OK).body(rentalMapper.toDtoStats(stats));
+        } catch (ApiException ex) {
+            return GlobalExceptionHandler.handleApiException(ex);
+        }
+    }
+
+    /**
+     * Searches the rentals by their name and description.
+     *
+     * @param query               The full-text query.
+     * @param page                The index of the page to retrieve, starting at 0.
+     * @param limit               The maximum number of rentals of the page.
+     * @return ResponseEntity<RentalSearchResponse> with the matching rentals, best
+     *         match first, and the total number of matching rentals.
+     */
+    @GetMapping("/search")
+    @Operation(description = "Searches the rentals by their name and description, best match first", summary = "Searches rentals", responses = {
+            @ApiResponse(description = "Successfully searched the rentals", responseCode = "200", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = RentalSearchResponse.class), examples = @ExampleObject(value = "{\"rentals\":[{\"id\":1,\"name\":\"Example Rental\",\"surface\":100,\"price\":1000.00,\"picture\":\"example.jpg\",\"description\":\"Example description\",\"owner_id\":1,\"created_at\":\"2023-01-01T12:00:00\",\"updated_at\":\"2023-01-01T13:00:00\"}],\"total\":1}"))
+            }),
+            @ApiResponse(description = "Bad query, page or limit", responseCode = "400"),
+            @ApiResponse(description = "Unauthorized", responseCode = "401"),
+    }, security = { @SecurityRequirement(name = "bearerAuth") })
+    public ResponseEntity<?> searchRentals(
+            @RequestParam("q") String query,
+            @RequestParam(value = "page", defaultValue = "0") Integer page,
+            @RequestParam(value = "limit", defaultValue = "" + DEFAULT_PAGE_SIZE) Integer limit) {
+        try {
+            Integer pageSize = getPageSize(limit);
 
-            Iterable<Rental> allRentals = rentalService.getRentals();
-            Iterable<RentalSingleResponse> rentalDtos = rentalMapper.toDtoRentals(allRentals);
+            Boolean searchIsInvalid = query.isBlank() || page < 0;
+            if (searchIsInvalid) {
+                GlobalExceptionHandler.handleLogicError("Bad request", HttpStatus.BAD_REQUEST);
+            }
 
-            RentalAllResponse rentalAllResponse = new RentalAllResponse(rentalDtos);
+            int offset = (int) Math.min((long) page * pageSize, Integer.MAX_VALUE);
+            RentalSearchIndex.SearchResult searchResult = rentalSearchIndex.search(query, offset, pageSize);
+            List<RentalSingleResponse> rentals = rentalService.getRentalResponses(searchResult.rentalIds());
 
-            return ResponseEntity.status(HttpStatus.OK).body(rentalAllResponse);
+            RentalSearchResponse rentalSearchResponse = new RentalSearchResponse(rentals, searchResult.total());
+
+            return ResponseEntity.status(HttpStatus.OK).body(rentalSearchResponse);
         } catch (ApiException ex) {
             return GlobalExceptionHandler.handleApiException(ex);
         }
@@ -92,28 +432,139 @@ public class RentalController {
     /**
      * Retrieves information about a specific rental.
      *
-     * @param id The ID of the rental to retrieve.
-     * @return ResponseEntity<RentalSingleResponse> with rental information.
+     * @param id                  The ID of the rental to retrieve.
+     * @param ifNoneMatchHeader   The entity tag of the rental held by the client,
+     *                            if any.
+     * @return ResponseEntity<RentalSingleResponse> with rental information, or an
+     *         empty 304 response if the rental held by the client is up to date.
      */
     @GetMapping("/{id}")
     @Operation(description = "Retrieves a rental by its ID", summary = "Retrieves a rental by its ID", responses = {
             @ApiResponse(description = "Successfully retrieved all rentals", responseCode = "200", content = {
                     @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = RentalSingleResponse.class)), examples = @ExampleObject(value = "{\"id\":1,\"name\":\"Example Rental\",\"surface\":100,\"price\":1000.00,\"picture\":\"example.jpg\",\"description\":\"Example description\",\"owner_id\":1,\"created_at\":\"2023-01-01T12:00:00\",\"updated_at\":\"2023-01-01T13:00:00\"}"))
             }),
+            @ApiResponse(description = "Not modified since the given entity tag", responseCode = "304"),
             @ApiResponse(description = "Unauthorized", responseCode = "401"),
             @ApiResponse(description = "User not found", responseCode = "404"),
     }, security = { @SecurityRequirement(name = "bearerAuth") })
     public ResponseEntity<?> getRental(@PathVariable final Long id,
-            @RequestHeader("Authorization") String authorizationHeader) {
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatchHeader) {
+        try {
+            // Served from the rental cache when possible, so most conditional requests do
+            // not reach the database
+            RentalSingleResponse rentalDto = verifyAndGetRentalResponseById(id);
+            String eTag = ETagUtil.generateETag(rentalDto.id(), rentalDto.updated_at());
+
+            Boolean isNotModified = ETagUtil.matches(ifNoneMatchHeader, eTag);
+            if (isNotModified) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
+
+            return ResponseEntity.status(HttpStatus.OK).eTag(eTag).body(rentalDto);
+        } catch (ApiException ex) {
+            return GlobalExceptionHandler.handleApiException(ex);
+        }
+    }
+
+    /**
+     * Retrieves a page of the messages sent about a rental, ordered by creation
+     * date, to its owner.
+     *
+     * @param id                The ID of the rental.
+     * @param limit             The maximum number of messages of the page.
+     * @param cursor            The opaque cursor returned with the previous page,
+     *                          omitted for the first page.
+     * @param authenticatedUser The user authenticated by the JWT token.
+     * @return ResponseEntity<MessageAllResponse> with an array of messages and the
+     *         cursor of the next page.
+     */
+    @GetMapping("/{id}/messages")
+    @Operation(description = "Retrieves a page of the messages sent about a rental, to its owner, use the \"next\" cursor to fetch the following page", summary = "Retrieves the messages of a rental", responses = {
+            @ApiResponse(description = "Successfully retrieved the messages", responseCode = "200", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = MessageAllResponse.class), examples = @ExampleObject(value = "{\"messages\":[{\"id\":1,\"rental_id\":1,\"user_id\":2,\"message\":\"Is it still available?\",\"created_at\":\"2023-01-01T12:00:00\",\"updated_at\":\"2023-01-01T12:00:00\"}],\"next\":\"MjAyMy0wMS0wMVQxMjowMHwx\"}"))
+            }),
+            @ApiResponse(description = "Bad limit or cursor", responseCode = "400"),
+            @ApiResponse(description = "Unauthorized", responseCode = "401"),
+            @ApiResponse(description = "Forbidden", responseCode = "403"),
+            @ApiResponse(description = "Rental not found", responseCode = "404"),
+    }, security = { @SecurityRequirement(name = "bearerAuth") })
+    public ResponseEntity<?> getRentalMessages(@PathVariable final Long id,
+            @RequestParam(value = "limit", defaultValue = "" + DEFAULT_PAGE_SIZE) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @AuthenticationPrincipal AuthenticatedUser authenticatedUser) {
+        try {
+            Integer pageSize = getPageSize(limit);
+
+            LocalDateTime cursorCreatedAt = null;
+            Long cursorId = null;
+            if (cursor != null) {
+                String[] keyset = decodeCursorValues(cursor, 2);
+                try {
+                    cursorCreatedAt = LocalDateTime.parse(keyset[0]);
+                    cursorId = Long.parseLong(keyset[1]);
+                } catch (DateTimeParseException | NumberFormatException e) {
+                    GlobalExceptionHandler.handleLogicError("Bad request", HttpStatus.BAD_REQUEST);
+                }
+            }
+
+            // Only the owner of the rental reads its messages
+            RentalSingleResponse rentalDto = verifyAndGetRentalResponseById(id);
+            checkUserIdMismatch(authenticatedUser.id(), rentalDto.owner_id());
+
+            // Fetch one extra message to know if there is a next page
+            List<MessageResponse> messages = messageService.getRentalMessages(id, cursorCreatedAt, cursorId,
+                    pageSize + 1);
+
+            String nextCursor = null;
+            Boolean hasNextPage = messages.size() > pageSize;
+            if (hasNextPage) {
+                messages = messages.subList(0, pageSize);
+
+                MessageResponse lastMessage = messages.get(pageSize - 1);
+                nextCursor = CursorUtil.encodeCursor(lastMessage.created_at().toString(),
+                        String.valueOf(lastMessage.id()));
+            }
+
+            MessageAllResponse messageAllResponse = new MessageAllResponse(messages, nextCursor);
+
+            return ResponseEntity.status(HttpStatus.OK).body(messageAllResponse);
+        } catch (ApiException ex) {
+            return GlobalExceptionHandler.handleApiException(ex);
+        }
+    }
+
+    /**
+     * Marks the messages sent about a rental as read by its owner.
+     *
+     * @param id                The ID of the rental.
+     * @param authenticatedUser The user authenticated by the JWT token.
+     * @return ResponseEntity<ResponseMessage> with information about the request.
+     */
+    @PostMapping("/{id}/messages/read")
+    @Operation(description = "Marks the messages sent about a rental as read by its owner, resetting its unread count", summary = "Marks the messages of a rental as read", responses = {
+            @ApiResponse(description = "Successfully marked the messages as read", responseCode = "200", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = ApiResponse.class), examples = @ExampleObject(value = "{\"message\":\"Messages marked as read!\"}")) }),
+            @ApiResponse(description = "Unauthorized", responseCode = "401"),
+            @ApiResponse(description = "Forbidden", responseCode = "403"),
+            @ApiResponse(description = "Rental not found or unread counters disabled", responseCode = "404"),
+    }, security = { @SecurityRequirement(name = "bearerAuth") })
+    public ResponseEntity<?> markRentalMessagesRead(@PathVariable final Long id,
+            @AuthenticationPrincipal AuthenticatedUser authenticatedUser) {
         try {
-            Long userIdFromToken = getUserIdFromAuthorizationHeader(authorizationHeader);
-            // Fetch user information based on the user ID
-            verifyAndGetUserByTokenId(userIdFromToken);
+            Boolean countersAreDisabled = messageCounterService == null;
+            if (countersAreDisabled) {
+                GlobalExceptionHandler.handleLogicError("Not found", HttpStatus.NOT_FOUND);
+            }
+
+            // Only the owner of the rental reads its messages
+            RentalSingleResponse rentalDto = verifyAndGetRentalResponseById(id);
+            checkUserIdMismatch(authenticatedUser.id(), rentalDto.owner_id());
+
+            messageCounterService.markRead(id);
 
-            Rental rental = verifyAndGetRentalById(id);
-            RentalSingleResponse rentalDto = rentalMapper.toDtoRental(rental);
+            ResponseMessage response = new ResponseMessage("Messages marked as read!");
 
-            return ResponseEntity.status(HttpStatus.OK).body(rentalDto);
+            return ResponseEntity.status(HttpStatus.OK).body(response);
         } catch (ApiException ex) {
             return GlobalExceptionHandler.handleApiException(ex);
         }
@@ -127,9 +578,11 @@ public class RentalController {
      * @param price               The price of the rental.
      * @param description         The description of the rental.
      * @param picture             An optional picture of the rental.
-     * @param authorizationHeader The authorization header containing the JWT token.
+     * @param idempotencyKey      The optional key of the request and its retries.
+     * @param authenticatedUser   The user authenticated by the JWT token.
      * @return The ResponseEntity<ResponseMessage> entity with the success status
-     *         and a response message.
+     *         and a response message, or the one of the first request made with
+     *         the same Idempotency-Key.
      */
     @PostMapping(path = "", consumes = { "multipart/form-data" })
     @Operation(description = "Adds a new rental", summary = "Adds a new rental", responses = {
@@ -137,6 +590,8 @@ public class RentalController {
                     @Content(mediaType = "application/json", schema = @Schema(implementation = ApiResponse.class), examples = @ExampleObject(value = "{\"message\":\"Success!\"}")) }),
             @ApiResponse(description = "Unauthorized", responseCode = "401"),
             @ApiResponse(description = "Bad form data values", responseCode = "403"),
+            @ApiResponse(description = "Rental with the same Idempotency-Key still being added", responseCode = "409"),
+            @ApiResponse(description = "Idempotency-Key already used with another rental", responseCode = "422"),
     }, security = { @SecurityRequirement(name = "bearerAuth") })
     public ResponseEntity<?> addRental(
             @RequestParam("name") String name,
@@ -144,10 +599,57 @@ public class RentalController {
             @RequestParam("price") BigDecimal price,
             @RequestParam("description") String description,
             @RequestPart("picture") MultipartFile picture,
-            @RequestHeader("Authorization") String authorizationHeader) {
+            @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @AuthenticationPrincipal AuthenticatedUser authenticatedUser) {
         try {
-            Long userIdFromToken = getUserIdFromAuthorizationHeader(authorizationHeader);
-            verifyAndGetUserByTokenId(userIdFromToken);
+            Boolean isIdempotent = idempotencyService != null && idempotencyKey != null;
+            if (!isIdempotent) {
+                return createRental(name, surface, price, description, picture, authenticatedUser);
+            }
+
+            // The retries get the response of the first request, the picture being uploaded once
+            return idempotencyService.execute("POST /api/rentals", authenticatedUser.id(), idempotencyKey,
+                    IdempotencyService.fingerprint(name, surface, price, description, fingerprintPicture(picture)),
+                    () -> createRental(name, surface, price, description, picture, authenticatedUser));
+        } catch (ApiException ex) {
+            return GlobalExceptionHandler.handleApiException(ex);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of the content of the picture of a new rental, so
+     * that a key reused with another picture is rejected.
+     *
+     * @param picture The picture of the rental.
+     * @return The SHA-256 of the picture, in hexadecimal.
+     * @throws ApiException with a 400 status if the picture cannot be read.
+     */
+    private String fingerprintPicture(MultipartFile picture) {
+        try (InputStream pictureContent = picture.getInputStream()) {
+            return IdempotencyService.fingerprintContent(pictureContent);
+        } catch (IOException e) {
+            GlobalExceptionHandler.handleLogicError("Bad request", HttpStatus.BAD_REQUEST);
+        }
+
+        return null;
+    }
+
+    /**
+     * Uploads the picture of a new rental, then saves the rental.
+     *
+     * @param name              The name of the rental.
+     * @param surface           The surface area of the rental.
+     * @param price             The price of the rental.
+     * @param description       The description of the rental.
+     * @param picture           The picture of the rental.
+     * @param authenticatedUser The user authenticated by the JWT token.
+     * @return The ResponseEntity<ResponseMessage> entity with the success status
+     *         and a response message.
+     */
+    private ResponseEntity<?> createRental(String name, Integer surface, BigDecimal price, String description,
+            MultipartFile picture, AuthenticatedUser authenticatedUser) {
+        try {
+            Long userIdFromToken = authenticatedUser.id();
 
             checkIfFileIsImage(picture);
 
@@ -159,9 +661,100 @@ public class RentalController {
 
             ResponseMessage responseMessage = new ResponseMessage("Success!");
             return ResponseEntity.status(HttpStatus.CREATED).body(responseMessage);
-        } catch (Exception ex) {
-            System.out.println(ex.getMessage());
-            return GlobalExceptionHandler.handleApiException((ApiException) ex);
+        } catch (ApiException ex) {
+            logger.warn("Unable to create the rental: {}", ex.getMessage());
+            return GlobalExceptionHandler.handleApiException(ex);
+        }
+    }
+
+    /**
+     * Imports many rentals at once from a JSON array, their pictures being
+     * already uploaded. The array is read one rental at a time, so that an
+     * oversized import is rejected without being read entirely.
+     *
+     * @param jsonBody             The JSON array of the rentals to import.
+     * @param authenticatedUser    The user authenticated by the JWT token.
+     * @return ResponseEntity<RentalImportResponse> with the IDs of the created
+     *         rentals.
+     */
+    @PostMapping(path = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(description = "Imports many rentals owned by the authenticated user from a JSON array, the pictures being URLs of already uploaded images", summary = "Imports rentals", responses = {
+            @ApiResponse(description = "Successfully imported the rentals", responseCode = "201", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = RentalImportResponse.class), examples = @ExampleObject(value = "{\"imported\":2,\"ids\":[101,102]}")) }),
+            @ApiResponse(description = "Malformed JSON, invalid rental or too many rentals", responseCode = "400"),
+            @ApiResponse(description = "Unauthorized", responseCode = "401"),
+    }, security = { @SecurityRequirement(name = "bearerAuth") })
+    public ResponseEntity<?> importRentals(
+            InputStream jsonBody,
+            @AuthenticationPrincipal AuthenticatedUser authenticatedUser) {
+        try {
+            Long userIdFromToken = authenticatedUser.id();
+
+            List<RentalImportRequest> rentalImportRequests = new ArrayList<>();
+            try (JsonParser jsonParser = objectMapper.createParser(jsonBody)) {
+                Boolean isNotArray = jsonParser.nextToken() != JsonToken.START_ARRAY;
+                if (isNotArray) {
+                    GlobalExceptionHandler.handleLogicError("Malformed JSON", HttpStatus.BAD_REQUEST);
+                }
+
+                // Read one rental past the limit to reject oversized arrays without reading them
+                // entirely
+                JsonToken token = jsonParser.nextToken();
+                while (token != JsonToken.END_ARRAY && rentalImportRequests.size() <= maxImportedRentals) {
+                    Boolean isTruncated = token == null;
+                    if (isTruncated) {
+                        GlobalExceptionHandler.handleLogicError("Malformed JSON", HttpStatus.BAD_REQUEST);
+                    }
+
+                    rentalImportRequests.add(jsonParser.readValueAs(RentalImportRequest.class));
+                    token = jsonParser.nextToken();
+                }
+            } catch (IOException e) {
+                GlobalExceptionHandler.handleLogicError("Malformed JSON", HttpStatus.BAD_REQUEST);
+            }
+
+            return importRentalsOwnedBy(rentalImportRequests, userIdFromToken);
+        } catch (ApiException ex) {
+            return GlobalExceptionHandler.handleApiException(ex);
+        }
+    }
+
+    /**
+     * Imports many rentals at once from a CSV file with a header row naming the
+     * columns: name, surface, price, description and picture.
+     *
+     * @param csvBody             The CSV file.
+     * @param authenticatedUser   The user authenticated by the JWT token.
+     * @return ResponseEntity<RentalImportResponse> with the IDs of the created
+     *         rentals.
+     */
+    @PostMapping(path = "/bulk", consumes = CSV_MEDIA_TYPE)
+    @Operation(description = "Imports many rentals owned by the authenticated user from a CSV file with a \"name,surface,price,description,picture\" header, the pictures being URLs of already uploaded images", summary = "Imports rentals from CSV", responses = {
+            @ApiResponse(description = "Successfully imported the rentals", responseCode = "201", content = {
+                    @Content(mediaType = "application/json", schema = @Schema(implementation = RentalImportResponse.class), examples = @ExampleObject(value = "{\"imported\":2,\"ids\":[101,102]}")) }),
+            @ApiResponse(description = "Malformed CSV, invalid rental or too many rentals", responseCode = "400"),
+            @ApiResponse(description = "Unauthorized", responseCode = "401"),
+    }, security = { @SecurityRequirement(name = "bearerAuth") })
+    public ResponseEntity<?> importRentalsFromCsv(
+            InputStream csvBody,
+            @AuthenticationPrincipal AuthenticatedUser authenticatedUser) {
+        try {
+            Long userIdFromToken = authenticatedUser.id();
+
+            List<RentalImportRequest> rentalImportRequests = new ArrayList<>();
+            try (MappingIterator<RentalImportRequest> csvRows = CSV_READER.readValues(csvBody)) {
+                // Read one row past the limit to reject oversized files without reading them
+                // entirely
+                while (csvRows.hasNextValue() && rentalImportRequests.size() <= maxImportedRentals) {
+                    rentalImportRequests.add(csvRows.nextValue());
+                }
+            } catch (IOException | RuntimeJsonMappingException e) {
+                GlobalExceptionHandler.handleLogicError("Malformed CSV", HttpStatus.BAD_REQUEST);
+            }
+
+            return importRentalsOwnedBy(rentalImportRequests, userIdFromToken);
+        } catch (ApiException ex) {
+            return GlobalExceptionHandler.handleApiException(ex);
         }
     }
 
@@ -174,8 +767,7 @@ public class RentalController {
      *                            Data
      * @param price               The new price of the rental in the Form Data
      * @param description         The new description of the rental in the Form Data
-     * @param authorizationHeader The authorization header containing the user's
-     *                            token
+     * @param authenticatedUser   The user authenticated by the JWT token.
      * @return ResponseEntity<ResponseMessage> with information about the rental
      *         update.
      */
@@ -193,10 +785,9 @@ public class RentalController {
             @RequestParam("surface") Integer surface,
             @RequestParam("price") BigDecimal price,
             @RequestParam("description") String description,
-            @RequestHeader("Authorization") String authorizationHeader) {
+            @AuthenticationPrincipal AuthenticatedUser authenticatedUser) {
         try {
-            Long userIdFromToken = getUserIdFromAuthorizationHeader(authorizationHeader);
-            verifyAndGetUserByTokenId(userIdFromToken);
+            Long userIdFromToken = authenticatedUser.id();
 
             Rental oldRental = verifyAndGetRentalById(id);
             checkUserIdMismatch(userIdFromToken, oldRental.getOwnerId());
@@ -216,60 +807,31 @@ public class RentalController {
     }
 
     /**
-     * Retrieves the user ID from the authorization header.
+     * Retrieves a rental by its ID.
      *
-     * @param authorizationHeader The authorization header containing the JWT token.
-     * @return The user ID extracted from the JWT token.
-     */
-    private Long getUserIdFromAuthorizationHeader(String authorizationHeader) {
-        String jwtToken = JwtUtil.extractJwtFromHeader(authorizationHeader);
-
-        // Extract user ID from JWT
-        Optional<Long> optionalUserIdFromToken = JwtUtil.extractUserId(jwtToken);
-
-        Boolean hasJwtExtractionError = optionalUserIdFromToken.isEmpty();
-        if (hasJwtExtractionError) {
-            GlobalExceptionHandler.handleLogicError("Unauthorized", HttpStatus.UNAUTHORIZED);
-        }
-
-        return optionalUserIdFromToken.get();
-    }
-
-    /**
-     * Retrieves the user information as a DTO entity based on the user ID extracted
-     * from the JWT
-     * token.
-     * 
-     * @param userIdFromToken The user ID extracted from the JWT token.
-     * @return The user information as a UserInfoResponse object.
-     * @throws ApiException If the user with the given ID does not exist or if there
-     *                      is a mismatch between the user ID and the token.
+     * @param rentalId The ID of the rental to retrieve.
+     * @return The rental with the given ID.
+     * @throws ApiException if the rental with the given ID does not exist.
      */
-    private UserInfoResponse verifyAndGetUserByTokenId(Long userIdFromToken) {
-        // Fetch user information based on the user ID
-        Optional<Users> optionalSpecificUser = userService.getUserById(userIdFromToken);
-        Boolean userWithIdDoesNotExist = optionalSpecificUser.isEmpty();
-        if (userWithIdDoesNotExist) {
+    private Rental verifyAndGetRentalById(Long rentalId) {
+        Optional<Rental> optionalRental = rentalService.getRental(rentalId);
+        Boolean rentalDoesNotExist = optionalRental.isEmpty();
+        if (rentalDoesNotExist) {
             GlobalExceptionHandler.handleLogicError("Not found",
                     HttpStatus.NOT_FOUND);
         }
-
-        Users user = optionalSpecificUser.get();
-        // Convert user information to DTO
-        UserInfoResponse userEntity = userMapper.toDtoUser(user);
-
-        return userEntity;
+        return optionalRental.get();
     }
 
     /**
-     * Retrieves a rental by its ID.
+     * Retrieves the response of a rental by its ID.
      *
      * @param rentalId The ID of the rental to retrieve.
-     * @return The rental with the given ID.
+     * @return The response of the rental with the given ID.
      * @throws ApiException if the rental with the given ID does not exist.
      */
-    private Rental verifyAndGetRentalById(Long rentalId) {
-        Optional<Rental> optionalRental = rentalService.getRental(rentalId);
+    private RentalSingleResponse verifyAndGetRentalResponseById(Long rentalId) {
+        Optional<RentalSingleResponse> optionalRental = rentalService.getRentalResponse(rentalId);
         Boolean rentalDoesNotExist = optionalRental.isEmpty();
         if (rentalDoesNotExist) {
             GlobalExceptionHandler.handleLogicError("Not found",
@@ -288,13 +850,94 @@ public class RentalController {
      * @param userIdFromRequest The user ID extracted from the request.
      */
     private void checkUserIdMismatch(Long userIdFromToken, Long userIdFromRequest) {
-        Boolean hasUserIdMismatch = userIdFromToken != userIdFromRequest;
+        Boolean hasUserIdMismatch = !Objects.equals(userIdFromToken, userIdFromRequest);
         if (hasUserIdMismatch) {
             GlobalExceptionHandler.handleLogicError("Forbidden",
                     HttpStatus.FORBIDDEN);
         }
     }
 
+    /**
+     * Validates the rentals of a bulk import and creates them for their owner.
+     *
+     * @param rentalImportRequests The rentals to import.
+     * @param ownerId              The ID of the authenticated user, owner of the
+     *                             rentals.
+     * @return ResponseEntity<RentalImportResponse> with the IDs of the created
+     *         rentals.
+     * @throws ApiException if there is no rental, too many rentals or an invalid
+     *                      one.
+     */
+    private ResponseEntity<RentalImportResponse> importRentalsOwnedBy(List<RentalImportRequest> rentalImportRequests,
+            Long ownerId) throws ApiException {
+        Boolean importSizeIsInvalid = rentalImportRequests.isEmpty()
+                || rentalImportRequests.size() > maxImportedRentals;
+        if (importSizeIsInvalid) {
+            GlobalExceptionHandler.handleLogicError(
+                    "An import must hold between 1 and " + maxImportedRentals + " rentals", HttpStatus.BAD_REQUEST);
+        }
+
+        // Every rental is checked before the first one is created
+        List<RentalUpdateRequest> rentalUpdateRequests = new ArrayList<>(rentalImportRequests.size());
+        for (int row = 0; row < rentalImportRequests.size(); row++) {
+            RentalImportRequest rentalImportRequest = rentalImportRequests.get(row);
+
+            Set<ConstraintViolation<RentalImportRequest>> violations = rentalImportRequest == null ? Set.of()
+                    : validator.validate(rentalImportRequest);
+            Boolean rentalIsInvalid = rentalImportRequest == null || !violations.isEmpty();
+            if (rentalIsInvalid) {
+                String violationMessage = violations.isEmpty() ? "The rental cannot be null"
+                        : violations.iterator().next().getMessage();
+                GlobalExceptionHandler.handleLogicError("Invalid rental at row " + (row + 1) + ": " + violationMessage,
+                        HttpStatus.BAD_REQUEST);
+            }
+
+            rentalUpdateRequests.add(new RentalUpdateRequest(rentalImportRequest.name(),
+                    rentalImportRequest.surface(), rentalImportRequest.price(), rentalImportRequest.description(),
+                    rentalImportRequest.picture(), ownerId));
+        }
+
+        List<Long> importedIds = rentalService.importRentals(rentalUpdateRequests);
+
+        RentalImportResponse rentalImportResponse = new RentalImportResponse(importedIds.size(), importedIds);
+        return ResponseEntity.status(HttpStatus.CREATED).body(rentalImportResponse);
+    }
+
+    /**
+     * Validates the page size requested by the client and caps it to the maximum
+     * page size.
+     *
+     * @param limit The page size requested by the client.
+     * @return The page size to use.
+     */
+    private Integer getPageSize(Integer limit) {
+        Boolean limitIsInvalid = limit < 1;
+        if (limitIsInvalid) {
+            GlobalExceptionHandler.handleLogicError("Bad request", HttpStatus.BAD_REQUEST);
+        }
+
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Decodes an opaque cursor sent by the client into its sort key values.
+     *
+     * @param cursor         The opaque cursor sent by the client.
+     * @param expectedValues The number of sort key values the cursor must hold.
+     * @return The sort key values of the last rental of the previous page.
+     * @throws ApiException if the cursor is malformed.
+     */
+    private String[] decodeCursorValues(String cursor, int expectedValues) {
+        Optional<String[]> optionalKeyset = CursorUtil.decodeCursor(cursor, expectedValues);
+
+        Boolean cursorIsInvalid = optionalKeyset.isEmpty();
+        if (cursorIsInvalid) {
+            GlobalExceptionHandler.handleLogicError("Bad request", HttpStatus.BAD_REQUEST);
+        }
+
+        return optionalKeyset.get();
+    }
+
     /**
      * Checks if a given file has an image content type.
      *
@@ -13,7 +13,6 @@ import com.openclassrooms.p3.mapper.UserMapper;
 import com.openclassrooms.p3.model.Users;
 import com.openclassrooms.p3.payload.response.UserInfoResponse;
 import com.openclassrooms.p3.service.UserService;
-import com.openclassrooms.p3.utils.JwtUtil;
 
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -52,11 +51,8 @@ public class UserController {
             @ApiResponse(description = "Unauthorized", responseCode = "401"),
             @ApiResponse(description = "User not found", responseCode = "404"),
     }, security = { @SecurityRequirement(name = "bearerAuth") })
-    public ResponseEntity<?> getUser(@PathVariable final Long id,
-            @RequestHeader("Authorization") String authorizationHeader) {
+    public ResponseEntity<?> getUser(@PathVariable final Long id) {
         try {
-            getUserIdFromAuthorizationHeader(authorizationHeader);
-
             UserInfoResponse userEntity = verifyAndGetUserByTokenId(id);
 
             return ResponseEntity.status(HttpStatus.OK).body(userEntity);
@@ -65,26 +61,6 @@ public class UserController {
         }
     }
 
-    /**
-     * Retrieves the user ID from the authorization header.
-     *
-     * @param authorizationHeader The authorization header containing the JWT token.
-     * @return The user ID extracted from the JWT token.
-     */
-    private Long getUserIdFromAuthorizationHeader(String authorizationHeader) {
-        String jwtToken = JwtUtil.extractJwtFromHeader(authorizationHeader);
-
-        // Extract user ID from JWT
-        Optional<Long> optionalUserIdFromToken = JwtUtil.extractUserId(jwtToken);
-
-        Boolean hasJwtExtractionError = optionalUserIdFromToken.isEmpty();
-        if (hasJwtExtractionError) {
-            GlobalExceptionHandler.handleLogicError("Not authorized", HttpStatus.UNAUTHORIZED);
-        }
-
-        return optionalUserIdFromToken.get();
-    }
-
     /**
      * Retrieves the user information as a DTO entity based on the user ID extracted
      * from the JWT
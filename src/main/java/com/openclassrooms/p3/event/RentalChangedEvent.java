@@ -0,0 +1,26 @@
+package com.openclassrooms.p3.event;
+
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+
+/**
+ * Event published by the RentalService whenever a rental is created, updated
+ * or deleted, so that the in-memory views of the catalog can be kept up to
+ * date.
+ *
+ * Listeners should use {@code @TransactionalEventListener(fallbackExecution =
+ * true)} so that they only see committed changes.
+ *
+ * @param rentalId The ID of the changed rental.
+ * @param rental   The new state of the rental, null if it was deleted.
+ */
+public record RentalChangedEvent(Long rentalId, RentalSingleResponse rental) {
+
+    /**
+     * Checks if the rental was deleted.
+     *
+     * @return True if the rental was deleted; false otherwise.
+     */
+    public boolean isDeletion() {
+        return rental == null;
+    }
+}
@@ -0,0 +1,204 @@
+package com.openclassrooms.p3.index;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.openclassrooms.p3.repository.UserRepository;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * In-memory Bloom filter of the registered emails, so that looking up an
+ * unknown email, as most credential-stuffing logins do, is answered without
+ * querying the database.
+ *
+ * The filter may tell that an unknown email is registered, the lookup then
+ * going to the database, but never the opposite: until it is filled with the
+ * emails of the database, when the application starts, every email is reported
+ * as possibly registered. Emails are added before their user is inserted and
+ * never removed, deleted users only adding false positives.
+ *
+ * Emails are compared regardless of case and accents, as the database
+ * collation does. It can be disabled with the "auth.email-filter.enabled"
+ * property.
+ */
+@Component
+@ConditionalOnProperty(name = "auth.email-filter.enabled", havingValue = "true", matchIfMissing = true)
+public class EmailBloomFilter {
+    private static final Logger logger = LoggerFactory.getLogger(EmailBloomFilter.class);
+
+    private static final Pattern DIACRITICS_PATTERN = Pattern.compile("\\p{M}+");
+
+    @Autowired
+    private UserRepository userRepository;
+
+    /**
+     * Number of emails the filter is sized for; beyond it, the false positive
+     * rate grows.
+     */
+    @Value("${auth.email-filter.expected-emails:1000000}")
+    private long expectedEmails;
+
+    @Value("${auth.email-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    /**
+     * Bits of the filter, 64 per word, set without locks.
+     */
+    private AtomicLongArray bits;
+
+    private long bitCount;
+
+    private int hashCount;
+
+    private final AtomicLong emailCount = new AtomicLong();
+
+    private volatile boolean isFilled;
+
+    /**
+     * Allocates the bits of the filter for the expected number of emails and
+     * false positive rate.
+     */
+    @PostConstruct
+    public void allocateFilter() {
+        Boolean settingsAreInvalid = expectedEmails < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1;
+        if (settingsAreInvalid) {
+            throw new IllegalArgumentException("The email filter needs a positive size and a rate between 0 and 1");
+        }
+
+        double ln2 = Math.log(2);
+        long wordCount = (long) Math.ceil(-expectedEmails * Math.log(falsePositiveRate) / (ln2 * ln2) / Long.SIZE);
+
+        bits = new AtomicLongArray(Math.toIntExact(wordCount));
+        bitCount = wordCount * Long.SIZE;
+        hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedEmails * ln2));
+    }
+
+    /**
+     * Fills the filter with the emails of the database once the application is
+     * started.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void fillFilter() {
+        long startTime = System.nanoTime();
+
+        try (Stream<String> emails = userRepository.streamAllEmails()) {
+            emails.forEach(this::put);
+        }
+        isFilled = true;
+
+        logger.info("Email filter filled with {} emails in {} ms ({} KiB, {} hashes)", emailCount.get(),
+                (System.nanoTime() - startTime) / 1_000_000, bitCount / 8 / 1024, hashCount);
+    }
+
+    /**
+     * Adds an email to the filter.
+     *
+     * @param email The email of a user.
+     */
+    public void put(String email) {
+        long hash = hash(email);
+        long step = stepHash(hash);
+
+        for (int i = 0; i < hashCount; i++) {
+            long bitIndex = Math.floorMod(hash + i * step, bitCount);
+            long mask = 1L << bitIndex;
+            bits.getAndAccumulate((int) (bitIndex >>> 6), mask, (word, bit) -> word | bit);
+        }
+
+        Boolean exceedsExpectedEmails = emailCount.incrementAndGet() == expectedEmails + 1;
+        if (exceedsExpectedEmails) {
+            logger.warn("More than {} emails in the email filter, raise auth.email-filter.expected-emails",
+                    expectedEmails);
+        }
+    }
+
+    /**
+     * Checks if an email may be registered.
+     *
+     * @param email The email to check.
+     * @return False if the email is certainly not registered; true otherwise.
+     */
+    public boolean mightContain(String email) {
+        if (!isFilled) {
+            return true;
+        }
+
+        long hash = hash(email);
+        long step = stepHash(hash);
+
+        for (int i = 0; i < hashCount; i++) {
+            long bitIndex = Math.floorMod(hash + i * step, bitCount);
+            long mask = 1L << bitIndex;
+            Boolean bitIsClear = (bits.get((int) (bitIndex >>> 6)) & mask) == 0;
+            if (bitIsClear) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Hashes an email, lower-cased and stripped of its accents, with FNV-1a then
+     * the MurmurHash3 finalizer.
+     *
+     * @param email The email.
+     * @return The 64-bit hash of the email.
+     */
+    private static long hash(String email) {
+        String normalizedEmail = DIACRITICS_PATTERN
+                .matcher(Normalizer.normalize(email, Normalizer.Form.NFD))
+                .replaceAll("")
+                .toLowerCase(Locale.ROOT);
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < normalizedEmail.length(); i++) {
+            hash ^= normalizedEmail.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return mix(hash);
+    }
+
+    /**
+     * Derives the odd step between the bits of an email from its hash, the bits
+     * being picked by double hashing.
+     *
+     * @param hash The hash of the email.
+     * @return The step.
+     */
+    private static long stepHash(long hash) {
+        return mix(hash ^ 0x9e3779b97f4a7c15L) | 1L;
+    }
+
+    /**
+     * Spreads the bits of a hash (MurmurHash3 64-bit finalizer).
+     *
+     * @param hash The hash.
+     * @return The mixed hash.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb53a185ec363L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
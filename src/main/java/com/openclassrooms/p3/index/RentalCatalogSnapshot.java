@@ -0,0 +1,464 @@
+package com.openclassrooms.p3.index;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import com.openclassrooms.p3.model.RentalCatalogStats;
+import com.openclassrooms.p3.model.RentalFilter;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+
+/**
+ * Immutable, column-oriented copy of the attributes of the catalog used by the
+ * filters and the aggregates: one primitive array per attribute instead of one
+ * object per rental, which takes a fraction of the heap of the entities and is
+ * scanned sequentially.
+ *
+ * Prices are stored in cents, creation dates in epoch microseconds (UTC) and
+ * owner IDs as codes of a dictionary of the distinct owners. Rows are ordered by
+ * creation date then ID, the listing order of the catalog.
+ */
+public final class RentalCatalogSnapshot {
+
+    /**
+     * Stored in place of a missing price.
+     */
+    static final long NO_PRICE = Long.MIN_VALUE;
+
+    /**
+     * Stored in place of a missing surface.
+     */
+    static final int NO_SURFACE = Integer.MIN_VALUE;
+
+    private static final RentalCatalogSnapshot EMPTY = new Builder(0, new long[0]).build();
+
+    private final int size;
+
+    private final long[] ids;
+
+    private final long[] priceCents;
+
+    private final int[] surfaces;
+
+    private final long[] createdAtMicros;
+
+    private final int[] ownerCodes;
+
+    /**
+     * Owner code -> owner ID.
+     */
+    private final long[] ownerIds;
+
+    private RentalCatalogSnapshot(int size, long[] ids, long[] priceCents, int[] surfaces, long[] createdAtMicros,
+            int[] ownerCodes, long[] ownerIds) {
+        this.size = size;
+        this.ids = ids;
+        this.priceCents = priceCents;
+        this.surfaces = surfaces;
+        this.createdAtMicros = createdAtMicros;
+        this.ownerCodes = ownerCodes;
+        this.ownerIds = ownerIds;
+    }
+
+    /**
+     * Gets the snapshot of an empty catalog.
+     *
+     * @return The empty snapshot.
+     */
+    public static RentalCatalogSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Builds the snapshot of a catalog.
+     *
+     * @param rentals The rentals of the catalog, in any order.
+     * @return The snapshot of the rentals.
+     */
+    public static RentalCatalogSnapshot of(Iterable<RentalSingleResponse> rentals) {
+        Builder builder = new Builder(1_024, new long[0]);
+        rentals.forEach(builder::addRental);
+
+        return builder.build();
+    }
+
+    /**
+     * Builds a new snapshot with a batch of changes applied, in a single pass over
+     * the rows of this one.
+     *
+     * @param changes Rental ID -> new version of the rental, or null if it was
+     *                deleted.
+     * @return The snapshot of the changed catalog.
+     */
+    public RentalCatalogSnapshot apply(Map<Long, RentalSingleResponse> changes) {
+        if (changes.isEmpty()) {
+            return this;
+        }
+
+        long[] changedIds = changes.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        List<RentalSingleResponse> upserts = changes.values().stream()
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingLong((RentalSingleResponse rental) -> toEpochMicro(rental.created_at()))
+                        .thenComparing(RentalSingleResponse::id))
+                .toList();
+
+        Builder builder = new Builder(size + upserts.size(), ownerIds);
+
+        int upsertIndex = 0;
+        for (int row = 0; row < size; row++) {
+            if (Arrays.binarySearch(changedIds, ids[row]) >= 0) {
+                continue;
+            }
+
+            while (upsertIndex < upserts.size() && compareToRow(upserts.get(upsertIndex), row) < 0) {
+                builder.addRental(upserts.get(upsertIndex++));
+            }
+            builder.addRow(this, row);
+        }
+        while (upsertIndex < upserts.size()) {
+            builder.addRental(upserts.get(upsertIndex++));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Finds the IDs of a page of rentals falling within the ranges of a filter,
+     * ordered by creation date then ID, starting right after the given keyset.
+     *
+     * @param filter    The price and surface ranges.
+     * @param createdAt The creation date of the last rental of the previous page,
+     *                  or null for the first page.
+     * @param id        The ID of the last rental of the previous page, or null for
+     *                  the first page.
+     * @param limit     The maximum number of rentals of the page.
+     * @return The IDs of the rentals of the page, in order.
+     */
+    public List<Long> findPage(RentalFilter filter, LocalDateTime createdAt, Long id, int limit) {
+        ColumnFilter columnFilter = ColumnFilter.of(filter);
+
+        int startRow = createdAt == null || id == null ? 0 : findRowAfter(toEpochMicro(createdAt), id);
+
+        List<Long> pageIds = new ArrayList<>(Math.min(limit, 256));
+        for (int row = startRow; row < size && pageIds.size() < limit; row++) {
+            if (columnFilter.matches(priceCents[row], surfaces[row])) {
+                pageIds.add(ids[row]);
+            }
+        }
+
+        return pageIds;
+    }
+
+    /**
+     * Computes the aggregates of the rentals falling within the ranges of a
+     * filter, in a single scan of the columns.
+     *
+     * @param filter The price and surface ranges.
+     * @return The aggregates of the matching rentals.
+     */
+    public RentalCatalogStats getStats(RentalFilter filter) {
+        ColumnFilter columnFilter = ColumnFilter.of(filter);
+
+        long count = 0;
+        long pricedCount = 0;
+        long minPrice = Long.MAX_VALUE;
+        long maxPrice = Long.MIN_VALUE;
+        long priceSum = 0;
+        long surfacedCount = 0;
+        int minSurface = Integer.MAX_VALUE;
+        int maxSurface = Integer.MIN_VALUE;
+        long surfaceSum = 0;
+        BitSet owners = new BitSet(ownerIds.length);
+
+        for (int row = 0; row < size; row++) {
+            long price = priceCents[row];
+            int surface = surfaces[row];
+            if (!columnFilter.matches(price, surface)) {
+                continue;
+            }
+
+            count++;
+            owners.set(ownerCodes[row]);
+
+            if (price != NO_PRICE) {
+                pricedCount++;
+                minPrice = Math.min(minPrice, price);
+                maxPrice = Math.max(maxPrice, price);
+                priceSum += price;
+            }
+            if (surface != NO_SURFACE) {
+                surfacedCount++;
+                minSurface = Math.min(minSurface, surface);
+                maxSurface = Math.max(maxSurface, surface);
+                surfaceSum += surface;
+            }
+        }
+
+        return new RentalCatalogStats(
+                count,
+                pricedCount == 0 ? null : BigDecimal.valueOf(minPrice, 2),
+                pricedCount == 0 ? null : BigDecimal.valueOf(maxPrice, 2),
+                pricedCount == 0 ? null : priceSum / 100.0 / pricedCount,
+                surfacedCount == 0 ? null : minSurface,
+                surfacedCount == 0 ? null : maxSurface,
+                surfacedCount == 0 ? null : (double) surfaceSum / surfacedCount,
+                (long) owners.cardinality());
+    }
+
+    /**
+     * Gets the number of rentals of the snapshot.
+     *
+     * @return The number of rentals.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the first row located after a keyset.
+     */
+    private int findRowAfter(long createdAtMicro, long id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = createdAtMicros[middle] != createdAtMicro
+                    ? Long.compare(createdAtMicros[middle], createdAtMicro)
+                    : Long.compare(ids[middle], id);
+            if (comparison <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Compares a rental to a row in the order of the rows.
+     */
+    private int compareToRow(RentalSingleResponse rental, int row) {
+        long createdAtMicro = toEpochMicro(rental.created_at());
+
+        return createdAtMicro != createdAtMicros[row] ? Long.compare(createdAtMicro, createdAtMicros[row])
+                : Long.compare(rental.id(), ids[row]);
+    }
+
+    /**
+     * Converts a date to epoch microseconds (UTC), the precision of the MySQL
+     * timestamps, so that the rows are in the (created_at, id) order of MySQL.
+     */
+    private static long toEpochMicro(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + dateTime.getNano() / 1_000;
+    }
+
+    /**
+     * Converts a price to cents, saturating out of range values.
+     */
+    private static long toCents(BigDecimal price, RoundingMode roundingMode) {
+        BigDecimal cents = price.movePointRight(2).setScale(0, roundingMode);
+        if (cents.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0) {
+            return Long.MAX_VALUE;
+        }
+        if (cents.compareTo(BigDecimal.valueOf(NO_PRICE + 1)) < 0) {
+            return NO_PRICE + 1;
+        }
+
+        return cents.longValue();
+    }
+
+    /**
+     * Ranges of a RentalFilter converted to the encoding of the columns. Unbounded
+     * ranges let missing values through, bounded ones do not.
+     */
+    private record ColumnFilter(long minPriceCents, long maxPriceCents, int minSurface, int maxSurface) {
+
+        static ColumnFilter of(RentalFilter filter) {
+            long minPriceCents = filter.hasPriceRange() ? NO_PRICE + 1 : NO_PRICE;
+            if (filter.minPrice() != null) {
+                minPriceCents = toCents(filter.minPrice(), RoundingMode.CEILING);
+            }
+            long maxPriceCents = filter.maxPrice() == null ? Long.MAX_VALUE
+                    : toCents(filter.maxPrice(), RoundingMode.FLOOR);
+
+            int minSurface = filter.hasSurfaceRange() ? NO_SURFACE + 1 : NO_SURFACE;
+            if (filter.minSurface() != null) {
+                minSurface = Math.max(filter.minSurface(), NO_SURFACE + 1);
+            }
+            int maxSurface = filter.maxSurface() == null ? Integer.MAX_VALUE : filter.maxSurface();
+
+            return new ColumnFilter(minPriceCents, maxPriceCents, minSurface, maxSurface);
+        }
+
+        boolean matches(long priceCents, int surface) {
+            return priceCents >= minPriceCents && priceCents <= maxPriceCents
+                    && surface >= minSurface && surface <= maxSurface;
+        }
+    }
+
+    /**
+     * Appends rows to growable columns, then sorts and trims them into a
+     * snapshot.
+     */
+    private static final class Builder {
+        private int size = 0;
+
+        private long[] ids;
+
+        private long[] priceCents;
+
+        private int[] surfaces;
+
+        private long[] createdAtMicros;
+
+        private int[] ownerCodes;
+
+        private long[] ownerIds;
+
+        private int ownerCount;
+
+        /**
+         * Owner ID -> owner code, only kept while building.
+         */
+        private final Map<Long, Integer> ownerCodesById = new HashMap<>();
+
+        Builder(int capacity, long[] ownerIds) {
+            int initialCapacity = Math.max(capacity, 16);
+            this.ids = new long[initialCapacity];
+            this.priceCents = new long[initialCapacity];
+            this.surfaces = new int[initialCapacity];
+            this.createdAtMicros = new long[initialCapacity];
+            this.ownerCodes = new int[initialCapacity];
+
+            // Existing codes are kept so that copied rows stay valid
+            this.ownerIds = Arrays.copyOf(ownerIds, Math.max(ownerIds.length, 16));
+            this.ownerCount = ownerIds.length;
+            for (int code = 0; code < ownerCount; code++) {
+                ownerCodesById.put(ownerIds[code], code);
+            }
+        }
+
+        void addRental(RentalSingleResponse rental) {
+            ensureCapacity();
+
+            ids[size] = rental.id();
+            priceCents[size] = rental.price() == null ? NO_PRICE : toCents(rental.price(), RoundingMode.HALF_UP);
+            surfaces[size] = rental.surface() == null ? NO_SURFACE : rental.surface();
+            createdAtMicros[size] = toEpochMicro(rental.created_at());
+            ownerCodes[size] = getOwnerCode(rental.owner_id());
+            size++;
+        }
+
+        void addRow(RentalCatalogSnapshot snapshot, int row) {
+            ensureCapacity();
+
+            ids[size] = snapshot.ids[row];
+            priceCents[size] = snapshot.priceCents[row];
+            surfaces[size] = snapshot.surfaces[row];
+            createdAtMicros[size] = snapshot.createdAtMicros[row];
+            ownerCodes[size] = snapshot.ownerCodes[row];
+            size++;
+        }
+
+        RentalCatalogSnapshot build() {
+            if (!isSorted()) {
+                sort();
+            }
+
+            return new RentalCatalogSnapshot(size,
+                    Arrays.copyOf(ids, size),
+                    Arrays.copyOf(priceCents, size),
+                    Arrays.copyOf(surfaces, size),
+                    Arrays.copyOf(createdAtMicros, size),
+                    Arrays.copyOf(ownerCodes, size),
+                    Arrays.copyOf(ownerIds, ownerCount));
+        }
+
+        private int getOwnerCode(Long ownerId) {
+            return ownerCodesById.computeIfAbsent(ownerId, key -> {
+                if (ownerCount == ownerIds.length) {
+                    ownerIds = Arrays.copyOf(ownerIds, ownerCount * 2);
+                }
+                ownerIds[ownerCount] = key;
+
+                return ownerCount++;
+            });
+        }
+
+        private void ensureCapacity() {
+            if (size < ids.length) {
+                return;
+            }
+
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            priceCents = Arrays.copyOf(priceCents, capacity);
+            surfaces = Arrays.copyOf(surfaces, capacity);
+            createdAtMicros = Arrays.copyOf(createdAtMicros, capacity);
+            ownerCodes = Arrays.copyOf(ownerCodes, capacity);
+        }
+
+        private int compareRows(int firstRow, int secondRow) {
+            return createdAtMicros[firstRow] != createdAtMicros[secondRow]
+                    ? Long.compare(createdAtMicros[firstRow], createdAtMicros[secondRow])
+                    : Long.compare(ids[firstRow], ids[secondRow]);
+        }
+
+        private boolean isSorted() {
+            for (int row = 1; row < size; row++) {
+                if (compareRows(row - 1, row) > 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Reorders every column by creation date then ID. Only needed when the rows
+         * were not added in order, which the builds from the database and the merges
+         * avoid.
+         */
+        private void sort() {
+            int[] order = IntStream.range(0, size).boxed()
+                    .sorted(this::compareRows)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+
+            ids = reorder(ids, order);
+            priceCents = reorder(priceCents, order);
+            createdAtMicros = reorder(createdAtMicros, order);
+            surfaces = reorder(surfaces, order);
+            ownerCodes = reorder(ownerCodes, order);
+        }
+
+        private static long[] reorder(long[] column, int[] order) {
+            long[] reordered = new long[order.length];
+            for (int row = 0; row < order.length; row++) {
+                reordered[row] = column[order[row]];
+            }
+
+            return reordered;
+        }
+
+        private static int[] reorder(int[] column, int[] order) {
+            int[] reordered = new int[order.length];
+            for (int row = 0; row < order.length; row++) {
+                reordered[row] = column[order[row]];
+            }
+
+            return reordered;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.openclassrooms.p3.index;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.openclassrooms.p3.event.RentalChangedEvent;
+import com.openclassrooms.p3.model.RentalFilter;
+import com.openclassrooms.p3.model.RentalSort;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+import com.openclassrooms.p3.repository.RentalRepository;
+
+/**
+ * Holds the columnar snapshot of the catalog used to answer the filtered
+ * listings ordered by creation date, the counts and the aggregates without
+ * querying the database.
+ *
+ * The snapshot is built when the application starts. The changes published by
+ * the RentalService are then queued and merged into a new snapshot, in a single
+ * pass, the next time the snapshot is read. It can be disabled with the
+ * "rentals.columnar-catalog.enabled" property, the queries are then answered by
+ * the database.
+ */
+@Component
+@ConditionalOnProperty(name = "rentals.columnar-catalog.enabled", havingValue = "true", matchIfMissing = true)
+public class RentalColumnarCatalog {
+    private static final Logger logger = LoggerFactory.getLogger(RentalColumnarCatalog.class);
+
+    private volatile RentalCatalogSnapshot snapshot = RentalCatalogSnapshot.empty();
+
+    /**
+     * Rental ID -> latest version of the rental, or null if it was deleted. Guarded
+     * by this.
+     */
+    private final Map<Long, RentalSingleResponse> pendingChanges = new HashMap<>();
+
+    private volatile boolean hasPendingChanges = false;
+
+    private volatile boolean isBuilt = false;
+
+    @Autowired
+    private RentalRepository rentalRepository;
+
+    /**
+     * Builds the snapshot from the whole catalog once the application is started.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void buildSnapshot() {
+        long startTime = System.nanoTime();
+
+        RentalCatalogSnapshot builtSnapshot;
+        try (Stream<RentalSingleResponse> rentals = rentalRepository.streamAll()) {
+            builtSnapshot = RentalCatalogSnapshot.of(rentals::iterator);
+        }
+
+        synchronized (this) {
+            // The changes committed during the build are at least as recent as the rows
+            // it read
+            snapshot = builtSnapshot.apply(pendingChanges);
+            pendingChanges.clear();
+            hasPendingChanges = false;
+            isBuilt = true;
+        }
+
+        logger.info("Rental columnar catalog built with {} rentals in {} ms", snapshot.size(),
+                (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    /**
+     * Queues the committed changes of the catalog, to be merged into the snapshot
+     * when it is next read.
+     *
+     * @param event The change made to a rental.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onRentalChanged(RentalChangedEvent event) {
+        pendingChanges.put(event.rentalId(), event.rental());
+        hasPendingChanges = true;
+    }
+
+    /**
+     * Checks if a listing can be answered by the snapshot: it must be built, and
+     * the rentals filtered and ordered by creation date.
+     *
+     * @param filter The price and surface ranges.
+     * @param sort   The order of the rentals.
+     * @return true if the snapshot can be used.
+     */
+    public boolean canAnswer(RentalFilter filter, RentalSort sort) {
+        return isBuilt && sort == RentalSort.CREATED_AT && !filter.isEmpty();
+    }
+
+    /**
+     * Checks if the snapshot has been built.
+     *
+     * @return true if the snapshot holds the whole catalog.
+     */
+    public boolean isBuilt() {
+        return isBuilt;
+    }
+
+    /**
+     * Gets the snapshot of the catalog, merging the queued changes first.
+     *
+     * @return The up to date snapshot.
+     */
+    public RentalCatalogSnapshot getSnapshot() {
+        if (hasPendingChanges) {
+            synchronized (this) {
+                if (hasPendingChanges && isBuilt) {
+                    snapshot = snapshot.apply(pendingChanges);
+                    pendingChanges.clear();
+                    hasPendingChanges = false;
+                }
+            }
+        }
+
+        return snapshot;
+    }
+}
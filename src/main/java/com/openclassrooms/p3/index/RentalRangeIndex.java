@@ -0,0 +1,438 @@
+package com.openclassrooms.p3.index;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.openclassrooms.p3.event.RentalChangedEvent;
+import com.openclassrooms.p3.model.RentalFilter;
+import com.openclassrooms.p3.model.RentalSort;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+import com.openclassrooms.p3.repository.RentalRepository;
+
+/**
+ * In-memory sorted indexes on the price and the surface of the rentals, used to
+ * filter and sort the catalog without querying the database. Only the IDs of
+ * the page are returned, the rentals themselves are read by primary key.
+ *
+ * The indexes are built when the application starts and kept up to date with
+ * the changes published by the RentalService. Rentals without a price or a
+ * surface are kept apart by ID and listed after the other ones when sorting on
+ * that attribute. They can be disabled with the
+ * "rentals.range-index.enabled" property, the filters are then answered by the
+ * database.
+ */
+@Component
+@ConditionalOnProperty(name = "rentals.range-index.enabled", havingValue = "true", matchIfMissing = true)
+public class RentalRangeIndex {
+    private static final Logger logger = LoggerFactory.getLogger(RentalRangeIndex.class);
+
+    private static final Comparator<RentalRangeEntry> PRICE_ORDER = Comparator
+            .comparing(RentalRangeEntry::price)
+            .thenComparing(RentalRangeEntry::id);
+
+    private static final Comparator<RentalRangeEntry> SURFACE_ORDER = Comparator
+            .comparing(RentalRangeEntry::surface)
+            .thenComparing(RentalRangeEntry::id);
+
+    private static final Comparator<RentalRangeEntry> CREATED_AT_ORDER = Comparator
+            .comparing(RentalRangeEntry::createdAt)
+            .thenComparing(RentalRangeEntry::id);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Long, RentalRangeEntry> entries = new HashMap<>();
+
+    private final NavigableSet<RentalRangeEntry> entriesByPrice = new TreeSet<>(PRICE_ORDER);
+
+    private final NavigableSet<RentalRangeEntry> entriesBySurface = new TreeSet<>(SURFACE_ORDER);
+
+    private final NavigableSet<Long> idsWithoutPrice = new TreeSet<>();
+
+    private final NavigableSet<Long> idsWithoutSurface = new TreeSet<>();
+
+    /**
+     * IDs of the rentals deleted while the index is being built, so that the
+     * build does not add them back.
+     */
+    private final Set<Long> deletedDuringBuild = new HashSet<>();
+
+    private volatile boolean isBuilt = false;
+
+    @Autowired
+    private RentalRepository rentalRepository;
+
+    /**
+     * The indexed attributes of a rental.
+     *
+     * @param id        The ID of the rental.
+     * @param price     The price of the rental, may be null.
+     * @param surface   The surface of the rental, may be null.
+     * @param createdAt The creation date of the rental.
+     * @param updatedAt The update date of the rental, used to discard outdated
+     *                  versions.
+     */
+    record RentalRangeEntry(Long id, BigDecimal price, Integer surface, LocalDateTime createdAt,
+            LocalDateTime updatedAt) {
+
+        static RentalRangeEntry of(RentalSingleResponse rental) {
+            return new RentalRangeEntry(rental.id(), rental.price(), rental.surface(), rental.created_at(),
+                    rental.updated_at());
+        }
+    }
+
+    /**
+     * Builds the indexes from the whole catalog once the application is started.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void buildIndex() {
+        long startTime = System.nanoTime();
+
+        try (Stream<RentalSingleResponse> rentals = rentalRepository.streamAll()) {
+            rentals.forEach(rental -> indexRental(rental, true));
+        }
+
+        lock.writeLock().lock();
+        try {
+            deletedDuringBuild.clear();
+            isBuilt = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        logger.info("Rental range index built with {} rentals in {} ms", size(),
+                (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    /**
+     * Keeps the indexes up to date with the committed changes of the catalog.
+     *
+     * @param event The change made to a rental.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRentalChanged(RentalChangedEvent event) {
+        if (event.isDeletion()) {
+            removeRental(event.rentalId());
+        } else {
+            indexRental(event.rental(), false);
+        }
+    }
+
+    /**
+     * Checks if a listing can be answered by the indexes: they must be built, and
+     * the rentals either sorted by price or surface, or filtered on one of them.
+     *
+     * @param filter The price and surface ranges.
+     * @param sort   The order of the rentals.
+     * @return true if {@link #findPage} can be used.
+     */
+    public boolean canAnswer(RentalFilter filter, RentalSort sort) {
+        return isBuilt && (sort != RentalSort.CREATED_AT || !filter.isEmpty());
+    }
+
+    /**
+     * Finds the IDs of a page of rentals falling within the ranges of a filter,
+     * in the given order, starting right after the given keyset.
+     *
+     * @param filter    The price and surface ranges.
+     * @param sort      The order of the rentals.
+     * @param sortValue The sorted value of the last rental of the previous page,
+     *                  null for the first page or if that rental has none.
+     * @param id        The ID of the last rental of the previous page, or null for
+     *                  the first page.
+     * @param limit     The maximum number of rentals of the page.
+     * @return The IDs of the rentals of the page, in order.
+     */
+    public List<Long> findPage(RentalFilter filter, RentalSort sort, Comparable<?> sortValue, Long id, int limit) {
+        lock.readLock().lock();
+        try {
+            return switch (sort) {
+                case PRICE, PRICE_DESC, SURFACE, SURFACE_DESC -> scanSortedEntries(filter, sort, sortValue, id, limit);
+                case CREATED_AT -> sortRangeEntries(filter, (LocalDateTime) sortValue, id, limit);
+            };
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a rental to the indexes, or replaces it if it is already indexed.
+     *
+     * @param rental The rental to index.
+     */
+    public void indexRental(RentalSingleResponse rental) {
+        indexRental(rental, false);
+    }
+
+    /**
+     * Removes a rental from the indexes.
+     *
+     * @param rentalId The ID of the rental to remove.
+     */
+    public void removeRental(Long rentalId) {
+        lock.writeLock().lock();
+        try {
+            removeRentalUnlocked(rentalId);
+            if (!isBuilt) {
+                deletedDuringBuild.add(rentalId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of indexed rentals.
+     *
+     * @return The number of indexed rentals.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds or replaces a rental, unless the index already holds a more recent
+     * version of it when building.
+     *
+     * @param rental     The rental to index.
+     * @param isBuilding true if the rental is read by the initial build.
+     */
+    private void indexRental(RentalSingleResponse rental, boolean isBuilding) {
+        RentalRangeEntry entry = RentalRangeEntry.of(rental);
+
+        lock.writeLock().lock();
+        try {
+            if (isBuilding) {
+                RentalRangeEntry indexedEntry = entries.get(entry.id());
+                Boolean isOutdated = deletedDuringBuild.contains(entry.id())
+                        || (indexedEntry != null && indexedEntry.updatedAt().isAfter(entry.updatedAt()));
+                if (isOutdated) {
+                    return;
+                }
+            }
+
+            removeRentalUnlocked(entry.id());
+
+            entries.put(entry.id(), entry);
+            if (entry.price() != null) {
+                entriesByPrice.add(entry);
+            } else {
+                idsWithoutPrice.add(entry.id());
+            }
+            if (entry.surface() != null) {
+                entriesBySurface.add(entry);
+            } else {
+                idsWithoutSurface.add(entry.id());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a rental from the indexes, the write lock must be held.
+     *
+     * @param rentalId The ID of the rental to remove.
+     */
+    private void removeRentalUnlocked(Long rentalId) {
+        RentalRangeEntry entry = entries.remove(rentalId);
+        if (entry == null) {
+            return;
+        }
+
+        if (entry.price() != null) {
+            entriesByPrice.remove(entry);
+        } else {
+            idsWithoutPrice.remove(rentalId);
+        }
+        if (entry.surface() != null) {
+            entriesBySurface.remove(entry);
+        } else {
+            idsWithoutSurface.remove(rentalId);
+        }
+    }
+
+    /**
+     * Lists the rentals having a value for the sorted attribute, then the rentals
+     * without one, by ID. The read lock must be held.
+     */
+    private List<Long> scanSortedEntries(RentalFilter filter, RentalSort sort, Comparable<?> sortValue, Long id,
+            int limit) {
+        List<Long> pageIds = new ArrayList<>(limit);
+
+        Boolean isKeysetWithoutSortValue = id != null && sortValue == null;
+        if (!isKeysetWithoutSortValue) {
+            scanEntriesWithSortValue(filter, sort, sortValue, id, limit, pageIds);
+        }
+
+        Boolean mayListRentalsWithoutSortValue = pageIds.size() < limit && !sort.isBoundedBy(filter);
+        if (mayListRentalsWithoutSortValue) {
+            boolean isSortedByPrice = sort == RentalSort.PRICE || sort == RentalSort.PRICE_DESC;
+            NavigableSet<Long> idsWithoutSortValue = isSortedByPrice ? idsWithoutPrice : idsWithoutSurface;
+            if (sort.isDescending()) {
+                idsWithoutSortValue = idsWithoutSortValue.descendingSet();
+            }
+            if (isKeysetWithoutSortValue) {
+                idsWithoutSortValue = idsWithoutSortValue.tailSet(id, false);
+            }
+
+            for (Long rentalId : idsWithoutSortValue) {
+                if (pageIds.size() >= limit) {
+                    break;
+                }
+                RentalRangeEntry entry = entries.get(rentalId);
+                if (filter.matches(entry.price(), entry.surface())) {
+                    pageIds.add(rentalId);
+                }
+            }
+        }
+
+        return pageIds;
+    }
+
+    /**
+     * Walks the index of the sorted attribute from the keyset, or from the bound
+     * of the range if it comes later, until the page is full or the other bound
+     * of the range is passed. The read lock must be held.
+     */
+    private void scanEntriesWithSortValue(RentalFilter filter, RentalSort sort, Comparable<?> sortValue, Long id,
+            int limit, List<Long> pageIds) {
+        boolean isSortedByPrice = sort == RentalSort.PRICE || sort == RentalSort.PRICE_DESC;
+        NavigableSet<RentalRangeEntry> sortedEntries = isSortedByPrice ? entriesByPrice : entriesBySurface;
+        if (sort.isDescending()) {
+            sortedEntries = sortedEntries.descendingSet();
+        }
+
+        // Entries standing just before the first entry of the range, in the order of
+        // the sort
+        RentalRangeEntry rangeStart = null;
+        Long rangeStartId = sort.isDescending() ? Long.MAX_VALUE : Long.MIN_VALUE;
+        if (isSortedByPrice) {
+            BigDecimal startPrice = sort.isDescending() ? filter.maxPrice() : filter.minPrice();
+            rangeStart = startPrice == null ? null : new RentalRangeEntry(rangeStartId, startPrice, null, null, null);
+        } else {
+            Integer startSurface = sort.isDescending() ? filter.maxSurface() : filter.minSurface();
+            rangeStart = startSurface == null ? null
+                    : new RentalRangeEntry(rangeStartId, null, startSurface, null, null);
+        }
+
+        RentalRangeEntry keyset = null;
+        if (sortValue != null && id != null) {
+            keyset = isSortedByPrice ? new RentalRangeEntry(id, (BigDecimal) sortValue, null, null, null)
+                    : new RentalRangeEntry(id, null, (Integer) sortValue, null, null);
+        }
+
+        Iterable<RentalRangeEntry> candidates = sortedEntries;
+        Boolean isKeysetAfterRangeStart = keyset != null
+                && (rangeStart == null || sortedEntries.comparator().compare(keyset, rangeStart) > 0);
+        if (isKeysetAfterRangeStart) {
+            candidates = sortedEntries.tailSet(keyset, false);
+        } else if (rangeStart != null) {
+            candidates = sortedEntries.tailSet(rangeStart, false);
+        }
+
+        for (RentalRangeEntry entry : candidates) {
+            if (pageIds.size() >= limit || isPastRangeEnd(filter, sort, entry)) {
+                break;
+            }
+            if (filter.matches(entry.price(), entry.surface())) {
+                pageIds.add(entry.id());
+            }
+        }
+    }
+
+    /**
+     * Checks if an entry stands after the last entry of the range of the sorted
+     * attribute.
+     */
+    private static boolean isPastRangeEnd(RentalFilter filter, RentalSort sort, RentalRangeEntry entry) {
+        return switch (sort) {
+            case PRICE -> filter.maxPrice() != null && entry.price().compareTo(filter.maxPrice()) > 0;
+            case PRICE_DESC -> filter.minPrice() != null && entry.price().compareTo(filter.minPrice()) < 0;
+            case SURFACE -> filter.maxSurface() != null && entry.surface() > filter.maxSurface();
+            case SURFACE_DESC -> filter.minSurface() != null && entry.surface() < filter.minSurface();
+            case CREATED_AT -> false;
+        };
+    }
+
+    /**
+     * Collects the entries of the price range, or of the surface range if the
+     * price is not bounded, and sorts the matching ones by creation date. The
+     * read lock must be held.
+     */
+    private List<Long> sortRangeEntries(RentalFilter filter, LocalDateTime createdAt, Long id, int limit) {
+        NavigableSet<RentalRangeEntry> rangeEntries;
+        if (filter.hasPriceRange()) {
+            rangeEntries = subSet(entriesByPrice,
+                    filter.minPrice() == null ? null
+                            : new RentalRangeEntry(Long.MIN_VALUE, filter.minPrice(), null, null, null),
+                    filter.maxPrice() == null ? null
+                            : new RentalRangeEntry(Long.MAX_VALUE, filter.maxPrice(), null, null, null));
+        } else {
+            rangeEntries = subSet(entriesBySurface,
+                    filter.minSurface() == null ? null
+                            : new RentalRangeEntry(Long.MIN_VALUE, null, filter.minSurface(), null, null),
+                    filter.maxSurface() == null ? null
+                            : new RentalRangeEntry(Long.MAX_VALUE, null, filter.maxSurface(), null, null));
+        }
+
+        RentalRangeEntry keyset = createdAt == null || id == null ? null
+                : new RentalRangeEntry(id, null, null, createdAt, null);
+
+        return rangeEntries.stream()
+                .filter(entry -> filter.matches(entry.price(), entry.surface()))
+                .filter(entry -> keyset == null || CREATED_AT_ORDER.compare(entry, keyset) > 0)
+                .sorted(CREATED_AT_ORDER)
+                .limit(limit)
+                .map(RentalRangeEntry::id)
+                .toList();
+    }
+
+    /**
+     * Gets the entries between two optional bounds, both excluded.
+     */
+    private static NavigableSet<RentalRangeEntry> subSet(NavigableSet<RentalRangeEntry> sortedEntries,
+            RentalRangeEntry lowerBound, RentalRangeEntry upperBound) {
+        if (lowerBound != null && upperBound != null) {
+            Boolean isEmptyRange = sortedEntries.comparator().compare(lowerBound, upperBound) > 0;
+
+            return isEmptyRange ? new TreeSet<>(sortedEntries.comparator())
+                    : sortedEntries.subSet(lowerBound, false, upperBound, false);
+        }
+        if (lowerBound != null) {
+            return sortedEntries.tailSet(lowerBound, false);
+        }
+        if (upperBound != null) {
+            return sortedEntries.headSet(upperBound, false);
+        }
+
+        return sortedEntries;
+    }
+}
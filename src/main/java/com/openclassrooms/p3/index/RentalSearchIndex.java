@@ -0,0 +1,310 @@
+package com.openclassrooms.p3.index;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.openclassrooms.p3.event.RentalChangedEvent;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+import com.openclassrooms.p3.service.RentalService;
+
+/**
+ * In-memory inverted index over the name and the description of the rentals,
+ * used to answer full-text searches without reading the catalog.
+ *
+ * The index is built when the application starts and kept up to date with the
+ * changes published by the RentalService. Results are ranked with BM25, the
+ * terms of the name weighing more than the terms of the description.
+ */
+@Component
+public class RentalSearchIndex {
+    private static final Logger logger = LoggerFactory.getLogger(RentalSearchIndex.class);
+
+    /**
+     * BM25 term frequency saturation.
+     */
+    private static final double K1 = 1.2;
+
+    /**
+     * BM25 document length normalization.
+     */
+    private static final double B = 0.75;
+
+    /**
+     * Number of times each term of the name is counted, compared to the terms of
+     * the description.
+     */
+    private static final int NAME_WEIGHT = 2;
+
+    /**
+     * Terms shorter than this are not indexed.
+     */
+    private static final int MIN_TERM_LENGTH = 2;
+
+    private static final Pattern DIACRITICS_PATTERN = Pattern.compile("\\p{M}+");
+
+    private static final Pattern TERM_SEPARATOR_PATTERN = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Term -> (rental ID -> weighted term frequency).
+     */
+    private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+
+    /**
+     * Rental ID -> distinct terms of the rental, used to remove it from the
+     * postings.
+     */
+    private final Map<Long, String[]> documentTerms = new HashMap<>();
+
+    /**
+     * Rental ID -> weighted number of terms of the rental.
+     */
+    private final Map<Long, Integer> documentLengths = new HashMap<>();
+
+    private long totalDocumentLength = 0;
+
+    @Autowired
+    private RentalService rentalService;
+
+    /**
+     * Page of ranked search results.
+     *
+     * @param rentalIds The IDs of the rentals of the page, best match first.
+     * @param total     The total number of rentals matching the query.
+     */
+    public record SearchResult(List<Long> rentalIds, int total) {
+    }
+
+    /**
+     * Builds the index from the whole catalog once the application is started.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIndex() {
+        long startTime = System.nanoTime();
+
+        rentalService.streamRentals(this::indexRental);
+
+        logger.info("Rental search index built with {} rentals in {} ms", size(),
+                (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    /**
+     * Keeps the index up to date with the committed changes of the catalog.
+     *
+     * @param event The change made to a rental.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRentalChanged(RentalChangedEvent event) {
+        if (event.isDeletion()) {
+            removeRental(event.rentalId());
+        } else {
+            indexRental(event.rental());
+        }
+    }
+
+    /**
+     * Adds a rental to the index, or replaces it if it is already indexed.
+     *
+     * @param rental The rental to index.
+     */
+    public void indexRental(RentalSingleResponse rental) {
+        Map<String, Integer> termFrequencies = new HashMap<>();
+        for (String term : tokenize(rental.name())) {
+            termFrequencies.merge(term, NAME_WEIGHT, Integer::sum);
+        }
+        for (String term : tokenize(rental.description())) {
+            termFrequencies.merge(term, 1, Integer::sum);
+        }
+
+        int documentLength = termFrequencies.values().stream().mapToInt(Integer::intValue).sum();
+
+        lock.writeLock().lock();
+        try {
+            removeRentalUnlocked(rental.id());
+
+            termFrequencies.forEach((term, frequency) -> postings
+                    .computeIfAbsent(term, key -> new HashMap<>())
+                    .put(rental.id(), frequency));
+
+            documentTerms.put(rental.id(), termFrequencies.keySet().toArray(String[]::new));
+            documentLengths.put(rental.id(), documentLength);
+            totalDocumentLength += documentLength;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a rental from the index.
+     *
+     * @param rentalId The ID of the rental to remove.
+     */
+    public void removeRental(Long rentalId) {
+        lock.writeLock().lock();
+        try {
+            removeRentalUnlocked(rentalId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Searches the rentals matching any term of the query, best match first.
+     *
+     * @param query  The full-text query.
+     * @param offset The number of results to skip.
+     * @param limit  The maximum number of results to return.
+     * @return The page of ranked results.
+     */
+    public SearchResult search(String query, int offset, int limit) {
+        List<String> queryTerms = tokenize(query).stream().distinct().toList();
+
+        Map<Long, Double> scores = new HashMap<>();
+
+        lock.readLock().lock();
+        try {
+            int documentCount = documentLengths.size();
+            if (documentCount == 0) {
+                return new SearchResult(List.of(), 0);
+            }
+            double averageDocumentLength = (double) totalDocumentLength / documentCount;
+
+            for (String term : queryTerms) {
+                Map<Long, Integer> termPostings = postings.get(term);
+                if (termPostings == null) {
+                    continue;
+                }
+
+                double inverseDocumentFrequency = Math.log(
+                        1 + (documentCount - termPostings.size() + 0.5) / (termPostings.size() + 0.5));
+
+                termPostings.forEach((rentalId, frequency) -> {
+                    double lengthNormalization = K1
+                            * (1 - B + B * documentLengths.get(rentalId) / averageDocumentLength);
+                    double termScore = inverseDocumentFrequency * frequency * (K1 + 1)
+                            / (frequency + lengthNormalization);
+
+                    scores.merge(rentalId, termScore, Double::sum);
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return new SearchResult(getTopRentalIds(scores, offset, limit), scores.size());
+    }
+
+    /**
+     * Gets the number of indexed rentals.
+     *
+     * @return The number of indexed rentals.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentLengths.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits a text into normalized terms: lower case, without accents nor
+     * punctuation.
+     *
+     * @param text The text to split, may be null.
+     * @return The terms of the text.
+     */
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+
+        String normalizedText = DIACRITICS_PATTERN
+                .matcher(Normalizer.normalize(text, Normalizer.Form.NFD))
+                .replaceAll("")
+                .toLowerCase(Locale.ROOT);
+
+        for (String term : TERM_SEPARATOR_PATTERN.split(normalizedText)) {
+            if (term.length() >= MIN_TERM_LENGTH) {
+                terms.add(term);
+            }
+        }
+
+        return terms;
+    }
+
+    /**
+     * Removes a rental from the postings, the write lock must be held.
+     *
+     * @param rentalId The ID of the rental to remove.
+     */
+    private void removeRentalUnlocked(Long rentalId) {
+        String[] terms = documentTerms.remove(rentalId);
+        if (terms == null) {
+            return;
+        }
+
+        for (String term : terms) {
+            Map<Long, Integer> termPostings = postings.get(term);
+            termPostings.remove(rentalId);
+            if (termPostings.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+
+        totalDocumentLength -= documentLengths.remove(rentalId);
+    }
+
+    /**
+     * Selects the page of best scored rentals, without sorting every match.
+     *
+     * @param scores The score of every matching rental.
+     * @param offset The number of results to skip.
+     * @param limit  The maximum number of results to return.
+     * @return The IDs of the rentals of the page, best match first.
+     */
+    private static List<Long> getTopRentalIds(Map<Long, Double> scores, int offset, int limit) {
+        if (offset >= scores.size()) {
+            return List.of();
+        }
+        int topSize = offset + Math.min(limit, scores.size() - offset);
+
+        // Best match first, ties broken by ID so that pages are stable
+        Comparator<Map.Entry<Long, Double>> ranking = Map.Entry.<Long, Double>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey());
+
+        // Min-heap on the ranking holding the best results seen so far
+        PriorityQueue<Map.Entry<Long, Double>> topResults = new PriorityQueue<>(topSize + 1, ranking.reversed());
+        for (Map.Entry<Long, Double> score : scores.entrySet()) {
+            topResults.offer(score);
+            if (topResults.size() > topSize) {
+                topResults.poll();
+            }
+        }
+
+        List<Map.Entry<Long, Double>> sortedResults = new ArrayList<>(topResults);
+        sortedResults.sort(ranking);
+
+        return sortedResults.subList(offset, sortedResults.size()).stream().map(Map.Entry::getKey).toList();
+    }
+}
@@ -5,8 +5,14 @@ import org.mapstruct.Mapping;
 import org.mapstruct.Mappings;
 
 import com.openclassrooms.p3.model.Rental;
+import com.openclassrooms.p3.model.RentalCatalogStats;
+import com.openclassrooms.p3.model.RentalTombstone;
 import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+import com.openclassrooms.p3.payload.response.RentalStatsResponse;
+import com.openclassrooms.p3.payload.response.RentalTombstoneResponse;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -52,6 +58,53 @@ public interface RentalMapper {
     })
     List<RentalSingleResponse> toDtoRentalsList(List<Rental> rentals);
 
+    /**
+     * Converts a RentalTombstone object to a RentalTombstoneResponse object.
+     *
+     * @param tombstone The RentalTombstone object to be converted.
+     * @return The converted RentalTombstoneResponse object.
+     */
+    @Mappings({
+            @Mapping(target = "id", source = "rentalId"),
+            @Mapping(target = "deleted_at", source = "deletedAt")
+    })
+    RentalTombstoneResponse toDtoTombstone(RentalTombstone tombstone);
+
+    /**
+     * Converts a list of RentalTombstone objects to a list of
+     * RentalTombstoneResponse objects.
+     *
+     * @param tombstones The list of RentalTombstone objects to be converted.
+     * @return The converted list of RentalTombstoneResponse objects.
+     */
+    List<RentalTombstoneResponse> toDtoTombstones(List<RentalTombstone> tombstones);
+
+    /**
+     * Converts a RentalCatalogStats object to a RentalStatsResponse object.
+     *
+     * @param stats The RentalCatalogStats object to be converted.
+     * @return The converted RentalStatsResponse object.
+     */
+    @Mappings({
+            @Mapping(target = "min_price", source = "minPrice"),
+            @Mapping(target = "max_price", source = "maxPrice"),
+            @Mapping(target = "average_price", expression = "java(toPrice(stats.averagePrice()))"),
+            @Mapping(target = "min_surface", source = "minSurface"),
+            @Mapping(target = "max_surface", source = "maxSurface"),
+            @Mapping(target = "average_surface", source = "averageSurface")
+    })
+    RentalStatsResponse toDtoStats(RentalCatalogStats stats);
+
+    /**
+     * Rounds an average price to the cent.
+     *
+     * @param price The average price, may be null.
+     * @return The rounded price, or null.
+     */
+    default BigDecimal toPrice(Double price) {
+        return price == null ? null : BigDecimal.valueOf(price).setScale(2, RoundingMode.HALF_UP);
+    }
+
     /**
      * Maps a LocalDateTime object to a formatted string representation.
      *
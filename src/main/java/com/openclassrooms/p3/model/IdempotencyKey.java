@@ -0,0 +1,57 @@
+package com.openclassrooms.p3.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity recording a request made with an "Idempotency-Key" header and its
+ * response, so that the retries handled by any instance get the same response.
+ */
+@Entity
+@Data
+@Table(name = "idempotency_keys", indexes = {
+        @Index(name = "idx_idempotency_keys_expires_at", columnList = "expires_at")
+})
+public class IdempotencyKey {
+    /**
+     * SHA-256 of the route, the user and the key of the request, in hexadecimal.
+     */
+    @Id
+    @Column(name = "key_hash", length = 64)
+    private String keyHash;
+
+    /**
+     * SHA-256 of the payload of the request, in hexadecimal, so that a key reused
+     * with another payload is rejected.
+     */
+    @Column(name = "fingerprint", length = 64, nullable = false)
+    private String fingerprint;
+
+    /**
+     * HTTP status of the response, null while the request is being handled.
+     */
+    @Column(name = "status_code")
+    private Integer statusCode;
+
+    /**
+     * JSON body of the response, null while the request is being handled.
+     */
+    @Column(name = "response_body", columnDefinition = "TEXT")
+    private String responseBody;
+
+    /**
+     * Timestamp at which the request was claimed by an instance, truncated to
+     * the second. A claim left without response for longer than
+     * "idempotency.wait-timeout" can be taken over by another request.
+     */
+    @Column(name = "claimed_at", columnDefinition = "TIMESTAMP DEFAULT CURRENT_TIMESTAMP", nullable = false)
+    private LocalDateTime claimedAt;
+
+    /**
+     * Timestamp after which the key can be reused.
+     */
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
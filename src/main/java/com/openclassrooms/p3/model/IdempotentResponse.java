@@ -0,0 +1,11 @@
+package com.openclassrooms.p3.model;
+
+/**
+ * Response of a request made with an "Idempotency-Key" header, returned again
+ * to its retries.
+ *
+ * @param statusCode The HTTP status of the response.
+ * @param body       The JSON body of the response.
+ */
+public record IdempotentResponse(Integer statusCode, String body) {
+}
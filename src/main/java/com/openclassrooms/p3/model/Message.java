@@ -13,7 +13,9 @@ import org.hibernate.annotations.UpdateTimestamp;
  */
 @Entity
 @Data
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        @Index(name = "idx_messages_rental_id_created_at_id", columnList = "rental_id, created_at, id")
+})
 public class Message {
     /**
      * Unique identifier for the message.
@@ -25,7 +27,9 @@ public class Message {
     /**
      * _User who sent the message. This field won't be added to the database.
      */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @JoinColumn(name = "user_id", nullable = false, insertable = false, updatable = false)
     private Users user;
 
@@ -39,7 +43,9 @@ public class Message {
      * Rental associated with the message. This field won't be added to the
      * database.
      */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @JoinColumn(name = "rental_id", nullable = false, insertable = false, updatable = false)
     private Rental rental;
 
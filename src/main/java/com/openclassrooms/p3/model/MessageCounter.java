@@ -0,0 +1,35 @@
+package com.openclassrooms.p3.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Entity holding the number of unread messages of a rental, summed by the
+ * MessageCounterService so that the badges of the owners are read without
+ * counting the messages.
+ */
+@Entity
+@Data
+@Table(name = "message_counters", indexes = {
+        @Index(name = "idx_message_counters_owner_id", columnList = "owner_id")
+})
+public class MessageCounter {
+    /**
+     * ID of the rental the messages were sent about.
+     */
+    @Id
+    @Column(name = "rental_id")
+    private Long rentalId;
+
+    /**
+     * ID of the owner of the rental, who reads the messages.
+     */
+    @Column(name = "owner_id", nullable = false)
+    private Long ownerId;
+
+    /**
+     * Number of messages the owner has not read yet.
+     */
+    @Column(name = "unread_count", nullable = false)
+    private Long unreadCount;
+}
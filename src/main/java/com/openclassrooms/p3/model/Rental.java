@@ -14,19 +14,50 @@ import lombok.*;
  */
 @Entity
 @Data
-@Table(name = "rentals")
+@NamedEntityGraph(name = Rental.OWNER_GRAPH, attributeNodes = @NamedAttributeNode("owner"))
+@Table(name = "rentals", indexes = {
+        @Index(name = "idx_rentals_created_at_id", columnList = "created_at, id"),
+        @Index(name = "idx_rentals_updated_at_id", columnList = "updated_at, id"),
+        @Index(name = "idx_rentals_price_id", columnList = "price, id"),
+        @Index(name = "idx_rentals_surface_id", columnList = "surface, id"),
+        @Index(name = "idx_rentals_owner_id_id", columnList = "owner_id, id")
+})
 public class Rental {
+    /**
+     * Name of the entity graph fetching the owner along with the rental.
+     */
+    public static final String OWNER_GRAPH = "Rental.owner";
+
+    /**
+     * Name of the generator allocating the rental IDs.
+     */
+    public static final String ID_GENERATOR = "rental_ids";
+
+    /**
+     * Number of rental IDs allocated per round-trip to the generator table.
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     /**
      * Primary key and unique identifier for the rental.
+     *
+     * Allocated by blocks from the `id_generators` table rather than by the
+     * AUTO_INCREMENT column, so that Hibernate knows the IDs before inserting and
+     * can batch the inserts.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = Rental.ID_GENERATOR)
+    @TableGenerator(name = Rental.ID_GENERATOR, table = "id_generators", pkColumnName = "name", valueColumnName = "next_val", pkColumnValue = "rentals", allocationSize = Rental.ID_ALLOCATION_SIZE)
     private Long id;
 
     /**
      * _User who owns the rental. This field won't be added to the database.
+     *
+     * Lazily loaded, use the {@link #OWNER_GRAPH} entity graph when it is needed.
      */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @JoinColumn(name = "owner_id", nullable = false, insertable = false, updatable = false)
     private Users owner;
 
@@ -0,0 +1,20 @@
+package com.openclassrooms.p3.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Aggregates computed over the rentals matching a filter. Every minimum,
+ * maximum and average is null when no rental has a value for it.
+ *
+ * @param count          The number of rentals.
+ * @param minPrice       The lowest price.
+ * @param maxPrice       The highest price.
+ * @param averagePrice   The average price.
+ * @param minSurface     The smallest surface.
+ * @param maxSurface     The largest surface.
+ * @param averageSurface The average surface.
+ * @param owners         The number of distinct owners.
+ */
+public record RentalCatalogStats(Long count, BigDecimal minPrice, BigDecimal maxPrice, Double averagePrice,
+        Integer minSurface, Integer maxSurface, Double averageSurface, Long owners) {
+}
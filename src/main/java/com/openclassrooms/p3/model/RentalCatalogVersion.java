@@ -0,0 +1,14 @@
+package com.openclassrooms.p3.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Aggregate describing the version of the rental catalog: it changes whenever a
+ * rental is created, updated or deleted.
+ *
+ * @param lastUpdatedAt The most recent update time of the rentals, null if the
+ *                      catalog is empty.
+ * @param count         The number of rentals.
+ */
+public record RentalCatalogVersion(LocalDateTime lastUpdatedAt, Long count) {
+}
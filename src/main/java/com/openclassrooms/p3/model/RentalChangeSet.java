@@ -0,0 +1,26 @@
+package com.openclassrooms.p3.model;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+
+/**
+ * Page of changes made to the rental catalog, ordered by change time then
+ * rental ID.
+ *
+ * @param rentals       The rentals created or updated.
+ * @param tombstones    The rentals deleted.
+ * @param lastChangedAt The change time of the last change of the page, null if
+ *                      the page is empty.
+ * @param lastRentalId  The rental ID of the last change of the page, null if the
+ *                      page is empty.
+ * @param hasMore       Whether more changes follow this page.
+ */
+public record RentalChangeSet(
+        List<RentalSingleResponse> rentals,
+        List<RentalTombstone> tombstones,
+        LocalDateTime lastChangedAt,
+        Long lastRentalId,
+        boolean hasMore) {
+}
@@ -0,0 +1,74 @@
+package com.openclassrooms.p3.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Ranges of price and surface the listed rentals must fall within, every bound
+ * being inclusive and optional.
+ *
+ * @param minPrice   The minimum price, null if unbounded.
+ * @param maxPrice   The maximum price, null if unbounded.
+ * @param minSurface The minimum surface, null if unbounded.
+ * @param maxSurface The maximum surface, null if unbounded.
+ */
+public record RentalFilter(BigDecimal minPrice, BigDecimal maxPrice, Integer minSurface, Integer maxSurface) {
+
+    /**
+     * Checks if the price of the rentals is bounded.
+     *
+     * @return true if a minimum or a maximum price is set.
+     */
+    public boolean hasPriceRange() {
+        return minPrice != null || maxPrice != null;
+    }
+
+    /**
+     * Checks if the surface of the rentals is bounded.
+     *
+     * @return true if a minimum or a maximum surface is set.
+     */
+    public boolean hasSurfaceRange() {
+        return minSurface != null || maxSurface != null;
+    }
+
+    /**
+     * Checks if the filter lets every rental through.
+     *
+     * @return true if no bound is set.
+     */
+    public boolean isEmpty() {
+        return !hasPriceRange() && !hasSurfaceRange();
+    }
+
+    /**
+     * Checks that no minimum is greater than its maximum.
+     *
+     * @return true if both ranges can match a rental.
+     */
+    public boolean isValid() {
+        Boolean priceRangeIsValid = minPrice == null || maxPrice == null || minPrice.compareTo(maxPrice) <= 0;
+        Boolean surfaceRangeIsValid = minSurface == null || maxSurface == null || minSurface <= maxSurface;
+
+        return priceRangeIsValid && surfaceRangeIsValid;
+    }
+
+    /**
+     * Checks if a rental falls within the ranges. A rental without a price or a
+     * surface never falls within a bounded range.
+     *
+     * @param price   The price of the rental, may be null.
+     * @param surface The surface of the rental, may be null.
+     * @return true if the rental falls within both ranges.
+     */
+    public boolean matches(BigDecimal price, Integer surface) {
+        if (hasPriceRange() && (price == null
+                || (minPrice != null && price.compareTo(minPrice) < 0)
+                || (maxPrice != null && price.compareTo(maxPrice) > 0))) {
+            return false;
+        }
+
+        return !hasSurfaceRange() || (surface != null
+                && (minSurface == null || surface >= minSurface)
+                && (maxSurface == null || surface <= maxSurface));
+    }
+}
@@ -0,0 +1,141 @@
+package com.openclassrooms.p3.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Optional;
+
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+
+/**
+ * Orders in which the rentals can be listed. Every order is completed by the
+ * rental ID, in the same direction, so that each rental has a unique keyset.
+ *
+ * Rentals without a value for the sorted attribute are listed last, ordered by
+ * their ID in the direction of the sort.
+ */
+public enum RentalSort {
+    CREATED_AT("created_at", "createdAt", false, false),
+    PRICE("price", "price", false, true),
+    PRICE_DESC("-price", "price", true, true),
+    SURFACE("surface", "surface", false, true),
+    SURFACE_DESC("-surface", "surface", true, true);
+
+    /**
+     * Value of the "sort" request parameter selecting this order.
+     */
+    private final String parameter;
+
+    /**
+     * Attribute of the Rental entity the rentals are sorted by.
+     */
+    private final String attribute;
+
+    private final boolean descending;
+
+    /**
+     * Whether a rental may have no value for the sorted attribute, the creation
+     * date being always set.
+     */
+    private final boolean nullable;
+
+    RentalSort(String parameter, String attribute, boolean descending, boolean nullable) {
+        this.parameter = parameter;
+        this.attribute = attribute;
+        this.descending = descending;
+        this.nullable = nullable;
+    }
+
+    /**
+     * Finds the order selected by a "sort" request parameter.
+     *
+     * @param parameter The value of the request parameter.
+     * @return The order, or empty Optional if the value is unknown.
+     */
+    public static Optional<RentalSort> fromParameter(String parameter) {
+        return Arrays.stream(values()).filter(sort -> sort.parameter.equals(parameter)).findFirst();
+    }
+
+    public String getParameter() {
+        return parameter;
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public boolean isNullable() {
+        return nullable;
+    }
+
+    /**
+     * Checks if a filter bounds the sorted attribute, which excludes the rentals
+     * without a value for it.
+     *
+     * @param filter The price and surface ranges.
+     * @return true if the filter has a range on the sorted attribute.
+     */
+    public boolean isBoundedBy(RentalFilter filter) {
+        return switch (this) {
+            case CREATED_AT -> false;
+            case PRICE, PRICE_DESC -> filter.hasPriceRange();
+            case SURFACE, SURFACE_DESC -> filter.hasSurfaceRange();
+        };
+    }
+
+    /**
+     * Gets the value a rental is sorted by.
+     *
+     * @param rental The rental.
+     * @return The value of the sorted attribute of the rental, may be null.
+     */
+    public Comparable<?> getSortValue(RentalSingleResponse rental) {
+        return switch (this) {
+            case CREATED_AT -> rental.created_at();
+            case PRICE, PRICE_DESC -> rental.price();
+            case SURFACE, SURFACE_DESC -> rental.surface();
+        };
+    }
+
+    /**
+     * Formats the value a rental is sorted by, to be stored in a cursor.
+     *
+     * @param rental The rental.
+     * @return The formatted value of the sorted attribute of the rental, empty if
+     *         the rental has none.
+     */
+    public String formatSortValue(RentalSingleResponse rental) {
+        Comparable<?> sortValue = getSortValue(rental);
+        if (sortValue == null) {
+            return "";
+        }
+
+        return sortValue instanceof BigDecimal price ? price.toPlainString() : sortValue.toString();
+    }
+
+    /**
+     * Parses a value formatted by {@link #formatSortValue(RentalSingleResponse)}.
+     *
+     * @param value The formatted value.
+     * @return The value of the sorted attribute, null for a rental without one.
+     * @throws java.time.format.DateTimeParseException if the creation date is
+     *                                                 malformed.
+     * @throws NumberFormatException                   if the price or the surface
+     *                                                 is malformed.
+     */
+    public Comparable<?> parseSortValue(String value) {
+        if (nullable && value.isEmpty()) {
+            return null;
+        }
+
+        return switch (this) {
+            case CREATED_AT -> LocalDateTime.parse(value);
+            case PRICE, PRICE_DESC -> new BigDecimal(value);
+            case SURFACE, SURFACE_DESC -> Integer.valueOf(value);
+        };
+    }
+}
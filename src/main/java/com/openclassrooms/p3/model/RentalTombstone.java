@@ -0,0 +1,30 @@
+package com.openclassrooms.p3.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity recording the deletion of a rental, so that clients synchronizing the
+ * catalog can remove it from their copy.
+ */
+@Entity
+@Data
+@Table(name = "rental_tombstones", indexes = {
+        @Index(name = "idx_rental_tombstones_deleted_at_rental_id", columnList = "deleted_at, rental_id")
+})
+public class RentalTombstone {
+    /**
+     * ID of the deleted rental, rental IDs are never reused.
+     */
+    @Id
+    @Column(name = "rental_id")
+    private Long rentalId;
+
+    /**
+     * Timestamp indicating when the rental was deleted.
+     */
+    @Column(name = "deleted_at", columnDefinition = "TIMESTAMP DEFAULT CURRENT_TIMESTAMP", nullable = false)
+    private LocalDateTime deletedAt;
+}
@@ -0,0 +1,43 @@
+package com.openclassrooms.p3.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity recording the revocation of a single JWT, until the token expires.
+ */
+@Entity
+@Data
+@Table(name = "revoked_tokens", indexes = {
+        @Index(name = "idx_revoked_tokens_revoked_at", columnList = "revoked_at"),
+        @Index(name = "idx_revoked_tokens_expires_at", columnList = "expires_at")
+})
+public class RevokedToken {
+    /**
+     * ID of the revoked token, its "jti" claim.
+     */
+    @Id
+    @Column(name = "jti", length = 36)
+    private String tokenId;
+
+    /**
+     * ID of the user of the revoked token.
+     */
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    /**
+     * Timestamp indicating when the token expires, the revocation being useless
+     * afterwards.
+     */
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    /**
+     * Timestamp indicating when the token was revoked.
+     */
+    @Column(name = "revoked_at", columnDefinition = "TIMESTAMP DEFAULT CURRENT_TIMESTAMP", nullable = false)
+    private LocalDateTime revokedAt;
+}
@@ -0,0 +1,14 @@
+package com.openclassrooms.p3.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Token version of a user whose tokens have been revoked: the tokens carrying
+ * a lower version are rejected.
+ *
+ * @param userId          The ID of the user.
+ * @param tokenVersion    The current token version of the user.
+ * @param tokensRevokedAt The time the tokens were last revoked.
+ */
+public record UserTokenVersion(Long userId, Integer tokenVersion, LocalDateTime tokensRevokedAt) {
+}
@@ -13,7 +13,9 @@ import org.hibernate.annotations.UpdateTimestamp;
  */
 @Entity
 @Data
-@Table(name = "users")
+@Table(name = "users", indexes = {
+        @Index(name = "idx_users_tokens_revoked_at", columnList = "tokens_revoked_at")
+})
 public class Users {
     /**
      * Primary key and unique identifier for the user.
@@ -55,4 +57,18 @@ public class Users {
     @Column(name = "updated_at", columnDefinition = "TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP", nullable = false)
     @UpdateTimestamp
     private LocalDateTime updatedAt;
+
+    /**
+     * Version of the tokens of the user, embedded in each token issued:
+     * incrementing it revokes every token issued before.
+     */
+    @Column(name = "token_version", columnDefinition = "INT DEFAULT 0", nullable = false)
+    private int tokenVersion;
+
+    /**
+     * Timestamp indicating when the token version was last incremented, null if
+     * the tokens of the user were never revoked.
+     */
+    @Column(name = "tokens_revoked_at")
+    private LocalDateTime tokensRevokedAt;
 }
@@ -0,0 +1,21 @@
+package com.openclassrooms.p3.payload.request;
+
+import java.math.BigDecimal;
+
+import org.hibernate.validator.constraints.URL;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
+
+/**
+ * Request payload for one of the rentals of a bulk import, whose picture is
+ * already uploaded.
+ */
+public record RentalImportRequest(
+                @NotBlank(message = "The name cannot be blank or null") String name,
+                @NotNull(message = "The surface cannot be null") @PositiveOrZero(message = "The surface cannot be negative") Integer surface,
+                @NotNull(message = "The price cannot be null") @PositiveOrZero(message = "The price cannot be negative") BigDecimal price,
+                String description,
+                @NotBlank(message = "The picture URL cannot be blank or null") @URL(message = "The picture must be a URL") String picture) {
+}
@@ -0,0 +1,8 @@
+package com.openclassrooms.p3.payload.response;
+
+/**
+ * Response payload for retrieving a page of messages, with the opaque cursor of
+ * the next page or null if it is the last one.
+ */
+public record MessageAllResponse(Iterable<MessageResponse> messages, String next) {
+}
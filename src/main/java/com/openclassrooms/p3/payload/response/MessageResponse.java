@@ -0,0 +1,15 @@
+package com.openclassrooms.p3.payload.response;
+
+import java.time.LocalDateTime;
+
+/**
+ * Response payload for retrieving a single message.
+ */
+public record MessageResponse(
+                Long id,
+                Long rental_id,
+                Long user_id,
+                String message,
+                LocalDateTime created_at,
+                LocalDateTime updated_at) {
+}
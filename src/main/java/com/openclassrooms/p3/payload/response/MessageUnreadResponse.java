@@ -0,0 +1,10 @@
+package com.openclassrooms.p3.payload.response;
+
+import java.util.Map;
+
+/**
+ * Response payload for retrieving the unread messages of an owner: their total,
+ * and their number by rental ID for the rentals having some.
+ */
+public record MessageUnreadResponse(Long unread, Map<Long, Long> rentals) {
+}
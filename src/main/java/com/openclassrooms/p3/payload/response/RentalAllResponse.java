@@ -1,7 +1,8 @@
 package com.openclassrooms.p3.payload.response;
 
 /**
- * Response payload for retrieving all rentals.
+ * Response payload for retrieving a page of rentals, with the opaque cursor of
+ * the next page or null if it is the last one.
  */
-public record RentalAllResponse(Iterable<RentalSingleResponse> rentals) {
+public record RentalAllResponse(Iterable<RentalSingleResponse> rentals, String next) {
 }
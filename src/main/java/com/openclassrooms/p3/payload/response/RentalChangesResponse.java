@@ -0,0 +1,9 @@
+package com.openclassrooms.p3.payload.response;
+
+/**
+ * Response payload for retrieving the changes made to the rental catalog, with
+ * the opaque cursor of the next page or null if it is the last one.
+ */
+public record RentalChangesResponse(Iterable<RentalSingleResponse> rentals,
+        Iterable<RentalTombstoneResponse> deleted, String next) {
+}
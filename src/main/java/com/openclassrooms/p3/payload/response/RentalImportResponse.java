@@ -0,0 +1,10 @@
+package com.openclassrooms.p3.payload.response;
+
+import java.util.List;
+
+/**
+ * Response payload for a bulk import of rentals, with the IDs of the created
+ * rentals in the order of the import.
+ */
+public record RentalImportResponse(Integer imported, List<Long> ids) {
+}
@@ -0,0 +1,8 @@
+package com.openclassrooms.p3.payload.response;
+
+/**
+ * Response payload for searching rentals, with the rentals of the requested
+ * page, best match first, and the total number of matching rentals.
+ */
+public record RentalSearchResponse(Iterable<RentalSingleResponse> rentals, Integer total) {
+}
@@ -0,0 +1,18 @@
+package com.openclassrooms.p3.payload.response;
+
+import java.math.BigDecimal;
+
+/**
+ * Response payload for retrieving the aggregates of the rentals matching a
+ * filter.
+ */
+public record RentalStatsResponse(
+                Long count,
+                BigDecimal min_price,
+                BigDecimal max_price,
+                BigDecimal average_price,
+                Integer min_surface,
+                Integer max_surface,
+                Double average_surface,
+                Long owners) {
+}
@@ -0,0 +1,9 @@
+package com.openclassrooms.p3.payload.response;
+
+import java.time.LocalDateTime;
+
+/**
+ * Response payload for a deleted rental.
+ */
+public record RentalTombstoneResponse(Long id, LocalDateTime deleted_at) {
+}
@@ -0,0 +1,102 @@
+package com.openclassrooms.p3.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.openclassrooms.p3.model.IdempotencyKey;
+
+/**
+ * Repository interface for managing IdempotencyKey entities in the database.
+ */
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, String> {
+
+    /**
+     * Inserts a key for a request being handled, failing with a
+     * DataIntegrityViolationException if the key is already present.
+     *
+     * @param keyHash     The hash of the key.
+     * @param fingerprint The fingerprint of the payload of the request.
+     * @param claimedAt   The time at which the request is claimed.
+     * @param expiresAt   The time after which the key can be reused.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO idempotency_keys (key_hash, fingerprint, claimed_at, expires_at) VALUES (:keyHash, :fingerprint, :claimedAt, :expiresAt)", nativeQuery = true)
+    void insertKey(@Param("keyHash") String keyHash, @Param("fingerprint") String fingerprint,
+            @Param("claimedAt") LocalDateTime claimedAt, @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Takes over the claim of a key left without response since a given time,
+     * its instance being presumed dead. Only one of the requests taking it over
+     * at once updates the key.
+     *
+     * @param keyHash     The hash of the key.
+     * @param staleBefore The time before which a claim is stale.
+     * @param claimedAt   The time at which the request is claimed again.
+     * @return The number of keys updated, 1 if the claim was taken over.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE IdempotencyKey k SET k.claimedAt = :claimedAt WHERE k.keyHash = :keyHash AND k.statusCode IS NULL AND k.claimedAt <= :staleBefore")
+    int takeOverClaim(@Param("keyHash") String keyHash, @Param("staleBefore") LocalDateTime staleBefore,
+            @Param("claimedAt") LocalDateTime claimedAt);
+
+    /**
+     * Records the response of the request of a key, unless its claim was taken
+     * over by another request.
+     *
+     * @param keyHash      The hash of the key.
+     * @param claimedAt    The time at which the request was claimed.
+     * @param statusCode   The HTTP status of the response.
+     * @param responseBody The JSON body of the response.
+     * @return The number of keys updated.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE IdempotencyKey k SET k.statusCode = :statusCode, k.responseBody = :responseBody WHERE k.keyHash = :keyHash AND k.claimedAt = :claimedAt")
+    int saveResponse(@Param("keyHash") String keyHash, @Param("claimedAt") LocalDateTime claimedAt,
+            @Param("statusCode") Integer statusCode, @Param("responseBody") String responseBody);
+
+    /**
+     * Releases the claim of a key, unless it was taken over by another request,
+     * so that the next retry runs the request again.
+     *
+     * @param keyHash   The hash of the key.
+     * @param claimedAt The time at which the request was claimed.
+     * @return The number of keys deleted.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyKey k WHERE k.keyHash = :keyHash AND k.claimedAt = :claimedAt AND k.statusCode IS NULL")
+    int releaseClaim(@Param("keyHash") String keyHash, @Param("claimedAt") LocalDateTime claimedAt);
+
+    /**
+     * Deletes a key if it has expired, so that it can be inserted again.
+     *
+     * @param keyHash The hash of the key.
+     * @param now     The current time.
+     * @return The number of keys deleted.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyKey k WHERE k.keyHash = :keyHash AND k.expiresAt <= :now")
+    int deleteIfExpired(@Param("keyHash") String keyHash, @Param("now") LocalDateTime now);
+
+    /**
+     * Deletes the expired keys.
+     *
+     * @param now The current time.
+     * @return The number of keys deleted.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyKey k WHERE k.expiresAt <= :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
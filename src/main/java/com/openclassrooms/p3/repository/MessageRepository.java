@@ -1,13 +1,94 @@
 package com.openclassrooms.p3.repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.openclassrooms.p3.model.Message;
+import com.openclassrooms.p3.payload.response.MessageResponse;
 
 /**
  * Repository interface for managing Message entities in the database.
+ *
+ * The pages of messages are read as responses straight from the columns of the
+ * messages table, served by its index on (rental_id, created_at, id), without
+ * loading the Message, Rental or Users entities.
  */
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
-}
\ No newline at end of file
+
+    /**
+     * Selects the response of a message, from its columns only.
+     */
+    String MESSAGE_RESPONSE_SELECT = "SELECT new com.openclassrooms.p3.payload.response.MessageResponse("
+            + "m.id, m.rentalId, m.userId, m.message, m.createdAt, m.updatedAt) FROM Message m";
+
+    /**
+     * Selects the responses of the messages sent about the rentals of an owner,
+     * joined on the owner ID column of the rentals.
+     */
+    String INBOX_RESPONSE_SELECT = MESSAGE_RESPONSE_SELECT
+            + " JOIN Rental r ON r.id = m.rentalId WHERE r.ownerId = :ownerId";
+
+    /**
+     * Retrieves the first page of messages of a rental, ordered by creation date
+     * then ID.
+     *
+     * @param rentalId The ID of the rental.
+     * @param pageable The page request, only its size is used.
+     * @return The responses of the first messages of the rental.
+     */
+    @Query(MESSAGE_RESPONSE_SELECT + " WHERE m.rentalId = :rentalId ORDER BY m.createdAt ASC, m.id ASC")
+    List<MessageResponse> findRentalPage(@Param("rentalId") Long rentalId, Pageable pageable);
+
+    /**
+     * Retrieves the page of messages of a rental located right after the given
+     * keyset, ordered by creation date then ID.
+     *
+     * @param rentalId  The ID of the rental.
+     * @param createdAt The creation date of the last message of the previous page.
+     * @param id        The ID of the last message of the previous page.
+     * @param pageable  The page request, only its size is used.
+     * @return The responses of the messages following the keyset.
+     */
+    @Query(MESSAGE_RESPONSE_SELECT + " WHERE m.rentalId = :rentalId"
+            + " AND (m.createdAt > :createdAt OR (m.createdAt = :createdAt AND m.id > :id))"
+            + " ORDER BY m.createdAt ASC, m.id ASC")
+    List<MessageResponse> findRentalPageAfter(@Param("rentalId") Long rentalId,
+            @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    /**
+     * Retrieves the first page of messages sent about the rentals of an owner,
+     * ordered by rental ID, creation date then ID.
+     *
+     * @param ownerId  The ID of the owner of the rentals.
+     * @param pageable The page request, only its size is used.
+     * @return The responses of the first messages of the inbox.
+     */
+    @Query(INBOX_RESPONSE_SELECT + " ORDER BY m.rentalId ASC, m.createdAt ASC, m.id ASC")
+    List<MessageResponse> findInboxPage(@Param("ownerId") Long ownerId, Pageable pageable);
+
+    /**
+     * Retrieves the page of messages sent about the rentals of an owner located
+     * right after the given keyset, ordered by rental ID, creation date then ID.
+     *
+     * @param ownerId   The ID of the owner of the rentals.
+     * @param rentalId  The rental ID of the last message of the previous page.
+     * @param createdAt The creation date of the last message of the previous page.
+     * @param id        The ID of the last message of the previous page.
+     * @param pageable  The page request, only its size is used.
+     * @return The responses of the messages following the keyset.
+     */
+    // The redundant lower bound on the rental ID lets the keyset start an index range
+    @Query(INBOX_RESPONSE_SELECT + " AND m.rentalId >= :rentalId"
+            + " AND (m.rentalId > :rentalId OR (m.rentalId = :rentalId"
+            + " AND (m.createdAt > :createdAt OR (m.createdAt = :createdAt AND m.id > :id))))"
+            + " ORDER BY m.rentalId ASC, m.createdAt ASC, m.id ASC")
+    List<MessageResponse> findInboxPageAfter(@Param("ownerId") Long ownerId, @Param("rentalId") Long rentalId,
+            @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+}
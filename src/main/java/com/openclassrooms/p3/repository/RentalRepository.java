@@ -1,13 +1,157 @@
 package com.openclassrooms.p3.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.openclassrooms.p3.model.Rental;
+import com.openclassrooms.p3.model.RentalCatalogVersion;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+
+import jakarta.persistence.QueryHint;
 
 /**
  * Repository interface for managing Rental entities in the database.
  */
 @Repository
-public interface RentalRepository extends JpaRepository<Rental, Long> {
+public interface RentalRepository extends JpaRepository<Rental, Long>, RentalRepositoryCustom {
+
+    /**
+     * Number of rows fetched per round-trip when streaming the catalog.
+     */
+    int STREAM_FETCH_SIZE = 500;
+
+    /**
+     * Selects only the columns needed by the rental responses, without loading the
+     * Rental entity nor its owner.
+     */
+    String RENTAL_RESPONSE_SELECT = "SELECT new com.openclassrooms.p3.payload.response.RentalSingleResponse("
+            + "r.id, r.name, r.surface, r.price, r.picture, r.description, r.ownerId, r.createdAt, r.updatedAt) "
+            + "FROM Rental r";
+
+    /**
+     * Retrieves the response of a rental by its ID.
+     *
+     * @param id The ID of the rental.
+     * @return An Optional containing the rental response if found, or empty if not.
+     */
+    @Query(RENTAL_RESPONSE_SELECT + " WHERE r.id = :id")
+    Optional<RentalSingleResponse> findResponseById(@Param("id") Long id);
+
+    /**
+     * Retrieves the responses of the rentals with the given IDs, in no particular
+     * order.
+     *
+     * @param ids The IDs of the rentals.
+     * @return The responses of the existing rentals.
+     */
+    @Query(RENTAL_RESPONSE_SELECT + " WHERE r.id IN :ids")
+    List<RentalSingleResponse> findResponsesByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Retrieves the version of the catalog, answered from the index on the update
+     * time without reading the rentals themselves.
+     *
+     * @return The most recent update time and the number of rentals.
+     */
+    @Query("SELECT new com.openclassrooms.p3.model.RentalCatalogVersion(MAX(r.updatedAt), COUNT(r.id)) FROM Rental r")
+    RentalCatalogVersion findCatalogVersion();
+
+    /**
+     * Retrieves a rental by its ID along with its owner, in a single query.
+     *
+     * @param id The ID of the rental.
+     * @return An Optional containing the rental if found, or empty if not.
+     */
+    @EntityGraph(Rental.OWNER_GRAPH)
+    Optional<Rental> findWithOwnerById(Long id);
+
+    /**
+     * Retrieves the first page of rentals ordered by creation date then ID.
+     *
+     * @param pageable The page request, only its size is used.
+     * @return The responses of the first rentals of the catalog.
+     */
+    @Query(RENTAL_RESPONSE_SELECT + " ORDER BY r.createdAt ASC, r.id ASC")
+    List<RentalSingleResponse> findFirstPage(Pageable pageable);
+
+    /**
+     * Retrieves the page of rentals located right after the given keyset, ordered
+     * by creation date then ID.
+     *
+     * @param createdAt The creation date of the last rental of the previous page.
+     * @param id        The ID of the last rental of the previous page.
+     * @param pageable  The page request, only its size is used.
+     * @return The responses of the rentals following the keyset.
+     */
+    @Query(RENTAL_RESPONSE_SELECT
+            + " WHERE r.createdAt > :createdAt OR (r.createdAt = :createdAt AND r.id > :id) ORDER BY r.createdAt ASC, r.id ASC")
+    List<RentalSingleResponse> findPageAfter(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    /**
+     * Retrieves the rentals updated right after the given keyset, ordered by update
+     * date then ID.
+     *
+     * @param updatedAt The update date of the keyset.
+     * @param id        The ID of the keyset.
+     * @param pageable  The page request, only its size is used.
+     * @return The responses of the rentals updated after the keyset.
+     */
+    @Query(RENTAL_RESPONSE_SELECT
+            + " WHERE r.updatedAt > :updatedAt OR (r.updatedAt = :updatedAt AND r.id > :id) ORDER BY r.updatedAt ASC, r.id ASC")
+    List<RentalSingleResponse> findUpdatedAfter(@Param("updatedAt") LocalDateTime updatedAt, @Param("id") Long id,
+            Pageable pageable);
+
+    /**
+     * Streams the whole catalog ordered by creation date then ID, fetching the rows
+     * from the database in batches instead of loading them all at once.
+     *
+     * The returned stream must be consumed inside a transaction and closed.
+     *
+     * @return A stream of all the rental responses.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE))
+    @Query(RENTAL_RESPONSE_SELECT + " ORDER BY r.createdAt ASC, r.id ASC")
+    Stream<RentalSingleResponse> streamAll();
+
+    /**
+     * Retrieves the next value of the row of the `id_generators` table allocating
+     * the rental IDs.
+     *
+     * @return The next value, or empty if the row is missing.
+     */
+    @Query(value = "SELECT next_val FROM id_generators WHERE name = 'rentals'", nativeQuery = true)
+    Optional<Long> findNextIdValue();
+
+    /**
+     * Retrieves the highest rental ID.
+     *
+     * @return The highest ID, or null if there is no rental.
+     */
+    @Query("SELECT MAX(r.id) FROM Rental r")
+    Long findMaxId();
+
+    /**
+     * Deletes a rental by its ID.
+     *
+     * @param id The ID of the rental.
+     * @return The number of rentals deleted, 0 if there is no rental with this
+     *         ID.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Rental r WHERE r.id = :id")
+    int deleteRentalById(@Param("id") Long id);
 }
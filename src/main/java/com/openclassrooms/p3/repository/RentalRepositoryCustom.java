@@ -0,0 +1,37 @@
+package com.openclassrooms.p3.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import com.openclassrooms.p3.model.Rental;
+import com.openclassrooms.p3.model.RentalCatalogStats;
+import com.openclassrooms.p3.model.RentalSort;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+
+/**
+ * Criteria queries of the RentalRepository which cannot be derived by Spring
+ * Data.
+ */
+public interface RentalRepositoryCustom {
+
+    /**
+     * Retrieves the responses of the rentals matching a specification, in the
+     * given order, without loading the Rental entities.
+     *
+     * @param specification The specification of the rentals.
+     * @param sort          The order of the rentals.
+     * @param limit         The maximum number of rentals to retrieve.
+     * @return The responses of the matching rentals.
+     */
+    List<RentalSingleResponse> findResponses(Specification<Rental> specification, RentalSort sort, int limit);
+
+    /**
+     * Computes the aggregates of the rentals matching a specification in a single
+     * query.
+     *
+     * @param specification The specification of the rentals.
+     * @return The aggregates of the matching rentals.
+     */
+    RentalCatalogStats findStats(Specification<Rental> specification);
+}
@@ -0,0 +1,79 @@
+package com.openclassrooms.p3.repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import com.openclassrooms.p3.model.Rental;
+import com.openclassrooms.p3.model.RentalCatalogStats;
+import com.openclassrooms.p3.model.RentalSort;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
+/**
+ * Implementation of the Criteria queries of the RentalRepository.
+ */
+public class RentalRepositoryCustomImpl implements RentalRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<RentalSingleResponse> findResponses(Specification<Rental> specification, RentalSort sort, int limit) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<RentalSingleResponse> query = criteriaBuilder.createQuery(RentalSingleResponse.class);
+        Root<Rental> rental = query.from(Rental.class);
+
+        // Same columns as RentalRepository.RENTAL_RESPONSE_SELECT
+        query.select(criteriaBuilder.construct(RentalSingleResponse.class,
+                rental.get("id"), rental.get("name"), rental.get("surface"), rental.get("price"),
+                rental.get("picture"), rental.get("description"), rental.get("ownerId"),
+                rental.get("createdAt"), rental.get("updatedAt")));
+
+        Predicate predicate = specification.toPredicate(rental, query, criteriaBuilder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+
+        Path<Object> sortAttribute = rental.get(sort.getAttribute());
+        Path<Object> rentalId = rental.get("id");
+        if (sort.isDescending()) {
+            query.orderBy(criteriaBuilder.desc(sortAttribute), criteriaBuilder.desc(rentalId));
+        } else {
+            query.orderBy(criteriaBuilder.asc(sortAttribute), criteriaBuilder.asc(rentalId));
+        }
+
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public RentalCatalogStats findStats(Specification<Rental> specification) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<RentalCatalogStats> query = criteriaBuilder.createQuery(RentalCatalogStats.class);
+        Root<Rental> rental = query.from(Rental.class);
+
+        Expression<BigDecimal> price = rental.get("price");
+        Expression<Integer> surface = rental.get("surface");
+        query.select(criteriaBuilder.construct(RentalCatalogStats.class,
+                criteriaBuilder.count(rental),
+                criteriaBuilder.min(price), criteriaBuilder.max(price), criteriaBuilder.avg(price),
+                criteriaBuilder.min(surface), criteriaBuilder.max(surface), criteriaBuilder.avg(surface),
+                criteriaBuilder.countDistinct(rental.get("ownerId"))));
+
+        Predicate predicate = specification.toPredicate(rental, query, criteriaBuilder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+
+        return entityManager.createQuery(query).getSingleResult();
+    }
+}
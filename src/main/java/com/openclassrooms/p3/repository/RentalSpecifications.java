@@ -0,0 +1,118 @@
+package com.openclassrooms.p3.repository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import com.openclassrooms.p3.model.Rental;
+import com.openclassrooms.p3.model.RentalFilter;
+import com.openclassrooms.p3.model.RentalSort;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+
+/**
+ * Specifications used to filter and paginate the rentals with Criteria
+ * queries. The range and keyset predicates are served by the indexes on
+ * (price, id), (surface, id) and (created_at, id).
+ */
+public class RentalSpecifications {
+
+    /**
+     * Matches the rentals falling within the ranges of a filter.
+     *
+     * @param filter The price and surface ranges.
+     * @return The specification of the rentals within the ranges.
+     */
+    public static Specification<Rental> matches(RentalFilter filter) {
+        return (rental, query, criteriaBuilder) -> {
+            List<Predicate> predicates = new ArrayList<>();
+
+            Expression<BigDecimal> price = rental.get("price");
+            if (filter.minPrice() != null) {
+                predicates.add(criteriaBuilder.greaterThanOrEqualTo(price, filter.minPrice()));
+            }
+            if (filter.maxPrice() != null) {
+                predicates.add(criteriaBuilder.lessThanOrEqualTo(price, filter.maxPrice()));
+            }
+
+            Expression<Integer> surface = rental.get("surface");
+            if (filter.minSurface() != null) {
+                predicates.add(criteriaBuilder.greaterThanOrEqualTo(surface, filter.minSurface()));
+            }
+            if (filter.maxSurface() != null) {
+                predicates.add(criteriaBuilder.lessThanOrEqualTo(surface, filter.maxSurface()));
+            }
+
+            return criteriaBuilder.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+
+    /**
+     * Matches the rentals having a value for the sorted attribute, listed before
+     * the other ones.
+     *
+     * @param sort The order of the rentals.
+     * @return The specification of the rentals with a sorted value.
+     */
+    public static Specification<Rental> hasSortValue(RentalSort sort) {
+        return (rental, query, criteriaBuilder) -> criteriaBuilder.isNotNull(rental.get(sort.getAttribute()));
+    }
+
+    /**
+     * Matches the rentals without a value for the sorted attribute, listed after
+     * the other ones.
+     *
+     * @param sort The order of the rentals.
+     * @return The specification of the rentals without a sorted value.
+     */
+    public static Specification<Rental> hasNoSortValue(RentalSort sort) {
+        return (rental, query, criteriaBuilder) -> criteriaBuilder.isNull(rental.get(sort.getAttribute()));
+    }
+
+    /**
+     * Matches the rentals located after a keyset in the given order, among the
+     * rentals having a sorted value if the keyset has one, among the rentals
+     * without one otherwise.
+     *
+     * @param sort      The order of the rentals.
+     * @param sortValue The sorted value of the keyset, may be null.
+     * @param id        The rental ID of the keyset.
+     * @return The specification of the rentals following the keyset.
+     */
+    public static Specification<Rental> isAfter(RentalSort sort, Comparable<?> sortValue, Long id) {
+        return (rental, query, criteriaBuilder) -> {
+            Expression<Comparable<Object>> sortAttribute = rental.get(sort.getAttribute());
+            Expression<Long> rentalId = rental.get("id");
+
+            if (sortValue == null) {
+                return criteriaBuilder.and(
+                        criteriaBuilder.isNull(sortAttribute),
+                        compare(criteriaBuilder, sort.isDescending(), rentalId, id));
+            }
+
+            return criteriaBuilder.or(
+                    compare(criteriaBuilder, sort.isDescending(), sortAttribute, toComparable(sortValue)),
+                    criteriaBuilder.and(
+                            criteriaBuilder.equal(sortAttribute, sortValue),
+                            compare(criteriaBuilder, sort.isDescending(), rentalId, id)));
+        };
+    }
+
+    /**
+     * Builds a strict comparison in the direction of the sort.
+     */
+    private static <Y extends Comparable<? super Y>> Predicate compare(CriteriaBuilder criteriaBuilder,
+            boolean descending, Expression<? extends Y> expression, Y value) {
+        return descending ? criteriaBuilder.lessThan(expression, value)
+                : criteriaBuilder.greaterThan(expression, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> toComparable(Comparable<?> value) {
+        return (Comparable<Object>) value;
+    }
+}
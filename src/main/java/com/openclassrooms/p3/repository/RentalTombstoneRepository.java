@@ -0,0 +1,32 @@
+package com.openclassrooms.p3.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.openclassrooms.p3.model.RentalTombstone;
+
+/**
+ * Repository interface for managing RentalTombstone entities in the database.
+ */
+@Repository
+public interface RentalTombstoneRepository extends JpaRepository<RentalTombstone, Long> {
+
+    /**
+     * Retrieves the tombstones located right after the given keyset, ordered by
+     * deletion date then rental ID.
+     *
+     * @param deletedAt The deletion date of the keyset.
+     * @param rentalId  The rental ID of the keyset.
+     * @param pageable  The page request, only its size is used.
+     * @return The tombstones following the keyset.
+     */
+    @Query("SELECT t FROM RentalTombstone t WHERE t.deletedAt > :deletedAt OR (t.deletedAt = :deletedAt AND t.rentalId > :rentalId) ORDER BY t.deletedAt ASC, t.rentalId ASC")
+    List<RentalTombstone> findPageAfter(@Param("deletedAt") LocalDateTime deletedAt,
+            @Param("rentalId") Long rentalId, Pageable pageable);
+}
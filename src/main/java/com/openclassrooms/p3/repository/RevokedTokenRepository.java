@@ -0,0 +1,43 @@
+package com.openclassrooms.p3.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.openclassrooms.p3.model.RevokedToken;
+
+/**
+ * Repository interface for managing RevokedToken entities in the database.
+ */
+@Repository
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, String> {
+
+    /**
+     * Retrieves the revocations made after the given time whose token has not
+     * expired yet.
+     *
+     * @param revokedAfter The time after which the tokens were revoked.
+     * @param now          The current time.
+     * @return The revocations.
+     */
+    @Query("SELECT t FROM RevokedToken t WHERE t.revokedAt > :revokedAfter AND t.expiresAt > :now")
+    List<RevokedToken> findActiveRevokedAfter(@Param("revokedAfter") LocalDateTime revokedAfter,
+            @Param("now") LocalDateTime now);
+
+    /**
+     * Deletes the revocations whose token has expired.
+     *
+     * @param now The current time.
+     * @return The number of revocations deleted.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM RevokedToken t WHERE t.expiresAt <= :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
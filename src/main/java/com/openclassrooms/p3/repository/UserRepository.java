@@ -1,15 +1,92 @@
 package com.openclassrooms.p3.repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.openclassrooms.p3.model.UserTokenVersion;
 import com.openclassrooms.p3.model.Users;
 
+import jakarta.persistence.QueryHint;
+
 /**
  * Repository interface for managing Users entities in the database.
  */
 @Repository
 public interface UserRepository extends JpaRepository<Users, Long> {
+
+    /**
+     * Number of rows fetched per round-trip when streaming the emails.
+     */
+    int STREAM_FETCH_SIZE = 1_000;
+
     Optional<Users> findByEmail(String email);
+
+    /**
+     * Streams the emails of every user, fetching the rows from the database in
+     * batches instead of loading them all at once.
+     *
+     * The returned stream must be consumed inside a transaction and closed.
+     *
+     * @return A stream of all the emails.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE))
+    @Query("SELECT u.email FROM Users u")
+    Stream<String> streamAllEmails();
+
+    /**
+     * Replaces the password hash of a user, without loading nor overwriting the
+     * other columns of the user.
+     *
+     * @param id       The ID of the user.
+     * @param password The new password hash.
+     * @return The number of users updated.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Users u SET u.password = :password WHERE u.id = :id")
+    int updatePassword(@Param("id") Long id, @Param("password") String password);
+
+    /**
+     * Increments the token version of a user, revoking every token issued
+     * before.
+     *
+     * @param id        The ID of the user.
+     * @param revokedAt The time of the revocation.
+     * @return The number of users updated.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Users u SET u.tokenVersion = u.tokenVersion + 1, u.tokensRevokedAt = :revokedAt WHERE u.id = :id")
+    int incrementTokenVersion(@Param("id") Long id, @Param("revokedAt") LocalDateTime revokedAt);
+
+    /**
+     * Retrieves the token version of a user.
+     *
+     * @param id The ID of the user.
+     * @return The token version, or empty if the user does not exist.
+     */
+    @Query("SELECT new com.openclassrooms.p3.model.UserTokenVersion(u.id, u.tokenVersion, u.tokensRevokedAt) FROM Users u WHERE u.id = :id")
+    Optional<UserTokenVersion> findTokenVersion(@Param("id") Long id);
+
+    /**
+     * Retrieves the token versions of the users whose tokens were revoked after
+     * the given time.
+     *
+     * @param revokedAfter The time after which the tokens were revoked.
+     * @return The token versions.
+     */
+    @Query("SELECT new com.openclassrooms.p3.model.UserTokenVersion(u.id, u.tokenVersion, u.tokensRevokedAt) FROM Users u WHERE u.tokensRevokedAt > :revokedAfter")
+    List<UserTokenVersion> findTokenVersionsRevokedAfter(@Param("revokedAfter") LocalDateTime revokedAfter);
 }
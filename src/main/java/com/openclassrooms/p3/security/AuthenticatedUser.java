@@ -0,0 +1,35 @@
+package com.openclassrooms.p3.security;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import com.openclassrooms.p3.payload.response.UserInfoResponse;
+
+/**
+ * Principal put into the security context by the JwtAuthenticationFilter once
+ * the JWT of a request has been validated. Controllers receive it with
+ * {@code @AuthenticationPrincipal}.
+ *
+ * @param id             The ID of the authenticated user.
+ * @param userInfo       The information of the user embedded in the JWT, null if
+ *                       the token only holds the user ID.
+ * @param tokenId        The ID of the JWT, null for the tokens issued without.
+ * @param tokenExpiresAt The expiry of the JWT.
+ */
+public record AuthenticatedUser(Long id, UserInfoResponse userInfo, UUID tokenId, Instant tokenExpiresAt) {
+
+    /**
+     * Role of the users listed by the "auth.admin-user-ids" property, needed by
+     * the write operations of the actuator endpoints.
+     */
+    public static final String ADMIN_ROLE = "ADMIN";
+
+    /**
+     * Checks if the JWT embeds the information of the user.
+     *
+     * @return True if the user information is available; false otherwise.
+     */
+    public boolean hasUserInfo() {
+        return userInfo != null;
+    }
+}
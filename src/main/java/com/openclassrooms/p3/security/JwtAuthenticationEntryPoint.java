@@ -0,0 +1,41 @@
+package com.openclassrooms.p3.security;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.AuthenticationEntryPoint;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.p3.exception.ApiErrorResponse;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Answers the requests to an authenticated route without a valid JWT with a 401
+ * response, holding the same error body as the ones built by the
+ * GlobalExceptionHandler.
+ */
+@Component
+public class JwtAuthenticationEntryPoint implements AuthenticationEntryPoint {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    public void commence(HttpServletRequest request, HttpServletResponse response,
+            AuthenticationException authException) throws IOException {
+        ApiErrorResponse apiErrorResponse = new ApiErrorResponse("Unauthorized", List.of("Unauthorized"),
+                HttpStatus.UNAUTHORIZED, LocalDateTime.now());
+
+        response.setStatus(HttpStatus.UNAUTHORIZED.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), apiErrorResponse);
+    }
+}
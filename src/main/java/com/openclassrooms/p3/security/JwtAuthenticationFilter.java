@@ -0,0 +1,137 @@
+package com.openclassrooms.p3.security;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.openclassrooms.p3.configuration.CacheConfig;
+import com.openclassrooms.p3.service.TokenRevocationService;
+import com.openclassrooms.p3.service.UserService;
+import com.openclassrooms.p3.utils.JwtUtil;
+import com.openclassrooms.p3.utils.JwtUtil.VerifiedToken;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Validates the JWT of the Authorization header once per request and puts the
+ * AuthenticatedUser into the security context, so that the controllers neither
+ * parse the token nor look the user up.
+ *
+ * The token being signed by the application, its subject is trusted, unless
+ * the token has been revoked, which is checked in memory. When the
+ * "auth.user-check.enabled" property is set, the filter also checks that the
+ * user still exists, remembering the users found for
+ * "auth.user-check.time-to-live". The users listed by the
+ * "auth.admin-user-ids" property are granted the administrator role.
+ *
+ * Requests without a valid token go through unauthenticated and are rejected
+ * by the security filter chain when the route needs authentication.
+ */
+@Component
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Value("${auth.user-check.enabled:false}")
+    private boolean userCheckIsEnabled;
+
+    @Value("${auth.admin-user-ids:}")
+    private Set<Long> adminUserIds;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String authorizationHeader = request.getHeader(HttpHeaders.AUTHORIZATION);
+
+        Boolean hasBearerToken = authorizationHeader != null && authorizationHeader.startsWith(BEARER_PREFIX);
+        if (hasBearerToken) {
+            Optional<VerifiedToken> optionalVerifiedToken = JwtUtil
+                    .extractVerifiedToken(JwtUtil.extractJwtFromHeader(authorizationHeader));
+
+            Boolean isAuthenticated = optionalVerifiedToken.isPresent()
+                    && !tokenRevocationService.isRevoked(optionalVerifiedToken.get())
+                    && userExists(optionalVerifiedToken.get().userId());
+            if (isAuthenticated) {
+                VerifiedToken verifiedToken = optionalVerifiedToken.get();
+                AuthenticatedUser authenticatedUser = new AuthenticatedUser(verifiedToken.userId(),
+                        verifiedToken.userInfo(), verifiedToken.tokenId(), verifiedToken.expiresAt());
+
+                SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+                securityContext.setAuthentication(UsernamePasswordAuthenticationToken.authenticated(
+                        authenticatedUser, null, getAuthorities(verifiedToken.userId())));
+                SecurityContextHolder.setContext(securityContext);
+            }
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * Gets the authorities of an authenticated user.
+     *
+     * @param userId The user ID extracted from the JWT token.
+     * @return The administrator role for the administrators; no authority
+     *         otherwise.
+     */
+    private List<GrantedAuthority> getAuthorities(Long userId) {
+        Boolean isAdmin = adminUserIds.contains(userId);
+        if (isAdmin) {
+            return AuthorityUtils.createAuthorityList("ROLE_" + AuthenticatedUser.ADMIN_ROLE);
+        }
+
+        return AuthorityUtils.NO_AUTHORITIES;
+    }
+
+    /**
+     * Checks if the user of a valid token exists, if the check is enabled.
+     *
+     * @param userId The user ID extracted from the JWT token.
+     * @return True if the user exists or is not checked; false otherwise.
+     */
+    private boolean userExists(Long userId) {
+        if (!userCheckIsEnabled) {
+            return true;
+        }
+
+        Cache authenticatedUsersCache = cacheManager.getCache(CacheConfig.AUTHENTICATED_USERS_CACHE);
+        Boolean isKnownUser = authenticatedUsersCache.get(userId, Boolean.class);
+        if (isKnownUser != null) {
+            return true;
+        }
+
+        // Only the users found are remembered, so that a user is never rejected
+        // because of a stale entry
+        Boolean userExists = userService.userExists(userId);
+        if (userExists) {
+            authenticatedUsersCache.put(userId, Boolean.TRUE);
+        }
+
+        return userExists;
+    }
+}
@@ -0,0 +1,158 @@
+package com.openclassrooms.p3.security;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.Key;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.p3.utils.JwtKeySet;
+import com.openclassrooms.p3.utils.JwtUtil;
+
+import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Loads the keys signing and verifying the JWTs from the keyset file named by
+ * the "auth.jwt.keyset-file" property, so that every instance of the
+ * application accepts the tokens issued by the others, and across restarts.
+ *
+ * The file is checked every "auth.jwt.keyset-reload-interval" and reloaded when
+ * it changes, so that keys can be rotated without restarting: add the new key,
+ * make it active, then remove the previous one once its tokens have expired. A
+ * file that cannot be read is logged and the current keys are kept.
+ *
+ * Without keyset file, a random key only known to this instance is used.
+ */
+@Component
+public class JwtKeySetLoader {
+    private static final Logger logger = LoggerFactory.getLogger(JwtKeySetLoader.class);
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${auth.jwt.keyset-file:}")
+    private String keySetFile;
+
+    private FileTime loadedLastModifiedTime;
+
+    /**
+     * Content of the keyset file.
+     *
+     * @param active_kid The ID of the key signing the new tokens.
+     * @param keys       The keys, the active one and the verification-only ones.
+     */
+    private record KeySetFile(String active_kid, List<KeyEntry> keys) {
+    }
+
+    /**
+     * Key of the keyset file.
+     *
+     * @param kid    The ID of the key, sent in the "kid" header of the tokens.
+     * @param secret The Base64 encoded key, of at least 64 bytes.
+     */
+    private record KeyEntry(String kid, String secret) {
+    }
+
+    /**
+     * Loads the keyset before the first request is served, failing the startup if
+     * the configured file is invalid.
+     *
+     * @throws IOException if the keyset file cannot be read.
+     */
+    @PostConstruct
+    public void loadKeySet() throws IOException {
+        if (keySetFile.isBlank()) {
+            logger.warn("No JWT keyset file configured, tokens are signed by a random key only known to this instance");
+            return;
+        }
+
+        reloadKeySet();
+    }
+
+    /**
+     * Reloads the keyset if its file changed since it was last loaded.
+     */
+    @Scheduled(fixedDelayString = "${auth.jwt.keyset-reload-interval:PT1M}",
+            initialDelayString = "${auth.jwt.keyset-reload-interval:PT1M}")
+    public void reloadKeySetIfModified() {
+        if (keySetFile.isBlank()) {
+            return;
+        }
+
+        try {
+            Boolean isModified = !Files.getLastModifiedTime(Path.of(keySetFile)).equals(loadedLastModifiedTime);
+            if (isModified) {
+                reloadKeySet();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Unable to reload the JWT keyset file {}, keeping the current keys", keySetFile, e);
+        }
+    }
+
+    /**
+     * Reads the keyset file and replaces the keys of the JwtUtil.
+     *
+     * @throws IOException if the keyset file cannot be read.
+     */
+    private synchronized void reloadKeySet() throws IOException {
+        Path keySetPath = Path.of(keySetFile);
+        FileTime lastModifiedTime = Files.getLastModifiedTime(keySetPath);
+
+        JwtKeySet keySet = parseKeySet(objectMapper.readValue(keySetPath.toFile(), KeySetFile.class));
+        JwtUtil.setKeySet(keySet);
+        loadedLastModifiedTime = lastModifiedTime;
+
+        logger.info("JWT keyset loaded from {} with {} keys, signing with {}", keySetFile, keySet.keys().size(),
+                keySet.activeKeyId());
+    }
+
+    /**
+     * Decodes the keys of the keyset file.
+     *
+     * @param keySetFileContent The content of the keyset file.
+     * @return The keyset.
+     * @throws IllegalArgumentException if a key is missing, too short or
+     *                                  duplicated.
+     */
+    private static JwtKeySet parseKeySet(KeySetFile keySetFileContent) {
+        Boolean keySetIsEmpty = keySetFileContent.keys() == null || keySetFileContent.keys().isEmpty();
+        if (keySetIsEmpty) {
+            throw new IllegalArgumentException("The JWT keyset holds no key");
+        }
+
+        Map<String, Key> keys = new HashMap<>();
+        for (KeyEntry keyEntry : keySetFileContent.keys()) {
+            Boolean keyIsMissing = keyEntry.kid() == null || keyEntry.secret() == null;
+            if (keyIsMissing) {
+                throw new IllegalArgumentException("Every JWT key needs a kid and a secret");
+            }
+
+            byte[] secret = Base64.getDecoder().decode(keyEntry.secret());
+            Boolean keyIsTooShort = secret.length < JwtKeySet.MIN_KEY_LENGTH;
+            if (keyIsTooShort) {
+                throw new IllegalArgumentException("The JWT key " + keyEntry.kid() + " must be at least "
+                        + JwtKeySet.MIN_KEY_LENGTH + " bytes long");
+            }
+
+            Boolean keyIsDuplicated = keys.put(keyEntry.kid(), Keys.hmacShaKeyFor(secret)) != null;
+            if (keyIsDuplicated) {
+                throw new IllegalArgumentException("The JWT key " + keyEntry.kid() + " is defined twice");
+            }
+        }
+
+        return new JwtKeySet(keySetFileContent.active_kid(), keys);
+    }
+}
@@ -0,0 +1,68 @@
+package com.openclassrooms.p3.security;
+
+import java.time.Duration;
+import java.util.Locale;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.openclassrooms.p3.utils.TokenBucketLimiter;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Limits the login attempts per email and per IP address, so that a flood of
+ * wrong passwords cannot keep every core busy verifying BCrypt hashes.
+ *
+ * Each email and each IP address has a token bucket; an attempt takes a token
+ * from both, and is refused, before the user is looked up, when either is
+ * empty. The buckets of the IP addresses are larger, many users possibly
+ * sharing the same address. It can be disabled with the
+ * "auth.login-throttle.enabled" property.
+ */
+@Component
+@ConditionalOnProperty(name = "auth.login-throttle.enabled", havingValue = "true", matchIfMissing = true)
+public class LoginThrottle {
+
+    @Value("${auth.login-throttle.email.capacity:5}")
+    private int emailCapacity;
+
+    @Value("${auth.login-throttle.email.refill-period:PT1M}")
+    private Duration emailRefillPeriod;
+
+    @Value("${auth.login-throttle.ip.capacity:20}")
+    private int ipCapacity;
+
+    @Value("${auth.login-throttle.ip.refill-period:PT3S}")
+    private Duration ipRefillPeriod;
+
+    /**
+     * Maximum number of emails, and of IP addresses, tracked.
+     */
+    @Value("${auth.login-throttle.maximum-size:100000}")
+    private long maximumSize;
+
+    private TokenBucketLimiter emailLimiter;
+
+    private TokenBucketLimiter ipLimiter;
+
+    @PostConstruct
+    public void createLimiters() {
+        emailLimiter = new TokenBucketLimiter(emailCapacity, emailRefillPeriod, maximumSize);
+        ipLimiter = new TokenBucketLimiter(ipCapacity, ipRefillPeriod, maximumSize);
+    }
+
+    /**
+     * Records a login attempt.
+     *
+     * @param email     The email of the attempt.
+     * @param ipAddress The IP address of the client.
+     * @return True if the attempt is allowed; false if too many were made.
+     */
+    public boolean tryAcquire(String email, String ipAddress) {
+        // The email bucket is left untouched by the attempts refused per IP address
+        return ipLimiter.tryAcquire(ipAddress)
+                && emailLimiter.tryAcquire(email.trim().toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,67 @@
+package com.openclassrooms.p3.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.stereotype.Component;
+
+import com.openclassrooms.p3.service.TokenRevocationService;
+
+/**
+ * Actuator endpoint letting the administrators revoke every JWT of a user,
+ * e.g. a compromised account: {@code POST /actuator/tokens/{userId}}.
+ * {@code GET /actuator/tokens} counts the revocations in force.
+ *
+ * Revoking requires the JWT of an administrator, listed by the
+ * "auth.admin-user-ids" property, and counting an authenticated user. Like the
+ * other actuator endpoints, it should also only be exposed on the management
+ * port, which is not reachable from the outside.
+ */
+@Component
+@Endpoint(id = "tokens")
+public class TokenRevocationEndpoint {
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    /**
+     * Revocations in force.
+     *
+     * @param revoked_tokens The number of tokens revoked alone which have not
+     *                       expired.
+     * @param revoked_users  The number of users whose tokens were all revoked
+     *                       during the last token validity period.
+     */
+    public record TokenRevocations(long revoked_tokens, long revoked_users) {
+    }
+
+    /**
+     * Counts the revocations in force.
+     *
+     * @return The revocations in force.
+     */
+    @ReadOperation
+    public TokenRevocations getRevocations() {
+        return new TokenRevocations(tokenRevocationService.getRevokedTokenCount(),
+                tokenRevocationService.getRevokedUserCount());
+    }
+
+    /**
+     * Revokes every token issued so far to a user.
+     *
+     * @param userId The ID of the user.
+     * @return An empty response, with a 404 status if the user does not exist.
+     */
+    @WriteOperation
+    public WebEndpointResponse<Void> revokeUserTokens(@Selector Long userId) {
+        Boolean userNotFound = !tokenRevocationService.revokeUserTokens(userId);
+        if (userNotFound) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+
+        return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NO_CONTENT);
+    }
+}
@@ -0,0 +1,405 @@
+package com.openclassrooms.p3.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.openclassrooms.p3.exception.GlobalExceptionHandler;
+import com.openclassrooms.p3.model.IdempotencyKey;
+import com.openclassrooms.p3.model.IdempotentResponse;
+import com.openclassrooms.p3.repository.IdempotencyKeyRepository;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Service handling the requests made with an "Idempotency-Key" header only
+ * once: the retries of a request get its first response, and the duplicates
+ * arriving while it is handled wait for it instead of running it again.
+ *
+ * Keys are scoped by route and user, and remembered for
+ * "idempotency.time-to-live" in a bounded in-memory store. When
+ * "idempotency.database.enabled" is true, they are also claimed in the
+ * "idempotency_keys" table, so that the instances sharing it coalesce their
+ * duplicates, a claim left without response for longer than
+ * "idempotency.wait-timeout" being taken over by the next retry. Responses
+ * with a 5xx status are not remembered, the request
+ * being run again by its next retry. It can be disabled with the
+ * "idempotency.enabled" property.
+ */
+@Service
+@ConditionalOnProperty(name = "idempotency.enabled", havingValue = "true", matchIfMissing = true)
+public class IdempotencyService {
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+
+    /**
+     * Header carrying the key chosen by the client for a request and its retries.
+     */
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    /**
+     * Header added to the responses returned again to a retry.
+     */
+    public static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    /**
+     * Time between two reads of a key claimed by another instance.
+     */
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Value("${idempotency.time-to-live:24h}")
+    private Duration timeToLive;
+
+    @Value("${idempotency.maximum-size:100000}")
+    private long maximumSize;
+
+    /**
+     * Longest wait for the response of a duplicate being handled, before
+     * answering 409, and age after which a claim without response is taken over.
+     */
+    @Value("${idempotency.wait-timeout:30s}")
+    private Duration waitTimeout;
+
+    @Value("${idempotency.database.enabled:false}")
+    private boolean isDatabaseEnabled;
+
+    /**
+     * Key hash -> first request made with the key.
+     */
+    private Cache<String, IdempotentRequest> requests;
+
+    /**
+     * First request made with a key, whose response is completed once handled.
+     *
+     * @param fingerprint The fingerprint of the payload of the request.
+     * @param response    The response of the request.
+     */
+    private record IdempotentRequest(String fingerprint, CompletableFuture<IdempotentResponse> response) {
+    }
+
+    /**
+     * Claim of a key in the table, or the response of the request which claimed
+     * it first.
+     *
+     * @param claimedAt      The time at which the key was claimed, null if it
+     *                       was not.
+     * @param storedResponse The response of the first request, null if the key
+     *                       was claimed.
+     */
+    private record KeyClaim(LocalDateTime claimedAt, IdempotentResponse storedResponse) {
+    }
+
+    @PostConstruct
+    public void createStore() {
+        requests = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .build();
+    }
+
+    /**
+     * Deletes the expired keys from the table.
+     */
+    @Scheduled(fixedDelayString = "${idempotency.database.purge-interval:PT1H}")
+    public void purgeExpiredKeys() {
+        if (!isDatabaseEnabled) {
+            return;
+        }
+
+        try {
+            int deletedCount = idempotencyKeyRepository.deleteExpired(LocalDateTime.now());
+            logger.debug("{} expired idempotency keys deleted", deletedCount);
+        } catch (DataAccessException e) {
+            logger.error("Unable to delete the expired idempotency keys", e);
+        }
+    }
+
+    /**
+     * Handles a request made with an idempotency key: runs it if the key is new,
+     * or returns the response of the first request made with the key, waiting
+     * for it if needed.
+     *
+     * @param route          The route of the request, scoping the key.
+     * @param userId         The ID of the authenticated user, scoping the key.
+     * @param idempotencyKey The key sent by the client.
+     * @param fingerprint    The fingerprint of the payload of the request.
+     * @param action         Handles the request.
+     * @return The response of the request, or the one of the first request.
+     * @throws ApiException with a 400 status if the key is blank or too long, a
+     *                      422 status if the key was used with another payload,
+     *                      or a 409 status if the first request is still being
+     *                      handled after the wait timeout.
+     */
+    public ResponseEntity<?> execute(String route, Long userId, String idempotencyKey, String fingerprint,
+            Supplier<ResponseEntity<?>> action) {
+        Boolean keyIsInvalid = idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH;
+        if (keyIsInvalid) {
+            GlobalExceptionHandler.handleLogicError("Bad request", HttpStatus.BAD_REQUEST);
+        }
+
+        String keyHash = fingerprint(route, userId, idempotencyKey);
+        IdempotentRequest request = new IdempotentRequest(fingerprint, new CompletableFuture<>());
+
+        IdempotentRequest firstRequest = requests.asMap().putIfAbsent(keyHash, request);
+        if (firstRequest != null) {
+            checkFingerprint(firstRequest.fingerprint(), fingerprint);
+            return replay(awaitResponse(firstRequest.response()));
+        }
+
+        return handleFirstRequest(keyHash, request, action);
+    }
+
+    /**
+     * Computes the fingerprint of the payload of a request.
+     *
+     * @param values The values of the payload.
+     * @return The SHA-256 of the values, in hexadecimal.
+     */
+    public static String fingerprint(Object... values) {
+        StringJoiner rawValues = new StringJoiner("|");
+        for (Object value : values) {
+            rawValues.add(String.valueOf(value));
+        }
+
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(messageDigest.digest(rawValues.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of a content, such as an uploaded file, reading it
+     * once without keeping it in memory.
+     *
+     * @param content The content.
+     * @return The SHA-256 of the content, in hexadecimal.
+     * @throws IOException if the content cannot be read.
+     */
+    public static String fingerprintContent(InputStream content) throws IOException {
+        try (DigestInputStream digestInputStream = new DigestInputStream(content,
+                MessageDigest.getInstance("SHA-256"))) {
+            digestInputStream.transferTo(OutputStream.nullOutputStream());
+            return HexFormat.of().formatHex(digestInputStream.getMessageDigest().digest());
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Runs the first request made with a key on this instance, unless another
+     * instance already handled it, then remembers its response.
+     *
+     * @param keyHash The hash of the key.
+     * @param request The request.
+     * @param action  Handles the request.
+     * @return The response of the request.
+     */
+    private ResponseEntity<?> handleFirstRequest(String keyHash, IdempotentRequest request,
+            Supplier<ResponseEntity<?>> action) {
+        LocalDateTime claimedAt = null;
+        try {
+            if (isDatabaseEnabled) {
+                KeyClaim keyClaim = claimKey(keyHash, request.fingerprint());
+                if (keyClaim.storedResponse() != null) {
+                    request.response().complete(keyClaim.storedResponse());
+                    return replay(keyClaim.storedResponse());
+                }
+                claimedAt = keyClaim.claimedAt();
+            }
+
+            ResponseEntity<?> response = action.get();
+            IdempotentResponse idempotentResponse = new IdempotentResponse(response.getStatusCode().value(),
+                    toJson(response.getBody()));
+
+            Boolean isClaimed = claimedAt != null;
+            Boolean isServerError = response.getStatusCode().is5xxServerError();
+            if (isServerError) {
+                // Forgotten so that the next retry runs the request again
+                requests.asMap().remove(keyHash, request);
+                if (isClaimed) {
+                    idempotencyKeyRepository.releaseClaim(keyHash, claimedAt);
+                }
+            } else if (isClaimed) {
+                int savedCount = idempotencyKeyRepository.saveResponse(keyHash, claimedAt,
+                        idempotentResponse.statusCode(), idempotentResponse.body());
+                if (savedCount == 0) {
+                    logger.warn("Idempotency key {} taken over by another request before its response", keyHash);
+                }
+            }
+
+            request.response().complete(idempotentResponse);
+            return response;
+        } catch (RuntimeException e) {
+            requests.asMap().remove(keyHash, request);
+            if (claimedAt != null) {
+                idempotencyKeyRepository.releaseClaim(keyHash, claimedAt);
+            }
+
+            request.response().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Claims a key in the table, or waits for the response of the instance which
+     * claimed it first. A claim left without response for longer than the wait
+     * timeout, its instance having presumably died, is taken over.
+     *
+     * @param keyHash     The hash of the key.
+     * @param fingerprint The fingerprint of the payload of the request.
+     * @return The claim of the key, the request then having to be handled; or
+     *         the response of the first request.
+     */
+    private KeyClaim claimKey(String keyHash, String fingerprint) {
+        long deadline = System.nanoTime() + waitTimeout.toNanos();
+
+        while (true) {
+            // Truncated so that the claim reads back the same from a TIMESTAMP column
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+            idempotencyKeyRepository.deleteIfExpired(keyHash, now);
+            try {
+                idempotencyKeyRepository.insertKey(keyHash, fingerprint, now, now.plus(timeToLive));
+                return new KeyClaim(now, null);
+            } catch (DataIntegrityViolationException e) {
+                // Claimed by another request
+            }
+
+            Optional<IdempotencyKey> optionalKey = idempotencyKeyRepository.findById(keyHash);
+            if (optionalKey.isPresent()) {
+                IdempotencyKey idempotencyKey = optionalKey.get();
+                checkFingerprint(idempotencyKey.getFingerprint(), fingerprint);
+
+                Boolean isHandled = idempotencyKey.getStatusCode() != null;
+                if (isHandled) {
+                    return new KeyClaim(null,
+                            new IdempotentResponse(idempotencyKey.getStatusCode(), idempotencyKey.getResponseBody()));
+                }
+
+                Boolean isTakenOver = idempotencyKeyRepository.takeOverClaim(keyHash, now.minus(waitTimeout),
+                        now) == 1;
+                if (isTakenOver) {
+                    logger.warn("Idempotency key {} claimed since {} without response, taken over", keyHash,
+                            idempotencyKey.getClaimedAt());
+                    return new KeyClaim(now, null);
+                }
+            }
+
+            Boolean isWaitOver = System.nanoTime() - deadline > 0;
+            if (isWaitOver) {
+                GlobalExceptionHandler.handleLogicError("Conflict", HttpStatus.CONFLICT);
+            }
+            sleep(POLL_INTERVAL);
+        }
+    }
+
+    /**
+     * Waits for the response of the first request made with a key.
+     *
+     * @param response The response of the first request.
+     * @return The response.
+     */
+    private IdempotentResponse awaitResponse(CompletableFuture<IdempotentResponse> response) {
+        try {
+            return response.get(waitTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            GlobalExceptionHandler.handleLogicError("Conflict", HttpStatus.CONFLICT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            GlobalExceptionHandler.handleLogicError("Service unavailable", HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (ExecutionException e) {
+            // The first request failed, its retries get the same error
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+
+        return null;
+    }
+
+    /**
+     * Rejects a key reused with another payload.
+     *
+     * @param firstFingerprint The fingerprint of the first request.
+     * @param fingerprint      The fingerprint of the retried request.
+     */
+    private void checkFingerprint(String firstFingerprint, String fingerprint) {
+        Boolean hasOtherPayload = !firstFingerprint.equals(fingerprint);
+        if (hasOtherPayload) {
+            GlobalExceptionHandler.handleLogicError("Unprocessable entity", HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+    }
+
+    /**
+     * Builds the response returned again to a retry.
+     *
+     * @param response The response of the first request.
+     * @return The response, flagged with the "Idempotent-Replayed" header.
+     */
+    private static ResponseEntity<String> replay(IdempotentResponse response) {
+        return ResponseEntity.status(response.statusCode())
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(IDEMPOTENT_REPLAYED_HEADER, "true")
+                .body(response.body());
+    }
+
+    private String toJson(Object body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            GlobalExceptionHandler.handleLogicError("Service unavailable", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+}
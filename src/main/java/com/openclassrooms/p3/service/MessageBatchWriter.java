@@ -0,0 +1,348 @@
+package com.openclassrooms.p3.service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.openclassrooms.p3.exception.GlobalExceptionHandler;
+import com.openclassrooms.p3.payload.request.MessageRequest;
+import com.openclassrooms.p3.payload.response.MessageResponse;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Write-behind writer of the messages: validated messages are queued, then
+ * inserted by a background thread in JDBC batches of
+ * "messages.write-behind.batch-size" rows, or of the messages queued during
+ * "messages.write-behind.flush-interval", whichever comes first.
+ *
+ * The queue is bounded: when it is full, a message waits for at most
+ * "messages.write-behind.enqueue-timeout", then is rejected with a 503 error.
+ * The queued messages are written when the application stops.
+ *
+ * A batch rejected by a constraint, e.g. a rental deleted in the meantime, is
+ * written row by row to only drop the faulty messages; other failures are
+ * retried before the batch is dropped. Acknowledged messages are thus lost if
+ * the database stays unreachable, or if the process is killed.
+ *
+ * Published metrics: messages.write-behind.queue.size, the batch size as
+ * messages.write-behind.batch.size, the time between acknowledgement and
+ * insert as messages.write-behind.lag, and the messages.write-behind.rejected
+ * and messages.write-behind.dropped counters.
+ */
+@Service
+@ConditionalOnProperty(name = "messages.write-behind.enabled", havingValue = "true")
+public class MessageBatchWriter {
+    private static final Logger logger = LoggerFactory.getLogger(MessageBatchWriter.class);
+
+    private static final String INSERT_MESSAGE_SQL = "INSERT INTO messages (user_id, rental_id, message, created_at, updated_at) VALUES (?, ?, ?, ?, ?)";
+
+    /**
+     * Number of attempts to write a batch while the database is unreachable.
+     */
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired(required = false)
+    private MessageStreamService messageStreamService;
+
+    @Autowired(required = false)
+    private MessageCounterService messageCounterService;
+
+    @Value("${messages.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${messages.write-behind.batch-size:500}")
+    private int batchSize;
+
+    @Value("${messages.write-behind.flush-interval:200ms}")
+    private Duration flushInterval;
+
+    @Value("${messages.write-behind.enqueue-timeout:100ms}")
+    private Duration enqueueTimeout;
+
+    @Value("${messages.write-behind.shutdown-timeout:30s}")
+    private Duration shutdownTimeout;
+
+    private BlockingQueue<QueuedMessage> queue;
+
+    private Thread writerThread;
+
+    private volatile boolean isRunning;
+
+    private DistributionSummary batchSizeSummary;
+
+    private Timer lagTimer;
+
+    private Counter rejectedCounter;
+
+    private Counter droppedCounter;
+
+    /**
+     * Message acknowledged but not written yet.
+     *
+     * @param request      The validated message request.
+     * @param ownerId      The ID of the owner of the rental of the message.
+     * @param createdAt    The creation time of the message.
+     * @param queuedAtNano The time the message was queued, in nanoseconds.
+     */
+    private record QueuedMessage(MessageRequest request, Long ownerId, LocalDateTime createdAt, long queuedAtNano) {
+    }
+
+    /**
+     * Starts the writer thread and registers the metrics.
+     */
+    @PostConstruct
+    public void startWriter() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("messages.write-behind.queue.size", queue, BlockingQueue::size).register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("messages.write-behind.batch.size").register(meterRegistry);
+        lagTimer = Timer.builder("messages.write-behind.lag").register(meterRegistry);
+        rejectedCounter = Counter.builder("messages.write-behind.rejected").register(meterRegistry);
+        droppedCounter = Counter.builder("messages.write-behind.dropped").register(meterRegistry);
+
+        isRunning = true;
+        writerThread = Thread.ofPlatform().name("message-writer").start(this::writeQueuedMessages);
+    }
+
+    /**
+     * Stops accepting messages and waits for the queued ones to be written.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @PreDestroy
+    public void stopWriter() throws InterruptedException {
+        isRunning = false;
+
+        Boolean isStopped = writerThread.join(shutdownTimeout);
+        if (!isStopped) {
+            logger.error("{} queued messages not written after {}", queue.size(), shutdownTimeout);
+        }
+    }
+
+    /**
+     * Queues a validated message, waiting for room in the queue if it is full.
+     *
+     * @param request The validated message request.
+     * @param ownerId The ID of the owner of the rental of the message.
+     * @throws ApiException with a 503 status if the queue stays full, the
+     *                      application is stopping or the request thread is
+     *                      interrupted.
+     */
+    public void queueMessage(MessageRequest request, Long ownerId) {
+        QueuedMessage queuedMessage = new QueuedMessage(request, ownerId, LocalDateTime.now(), System.nanoTime());
+
+        Boolean isQueued = isRunning && offer(queuedMessage);
+        if (!isQueued) {
+            rejectedCounter.increment();
+            GlobalExceptionHandler.handleLogicError("Service unavailable", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * Appends a message to the queue, waiting at most the enqueue timeout.
+     *
+     * @param queuedMessage The message to queue.
+     * @return True if the message was queued; false otherwise.
+     */
+    private boolean offer(QueuedMessage queuedMessage) {
+        try {
+            return queue.offer(queuedMessage, enqueueTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Writes the queued messages by batches until the writer is stopped and the
+     * queue is empty.
+     */
+    private void writeQueuedMessages() {
+        List<QueuedMessage> batch = new ArrayList<>(batchSize);
+
+        while (isRunning || !queue.isEmpty()) {
+            try {
+                fillBatch(batch);
+                if (!batch.isEmpty()) {
+                    writeBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Message writer interrupted, {} queued messages not written", queue.size());
+                return;
+            } catch (RuntimeException e) {
+                droppedCounter.increment(batch.size());
+                logger.error("Unable to write a batch of {} messages, dropping them", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Waits for a first message, then takes the messages queued until the batch
+     * is full or the flush interval has elapsed.
+     *
+     * @param batch The batch to fill.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void fillBatch(List<QueuedMessage> batch) throws InterruptedException {
+        QueuedMessage firstMessage = queue.poll(flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+        if (firstMessage == null) {
+            return;
+        }
+        batch.add(firstMessage);
+
+        long flushDeadline = System.nanoTime() + flushInterval.toNanos();
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+
+            long remainingNanos = flushDeadline - System.nanoTime();
+            // Once stopping, the remaining messages are written at once
+            Boolean isFlushDue = batch.size() >= batchSize || remainingNanos <= 0 || !isRunning;
+            if (isFlushDue) {
+                return;
+            }
+
+            QueuedMessage nextMessage = queue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+            if (nextMessage == null) {
+                return;
+            }
+            batch.add(nextMessage);
+        }
+    }
+
+    /**
+     * Inserts a batch of messages, retrying while the database is unreachable.
+     *
+     * @param batch The messages to insert.
+     * @throws InterruptedException if interrupted between two attempts.
+     */
+    private void writeBatch(List<QueuedMessage> batch) throws InterruptedException {
+        for (int attempt = 1;; attempt++) {
+            try {
+                // A failed batch is rolled back as a whole, so that it can be written again
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_MESSAGE_SQL,
+                        batch.stream().map(MessageBatchWriter::toRow).toList()));
+                recordWrittenMessages(batch);
+                return;
+            } catch (DataIntegrityViolationException e) {
+                writeRowByRow(batch);
+                return;
+            } catch (DataAccessException e) {
+                Boolean hasAttemptsLeft = attempt < MAX_WRITE_ATTEMPTS && isRunning;
+                if (!hasAttemptsLeft) {
+                    throw e;
+                }
+                logger.warn("Unable to write a batch of {} messages, retrying", batch.size(), e);
+                Thread.sleep(RETRY_DELAY.toMillis());
+            }
+        }
+    }
+
+    /**
+     * Inserts the messages of a batch one by one, dropping the ones rejected by a
+     * constraint. If another failure stops the inserts, the messages already
+     * written are recorded and removed from the batch, so that only the others
+     * are counted as dropped.
+     *
+     * @param batch The messages to insert.
+     */
+    private void writeRowByRow(List<QueuedMessage> batch) {
+        List<QueuedMessage> writtenMessages = new ArrayList<>(batch.size());
+        int handledCount = 0;
+        try {
+            for (QueuedMessage queuedMessage : batch) {
+                try {
+                    jdbcTemplate.update(INSERT_MESSAGE_SQL, toRow(queuedMessage));
+                    writtenMessages.add(queuedMessage);
+                } catch (DataIntegrityViolationException e) {
+                    droppedCounter.increment();
+                    logger.error("Message of user {} on rental {} rejected by the database, dropping it",
+                            queuedMessage.request().user_id(), queuedMessage.request().rental_id(), e);
+                }
+                handledCount++;
+            }
+        } catch (RuntimeException e) {
+            batch.subList(0, handledCount).clear();
+            throw e;
+        } finally {
+            recordWrittenMessages(writtenMessages);
+        }
+    }
+
+    /**
+     * Records the size of a written batch and the lag of its messages, then counts
+     * them as unread and sends them to the streams of the owners of their rentals.
+     *
+     * @param writtenMessages The messages actually inserted.
+     */
+    private void recordWrittenMessages(List<QueuedMessage> writtenMessages) {
+        batchSizeSummary.record(writtenMessages.size());
+
+        long now = System.nanoTime();
+        for (QueuedMessage queuedMessage : writtenMessages) {
+            lagTimer.record(now - queuedMessage.queuedAtNano(), TimeUnit.NANOSECONDS);
+
+            MessageRequest request = queuedMessage.request();
+            if (messageCounterService != null) {
+                messageCounterService.countMessage(queuedMessage.ownerId(), request.rental_id(), request.user_id());
+            }
+
+            if (messageStreamService != null) {
+                // The IDs generated by a batch insert are not read back
+                messageStreamService.publish(queuedMessage.ownerId(), new MessageResponse(null, request.rental_id(),
+                        request.user_id(), request.message(), queuedMessage.createdAt(), queuedMessage.createdAt()));
+            }
+        }
+    }
+
+    /**
+     * Converts a queued message to the parameters of the insert.
+     *
+     * @param queuedMessage The queued message.
+     * @return The values of the user_id, rental_id, message, created_at and
+     *         updated_at columns.
+     */
+    private static Object[] toRow(QueuedMessage queuedMessage) {
+        Timestamp createdAt = Timestamp.valueOf(queuedMessage.createdAt());
+        MessageRequest request = queuedMessage.request();
+
+        return new Object[] { request.user_id(), request.rental_id(), request.message(), createdAt, createdAt };
+    }
+}
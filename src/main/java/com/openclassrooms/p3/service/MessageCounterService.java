@@ -0,0 +1,388 @@
+package com.openclassrooms.p3.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.openclassrooms.p3.event.RentalChangedEvent;
+import com.openclassrooms.p3.payload.response.MessageUnreadResponse;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Service counting the messages the owners have not read yet, by rental and in
+ * total, so that their badges are read without counting the messages.
+ *
+ * Each counter holds the count last read from the "message_counters" table
+ * and the changes made since by this instance, in a LongAdder which spreads
+ * concurrent increments over cells rather than contending on one value. The
+ * changes are written to the table every
+ * "messages.unread-counters.flush-interval" as deltas, so that the instances
+ * sharing the table add up their counts. The counts are read from the table
+ * when the application starts, then every
+ * "messages.unread-counters.reload-interval", so that each instance sees the
+ * messages counted and read on the other ones. The changes not written yet are
+ * lost if the process is killed. It can be disabled with the
+ * "messages.unread-counters.enabled" property.
+ */
+@Service
+@ConditionalOnProperty(name = "messages.unread-counters.enabled", havingValue = "true", matchIfMissing = true)
+public class MessageCounterService {
+    private static final Logger logger = LoggerFactory.getLogger(MessageCounterService.class);
+
+    private static final String SELECT_COUNTERS_SQL = "SELECT rental_id, owner_id, unread_count FROM message_counters";
+
+    private static final String UPDATE_COUNTER_SQL = "UPDATE message_counters SET unread_count = GREATEST(unread_count + ?, 0) WHERE rental_id = ?";
+
+    private static final String INSERT_COUNTER_SQL = "INSERT INTO message_counters (rental_id, owner_id, unread_count) VALUES (?, ?, ?)";
+
+    private static final String DELETE_COUNTER_SQL = "DELETE FROM message_counters WHERE rental_id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Rental ID -> counter of the rental.
+     */
+    private final Map<Long, RentalCounter> countersByRental = new ConcurrentHashMap<>();
+
+    /**
+     * Owner ID -> counters of the rentals of the owner.
+     */
+    private final Map<Long, OwnerCounters> countersByOwner = new ConcurrentHashMap<>();
+
+    /**
+     * Counters changed since the last flush.
+     */
+    private final Set<RentalCounter> unflushedCounters = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Unread messages of an owner, by rental.
+     */
+    private static final class OwnerCounters {
+
+        private final Map<Long, RentalCounter> rentalCounters = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Unread messages of a rental: the count read from the table, plus the
+     * changes of this instance not written to it yet.
+     */
+    private static final class RentalCounter {
+
+        private final Long rentalId;
+
+        private final Long ownerId;
+
+        private final OwnerCounters ownerCounters;
+
+        /**
+         * Count of the table at the last reload, plus the changes of this instance
+         * written since. Only changed by the flushes and the reloads, which are
+         * serialized.
+         */
+        private volatile long storedCount = 0;
+
+        private final LongAdder unflushedDelta = new LongAdder();
+
+        /**
+         * Whether the rental was deleted, its pending changes then being dropped.
+         */
+        private volatile boolean isRemoved = false;
+
+        RentalCounter(Long rentalId, Long ownerId, OwnerCounters ownerCounters) {
+            this.rentalId = rentalId;
+            this.ownerId = ownerId;
+            this.ownerCounters = ownerCounters;
+        }
+
+        long getUnreadCount() {
+            return storedCount + unflushedDelta.sum();
+        }
+    }
+
+    /**
+     * Change of a counter being written to the table.
+     *
+     * @param counter The changed counter.
+     * @param delta   The change of its count since the last flush.
+     */
+    private record CounterDelta(RentalCounter counter, long delta) {
+    }
+
+    /**
+     * Registers the metrics.
+     */
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("messages.unread-counters.unflushed", unflushedCounters, Set::size).register(meterRegistry);
+    }
+
+    /**
+     * Loads the counters from the table once the application is started. The
+     * messages counted in the meantime are kept, the table not holding them yet.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadCounters() {
+        long startTime = System.nanoTime();
+
+        reloadCounters();
+
+        logger.info("Unread message counters of {} rentals loaded in {} ms", countersByRental.size(),
+                (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    /**
+     * Writes the changes of the counters, then reads the counts of every rental
+     * back from the table, which holds the changes written by the other instances
+     * too. The changes made meanwhile are kept, the table not holding them yet.
+     */
+    @Scheduled(fixedDelayString = "${messages.unread-counters.reload-interval:PT30S}",
+            initialDelayString = "${messages.unread-counters.reload-interval:PT30S}")
+    public synchronized void reloadCounters() {
+        flushCounters();
+
+        Set<RentalCounter> storedCounters = new HashSet<>();
+        try {
+            jdbcTemplate.query(SELECT_COUNTERS_SQL, resultSet -> {
+                RentalCounter counter = getCounter(resultSet.getLong("owner_id"), resultSet.getLong("rental_id"));
+                counter.storedCount = resultSet.getLong("unread_count");
+                storedCounters.add(counter);
+            });
+        } catch (DataAccessException e) {
+            logger.warn("Unable to reload the unread message counters, retrying at the next reload", e);
+            return;
+        }
+
+        // The rows of the rentals deleted by the other instances are gone
+        countersByRental.values().stream()
+                .filter(counter -> !storedCounters.contains(counter))
+                .forEach(counter -> counter.storedCount = 0);
+    }
+
+    /**
+     * Writes the changes of the counters before the application stops.
+     */
+    @PreDestroy
+    public void flushBeforeShutdown() {
+        flushCounters();
+    }
+
+    /**
+     * Counts a new message as unread by the owner of its rental, unless the owner
+     * sent it.
+     *
+     * @param ownerId  The ID of the owner of the rental of the message.
+     * @param rentalId The ID of the rental of the message.
+     * @param senderId The ID of the user who sent the message.
+     */
+    public void countMessage(Long ownerId, Long rentalId, Long senderId) {
+        Boolean isSentByOwner = ownerId.equals(senderId);
+        if (isSentByOwner) {
+            return;
+        }
+
+        addToCount(getCounter(ownerId, rentalId), 1);
+    }
+
+    /**
+     * Marks the messages of a rental as read by its owner.
+     *
+     * @param rentalId The ID of the rental.
+     */
+    public void markRead(Long rentalId) {
+        RentalCounter counter = countersByRental.get(rentalId);
+        if (counter == null) {
+            return;
+        }
+
+        // Serialized so that two marks do not both subtract the same count, the new
+        // messages counted meanwhile being kept
+        synchronized (counter) {
+            long unreadCount = counter.getUnreadCount();
+            if (unreadCount != 0) {
+                addToCount(counter, -unreadCount);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of unread messages of an owner, in total and by rental.
+     *
+     * @param ownerId The ID of the owner.
+     * @return The total and the counts of the rentals having unread messages.
+     */
+    public MessageUnreadResponse getUnreadMessages(Long ownerId) {
+        OwnerCounters ownerCounters = countersByOwner.get(ownerId);
+        if (ownerCounters == null) {
+            return new MessageUnreadResponse(0L, Map.of());
+        }
+
+        long totalUnreadCount = 0;
+        Map<Long, Long> rentalUnreadCounts = new TreeMap<>();
+        for (RentalCounter counter : ownerCounters.rentalCounters.values()) {
+            long unreadCount = counter.getUnreadCount();
+            if (unreadCount > 0) {
+                totalUnreadCount += unreadCount;
+                rentalUnreadCounts.put(counter.rentalId, unreadCount);
+            }
+        }
+
+        return new MessageUnreadResponse(totalUnreadCount, rentalUnreadCounts);
+    }
+
+    /**
+     * Forgets the counter of a deleted rental once its deletion is committed.
+     *
+     * @param event The change made to a rental.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRentalChanged(RentalChangedEvent event) {
+        if (!event.isDeletion()) {
+            return;
+        }
+
+        RentalCounter counter = countersByRental.remove(event.rentalId());
+        if (counter == null) {
+            return;
+        }
+
+        counter.isRemoved = true;
+        counter.ownerCounters.rentalCounters.remove(event.rentalId());
+
+        jdbcTemplate.update(DELETE_COUNTER_SQL, event.rentalId());
+    }
+
+    /**
+     * Writes the changes of the counters to the table, as deltas added to the
+     * stored counts. Changes failing to be written are kept for the next flush.
+     */
+    @Scheduled(fixedDelayString = "${messages.unread-counters.flush-interval:PT5S}")
+    public synchronized void flushCounters() {
+        List<CounterDelta> deltas = new ArrayList<>();
+        for (RentalCounter counter : unflushedCounters) {
+            // Removed before reading the delta, so that a concurrent change marks it again
+            unflushedCounters.remove(counter);
+
+            long delta = counter.unflushedDelta.sumThenReset();
+            counter.storedCount += delta;
+
+            Boolean hasDelta = delta != 0 && !counter.isRemoved;
+            if (hasDelta) {
+                deltas.add(new CounterDelta(counter, delta));
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        int[] updateCounts;
+        try {
+            updateCounts = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(UPDATE_COUNTER_SQL,
+                    deltas.stream().map(delta -> new Object[] { delta.delta(), delta.counter().rentalId }).toList()));
+        } catch (DataAccessException e) {
+            logger.warn("Unable to write {} unread message counters, retrying at the next flush", deltas.size(), e);
+            deltas.forEach(this::restoreDelta);
+            return;
+        }
+
+        for (int i = 0; i < deltas.size(); i++) {
+            Boolean hasNoRow = updateCounts[i] == 0;
+            if (hasNoRow) {
+                insertCounter(deltas.get(i));
+            }
+        }
+    }
+
+    /**
+     * Inserts the row of a counter missing from the table.
+     *
+     * @param counterDelta The change of the counter since the last flush.
+     */
+    private void insertCounter(CounterDelta counterDelta) {
+        RentalCounter counter = counterDelta.counter();
+        try {
+            jdbcTemplate.update(INSERT_COUNTER_SQL, counter.rentalId, counter.ownerId,
+                    Math.max(counterDelta.delta(), 0));
+        } catch (DuplicateKeyException e) {
+            // Inserted by another instance in the meantime
+            jdbcTemplate.update(UPDATE_COUNTER_SQL, counterDelta.delta(), counter.rentalId);
+        } catch (DataIntegrityViolationException e) {
+            logger.debug("Rental {} deleted, dropping its unread message counter", counter.rentalId);
+        } catch (DataAccessException e) {
+            logger.warn("Unable to write the unread message counter of rental {}, retrying at the next flush",
+                    counter.rentalId, e);
+            restoreDelta(counterDelta);
+        }
+    }
+
+    /**
+     * Gets the counter of a rental, creating it if needed.
+     *
+     * @param ownerId  The ID of the owner of the rental.
+     * @param rentalId The ID of the rental.
+     * @return The counter of the rental.
+     */
+    private RentalCounter getCounter(Long ownerId, Long rentalId) {
+        return countersByRental.computeIfAbsent(rentalId, id -> {
+            OwnerCounters ownerCounters = countersByOwner.computeIfAbsent(ownerId, key -> new OwnerCounters());
+            RentalCounter counter = new RentalCounter(id, ownerId, ownerCounters);
+            ownerCounters.rentalCounters.put(id, counter);
+
+            return counter;
+        });
+    }
+
+    /**
+     * Adds to the count of a rental, to be written at the next flush.
+     *
+     * @param counter The counter of the rental.
+     * @param delta   The number of messages to add, negative to subtract.
+     */
+    private void addToCount(RentalCounter counter, long delta) {
+        // Marked after the delta is added, so that a concurrent flush cannot miss it
+        counter.unflushedDelta.add(delta);
+        unflushedCounters.add(counter);
+    }
+
+    /**
+     * Puts back a change which failed to be written, for the next flush.
+     *
+     * @param counterDelta The change of the counter.
+     */
+    private void restoreDelta(CounterDelta counterDelta) {
+        RentalCounter counter = counterDelta.counter();
+        counter.storedCount -= counterDelta.delta();
+        counter.unflushedDelta.add(counterDelta.delta());
+        unflushedCounters.add(counter);
+    }
+}
@@ -2,11 +2,15 @@ package com.openclassrooms.p3.service;
 
 import com.openclassrooms.p3.model.Message;
 import com.openclassrooms.p3.payload.request.MessageRequest;
+import com.openclassrooms.p3.payload.response.MessageResponse;
 import com.openclassrooms.p3.repository.MessageRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 import lombok.Data;
@@ -21,6 +25,15 @@ public class MessageService {
     @Autowired
     private MessageRepository messageRepository;
 
+    @Autowired(required = false)
+    private MessageBatchWriter messageBatchWriter;
+
+    @Autowired(required = false)
+    private MessageStreamService messageStreamService;
+
+    @Autowired(required = false)
+    private MessageCounterService messageCounterService;
+
     /**
      * Retrieve a message by its unique identifier.
      *
@@ -40,6 +53,50 @@ public class MessageService {
         return messageRepository.findAll();
     }
 
+    /**
+     * Retrieve a page of the messages of a rental, ordered by creation date then
+     * ID.
+     *
+     * @param rentalId  The identifier of the rental.
+     * @param createdAt The creation date of the last message of the previous page,
+     *                  or null for the first page.
+     * @param id        The identifier of the last message of the previous page, or
+     *                  null for the first page.
+     * @param limit     The maximum number of messages to retrieve.
+     * @return List of at most {@code limit} message responses.
+     */
+    public List<MessageResponse> getRentalMessages(final Long rentalId, final LocalDateTime createdAt,
+            final Long id, final int limit) {
+        Pageable pageable = PageRequest.of(0, limit);
+
+        Boolean isFirstPage = createdAt == null || id == null;
+        return isFirstPage ? messageRepository.findRentalPage(rentalId, pageable)
+                : messageRepository.findRentalPageAfter(rentalId, createdAt, id, pageable);
+    }
+
+    /**
+     * Retrieve a page of the messages sent about the rentals of an owner, ordered
+     * by rental, creation date then ID.
+     *
+     * @param ownerId   The identifier of the owner of the rentals.
+     * @param rentalId  The rental identifier of the last message of the previous
+     *                  page, or null for the first page.
+     * @param createdAt The creation date of the last message of the previous page,
+     *                  or null for the first page.
+     * @param id        The identifier of the last message of the previous page, or
+     *                  null for the first page.
+     * @param limit     The maximum number of messages to retrieve.
+     * @return List of at most {@code limit} message responses.
+     */
+    public List<MessageResponse> getInboxMessages(final Long ownerId, final Long rentalId,
+            final LocalDateTime createdAt, final Long id, final int limit) {
+        Pageable pageable = PageRequest.of(0, limit);
+
+        Boolean isFirstPage = rentalId == null || createdAt == null || id == null;
+        return isFirstPage ? messageRepository.findInboxPage(ownerId, pageable)
+                : messageRepository.findInboxPageAfter(ownerId, rentalId, createdAt, id, pageable);
+    }
+
     /**
      * Delete a message by its unique identifier.
      *
@@ -50,12 +107,14 @@ public class MessageService {
     }
 
     /**
-     * Save or update a message.
+     * Save a message, then count it as unread and send it to the streams of the
+     * owner of its rental.
      *
-     * @param message The message to be saved or updated.
-     * @return The saved or updated message.
+     * @param message The message to be saved.
+     * @param ownerId The identifier of the owner of the rental of the message.
+     * @return The saved message.
      */
-    public Message saveMessage(MessageRequest message) {
+    public Message saveMessage(MessageRequest message, Long ownerId) {
         Message newMessage = new Message();
 
         LocalDateTime currentTime = LocalDateTime.now();
@@ -66,6 +125,55 @@ public class MessageService {
         newMessage.setCreatedAt(currentTime);
         newMessage.setUpdatedAt(currentTime);
 
-        return messageRepository.save(newMessage);
+        Message savedMessage = messageRepository.save(newMessage);
+        if (messageCounterService != null) {
+            messageCounterService.countMessage(ownerId, savedMessage.getRentalId(), savedMessage.getUserId());
+        }
+        publishMessage(ownerId, toResponse(savedMessage));
+
+        return savedMessage;
+    }
+
+    /**
+     * Send a saved message to the streams of the owner of its rental, if the
+     * streams are enabled.
+     *
+     * @param ownerId The identifier of the owner of the rental of the message.
+     * @param message The response of the message.
+     */
+    private void publishMessage(Long ownerId, MessageResponse message) {
+        if (messageStreamService != null) {
+            messageStreamService.publish(ownerId, message);
+        }
+    }
+
+    /**
+     * Queue a message for the write-behind writer if it is enabled, or save it
+     * right away otherwise.
+     *
+     * @param message The message to be saved.
+     * @param ownerId The identifier of the owner of the rental of the message.
+     * @return True if the message was queued; false if it was saved.
+     * @throws ApiException with a 503 status if the write-behind queue is full.
+     */
+    public boolean queueOrSaveMessage(MessageRequest message, Long ownerId) {
+        if (messageBatchWriter == null) {
+            saveMessage(message, ownerId);
+            return false;
+        }
+
+        messageBatchWriter.queueMessage(message, ownerId);
+        return true;
+    }
+
+    /**
+     * Convert a message to its response.
+     *
+     * @param message The message.
+     * @return The response of the message.
+     */
+    private static MessageResponse toResponse(Message message) {
+        return new MessageResponse(message.getId(), message.getRentalId(), message.getUserId(), message.getMessage(),
+                message.getCreatedAt(), message.getUpdatedAt());
     }
 }
@@ -0,0 +1,112 @@
+package com.openclassrooms.p3.service;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.openclassrooms.p3.payload.response.MessageResponse;
+import com.openclassrooms.p3.utils.MessageStreamHub;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Service delivering the new messages to the owners of the rentals in real
+ * time, over Server-Sent Events, so that they do not poll the inbox.
+ *
+ * Streams are served asynchronously and written by virtual threads, only while
+ * they have events to send: idle streams hold no thread. Each stream buffers at
+ * most "messages.stream.buffer-size" events and is closed when its client falls
+ * behind. It can be disabled with the "messages.stream.enabled" property.
+ */
+@Service
+@ConditionalOnProperty(name = "messages.stream.enabled", havingValue = "true", matchIfMissing = true)
+public class MessageStreamService {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${messages.stream.buffer-size:32}")
+    private int bufferSize;
+
+    /**
+     * Time after which a stream is closed, the client then reconnecting.
+     */
+    @Value("${messages.stream.timeout:30m}")
+    private Duration streamTimeout;
+
+    private ExecutorService senderExecutor;
+
+    private MessageStreamHub hub;
+
+    /**
+     * Creates the hub and registers its metrics.
+     */
+    @PostConstruct
+    public void createHub() {
+        senderExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("message-stream-", 0).factory());
+
+        Timer deliveryTimer = Timer.builder("messages.stream.delivery").register(meterRegistry);
+        hub = new MessageStreamHub(bufferSize, senderExecutor,
+                deliveryNanos -> deliveryTimer.record(deliveryNanos, TimeUnit.NANOSECONDS));
+
+        Gauge.builder("messages.stream.subscribers", hub, MessageStreamHub::subscriberCount).register(meterRegistry);
+        FunctionCounter.builder("messages.stream.evicted", hub, MessageStreamHub::evictedCount).register(meterRegistry);
+    }
+
+    /**
+     * Closes the streams and waits for the pending writes.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @PreDestroy
+    public void closeHub() throws InterruptedException {
+        hub.closeAll();
+
+        senderExecutor.shutdown();
+        senderExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Opens the stream of the messages sent about the rentals of an owner.
+     *
+     * @param ownerId The ID of the owner.
+     * @return The emitter of the stream.
+     */
+    public SseEmitter subscribe(Long ownerId) {
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        hub.subscribe(ownerId, emitter);
+
+        return emitter;
+    }
+
+    /**
+     * Sends a new message to the streams of the owner of its rental.
+     *
+     * @param ownerId The ID of the owner of the rental.
+     * @param message The message.
+     */
+    public void publish(Long ownerId, MessageResponse message) {
+        hub.publish(ownerId, message);
+    }
+
+    /**
+     * Sends a heartbeat to every stream.
+     */
+    @Scheduled(fixedDelayString = "${messages.stream.heartbeat-interval:PT30S}")
+    public void sendHeartbeat() {
+        hub.sendHeartbeat();
+    }
+}
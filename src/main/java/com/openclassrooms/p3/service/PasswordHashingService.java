@@ -0,0 +1,145 @@
+package com.openclassrooms.p3.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import com.openclassrooms.p3.exception.GlobalExceptionHandler;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Service hashing and verifying the passwords with BCrypt.
+ *
+ * A BCrypt hash keeps a core busy for tens of milliseconds, so hashes are
+ * computed by a dedicated pool of one thread per core, in front of a bounded
+ * queue. When the queue is full, the request is rejected at once with a 503
+ * error instead of piling up and starving the other endpoints; the request
+ * threads never wait for a hash.
+ *
+ * The queue depth is published as the executor.* metrics of the
+ * "passwordHashing" executor, the time spent hashing as the
+ * auth.password.hashing timer, and the rejected requests as the
+ * auth.password.hashing.rejected counter.
+ */
+@Service
+public class PasswordHashingService {
+
+    private static final String EXECUTOR_NAME = "passwordHashing";
+
+    private static final String HASHING_TIMER = "auth.password.hashing";
+
+    @Autowired
+    private BCryptPasswordEncoder passwordEncoder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Number of hashing threads, one per core when 0.
+     */
+    @Value("${auth.password.hashing.threads:0}")
+    private int threads;
+
+    @Value("${auth.password.hashing.queue-capacity:64}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    private Timer encodeTimer;
+
+    private Timer matchesTimer;
+
+    private Counter rejectedCounter;
+
+    /**
+     * Starts the hashing threads and registers their metrics.
+     */
+    @PostConstruct
+    public void startExecutor() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("password-hashing-", 0).daemon(true).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        new ExecutorServiceMetrics(executor, EXECUTOR_NAME, Tags.empty()).bindTo(meterRegistry);
+        encodeTimer = Timer.builder(HASHING_TIMER).tag("operation", "encode").register(meterRegistry);
+        matchesTimer = Timer.builder(HASHING_TIMER).tag("operation", "matches").register(meterRegistry);
+        rejectedCounter = Counter.builder(HASHING_TIMER + ".rejected").register(meterRegistry);
+    }
+
+    /**
+     * Stops the hashing threads once the queued hashes are done.
+     */
+    @PreDestroy
+    public void stopExecutor() {
+        executor.shutdown();
+    }
+
+    /**
+     * Hashes a password with the configured cost.
+     *
+     * @param password The raw password.
+     * @return The hash of the password, completed by a hashing thread.
+     * @throws ApiException with a 503 status if the hashing queue is full.
+     */
+    public CompletableFuture<String> encode(String password) {
+        return submit(() -> encodeTimer.record(() -> passwordEncoder.encode(password)));
+    }
+
+    /**
+     * Verifies a password against its stored hash.
+     *
+     * @param password       The raw password.
+     * @param hashedPassword The stored hash.
+     * @return True if the password matches, completed by a hashing thread.
+     * @throws ApiException with a 503 status if the hashing queue is full.
+     */
+    public CompletableFuture<Boolean> matches(String password, String hashedPassword) {
+        return submit(() -> matchesTimer.record(() -> passwordEncoder.matches(password, hashedPassword)));
+    }
+
+    /**
+     * Checks if a stored hash was computed with a lower cost than the configured
+     * one, and should be computed again.
+     *
+     * @param hashedPassword The stored hash.
+     * @return True if the password should be hashed again; false otherwise.
+     */
+    public boolean needsRehash(String hashedPassword) {
+        return passwordEncoder.upgradeEncoding(hashedPassword);
+    }
+
+    /**
+     * Queues a hash, rejecting it at once if the queue is full.
+     *
+     * @param hash The hash to compute.
+     * @return The result of the hash.
+     */
+    private <T> CompletableFuture<T> submit(Supplier<T> hash) {
+        try {
+            return CompletableFuture.supplyAsync(hash, executor);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            GlobalExceptionHandler.handleLogicError("Service unavailable", HttpStatus.SERVICE_UNAVAILABLE);
+            return null;
+        }
+    }
+}
@@ -1,14 +1,50 @@
 package com.openclassrooms.p3.service;
 
+import com.openclassrooms.p3.configuration.CacheConfig;
+import com.openclassrooms.p3.event.RentalChangedEvent;
+import com.openclassrooms.p3.index.RentalColumnarCatalog;
+import com.openclassrooms.p3.index.RentalRangeIndex;
+import com.openclassrooms.p3.mapper.RentalMapper;
 import com.openclassrooms.p3.model.Rental;
+import com.openclassrooms.p3.model.RentalCatalogStats;
+import com.openclassrooms.p3.model.RentalCatalogVersion;
+import com.openclassrooms.p3.model.RentalChangeSet;
+import com.openclassrooms.p3.model.RentalFilter;
+import com.openclassrooms.p3.model.RentalSort;
+import com.openclassrooms.p3.model.RentalTombstone;
 import com.openclassrooms.p3.payload.request.RentalUpdateRequest;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
 import com.openclassrooms.p3.repository.RentalRepository;
+import com.openclassrooms.p3.repository.RentalSpecifications;
+import com.openclassrooms.p3.repository.RentalTombstoneRepository;
+import org.hibernate.Session;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import lombok.Data;
 
 /**
@@ -18,12 +54,75 @@ import lombok.Data;
 @Service
 public class RentalService {
 
+    /**
+     * Upper bound of the number of inserts sent in a single JDBC batch.
+     */
+    private static final int MAX_JDBC_BATCH_SIZE = 100;
+
     @Autowired
     private RentalRepository rentalRepository;
 
+    @Autowired
+    private RentalTombstoneRepository rentalTombstoneRepository;
+
     @Autowired
     private S3Service s3Service;
 
+    @Autowired
+    private RentalMapper rentalMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${rentals.import.chunk-size:500}")
+    private int importChunkSize;
+
+    /**
+     * Absent when the in-memory range index is disabled.
+     */
+    @Autowired(required = false)
+    private RentalRangeIndex rentalRangeIndex;
+
+    /**
+     * Absent when the columnar catalog is disabled.
+     */
+    @Autowired(required = false)
+    private RentalColumnarCatalog rentalColumnarCatalog;
+
+    /**
+     * Checks at startup that the `id_generators` row allocating the rental IDs
+     * exists and starts after the existing rentals, the IDs it allocates
+     * colliding with them otherwise.
+     *
+     * @throws IllegalStateException if the row is missing or behind the highest
+     *                               rental ID.
+     */
+    @PostConstruct
+    public void checkIdGenerator() {
+        Optional<Long> nextIdValue = rentalRepository.findNextIdValue();
+        Long maxId = rentalRepository.findMaxId();
+
+        // The IDs of the block read next start after next_val - ID_ALLOCATION_SIZE
+        Boolean isBehind = nextIdValue.isPresent() && maxId != null
+                && nextIdValue.get() - Rental.ID_ALLOCATION_SIZE < maxId;
+        Boolean isMissing = nextIdValue.isEmpty();
+        if (isMissing || isBehind) {
+            throw new IllegalStateException("The 'rentals' row of the id_generators table is "
+                    + (isMissing ? "missing" : "behind the highest rental ID " + maxId)
+                    + ", set its next_val to at least MAX(id) + " + (Rental.ID_ALLOCATION_SIZE + 1)
+                    + " of the rentals table");
+        }
+    }
+
     /**
      * Retrieve a rental by its unique identifier.
      *
@@ -35,21 +134,247 @@ public class RentalService {
     }
 
     /**
-     * Retrieve all rentals.
+     * Retrieve the response of a rental by its unique identifier, without loading
+     * the rental entity.
+     *
+     * Responses are cached, concurrent misses on the same rental are loaded once
+     * and every write evicts the rental once the write is committed.
+     *
+     * @param id The identifier of the rental.
+     * @return An Optional containing the rental response if found, or empty if not.
+     */
+    @Cacheable(cacheNames = CacheConfig.RENTALS_CACHE, key = "#id", sync = true)
+    public Optional<RentalSingleResponse> getRentalResponse(final Long id) {
+        return rentalRepository.findResponseById(id);
+    }
+
+    /**
+     * Retrieve the responses of the rentals with the given IDs, in the order of
+     * the IDs. Cached responses are reused and the other ones are read in a single
+     * query.
+     *
+     * @param ids The identifiers of the rentals.
+     * @return List of the responses of the rentals which still exist.
+     */
+    public List<RentalSingleResponse> getRentalResponses(final List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        Cache rentalsCache = cacheManager.getCache(CacheConfig.RENTALS_CACHE);
+
+        Map<Long, RentalSingleResponse> rentalsById = new HashMap<>();
+        List<Long> uncachedIds = new ArrayList<>();
+        for (Long id : ids) {
+            RentalSingleResponse cachedRental = rentalsCache == null ? null
+                    : rentalsCache.get(id, RentalSingleResponse.class);
+            if (cachedRental != null) {
+                rentalsById.put(id, cachedRental);
+            } else {
+                uncachedIds.add(id);
+            }
+        }
+
+        if (!uncachedIds.isEmpty()) {
+            rentalRepository.findResponsesByIdIn(uncachedIds).forEach(rental -> rentalsById.put(rental.id(), rental));
+        }
+
+        return ids.stream().map(rentalsById::get).filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * Retrieve the version of the catalog, which changes whenever a rental is
+     * created, updated or deleted.
+     *
+     * @return The most recent update time and the number of rentals.
+     */
+    public RentalCatalogVersion getCatalogVersion() {
+        return rentalRepository.findCatalogVersion();
+    }
+
+    /**
+     * Retrieve a page of rentals falling within the ranges of a filter, in the
+     * given order, starting right after the given keyset.
+     *
+     * Filters ordered by creation date are answered by the columnar catalog, and
+     * orders on the price or the surface by the range index, when they are
+     * enabled: only the rentals of the page are then read from the database. The
+     * other listings are answered by indexed queries. Rentals without a value
+     * for the sorted attribute are listed last, by a second query once the
+     * rentals having one are exhausted.
+     *
+     * @param filter    The price and surface ranges.
+     * @param sort      The order of the rentals.
+     * @param sortValue The sorted value of the last rental of the previous page,
+     *                  null for the first page or if that rental has none.
+     * @param id        The ID of the last rental of the previous page, or null to
+     *                  retrieve the first page.
+     * @param limit     The maximum number of rentals to retrieve.
+     * @return List of at most {@code limit} rental responses.
+     */
+    public List<RentalSingleResponse> getRentals(final RentalFilter filter, final RentalSort sort,
+            final Comparable<?> sortValue, final Long id, final int limit) {
+        Boolean isFirstPage = id == null;
+
+        Boolean isInColumnarCatalog = rentalColumnarCatalog != null && rentalColumnarCatalog.canAnswer(filter, sort);
+        if (isInColumnarCatalog) {
+            return getRentalResponses(rentalColumnarCatalog.getSnapshot().findPage(filter, (LocalDateTime) sortValue,
+                    id, limit));
+        }
+
+        Boolean isIndexed = rentalRangeIndex != null && rentalRangeIndex.canAnswer(filter, sort);
+        if (isIndexed) {
+            return getRentalResponses(rentalRangeIndex.findPage(filter, sort, sortValue, id, limit));
+        }
+
+        Pageable pageable = PageRequest.of(0, limit);
+
+        Boolean isWholeCatalog = filter.isEmpty() && sort == RentalSort.CREATED_AT;
+        if (isWholeCatalog) {
+            return isFirstPage ? rentalRepository.findFirstPage(pageable)
+                    : rentalRepository.findPageAfter((LocalDateTime) sortValue, id, pageable);
+        }
+
+        // The rentals with a sorted value and those without are read apart, so that
+        // both queries walk the index of the sorted attribute
+        List<RentalSingleResponse> rentals = new ArrayList<>(limit);
+        Boolean isKeysetWithoutSortValue = !isFirstPage && sortValue == null;
+        if (!isKeysetWithoutSortValue) {
+            Specification<Rental> specification = RentalSpecifications.matches(filter)
+                    .and(RentalSpecifications.hasSortValue(sort));
+            if (!isFirstPage) {
+                specification = specification.and(RentalSpecifications.isAfter(sort, sortValue, id));
+            }
+
+            rentals.addAll(rentalRepository.findResponses(specification, sort, limit));
+        }
+
+        Boolean mayListRentalsWithoutSortValue = rentals.size() < limit && sort.isNullable()
+                && !sort.isBoundedBy(filter);
+        if (mayListRentalsWithoutSortValue) {
+            Specification<Rental> specification = RentalSpecifications.matches(filter)
+                    .and(RentalSpecifications.hasNoSortValue(sort));
+            if (isKeysetWithoutSortValue) {
+                specification = specification.and(RentalSpecifications.isAfter(sort, null, id));
+            }
+
+            rentals.addAll(rentalRepository.findResponses(specification, sort, limit - rentals.size()));
+        }
+
+        return rentals;
+    }
+
+    /**
+     * Retrieve the aggregates of the rentals falling within the ranges of a
+     * filter, computed from the columnar catalog when it is enabled, or by a
+     * single aggregate query otherwise.
+     *
+     * @param filter The price and surface ranges.
+     * @return The count, price and surface aggregates of the matching rentals.
+     */
+    public RentalCatalogStats getRentalStats(final RentalFilter filter) {
+        Boolean isInColumnarCatalog = rentalColumnarCatalog != null && rentalColumnarCatalog.isBuilt();
+        if (isInColumnarCatalog) {
+            return rentalColumnarCatalog.getSnapshot().getStats(filter);
+        }
+
+        return rentalRepository.findStats(RentalSpecifications.matches(filter));
+    }
+
+    /**
+     * Retrieve a page of the changes made to the catalog after the given keyset:
+     * rentals created or updated, and rentals deleted, merged by change time then
+     * rental ID.
      *
-     * @return Iterable collection of all rentals.
+     * @param changedAt The change time of the keyset: the last change of the
+     *                  previous page, or the synchronization time of the client
+     *                  for the first page.
+     * @param rentalId  The rental ID of the last change of the previous page, or
+     *                  null for the first page.
+     * @param limit     The maximum number of changes to retrieve.
+     * @return The page of changes.
      */
-    public Iterable<Rental> getRentals() {
-        return rentalRepository.findAll();
+    public RentalChangeSet getRentalChanges(final LocalDateTime changedAt, final Long rentalId, final int limit) {
+        // Every change made at the synchronization time itself is already known by the
+        // client
+        Long keysetRentalId = rentalId == null ? Long.MAX_VALUE : rentalId;
+        Pageable pageable = PageRequest.of(0, limit + 1);
+
+        List<RentalSingleResponse> updatedRentals = rentalRepository.findUpdatedAfter(changedAt, keysetRentalId,
+                pageable);
+        List<RentalTombstone> tombstones = rentalTombstoneRepository.findPageAfter(changedAt, keysetRentalId,
+                pageable);
+
+        List<RentalSingleResponse> pageRentals = new ArrayList<>();
+        List<RentalTombstone> pageTombstones = new ArrayList<>();
+        LocalDateTime lastChangedAt = null;
+        Long lastRentalId = null;
+
+        int rentalIndex = 0;
+        int tombstoneIndex = 0;
+        while (pageRentals.size() + pageTombstones.size() < limit
+                && (rentalIndex < updatedRentals.size() || tombstoneIndex < tombstones.size())) {
+            RentalSingleResponse rental = rentalIndex < updatedRentals.size() ? updatedRentals.get(rentalIndex) : null;
+            RentalTombstone tombstone = tombstoneIndex < tombstones.size() ? tombstones.get(tombstoneIndex) : null;
+
+            Boolean isRentalNext = tombstone == null || (rental != null
+                    && compareChanges(rental.updated_at(), rental.id(), tombstone.getDeletedAt(),
+                            tombstone.getRentalId()) < 0);
+            if (isRentalNext) {
+                pageRentals.add(rental);
+                lastChangedAt = rental.updated_at();
+                lastRentalId = rental.id();
+                rentalIndex++;
+            } else {
+                pageTombstones.add(tombstone);
+                lastChangedAt = tombstone.getDeletedAt();
+                lastRentalId = tombstone.getRentalId();
+                tombstoneIndex++;
+            }
+        }
+
+        Boolean hasMore = rentalIndex < updatedRentals.size() || tombstoneIndex < tombstones.size();
+
+        return new RentalChangeSet(pageRentals, pageTombstones, lastChangedAt, lastRentalId, hasMore);
     }
 
     /**
-     * Delete a rental by its unique identifier.
+     * Streams the whole catalog to the given consumer, one rental at a time.
+     *
+     * Rentals are read as responses which are not managed by the persistence
+     * context, so the memory used stays constant whatever the size of the catalog.
+     *
+     * @param rentalConsumer The consumer called for each rental response.
+     */
+    @Transactional(readOnly = true)
+    public void streamRentals(Consumer<RentalSingleResponse> rentalConsumer) {
+        try (Stream<RentalSingleResponse> rentals = rentalRepository.streamAll()) {
+            rentals.forEach(rentalConsumer);
+        }
+    }
+
+    /**
+     * Delete a rental by its unique identifier, leaving a tombstone so that
+     * synchronizing clients learn about the deletion. Nothing is recorded if
+     * there is no rental with this identifier.
      *
      * @param id The identifier of the rental to be deleted.
      */
+    @Transactional
+    @CacheEvict(cacheNames = CacheConfig.RENTALS_CACHE, key = "#id")
     public void deleteRental(final Long id) {
-        rentalRepository.deleteById(id);
+        Boolean isDeleted = rentalRepository.deleteRentalById(id) > 0;
+        if (!isDeleted) {
+            return;
+        }
+
+        RentalTombstone tombstone = new RentalTombstone();
+        tombstone.setRentalId(id);
+        tombstone.setDeletedAt(LocalDateTime.now());
+
+        rentalTombstoneRepository.save(tombstone);
+
+        eventPublisher.publishEvent(new RentalChangedEvent(id, null));
     }
 
     /**
@@ -58,23 +383,53 @@ public class RentalService {
      * @param rentalUpdateRequest The rental request containing details.
      * @return The saved or updated rental.
      */
+    @CacheEvict(cacheNames = CacheConfig.RENTALS_CACHE, key = "#result.id")
     public Rental saveRental(RentalUpdateRequest rentalUpdateRequest) {
-        Rental rental = new Rental();
+        Rental rental = newRental(rentalUpdateRequest, LocalDateTime.now());
 
-        // Populate rental object with data from rentalUpdateRequest
-        rental.setName(rentalUpdateRequest.name());
-        rental.setSurface(rentalUpdateRequest.surface());
-        rental.setPrice(rentalUpdateRequest.price());
-        rental.setPicture(rentalUpdateRequest.picture());
-        rental.setDescription(rentalUpdateRequest.description());
+        Rental savedRental = rentalRepository.save(rental);
+        eventPublisher.publishEvent(new RentalChangedEvent(savedRental.getId(), rentalMapper.toDtoRental(savedRental)));
 
-        rental.setOwnerId(rentalUpdateRequest.owner_id());
+        return savedRental;
+    }
 
-        LocalDateTime currentTime = LocalDateTime.now();
-        rental.setCreatedAt(currentTime);
-        rental.setUpdatedAt(currentTime);
+    /**
+     * Creates many rentals at once, in transactions of
+     * {@code rentals.import.chunk-size} rentals whose inserts are sent to the
+     * database in JDBC batches. Each chunk is committed on its own, so a failure
+     * keeps the rentals of the previous chunks.
+     *
+     * @param rentalUpdateRequests The rental requests containing details.
+     * @return The IDs of the created rentals, in the order of the requests.
+     */
+    public List<Long> importRentals(List<RentalUpdateRequest> rentalUpdateRequests) {
+        List<Long> importedIds = new ArrayList<>(rentalUpdateRequests.size());
 
-        return rentalRepository.save(rental);
+        for (int chunkStart = 0; chunkStart < rentalUpdateRequests.size(); chunkStart += importChunkSize) {
+            List<RentalUpdateRequest> chunk = rentalUpdateRequests.subList(chunkStart,
+                    Math.min(chunkStart + importChunkSize, rentalUpdateRequests.size()));
+
+            transactionTemplate.executeWithoutResult(status -> {
+                entityManager.unwrap(Session.class).setJdbcBatchSize(Math.min(importChunkSize, MAX_JDBC_BATCH_SIZE));
+
+                LocalDateTime currentTime = LocalDateTime.now();
+                List<Rental> rentals = chunk.stream().map(request -> newRental(request, currentTime)).toList();
+
+                List<Rental> savedRentals = rentalRepository.saveAll(rentals);
+                rentalRepository.flush();
+
+                for (Rental savedRental : savedRentals) {
+                    importedIds.add(savedRental.getId());
+                    eventPublisher.publishEvent(
+                            new RentalChangedEvent(savedRental.getId(), rentalMapper.toDtoRental(savedRental)));
+                }
+
+                // The rentals are not read again, keep the persistence context small
+                entityManager.clear();
+            });
+        }
+
+        return importedIds;
     }
 
     /**
@@ -86,6 +441,7 @@ public class RentalService {
      *                  rental.
      * @return The updated rental object.
      */
+    @CacheEvict(cacheNames = CacheConfig.RENTALS_CACHE, key = "#oldRental.id")
     public Rental updateRental(Rental oldRental, RentalUpdateRequest newRental) {
         Rental existingRental = new Rental();
 
@@ -103,6 +459,51 @@ public class RentalService {
         LocalDateTime currentTime = LocalDateTime.now();
         existingRental.setUpdatedAt(currentTime);
 
-        return rentalRepository.save(existingRental);
+        Rental savedRental = rentalRepository.save(existingRental);
+        eventPublisher.publishEvent(new RentalChangedEvent(savedRental.getId(), rentalMapper.toDtoRental(savedRental)));
+
+        return savedRental;
+    }
+
+    /**
+     * Creates a new rental from a rental request.
+     *
+     * @param rentalUpdateRequest The rental request containing details.
+     * @param currentTime         The creation time of the rental.
+     * @return The rental, not saved yet.
+     */
+    private static Rental newRental(RentalUpdateRequest rentalUpdateRequest, LocalDateTime currentTime) {
+        Rental rental = new Rental();
+
+        // Populate rental object with data from rentalUpdateRequest
+        rental.setName(rentalUpdateRequest.name());
+        rental.setSurface(rentalUpdateRequest.surface());
+        rental.setPrice(rentalUpdateRequest.price());
+        rental.setPicture(rentalUpdateRequest.picture());
+        rental.setDescription(rentalUpdateRequest.description());
+
+        rental.setOwnerId(rentalUpdateRequest.owner_id());
+
+        rental.setCreatedAt(currentTime);
+        rental.setUpdatedAt(currentTime);
+
+        return rental;
+    }
+
+    /**
+     * Compares two changes of the catalog by change time then rental ID.
+     *
+     * @param firstChangedAt  The change time of the first change.
+     * @param firstRentalId   The rental ID of the first change.
+     * @param secondChangedAt The change time of the second change.
+     * @param secondRentalId  The rental ID of the second change.
+     * @return A negative number if the first change comes first, a positive number
+     *         otherwise.
+     */
+    private static int compareChanges(LocalDateTime firstChangedAt, Long firstRentalId,
+            LocalDateTime secondChangedAt, Long secondRentalId) {
+        int changedAtComparison = firstChangedAt.compareTo(secondChangedAt);
+
+        return changedAtComparison != 0 ? changedAtComparison : firstRentalId.compareTo(secondRentalId);
     }
 }
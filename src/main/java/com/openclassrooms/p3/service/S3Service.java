@@ -1,11 +1,10 @@
 package com.openclassrooms.p3.service;
 
-import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.core.sync.RequestBody;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -17,21 +16,17 @@ import java.net.URL;
 
 import java.util.UUID;
 
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-
 /**
  * The `S3Service` class is a service class that provides a method for uploading
  * files to an Amazon S3 bucket.
- * It uses the AWS SDK for Java version 2.x to interact with the S3 service.
+ * It uses the AWS SDK for Java version 2.x to interact with the S3 service,
+ * through the client shared by the uploads created by the S3Config.
  */
 @Service
 public class S3Service {
 
-    @Value("${aws.s3.accessKey}")
-    private String accessKeyId;
-
-    @Value("${aws.s3.secretKey}")
-    private String secretKey;
+    @Autowired
+    private S3Client s3Client;
 
     @Value("${aws.s3.bucket-name}")
     private String bucketName;
@@ -45,13 +40,6 @@ public class S3Service {
      */
     public String uploadFile(MultipartFile file, String path) {
         try {
-            // Create an instance of the S3 client
-            S3Client s3Client = S3Client.builder()
-                    .region(Region.EU_NORTH_1)
-                    .credentialsProvider(
-                            StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKeyId, secretKey)))
-                    .build();
-
             String fileName = file.getOriginalFilename();
 
             // Determine the full key (path + filename)
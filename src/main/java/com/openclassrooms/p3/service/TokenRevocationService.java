@@ -0,0 +1,187 @@
+package com.openclassrooms.p3.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.openclassrooms.p3.model.RevokedToken;
+import com.openclassrooms.p3.model.UserTokenVersion;
+import com.openclassrooms.p3.repository.RevokedTokenRepository;
+import com.openclassrooms.p3.repository.UserRepository;
+import com.openclassrooms.p3.utils.JwtUtil;
+import com.openclassrooms.p3.utils.JwtUtil.VerifiedToken;
+import com.openclassrooms.p3.utils.TokenRevocationList;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Service revoking the JWTs, alone (logout) or along with every token of their
+ * user (logout of all sessions), without querying the database to check them.
+ *
+ * Revocations are saved in the revoked_tokens table and in the token version
+ * of the users, and held in a TokenRevocationList checked for each request.
+ * The revocations of the last token validity period are loaded before the
+ * first request is served, then the ones made by the other instances are
+ * reloaded every "auth.revocation.reload-interval".
+ */
+@Service
+public class TokenRevocationService {
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationService.class);
+
+    /**
+     * Margin for the revocations of the other instances committed after the last
+     * reload started, or timed by a clock slightly behind.
+     */
+    private static final Duration RELOAD_OVERLAP = Duration.ofMinutes(1);
+
+    @Autowired
+    private RevokedTokenRepository revokedTokenRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private final TokenRevocationList revocationList = new TokenRevocationList();
+
+    private LocalDateTime lastReloadedAt;
+
+    /**
+     * Loads the revocations of the tokens which may not have expired yet.
+     */
+    @PostConstruct
+    public void loadRevocations() {
+        LocalDateTime now = LocalDateTime.now();
+        reloadRevocations(now.minus(JwtUtil.TOKEN_VALIDITY), now);
+
+        logger.info("Token revocations loaded: {} tokens, {} users", revocationList.revokedTokenCount(),
+                revocationList.revokedUserCount());
+    }
+
+    /**
+     * Loads the revocations made, by any instance, since the last reload.
+     */
+    @Scheduled(fixedDelayString = "${auth.revocation.reload-interval:PT30S}",
+            initialDelayString = "${auth.revocation.reload-interval:PT30S}")
+    public void reloadRecentRevocations() {
+        try {
+            reloadRevocations(lastReloadedAt.minus(RELOAD_OVERLAP), LocalDateTime.now());
+        } catch (DataAccessException e) {
+            logger.error("Unable to reload the token revocations, keeping the current ones", e);
+        }
+    }
+
+    /**
+     * Deletes the revocations of the expired tokens.
+     */
+    @Scheduled(fixedDelayString = "${auth.revocation.purge-interval:PT1H}")
+    public void purgeExpiredRevocations() {
+        try {
+            int deletedCount = revokedTokenRepository.deleteExpired(LocalDateTime.now());
+            logger.debug("{} expired token revocations deleted", deletedCount);
+        } catch (DataAccessException e) {
+            logger.error("Unable to delete the expired token revocations", e);
+        }
+    }
+
+    /**
+     * Checks if a verified token has been revoked, without querying the database.
+     *
+     * @param verifiedToken The verified token.
+     * @return True if the token is revoked; false otherwise.
+     */
+    public boolean isRevoked(VerifiedToken verifiedToken) {
+        return revocationList.isRevoked(verifiedToken.userId(), verifiedToken.tokenId(),
+                verifiedToken.tokenVersion());
+    }
+
+    /**
+     * Revokes a single token until it expires.
+     *
+     * @param userId    The ID of the user of the token.
+     * @param tokenId   The ID of the token.
+     * @param expiresAt The expiry of the token.
+     */
+    public void revokeToken(Long userId, UUID tokenId, Instant expiresAt) {
+        RevokedToken revokedToken = new RevokedToken();
+        revokedToken.setTokenId(tokenId.toString());
+        revokedToken.setUserId(userId);
+        revokedToken.setExpiresAt(LocalDateTime.ofInstant(expiresAt, ZoneId.systemDefault()));
+        revokedToken.setRevokedAt(LocalDateTime.now());
+
+        revokedTokenRepository.save(revokedToken);
+        revocationList.revokeToken(tokenId, expiresAt);
+    }
+
+    /**
+     * Revokes every token of a user issued so far, by incrementing their token
+     * version.
+     *
+     * @param userId The ID of the user.
+     * @return True if the tokens were revoked; false if the user does not exist.
+     */
+    public boolean revokeUserTokens(Long userId) {
+        Boolean userIsUpdated = userRepository.incrementTokenVersion(userId, LocalDateTime.now()) > 0;
+        if (!userIsUpdated) {
+            return false;
+        }
+
+        Optional<UserTokenVersion> optionalTokenVersion = userRepository.findTokenVersion(userId);
+        optionalTokenVersion.ifPresent(this::revokeUserTokens);
+
+        return optionalTokenVersion.isPresent();
+    }
+
+    /**
+     * Counts the revoked tokens which have not expired.
+     *
+     * @return The number of revoked tokens.
+     */
+    public long getRevokedTokenCount() {
+        return revocationList.revokedTokenCount();
+    }
+
+    /**
+     * Counts the users whose tokens were revoked during the last token validity
+     * period.
+     *
+     * @return The number of users.
+     */
+    public long getRevokedUserCount() {
+        return revocationList.revokedUserCount();
+    }
+
+    /**
+     * Reads the revocations made after a time into the revocation list.
+     *
+     * @param revokedAfter The time after which the revocations were made.
+     * @param now          The current time.
+     */
+    private synchronized void reloadRevocations(LocalDateTime revokedAfter, LocalDateTime now) {
+        revokedTokenRepository.findActiveRevokedAfter(revokedAfter, now)
+                .forEach(revokedToken -> revocationList.revokeToken(UUID.fromString(revokedToken.getTokenId()),
+                        revokedToken.getExpiresAt().atZone(ZoneId.systemDefault()).toInstant()));
+
+        userRepository.findTokenVersionsRevokedAfter(revokedAfter).forEach(this::revokeUserTokens);
+
+        lastReloadedAt = now;
+    }
+
+    /**
+     * Revokes the tokens of a user older than their current token version.
+     *
+     * @param tokenVersion The token version of the user.
+     */
+    private void revokeUserTokens(UserTokenVersion tokenVersion) {
+        revocationList.revokeUserTokens(tokenVersion.userId(), tokenVersion.tokenVersion(),
+                tokenVersion.tokensRevokedAt().atZone(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -1,14 +1,26 @@
 package com.openclassrooms.p3.service;
 
+import com.openclassrooms.p3.exception.ApiException;
+import com.openclassrooms.p3.exception.GlobalExceptionHandler;
+import com.openclassrooms.p3.index.EmailBloomFilter;
 import com.openclassrooms.p3.model.Users;
 import com.openclassrooms.p3.payload.request.AuthRegisterRequest;
 import com.openclassrooms.p3.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import lombok.Data;
 
@@ -18,12 +30,34 @@ import lombok.Data;
 @Data
 @Service
 public class UserService {
+    private static final Logger logger = LoggerFactory.getLogger(UserService.class);
 
     @Autowired
     private UserRepository userRepository;
 
     @Autowired
-    private final BCryptPasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashingService;
+
+    /**
+     * Translates the error codes of the database, to tell a duplicate email from
+     * the other integrity violations.
+     */
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Saves the users once their password is hashed, keeping the hashing threads
+     * off the database.
+     */
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private Executor taskExecutor;
+
+    /**
+     * Absent when the email filter is disabled.
+     */
+    @Autowired(required = false)
+    private EmailBloomFilter emailBloomFilter;
 
     /**
      * Retrieve a user by their unique identifier.
@@ -35,6 +69,16 @@ public class UserService {
         return userRepository.findById(id);
     }
 
+    /**
+     * Verify if a user exists, without loading it.
+     *
+     * @param id The identifier of the user.
+     * @return True if the user exists, false otherwise.
+     */
+    public boolean userExists(final Long id) {
+        return userRepository.existsById(id);
+    }
+
     /**
      * Retrieve all users.
      *
@@ -60,16 +104,27 @@ public class UserService {
      * @return The saved or updated user.
      */
     public Users saveUser(Users user) {
+        // Added before the insert, so that the new user is never reported as unknown
+        if (emailBloomFilter != null) {
+            emailBloomFilter.put(user.getEmail());
+        }
+
         return userRepository.save(user);
     }
 
     /**
-     * Retrieve a user by their email address.
+     * Retrieve a user by their email address. Emails unknown to the email filter
+     * are answered without querying the database.
      *
      * @param email The email address of the user.
      * @return An Optional containing the user if found, or empty if not.
      */
     public Optional<Users> getUserByEmail(String email) {
+        Boolean emailIsUnknown = emailBloomFilter != null && !emailBloomFilter.mightContain(email);
+        if (emailIsUnknown) {
+            return Optional.empty();
+        }
+
         return userRepository.findByEmail(email);
     }
 
@@ -87,32 +142,102 @@ public class UserService {
     /**
      * Verify if the provided password matches the stored hashed password.
      *
-     * @param user     The user for which to verify the password.
+     * The hash is verified by the password hashing threads. When it matches but
+     * was computed with a lower cost than the configured one, the password is
+     * hashed again and saved in the background.
+     *
      * @param password The password to be verified.
-     * @return True if the password matches, false otherwise.
+     * @param user     The user for which to verify the password.
+     * @return True if the password matches, false otherwise, once verified.
+     * @throws ApiException with a 503 status if the hashing queue is full.
      */
-    public boolean isPasswordValid(String password, Users user) {
-        return passwordEncoder.matches(password, user.getPassword());
+    public CompletableFuture<Boolean> isPasswordValid(String password, Users user) {
+        String hashedPassword = user.getPassword();
+
+        return passwordHashingService.matches(password, hashedPassword)
+                .thenApply(passwordIsValid -> {
+                    Boolean needsRehash = passwordIsValid && passwordHashingService.needsRehash(hashedPassword);
+                    if (needsRehash) {
+                        rehashPassword(password, user);
+                    }
+                    return passwordIsValid;
+                });
     }
 
     /**
-     * Save or update a user using information from the registration request.
+     * Save a user using information from the registration request, once their
+     * password is hashed.
+     *
+     * The user is inserted without checking the email first: an email already in
+     * use is detected by the unique constraint of the users, in a single
+     * round-trip and without race between concurrent registrations.
      *
      * @param registrationRequest The registration request containing user details.
-     * @return The saved or updated user.
+     * @return The saved user, once saved; completed with an ApiException with a
+     *         409 status if the email is already in use, or with the
+     *         DataIntegrityViolationException of any other violation.
+     * @throws ApiException with a 503 status if the hashing queue is full.
      */
-    public Users saveUserBySignUp(AuthRegisterRequest registrationRequest) {
-        Users user = new Users();
+    public CompletableFuture<Users> saveUserBySignUp(AuthRegisterRequest registrationRequest) {
+        return passwordHashingService.encode(registrationRequest.password())
+                .thenApplyAsync(hashedPassword -> {
+                    Users user = new Users();
+
+                    LocalDateTime currentTime = LocalDateTime.now();
+
+                    user.setName(registrationRequest.name());
+                    user.setEmail(registrationRequest.email());
+                    user.setPassword(hashedPassword);
+                    user.setCreatedAt(currentTime);
+                    user.setUpdatedAt(currentTime);
+
+                    try {
+                        return saveUser(user);
+                    } catch (DataIntegrityViolationException e) {
+                        // The email is the only unique column of the users besides their generated ID
+                        Boolean isEmailInUse = isDuplicateKey(e);
+                        if (isEmailInUse) {
+                            GlobalExceptionHandler.handleLogicError("Conflict", HttpStatus.CONFLICT);
+                        }
+                        throw e;
+                    }
+                }, taskExecutor);
+    }
 
-        LocalDateTime currentTime = LocalDateTime.now();
+    /**
+     * Checks if an integrity violation is a duplicate key, rather than a value too
+     * long or missing, from the error code of the database.
+     *
+     * @param exception The integrity violation raised by the insert.
+     * @return True if a unique key was violated; false otherwise.
+     */
+    private boolean isDuplicateKey(DataIntegrityViolationException exception) {
+        Throwable cause = exception.getMostSpecificCause();
 
-        user.setName(registrationRequest.name());
-        user.setEmail(registrationRequest.email());
-        user.setPassword(passwordEncoder.encode(registrationRequest.password()));
-        user.setCreatedAt(currentTime);
-        user.setUpdatedAt(currentTime);
+        return cause instanceof SQLException sqlException && jdbcTemplate.getExceptionTranslator()
+                .translate("Save user", null, sqlException) instanceof DuplicateKeyException;
+    }
 
-        return saveUser(user);
+    /**
+     * Hash a password again with the configured cost and save it. A failure is
+     * only logged, the password being hashed again on the next login.
+     *
+     * @param password The verified password.
+     * @param user     The user owning the password.
+     */
+    private void rehashPassword(String password, Users user) {
+        try {
+            passwordHashingService.encode(password)
+                    .thenAcceptAsync(hashedPassword -> userRepository.updatePassword(user.getId(), hashedPassword),
+                            taskExecutor)
+                    .exceptionally(e -> {
+                        logger.warn("Unable to rehash the password of user {}", user.getId(), e);
+                        return null;
+                    });
+        } catch (ApiException e) {
+            logger.warn("Password hashing queue full, the password of user {} is rehashed on next login",
+                    user.getId());
+        }
     }
 
 }
@@ -0,0 +1,50 @@
+package com.openclassrooms.p3.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * The CursorUtil class provides utility methods for encoding and decoding the
+ * opaque cursors used by the keyset-paginated endpoints.
+ *
+ * A cursor is the list of sort key values of the last returned row, joined and
+ * Base64URL-encoded so that clients treat it as an opaque token.
+ */
+public class CursorUtil {
+
+    private static final String SEPARATOR = "|";
+
+    private static final Pattern SEPARATOR_PATTERN = Pattern.compile(Pattern.quote(SEPARATOR));
+
+    /**
+     * Encodes the sort key values of a row into an opaque cursor.
+     *
+     * @param values The sort key values, in the order of the sort.
+     * @return The opaque cursor.
+     */
+    public static String encodeCursor(String... values) {
+        String rawCursor = String.join(SEPARATOR, values);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(rawCursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes an opaque cursor back into its sort key values.
+     *
+     * @param cursor         The opaque cursor sent by the client.
+     * @param expectedValues The number of sort key values the cursor must hold.
+     * @return The sort key values, or empty Optional if the cursor is malformed.
+     */
+    public static Optional<String[]> decodeCursor(String cursor, int expectedValues) {
+        try {
+            String rawCursor = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] values = SEPARATOR_PATTERN.split(rawCursor, -1);
+
+            return values.length == expectedValues ? Optional.of(values) : Optional.empty();
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.openclassrooms.p3.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.StringJoiner;
+
+/**
+ * The ETagUtil class provides utility methods for generating strong entity tags
+ * and evaluating the "If-None-Match" header of conditional requests.
+ */
+public class ETagUtil {
+
+    /**
+     * Number of bytes of the SHA-256 digest kept in the entity tag.
+     */
+    private static final int ETAG_BYTES = 16;
+
+    /**
+     * Generates a strong entity tag from the values the representation depends
+     * on.
+     *
+     * @param values The values identifying the version of the representation.
+     * @return The quoted entity tag.
+     */
+    public static String generateETag(Object... values) {
+        StringJoiner rawETag = new StringJoiner("|");
+        for (Object value : values) {
+            rawETag.add(String.valueOf(value));
+        }
+
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            byte[] digest = messageDigest.digest(rawETag.toString().getBytes(StandardCharsets.UTF_8));
+
+            return "\"" + HexFormat.of().formatHex(digest, 0, ETAG_BYTES) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Checks if the "If-None-Match" header of a request matches the current entity
+     * tag, in which case the client already has the current representation.
+     *
+     * @param ifNoneMatchHeader The "If-None-Match" header, null if absent.
+     * @param eTag              The current quoted entity tag.
+     * @return True if the client representation is up to date; false otherwise.
+     */
+    public static boolean matches(String ifNoneMatchHeader, String eTag) {
+        if (ifNoneMatchHeader == null) {
+            return false;
+        }
+
+        for (String candidate : ifNoneMatchHeader.split(",")) {
+            String trimmedCandidate = candidate.trim();
+
+            // If-None-Match uses the weak comparison, the weakness indicator is ignored
+            if (trimmedCandidate.startsWith("W/")) {
+                trimmedCandidate = trimmedCandidate.substring(2);
+            }
+
+            if (trimmedCandidate.equals("*") || trimmedCandidate.equals(eTag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
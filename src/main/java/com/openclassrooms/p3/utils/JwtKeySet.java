@@ -0,0 +1,68 @@
+package com.openclassrooms.p3.utils;
+
+import java.security.Key;
+import java.util.Map;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Immutable set of the HMAC keys used to sign and verify the JWTs, each one
+ * identified by the "kid" header of the tokens it signed.
+ *
+ * The active key signs the new tokens; the other keys, usually the previous
+ * active ones, only verify the tokens they signed until these expire.
+ *
+ * @param activeKeyId The ID of the key signing the new tokens.
+ * @param keys        Key ID -> key, holding the active key.
+ */
+public record JwtKeySet(String activeKeyId, Map<String, Key> keys) {
+
+    /**
+     * ID of the key generated when no keyset is configured.
+     */
+    public static final String RANDOM_KEY_ID = "random";
+
+    /**
+     * Minimum length of a key, in bytes, for the tokens to be signed with
+     * HMAC-SHA512.
+     */
+    public static final int MIN_KEY_LENGTH = 64;
+
+    public JwtKeySet {
+        keys = Map.copyOf(keys);
+
+        Boolean activeKeyIsMissing = activeKeyId == null || !keys.containsKey(activeKeyId);
+        if (activeKeyIsMissing) {
+            throw new IllegalArgumentException("The active key " + activeKeyId + " is not part of the keyset");
+        }
+    }
+
+    /**
+     * Creates a keyset holding a single random key, only known to this instance.
+     *
+     * @return The random keyset.
+     */
+    public static JwtKeySet random() {
+        return new JwtKeySet(RANDOM_KEY_ID, Map.of(RANDOM_KEY_ID, Keys.secretKeyFor(SignatureAlgorithm.HS512)));
+    }
+
+    /**
+     * Gets the key signing the new tokens.
+     *
+     * @return The active key.
+     */
+    public Key getActiveKey() {
+        return keys.get(activeKeyId);
+    }
+
+    /**
+     * Gets the key identified by the "kid" header of a token.
+     *
+     * @param keyId The ID of the key.
+     * @return The key, or null if it is not part of the keyset.
+     */
+    public Key getKey(String keyId) {
+        return keyId == null ? null : keys.get(keyId);
+    }
+}
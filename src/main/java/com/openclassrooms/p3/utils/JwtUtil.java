@@ -1,32 +1,218 @@
 package com.openclassrooms.p3.utils;
 
 import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.security.SignatureException;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.openclassrooms.p3.payload.response.UserInfoResponse;
 
 /**
  * The JwtUtil class provides utility methods for generating, validating, and
  * extracting information from JSON Web Tokens (JWTs).
+ *
+ * Tokens are verified by a single, thread-safe parser. Once verified, their
+ * subject and expiry are remembered in a bounded cache keyed by the SHA-256
+ * hash of the token, so that a token sent again is neither decoded nor
+ * verified, until it expires.
+ *
+ * Tokens may also embed, as signed claims, the information of their user, so
+ * that it can be answered without reading the database.
+ *
+ * Tokens are signed by the active key of the JwtKeySet and carry its ID in
+ * their "kid" header, which selects the key verifying them. Until a keyset is
+ * loaded, a random key only known to this instance is used.
+ *
+ * Each token carries a random ID ("jti" claim) and the token version of its
+ * user ("ver" claim), so that it can be revoked alone or along with every
+ * token of its user; revocations are checked by the TokenRevocationService.
  */
 public class JwtUtil {
 
-    private static final Key SECRET_KEY = Keys.secretKeyFor(SignatureAlgorithm.HS512);
+    private static volatile JwtKeySet keySet = JwtKeySet.random();
 
     /**
-     * Generates a JWT for the user with the specified ID.
+     * Time during which a generated token is valid.
+     */
+    public static final Duration TOKEN_VALIDITY = Duration.ofHours(24);
+
+    /**
+     * Maximum number of verified tokens remembered.
+     */
+    private static final long MAX_VERIFIED_TOKENS = 10_000;
+
+    /**
+     * Verifies the tokens with the key of the current keyset named by their "kid"
+     * header.
+     */
+    private static final JwtParser JWT_PARSER = Jwts.parserBuilder()
+            .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                @Override
+                public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                    Key key = keySet.getKey(header.getKeyId());
+                    if (key == null) {
+                        throw new SignatureException("Unknown signing key: " + header.getKeyId());
+                    }
+                    return key;
+                }
+            })
+            .build();
+
+    private static final HexFormat HEX_FORMAT = HexFormat.of();
+
+    private static final String NAME_CLAIM = "name";
+
+    private static final String EMAIL_CLAIM = "email";
+
+    private static final String CREATED_AT_CLAIM = "created_at";
+
+    private static final String UPDATED_AT_CLAIM = "updated_at";
+
+    private static final String TOKEN_VERSION_CLAIM = "ver";
+
+    /**
+     * SHA-256 hash of the token -> verified claims of the token. Entries are
+     * evicted when their token expires.
+     */
+    private static final Cache<String, VerifiedToken> VERIFIED_TOKENS = Caffeine.newBuilder()
+            .maximumSize(MAX_VERIFIED_TOKENS)
+            .expireAfter(new VerifiedTokenExpiry())
+            .build();
+
+    /**
+     * Claims of a token whose signature and expiry have been verified.
+     *
+     * @param userId       The user ID, subject of the token.
+     * @param userInfo     The information of the user embedded in the token, null
+     *                     if the token only holds the user ID.
+     * @param expiresAt    The expiry of the token.
+     * @param tokenId      The ID of the token, null for the tokens issued without.
+     * @param tokenVersion The token version of the user when the token was issued.
+     */
+    public record VerifiedToken(Long userId, UserInfoResponse userInfo, Instant expiresAt, UUID tokenId,
+            int tokenVersion) {
+
+        /**
+         * Checks if the token embeds the information of its user.
+         *
+         * @return True if the user information is embedded; false otherwise.
+         */
+        public boolean hasUserInfo() {
+            return userInfo != null;
+        }
+    }
+
+    /**
+     * Expires the verified tokens along with their token.
+     */
+    private static class VerifiedTokenExpiry implements Expiry<String, VerifiedToken> {
+
+        @Override
+        public long expireAfterCreate(String tokenHash, VerifiedToken verifiedToken, long currentTime) {
+            return Math.max(0, Duration.between(Instant.now(), verifiedToken.expiresAt()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String tokenHash, VerifiedToken verifiedToken, long currentTime,
+                long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String tokenHash, VerifiedToken verifiedToken, long currentTime,
+                long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * Generates a JWT for the user with the specified ID, whose tokens were never
+     * revoked.
      *
      * @param id User ID.
      * @return The JWT generated.
      */
     public static String generateJwtToken(Long id) {
+        return generateJwtToken(id, 0);
+    }
+
+    /**
+     * Generates a JWT for the user with the specified ID.
+     *
+     * @param id           User ID.
+     * @param tokenVersion The current token version of the user.
+     * @return The JWT generated.
+     */
+    public static String generateJwtToken(Long id, int tokenVersion) {
+        return buildJwtToken(id, Map.of(TOKEN_VERSION_CLAIM, tokenVersion));
+    }
+
+    /**
+     * Generates a JWT for a user whose tokens were never revoked, embedding their
+     * name, email and dates as signed claims.
+     *
+     * @param user The information of the user.
+     * @return The JWT generated.
+     */
+    public static String generateJwtToken(UserInfoResponse user) {
+        return generateJwtToken(user, 0);
+    }
+
+    /**
+     * Generates a JWT for a user, embedding their name, email and dates as signed
+     * claims.
+     *
+     * @param user         The information of the user.
+     * @param tokenVersion The current token version of the user.
+     * @return The JWT generated.
+     */
+    public static String generateJwtToken(UserInfoResponse user, int tokenVersion) {
+        return buildJwtToken(user.id(), Map.of(
+                NAME_CLAIM, user.name(),
+                EMAIL_CLAIM, user.email(),
+                CREATED_AT_CLAIM, user.created_at().toString(),
+                UPDATED_AT_CLAIM, user.updated_at().toString(),
+                TOKEN_VERSION_CLAIM, tokenVersion));
+    }
+
+    /**
+     * Builds and signs a JWT for the user with the specified ID, with a random
+     * token ID.
+     *
+     * @param id     User ID.
+     * @param claims The additional claims of the token.
+     * @return The JWT generated.
+     */
+    private static String buildJwtToken(Long id, Map<String, Object> claims) {
+        Instant issuedAt = Instant.now();
+        JwtKeySet currentKeySet = keySet;
+
         String token = Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, currentKeySet.activeKeyId())
+                .addClaims(claims)
+                .setId(UUID.randomUUID().toString())
                 .setSubject(String.valueOf(id))
-                .signWith(SECRET_KEY)
+                .setIssuedAt(Date.from(issuedAt))
+                .setExpiration(Date.from(issuedAt.plus(TOKEN_VALIDITY)))
+                .signWith(currentKeySet.getActiveKey())
                 .compact();
 
         return token;
@@ -39,13 +225,7 @@ public class JwtUtil {
      * @return True if the token is valid; false otherwise.
      */
     public static boolean isTokenValid(String token) {
-        try {
-            Jwts.parserBuilder().setSigningKey(SECRET_KEY).build().parseClaimsJws(token);
-            return true;
-        } catch (Exception exception) {
-            // Token validation failed
-            return false;
-        }
+        return extractUserId(token).isPresent();
     }
 
     /**
@@ -56,14 +236,63 @@ public class JwtUtil {
      *         exception.
      */
     public static Optional<Long> extractUserId(String token) {
-        try {
-            Jws<Claims> claimsJws = Jwts.parserBuilder().setSigningKey(SECRET_KEY).build().parseClaimsJws(token);
-            Claims claims = claimsJws.getBody();
+        return extractVerifiedToken(token).map(VerifiedToken::userId);
+    }
 
-            return Optional.of(Long.parseLong(claims.getSubject()));
-        } catch (Exception e) {
-            return Optional.empty();
+    /**
+     * Extracts the claims of a JWT token, verifying it unless it has already been.
+     *
+     * @param token The JWT token.
+     * @return The claims of the token, or empty Optional if it is not valid.
+     */
+    public static Optional<VerifiedToken> extractVerifiedToken(String token) {
+        String tokenHash = hashToken(token);
+
+        VerifiedToken verifiedToken = VERIFIED_TOKENS.getIfPresent(tokenHash);
+        // The entry may outlive its token until the cache is next cleaned up
+        Boolean isCached = verifiedToken != null && verifiedToken.expiresAt().isAfter(Instant.now());
+        if (isCached) {
+            return Optional.of(verifiedToken);
+        }
+
+        JwtKeySet verifyingKeySet = keySet;
+        Optional<VerifiedToken> optionalVerifiedToken = verifyToken(token);
+
+        // A token verified while the keyset was replaced may have been signed by a
+        // removed key
+        Boolean keySetIsUnchanged = keySet == verifyingKeySet;
+        if (keySetIsUnchanged) {
+            optionalVerifiedToken.ifPresent(verified -> VERIFIED_TOKENS.put(tokenHash, verified));
         }
+
+        return optionalVerifiedToken;
+    }
+
+    /**
+     * Forgets the verified tokens, so that the next ones are verified again.
+     */
+    public static void clearVerifiedTokens() {
+        VERIFIED_TOKENS.invalidateAll();
+    }
+
+    /**
+     * Replaces the keys signing and verifying the tokens. The verified tokens are
+     * forgotten, so that the tokens signed by a removed key are rejected.
+     *
+     * @param newKeySet The new keyset.
+     */
+    public static void setKeySet(JwtKeySet newKeySet) {
+        keySet = newKeySet;
+        clearVerifiedTokens();
+    }
+
+    /**
+     * Gets the keys signing and verifying the tokens.
+     *
+     * @return The current keyset.
+     */
+    public static JwtKeySet getKeySet() {
+        return keySet;
     }
 
     /**
@@ -75,4 +304,71 @@ public class JwtUtil {
     public static String extractJwtFromHeader(String authorizationHeader) {
         return authorizationHeader.substring(7); // Skip "Bearer " to get the actual JWT
     }
+
+    /**
+     * Verifies the signature and the expiry of a JWT token and reads its claims.
+     *
+     * @param token The JWT token.
+     * @return The claims of the token, or empty Optional if it is not valid.
+     */
+    private static Optional<VerifiedToken> verifyToken(String token) {
+        try {
+            Claims claims = JWT_PARSER.parseClaimsJws(token).getBody();
+
+            Boolean hasNoExpiration = claims.getExpiration() == null;
+            if (hasNoExpiration) {
+                return Optional.empty();
+            }
+
+            Long userId = Long.parseLong(claims.getSubject());
+            UUID tokenId = claims.getId() == null ? null : UUID.fromString(claims.getId());
+            Integer tokenVersion = claims.get(TOKEN_VERSION_CLAIM, Integer.class);
+
+            return Optional.of(new VerifiedToken(userId, readUserInfo(userId, claims),
+                    claims.getExpiration().toInstant(), tokenId, tokenVersion == null ? 0 : tokenVersion));
+        } catch (Exception e) {
+            // Token validation failed
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Reads the information of the user embedded in the claims of a token.
+     *
+     * @param userId The user ID, subject of the token.
+     * @param claims The verified claims of the token.
+     * @return The information of the user, or null if the token does not embed it.
+     */
+    private static UserInfoResponse readUserInfo(Long userId, Claims claims) {
+        String name = claims.get(NAME_CLAIM, String.class);
+        String email = claims.get(EMAIL_CLAIM, String.class);
+        String createdAt = claims.get(CREATED_AT_CLAIM, String.class);
+        String updatedAt = claims.get(UPDATED_AT_CLAIM, String.class);
+
+        Boolean hasNoUserInfo = name == null || email == null || createdAt == null || updatedAt == null;
+        if (hasNoUserInfo) {
+            return null;
+        }
+
+        return new UserInfoResponse(userId, name, email, LocalDateTime.parse(createdAt),
+                LocalDateTime.parse(updatedAt));
+    }
+
+    /**
+     * Hashes a JWT token, so that the cache holds neither the tokens nor their
+     * size.
+     *
+     * @param token The JWT token.
+     * @return The hexadecimal SHA-256 hash of the token.
+     */
+    private static String hashToken(String token) {
+        try {
+            // MessageDigest instances are not thread-safe and cheap to create
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HEX_FORMAT.formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
 }
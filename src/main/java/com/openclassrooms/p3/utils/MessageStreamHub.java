@@ -0,0 +1,304 @@
+package com.openclassrooms.p3.utils;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+import com.openclassrooms.p3.payload.response.MessageResponse;
+
+/**
+ * In-process fan-out of the new messages to the Server-Sent Events streams of
+ * the owners of the rentals, keyed by owner ID.
+ *
+ * Publishing never blocks: each stream has a bounded buffer of events, written
+ * to the connection by a task of the sender executor only while the buffer is
+ * not empty, so that an idle stream holds no thread. A stream whose buffer is
+ * full, i.e. whose client reads slower than its messages arrive, is closed
+ * rather than silently losing messages; the client reconnects and catches up
+ * from the inbox.
+ */
+public class MessageStreamHub {
+
+    private final int bufferSize;
+
+    private final Executor senderExecutor;
+
+    /**
+     * Called with the time, in nanoseconds, between the publication of each
+     * message and its writing to a stream.
+     */
+    private final LongConsumer deliveryListener;
+
+    /**
+     * Owner ID -> streams of the owner.
+     */
+    private final Map<Long, Set<Subscriber>> subscribersByOwner = new ConcurrentHashMap<>();
+
+    private final AtomicLong subscriberCount = new AtomicLong();
+
+    private final LongAdder evictedCount = new LongAdder();
+
+    /**
+     * Event waiting in the buffer of a stream.
+     *
+     * @param message         The message, or null for a heartbeat.
+     * @param publishedAtNano The time the event was published, in nanoseconds.
+     */
+    private record PendingEvent(MessageResponse message, long publishedAtNano) {
+
+        /**
+         * Builds the event sent to the client, a builder being consumed by a
+         * single send.
+         *
+         * @return The Server-Sent Event.
+         */
+        SseEventBuilder toEvent() {
+            if (message == null) {
+                return SseEmitter.event().comment("heartbeat");
+            }
+
+            SseEventBuilder event = SseEmitter.event().name("message").data(message, MediaType.APPLICATION_JSON);
+            // Messages written behind are published without their ID
+            return message.id() == null ? event : event.id(String.valueOf(message.id()));
+        }
+    }
+
+    /**
+     * Creates a hub writing to the streams with the specified executor.
+     *
+     * @param bufferSize       The maximum number of events waiting for a stream.
+     * @param senderExecutor   The executor of the tasks writing to the streams,
+     *                         which may block on slow connections.
+     * @param deliveryListener Called with the delivery time of each message, in
+     *                         nanoseconds.
+     */
+    public MessageStreamHub(int bufferSize, Executor senderExecutor, LongConsumer deliveryListener) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Message streams need a positive buffer size");
+        }
+
+        this.bufferSize = bufferSize;
+        this.senderExecutor = senderExecutor;
+        this.deliveryListener = deliveryListener;
+    }
+
+    /**
+     * Registers the stream of an owner, until it completes, times out, fails or
+     * is evicted.
+     *
+     * @param ownerId The ID of the owner receiving the messages.
+     * @param emitter The emitter of the stream.
+     */
+    public void subscribe(Long ownerId, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(ownerId, emitter);
+
+        emitter.onCompletion(subscriber::onClosed);
+        emitter.onError(error -> subscriber.onClosed());
+        emitter.onTimeout(() -> {
+            subscriber.onClosed();
+            emitter.complete();
+        });
+
+        // Added within compute, so that the set cannot be dropped by a concurrent unsubscribe
+        subscribersByOwner.compute(ownerId, (key, subscribers) -> {
+            Set<Subscriber> ownerSubscribers = subscribers == null ? ConcurrentHashMap.newKeySet() : subscribers;
+            ownerSubscribers.add(subscriber);
+            return ownerSubscribers;
+        });
+        subscriberCount.incrementAndGet();
+    }
+
+    /**
+     * Sends a new message to the streams of an owner.
+     *
+     * @param ownerId The ID of the owner of the rental of the message.
+     * @param message The message.
+     */
+    public void publish(Long ownerId, MessageResponse message) {
+        Set<Subscriber> subscribers = subscribersByOwner.get(ownerId);
+        if (subscribers == null) {
+            return;
+        }
+
+        PendingEvent event = new PendingEvent(message, System.nanoTime());
+        subscribers.forEach(subscriber -> subscriber.offer(event));
+    }
+
+    /**
+     * Sends a comment to every stream, so that proxies keep idle connections open
+     * and closed connections are detected.
+     */
+    public void sendHeartbeat() {
+        PendingEvent heartbeat = new PendingEvent(null, System.nanoTime());
+        subscribersByOwner.values().forEach(subscribers -> subscribers.forEach(subscriber -> subscriber.offer(heartbeat)));
+    }
+
+    /**
+     * Completes every stream, e.g. when the application stops.
+     */
+    public void closeAll() {
+        subscribersByOwner.values().forEach(subscribers -> subscribers.forEach(Subscriber::evict));
+    }
+
+    /**
+     * Counts the open streams.
+     *
+     * @return The number of streams.
+     */
+    public long subscriberCount() {
+        return subscriberCount.get();
+    }
+
+    /**
+     * Counts the streams closed because their buffer was full.
+     *
+     * @return The number of evicted streams.
+     */
+    public long evictedCount() {
+        return evictedCount.sum();
+    }
+
+    /**
+     * Removes a closed stream from the streams of its owner.
+     *
+     * @param subscriber The closed stream.
+     */
+    private void unsubscribe(Subscriber subscriber) {
+        subscribersByOwner.computeIfPresent(subscriber.ownerId, (ownerId, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+        subscriberCount.decrementAndGet();
+    }
+
+    /**
+     * Stream of an owner, with its buffer of events.
+     *
+     * Only one sender task writes to the emitter at a time: the one which set the
+     * "isSending" flag. It leaves once the buffer is empty, checking again after
+     * clearing the flag so that no event is left behind.
+     */
+    private final class Subscriber {
+
+        private final Long ownerId;
+
+        private final SseEmitter emitter;
+
+        private final BlockingQueue<PendingEvent> buffer = new ArrayBlockingQueue<>(bufferSize);
+
+        private final AtomicBoolean isSending = new AtomicBoolean();
+
+        private final AtomicBoolean isClosed = new AtomicBoolean();
+
+        /**
+         * Whether the emitter must be completed by the next sender task.
+         */
+        private volatile boolean isCompletePending;
+
+        Subscriber(Long ownerId, SseEmitter emitter) {
+            this.ownerId = ownerId;
+            this.emitter = emitter;
+        }
+
+        /**
+         * Appends an event to the buffer, evicting the stream if it is full.
+         *
+         * @param event The event to send.
+         */
+        void offer(PendingEvent event) {
+            if (isClosed.get()) {
+                return;
+            }
+
+            Boolean bufferIsFull = !buffer.offer(event);
+            if (bufferIsFull) {
+                evictedCount.increment();
+                evict();
+                return;
+            }
+
+            scheduleSending();
+        }
+
+        /**
+         * Closes the stream from the server side, the emitter being completed by a
+         * sender task rather than by the caller, which could wait for a slow write.
+         */
+        void evict() {
+            if (close()) {
+                isCompletePending = true;
+                scheduleSending();
+            }
+        }
+
+        /**
+         * Forgets the stream once completed, timed out or failed.
+         */
+        void onClosed() {
+            close();
+        }
+
+        /**
+         * Marks the stream as closed and removes it from the hub.
+         *
+         * @return True if the stream was open; false if already closed.
+         */
+        private boolean close() {
+            Boolean wasOpen = isClosed.compareAndSet(false, true);
+            if (wasOpen) {
+                unsubscribe(this);
+            }
+
+            return wasOpen;
+        }
+
+        private void scheduleSending() {
+            if (isSending.compareAndSet(false, true)) {
+                senderExecutor.execute(this::sendBufferedEvents);
+            }
+        }
+
+        private void sendBufferedEvents() {
+            do {
+                try {
+                    PendingEvent event;
+                    while (!isClosed.get() && (event = buffer.poll()) != null) {
+                        emitter.send(event.toEvent());
+                        if (event.message() != null) {
+                            deliveryListener.accept(System.nanoTime() - event.publishedAtNano());
+                        }
+                    }
+
+                    if (isCompletePending) {
+                        isCompletePending = false;
+                        emitter.complete();
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // The client is gone, or the emitter already completed
+                    close();
+                }
+
+                if (isClosed.get()) {
+                    buffer.clear();
+                }
+                isSending.set(false);
+            } while (hasPendingWork() && isSending.compareAndSet(false, true));
+        }
+
+        private boolean hasPendingWork() {
+            return isCompletePending || (!isClosed.get() && !buffer.isEmpty());
+        }
+    }
+}
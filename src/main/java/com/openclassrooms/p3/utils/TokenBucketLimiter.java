@@ -0,0 +1,114 @@
+package com.openclassrooms.p3.utils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+/**
+ * Thread-safe token buckets, one per key, each holding up to "capacity" tokens
+ * and regaining one token every "refill period".
+ *
+ * A bucket is a single time, the instant at which it will be full again
+ * (generic cell rate algorithm): taking a token moves it one refill period
+ * forward, and is refused if it would then be more than "capacity" refill
+ * periods ahead. Tokens are taken with a compare-and-set loop, so concurrent
+ * attempts on the same key never lock each other.
+ *
+ * The buckets are held in a bounded Caffeine cache, whose concurrent map
+ * spreads the keys over independent bins. A bucket unused for "capacity"
+ * refill periods is full again, and is then dropped; when more keys are in use
+ * than the maximum, the least used ones are dropped first.
+ */
+public class TokenBucketLimiter {
+
+    private final long refillPeriodNanos;
+
+    /**
+     * Time for an empty bucket to be full again.
+     */
+    private final long burstNanos;
+
+    private final Ticker ticker;
+
+    /**
+     * Key -> instant, in ticker nanoseconds, at which its bucket is full again.
+     */
+    private final Cache<String, AtomicLong> buckets;
+
+    /**
+     * Creates token buckets timed by the system clock.
+     *
+     * @param capacity     The number of tokens of a full bucket.
+     * @param refillPeriod The time for a bucket to regain one token.
+     * @param maximumKeys  The maximum number of buckets kept.
+     */
+    public TokenBucketLimiter(int capacity, Duration refillPeriod, long maximumKeys) {
+        this(capacity, refillPeriod, maximumKeys, Ticker.systemTicker());
+    }
+
+    /**
+     * Creates token buckets timed by the specified ticker.
+     *
+     * @param capacity     The number of tokens of a full bucket.
+     * @param refillPeriod The time for a bucket to regain one token.
+     * @param maximumKeys  The maximum number of buckets kept.
+     * @param ticker       The source of time, in nanoseconds.
+     */
+    public TokenBucketLimiter(int capacity, Duration refillPeriod, long maximumKeys, Ticker ticker) {
+        Boolean settingsAreInvalid = capacity < 1 || refillPeriod.isNegative() || refillPeriod.isZero()
+                || maximumKeys < 1;
+        if (settingsAreInvalid) {
+            throw new IllegalArgumentException("Token buckets need a positive capacity, refill period and size");
+        }
+
+        this.refillPeriodNanos = refillPeriod.toNanos();
+        this.burstNanos = Math.multiplyExact(refillPeriodNanos, (long) capacity);
+        this.ticker = ticker;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maximumKeys)
+                .expireAfterAccess(burstNanos, TimeUnit.NANOSECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * Takes a token from the bucket of a key.
+     *
+     * @param key The key, e.g. an email or an IP address.
+     * @return True if a token was taken; false if the bucket is empty.
+     */
+    public boolean tryAcquire(String key) {
+        long now = ticker.read();
+        // A new bucket is full: it was full again at this very instant
+        AtomicLong fullAt = buckets.get(key, newKey -> new AtomicLong(now));
+
+        while (true) {
+            long currentFullAt = fullAt.get();
+            // Nanosecond times may overflow, only their difference is meaningful
+            long nextFullAt = (currentFullAt - now > 0 ? currentFullAt : now) + refillPeriodNanos;
+
+            Boolean bucketIsEmpty = nextFullAt - now > burstNanos;
+            if (bucketIsEmpty) {
+                return false;
+            }
+
+            if (fullAt.compareAndSet(currentFullAt, nextFullAt)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Counts the buckets kept, once the expired and excess ones are dropped.
+     *
+     * @return The number of buckets.
+     */
+    public long size() {
+        buckets.cleanUp();
+        return buckets.estimatedSize();
+    }
+}
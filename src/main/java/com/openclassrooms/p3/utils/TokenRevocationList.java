@@ -0,0 +1,135 @@
+package com.openclassrooms.p3.utils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.function.Function;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+/**
+ * In-memory list of the revoked JWTs, checked for each authenticated request
+ * with two hash lookups.
+ *
+ * A token is revoked either alone, by its ID, or along with every token of its
+ * user issued before, by raising the token version of the user. Each
+ * revocation is dropped once the tokens it revokes have expired, so that the
+ * list only holds the revocations of the last token validity period. It is not
+ * bounded otherwise: dropping a revocation early would accept its tokens again.
+ */
+public class TokenRevocationList {
+
+    /**
+     * Revoked token ID -> expiry of the token.
+     */
+    private final Cache<UUID, Instant> revokedTokens = Caffeine.newBuilder()
+            .expireAfter(new RevocationExpiry<UUID, Instant>(expiresAt -> expiresAt))
+            .build();
+
+    /**
+     * User ID -> lowest token version still valid, with the expiry of the last
+     * token it revokes.
+     */
+    private final Cache<Long, UserTokenRevocation> userRevocations = Caffeine.newBuilder()
+            .expireAfter(new RevocationExpiry<Long, UserTokenRevocation>(UserTokenRevocation::expiresAt))
+            .build();
+
+    /**
+     * Revocation of the tokens of a user issued before a version.
+     *
+     * @param tokenVersion The lowest token version still valid.
+     * @param expiresAt    The expiry of the last token issued before.
+     */
+    private record UserTokenRevocation(int tokenVersion, Instant expiresAt) {
+    }
+
+    /**
+     * Expires the revocations along with the last token they revoke.
+     *
+     * @param expiryOf Reads the expiry of the last token revoked by a revocation.
+     */
+    private record RevocationExpiry<K, V>(Function<V, Instant> expiryOf) implements Expiry<K, V> {
+
+        @Override
+        public long expireAfterCreate(K key, V value, long currentTime) {
+            return Math.max(0, Duration.between(Instant.now(), expiryOf.apply(value)).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * Revokes a single token.
+     *
+     * @param tokenId   The ID of the token.
+     * @param expiresAt The expiry of the token.
+     */
+    public void revokeToken(UUID tokenId, Instant expiresAt) {
+        revokedTokens.put(tokenId, expiresAt);
+    }
+
+    /**
+     * Revokes the tokens of a user carrying a lower token version than the given
+     * one. A lower version than the one already known is ignored.
+     *
+     * @param userId       The ID of the user.
+     * @param tokenVersion The lowest token version still valid.
+     * @param revokedAt    The time of the revocation.
+     */
+    public void revokeUserTokens(Long userId, int tokenVersion, Instant revokedAt) {
+        UserTokenRevocation revocation = new UserTokenRevocation(tokenVersion,
+                revokedAt.plus(JwtUtil.TOKEN_VALIDITY));
+
+        userRevocations.asMap().merge(userId, revocation,
+                (current, updated) -> current.tokenVersion() >= updated.tokenVersion() ? current : updated);
+    }
+
+    /**
+     * Checks if a token has been revoked, alone or with the tokens of its user.
+     *
+     * @param userId       The user ID of the token.
+     * @param tokenId      The ID of the token, null if it has none.
+     * @param tokenVersion The token version of the token.
+     * @return True if the token is revoked; false otherwise.
+     */
+    public boolean isRevoked(Long userId, UUID tokenId, int tokenVersion) {
+        UserTokenRevocation userRevocation = userRevocations.getIfPresent(userId);
+        Boolean isRevokedWithUserTokens = userRevocation != null && tokenVersion < userRevocation.tokenVersion();
+        if (isRevokedWithUserTokens) {
+            return true;
+        }
+
+        return tokenId != null && revokedTokens.getIfPresent(tokenId) != null;
+    }
+
+    /**
+     * Counts the revoked tokens whose token has not expired.
+     *
+     * @return The number of revoked tokens.
+     */
+    public long revokedTokenCount() {
+        revokedTokens.cleanUp();
+        return revokedTokens.estimatedSize();
+    }
+
+    /**
+     * Counts the users whose tokens were revoked during the last token validity
+     * period.
+     *
+     * @return The number of users.
+     */
+    public long revokedUserCount() {
+        userRevocations.cleanUp();
+        return userRevocations.estimatedSize();
+    }
+}
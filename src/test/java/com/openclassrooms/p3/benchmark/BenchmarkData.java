@@ -0,0 +1,98 @@
+package com.openclassrooms.p3.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import com.openclassrooms.p3.model.Rental;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+
+/**
+ * Generates a synthetic, reproducible rental catalog for the benchmarks.
+ */
+public class BenchmarkData {
+
+    /**
+     * Words used to build the names and descriptions of the rentals.
+     */
+    public static final String[] VOCABULARY = {
+            "appartement", "maison", "studio", "villa", "chalet", "loft", "duplex", "péniche", "cabane", "gîte",
+            "lumineux", "spacieux", "calme", "rénové", "moderne", "charmant", "cosy", "ensoleillé", "familial",
+            "piscine", "jardin", "terrasse", "balcon", "parking", "cheminée", "climatisation", "wifi", "garage",
+            "plage", "montagne", "centre", "campagne", "lac", "forêt", "port", "gare", "commerces", "vue",
+            "mer", "paris", "lyon", "marseille", "bordeaux", "nice", "annecy", "biarritz", "chamonix", "nantes"
+    };
+
+    /**
+     * Generates a catalog of rentals.
+     *
+     * @param count The number of rentals to generate.
+     * @param seed  The seed of the random generator.
+     * @return The generated rentals, with IDs from 1 to count.
+     */
+    public static List<RentalSingleResponse> generateRentals(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        LocalDateTime createdAt = LocalDateTime.of(2023, 1, 1, 0, 0);
+
+        List<RentalSingleResponse> rentals = new ArrayList<>(count);
+        for (long id = 1; id <= count; id++) {
+            LocalDateTime rentalCreatedAt = createdAt.plusMinutes(id);
+
+            rentals.add(new RentalSingleResponse(
+                    id,
+                    generateText(random, 3),
+                    random.nextInt(15, 400),
+                    BigDecimal.valueOf(random.nextInt(2_000, 500_000), 2),
+                    "https://bucket.example/images/" + id + ".jpg",
+                    generateText(random, 30),
+                    (long) random.nextInt(1, Math.max(2, count / 20)),
+                    rentalCreatedAt,
+                    rentalCreatedAt.plusHours(random.nextInt(0, 1_000))));
+        }
+
+        return rentals;
+    }
+
+    /**
+     * Generates a text made of random words of the vocabulary.
+     *
+     * @param random    The random generator.
+     * @param wordCount The number of words of the text.
+     * @return The generated text.
+     */
+    public static String generateText(SplittableRandom random, int wordCount) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < wordCount; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Converts a generated rental to the entity read by Hibernate, without its
+     * lazily loaded owner.
+     *
+     * @param rentalResponse The generated rental.
+     * @return The rental entity.
+     */
+    public static Rental toRental(RentalSingleResponse rentalResponse) {
+        Rental rental = new Rental();
+        rental.setId(rentalResponse.id());
+        rental.setName(rentalResponse.name());
+        rental.setSurface(rentalResponse.surface());
+        rental.setPrice(rentalResponse.price());
+        rental.setPicture(rentalResponse.picture());
+        rental.setDescription(rentalResponse.description());
+        rental.setOwnerId(rentalResponse.owner_id());
+        rental.setCreatedAt(rentalResponse.created_at());
+        rental.setUpdatedAt(rentalResponse.updated_at());
+
+        return rental;
+    }
+}
@@ -0,0 +1,167 @@
+package com.openclassrooms.p3.benchmark;
+
+import java.security.Key;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.openclassrooms.p3.utils.JwtUtil;
+import com.openclassrooms.p3.utils.TokenRevocationList;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Measures the cost per request of verifying the JWT of the Authorization
+ * header: with a parser built for each token, with a shared parser, and with
+ * the verified-token cache of JwtUtil, cold or warm; then the cost of checking
+ * that the token has not been revoked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtVerificationBenchmark {
+
+    private Key key;
+
+    private JwtParser sharedParser;
+
+    /**
+     * Token signed by the benchmark key, verified without JwtUtil.
+     */
+    private String token;
+
+    /**
+     * Token signed by JwtUtil.
+     */
+    private String jwtUtilToken;
+
+    /**
+     * Revocation list holding 10,000 revoked tokens and 1,000 revoked users.
+     */
+    private TokenRevocationList revocationList;
+
+    private UUID tokenId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        key = Keys.secretKeyFor(SignatureAlgorithm.HS512);
+        sharedParser = Jwts.parserBuilder().setSigningKey(key).build();
+
+        Instant issuedAt = Instant.now();
+        token = Jwts.builder()
+                .setSubject("1")
+                .setIssuedAt(Date.from(issuedAt))
+                .setExpiration(Date.from(issuedAt.plus(Duration.ofHours(24))))
+                .signWith(key)
+                .compact();
+
+        jwtUtilToken = JwtUtil.generateJwtToken(1L);
+
+        revocationList = new TokenRevocationList();
+        for (long i = 0; i < 10_000; i++) {
+            revocationList.revokeToken(UUID.randomUUID(), issuedAt.plus(Duration.ofHours(24)));
+        }
+        for (long userId = 1_000; userId < 2_000; userId++) {
+            revocationList.revokeUserTokens(userId, 1, issuedAt);
+        }
+        tokenId = UUID.randomUUID();
+    }
+
+    /**
+     * Verifies the token with a parser built for the call, as JwtUtil used to.
+     *
+     * @return The subject of the token.
+     */
+    @Benchmark
+    public String parserPerCall() {
+        Claims claims = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+        return claims.getSubject();
+    }
+
+    /**
+     * Verifies the token with a parser shared by every call.
+     *
+     * @return The subject of the token.
+     */
+    @Benchmark
+    public String sharedParser() {
+        return sharedParser.parseClaimsJws(token).getBody().getSubject();
+    }
+
+    /**
+     * Verifies a token seen for the first time: hash, cache miss, verification
+     * and insertion.
+     *
+     * @param coldCache The emptied verified-token cache.
+     * @return The user ID of the token.
+     */
+    @Benchmark
+    public Optional<Long> coldVerification(ColdCache coldCache) {
+        return JwtUtil.extractUserId(jwtUtilToken);
+    }
+
+    /**
+     * Verifies a token sent again: hash and cache hit.
+     *
+     * @return The user ID of the token.
+     */
+    @Benchmark
+    public Optional<Long> cachedVerification() {
+        return JwtUtil.extractUserId(jwtUtilToken);
+    }
+
+    /**
+     * Checks that a valid token has not been revoked, as done for each
+     * authenticated request.
+     *
+     * @return Whether the token is revoked.
+     */
+    @Benchmark
+    public boolean revocationCheck() {
+        return revocationList.isRevoked(1L, tokenId, 0);
+    }
+
+    /**
+     * Empties the verified-token cache before each call. The few microseconds of
+     * a verification dwarf the per-invocation setup overhead.
+     */
+    @State(Scope.Thread)
+    public static class ColdCache {
+
+        @Setup(Level.Invocation)
+        public void clearVerifiedTokens() {
+            JwtUtil.clearVerifiedTokens();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtVerificationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
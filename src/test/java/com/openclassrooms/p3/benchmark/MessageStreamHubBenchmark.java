@@ -0,0 +1,134 @@
+package com.openclassrooms.p3.benchmark;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.openclassrooms.p3.payload.response.MessageResponse;
+import com.openclassrooms.p3.utils.MessageStreamHub;
+
+/**
+ * Measures the delivery latency of the message streams with 10,000 owners
+ * subscribed, from the publication of a message to its writing by a virtual
+ * thread: for a single message, and for a burst of one message per owner.
+ *
+ * Streams write the JSON of the events to memory instead of a socket, so the
+ * results exclude the network.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageStreamHubBenchmark {
+
+    private static final int SUBSCRIBERS = 10_000;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private final AtomicLong deliveredCount = new AtomicLong();
+
+    private final SplittableRandom random = new SplittableRandom();
+
+    private ExecutorService senderExecutor;
+
+    private MessageStreamHub hub;
+
+    private MessageResponse message;
+
+    /**
+     * Stream serializing its events as an emitter would, then counting them.
+     */
+    private class CountingEmitter extends SseEmitter {
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            for (DataWithMediaType data : builder.build()) {
+                OBJECT_MAPPER.writeValueAsBytes(data.getData());
+            }
+            deliveredCount.incrementAndGet();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        senderExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        hub = new MessageStreamHub(32, senderExecutor, deliveryNanos -> {
+        });
+
+        for (long ownerId = 0; ownerId < SUBSCRIBERS; ownerId++) {
+            hub.subscribe(ownerId, new CountingEmitter());
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        message = new MessageResponse(1L, 1L, 2L, "Hello, is the rental still available next month?", now, now);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%n%d streams open, %d evicted%n", hub.subscriberCount(), hub.evictedCount());
+        senderExecutor.shutdownNow();
+    }
+
+    /**
+     * Publishes a message to a random owner and waits for its delivery.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public void singleMessage() {
+        long target = deliveredCount.get() + 1;
+
+        hub.publish(random.nextLong(SUBSCRIBERS), message);
+        awaitDeliveries(target);
+    }
+
+    /**
+     * Publishes a message to every owner and waits for the last delivery.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public void burstToAllOwners() {
+        long target = deliveredCount.get() + SUBSCRIBERS;
+
+        for (long ownerId = 0; ownerId < SUBSCRIBERS; ownerId++) {
+            hub.publish(ownerId, message);
+        }
+        awaitDeliveries(target);
+    }
+
+    private void awaitDeliveries(long target) {
+        while (deliveredCount.get() < target) {
+            // Yields rather than spins, leaving the cores to the virtual threads
+            Thread.yield();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MessageStreamHubBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,148 @@
+package com.openclassrooms.p3.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jol.info.GraphLayout;
+
+import com.openclassrooms.p3.index.RentalCatalogSnapshot;
+import com.openclassrooms.p3.model.Rental;
+import com.openclassrooms.p3.model.RentalCatalogStats;
+import com.openclassrooms.p3.model.RentalFilter;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+
+/**
+ * Compares the columnar snapshot of the catalog with the list of Rental
+ * entities it replaces, when scanning the catalog for counts and aggregates. The main method also prints the heap footprint of both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RentalCatalogBenchmark {
+
+    private static final RentalFilter FILTER = new RentalFilter(BigDecimal.valueOf(500), BigDecimal.valueOf(1_500),
+            50, null);
+
+    @Param({ "10000", "100000" })
+    private int catalogSize;
+
+    private List<Rental> rentals;
+
+    private RentalCatalogSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<RentalSingleResponse> rentalResponses = BenchmarkData.generateRentals(catalogSize, 42);
+
+        rentals = rentalResponses.stream().map(BenchmarkData::toRental).toList();
+        snapshot = RentalCatalogSnapshot.of(rentalResponses);
+    }
+
+    /**
+     * Aggregates the matching entities, comparing their BigDecimal prices and
+     * boxed surfaces.
+     *
+     * @return The aggregates.
+     */
+    @Benchmark
+    public RentalCatalogStats statsOverEntities() {
+        long count = 0;
+        BigDecimal minPrice = null;
+        BigDecimal maxPrice = null;
+        BigDecimal priceSum = BigDecimal.ZERO;
+        long surfaceSum = 0;
+
+        for (Rental rental : rentals) {
+            if (!FILTER.matches(rental.getPrice(), rental.getSurface())) {
+                continue;
+            }
+
+            count++;
+            minPrice = minPrice == null || rental.getPrice().compareTo(minPrice) < 0 ? rental.getPrice() : minPrice;
+            maxPrice = maxPrice == null || rental.getPrice().compareTo(maxPrice) > 0 ? rental.getPrice() : maxPrice;
+            priceSum = priceSum.add(rental.getPrice());
+            surfaceSum += rental.getSurface();
+        }
+
+        return new RentalCatalogStats(count, minPrice, maxPrice, priceSum.doubleValue() / count, null, null,
+                (double) surfaceSum / count, null);
+    }
+
+    /**
+     * Aggregates the matching rows of the snapshot.
+     *
+     * @return The aggregates.
+     */
+    @Benchmark
+    public RentalCatalogStats statsOverSnapshot() {
+        return snapshot.getStats(FILTER);
+    }
+
+    /**
+     * Counts the matching entities.
+     *
+     * @return The number of matching rentals.
+     */
+    @Benchmark
+    public Long countOverEntities() {
+        long count = 0;
+        for (Rental rental : rentals) {
+            if (FILTER.matches(rental.getPrice(), rental.getSurface())) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Counts the matching rows of the snapshot.
+     *
+     * @return The number of matching rentals.
+     */
+    @Benchmark
+    public Long countOverSnapshot() {
+        return snapshot.getStats(FILTER).count();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        // Lets JOL read the field offsets of the records
+        System.setProperty("jol.magicFieldOffset", "true");
+
+        for (int catalogSize : new int[] { 10_000, 100_000 }) {
+            List<RentalSingleResponse> rentalResponses = BenchmarkData.generateRentals(catalogSize, 42);
+            List<Rental> rentals = new ArrayList<>(rentalResponses.stream().map(BenchmarkData::toRental).toList());
+            RentalCatalogSnapshot snapshot = RentalCatalogSnapshot.of(rentalResponses);
+
+            System.out.printf("%,d rentals: entities %,d bytes, responses %,d bytes, snapshot %,d bytes%n",
+                    catalogSize,
+                    GraphLayout.parseInstance(rentals).totalSize(),
+                    GraphLayout.parseInstance(rentalResponses).totalSize(),
+                    GraphLayout.parseInstance(snapshot).totalSize());
+        }
+
+        new Runner(new OptionsBuilder()
+                .include(RentalCatalogBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
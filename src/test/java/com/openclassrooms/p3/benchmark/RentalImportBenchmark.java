@@ -0,0 +1,130 @@
+package com.openclassrooms.p3.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.openclassrooms.p3.model.Rental;
+import com.openclassrooms.p3.model.Users;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+
+/**
+ * Measures the number of rentals inserted per second by the bulk import, with
+ * the rentals mapped by Hibernate to an in-memory H2 database in MySQL mode.
+ *
+ * One rental per transaction without batching stands for one POST per rental;
+ * the import commits chunks of rentals sent in JDBC batches. The absolute
+ * numbers are not those of MySQL, where each round-trip costs more, but the gap
+ * between the modes is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RentalImportBenchmark {
+
+    private static final int IMPORTED_RENTALS = 5_000;
+
+    /**
+     * Rentals committed per transaction.
+     */
+    @Param({ "1", "500" })
+    private int chunkSize;
+
+    /**
+     * Inserts sent per JDBC batch, 1 disabling batching.
+     */
+    @Param({ "1", "50" })
+    private int jdbcBatchSize;
+
+    private SessionFactory sessionFactory;
+
+    private List<RentalSingleResponse> rentals;
+
+    private Long ownerId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(Users.class)
+                .addAnnotatedClass(Rental.class)
+                .setProperty(AvailableSettings.URL, "jdbc:h2:mem:rental-import;MODE=MySQL;DB_CLOSE_DELAY=-1")
+                .setProperty(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+                .setProperty(AvailableSettings.ORDER_INSERTS, "true")
+                .buildSessionFactory();
+
+        rentals = BenchmarkData.generateRentals(IMPORTED_RENTALS, 42);
+
+        Users owner = new Users();
+        owner.setName("Owner");
+        owner.setEmail("owner@example.com");
+        owner.setPassword("password");
+        sessionFactory.inTransaction(session -> session.persist(owner));
+        ownerId = owner.getId();
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteRentals() {
+        sessionFactory.inTransaction(session -> session.createMutationQuery("DELETE FROM Rental").executeUpdate());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    /**
+     * Imports the rentals in transactions of {@code chunkSize} rentals.
+     */
+    @Benchmark
+    @OperationsPerInvocation(IMPORTED_RENTALS)
+    public void importRentals() {
+        for (int chunkStart = 0; chunkStart < rentals.size(); chunkStart += chunkSize) {
+            try (Session session = sessionFactory.openSession()) {
+                session.setJdbcBatchSize(jdbcBatchSize);
+                Transaction transaction = session.beginTransaction();
+
+                for (RentalSingleResponse rentalResponse : rentals.subList(chunkStart,
+                        Math.min(chunkStart + chunkSize, rentals.size()))) {
+                    Rental rental = BenchmarkData.toRental(rentalResponse);
+                    rental.setId(null);
+                    rental.setOwnerId(ownerId);
+
+                    session.persist(rental);
+                }
+
+                transaction.commit();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RentalImportBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
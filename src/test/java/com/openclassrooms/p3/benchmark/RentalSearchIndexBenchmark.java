@@ -0,0 +1,93 @@
+package com.openclassrooms.p3.benchmark;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.openclassrooms.p3.index.RentalSearchIndex;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+
+/**
+ * Measures the indexing and query throughput of the rental search index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RentalSearchIndexBenchmark {
+
+    @Param({ "10000", "100000" })
+    private int catalogSize;
+
+    private RentalSearchIndex searchIndex;
+
+    private List<RentalSingleResponse> rentals;
+
+    private String[] queries;
+
+    private int nextRental;
+
+    private int nextQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rentals = BenchmarkData.generateRentals(catalogSize, 42);
+
+        searchIndex = new RentalSearchIndex();
+        rentals.forEach(searchIndex::indexRental);
+
+        SplittableRandom random = new SplittableRandom(7);
+        queries = new String[1_024];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = BenchmarkData.generateText(random, 1 + random.nextInt(3));
+        }
+    }
+
+    /**
+     * Re-indexes an existing rental, as done when a rental is updated.
+     */
+    @Benchmark
+    public void indexRental() {
+        searchIndex.indexRental(rentals.get(nextRental));
+        nextRental = (nextRental + 1) % rentals.size();
+    }
+
+    /**
+     * Searches the first page of results of a one to three terms query.
+     *
+     * @return The page of results.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public RentalSearchIndex.SearchResult searchFirstPage() {
+        String query = queries[nextQuery];
+        nextQuery = (nextQuery + 1) % queries.length;
+
+        return searchIndex.search(query, 0, 20);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RentalSearchIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
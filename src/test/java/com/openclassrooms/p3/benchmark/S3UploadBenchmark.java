@@ -0,0 +1,178 @@
+package com.openclassrooms.p3.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * Measures the latency and the throughput of the picture uploads of the
+ * S3Service, four at a time: with the S3 client shared by the uploads, as
+ * created by the S3Config, and with a client built for each upload, as the
+ * service used to do.
+ *
+ * Uploads are sent over plain HTTP to an in-process S3-compatible stub which
+ * reads the pictures and answers at once, so the results exclude the network
+ * and the TLS handshakes a client built for each upload also pays against
+ * AWS.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class S3UploadBenchmark {
+
+    private static final String BUCKET_NAME = "benchmark-bucket";
+
+    private static final int PICTURE_BYTES = 200 * 1024;
+
+    private HttpServer s3Stub;
+
+    private URI s3StubEndpoint;
+
+    private S3Client sharedClient;
+
+    private byte[] picture;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        s3Stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        s3Stub.createContext("/", S3UploadBenchmark::storeObject);
+        s3Stub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        s3Stub.start();
+        s3StubEndpoint = URI.create("http://127.0.0.1:" + s3Stub.getAddress().getPort());
+
+        sharedClient = buildClient();
+
+        picture = new byte[PICTURE_BYTES];
+        new SplittableRandom(42).nextBytes(picture);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sharedClient.close();
+        s3Stub.stop(0);
+    }
+
+    /**
+     * Uploads a picture with the shared client.
+     *
+     * @return The URL of the picture.
+     */
+    @Benchmark
+    public String sharedClient() {
+        return upload(sharedClient);
+    }
+
+    /**
+     * Builds a client, uploads a picture with it, then closes it. The service
+     * used not to close its clients, which is left out so that the benchmark
+     * does not run out of sockets.
+     *
+     * @return The URL of the picture.
+     */
+    @Benchmark
+    public String clientPerUpload() {
+        try (S3Client s3Client = buildClient()) {
+            return upload(s3Client);
+        }
+    }
+
+    /**
+     * Builds a client sending its requests to the stub, configured as the
+     * S3Config does by default.
+     *
+     * @return The client.
+     */
+    private S3Client buildClient() {
+        return S3Client.builder()
+                .region(Region.EU_NORTH_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("key", "secret")))
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(50)
+                        .connectionTimeout(Duration.ofSeconds(2))
+                        .socketTimeout(Duration.ofSeconds(30)))
+                .endpointOverride(s3StubEndpoint)
+                .forcePathStyle(true)
+                .build();
+    }
+
+    /**
+     * Uploads a picture as the S3Service does.
+     *
+     * @param s3Client The client.
+     * @return The URL of the picture.
+     */
+    private String upload(S3Client s3Client) {
+        String key = "images/" + UUID.randomUUID() + "picture.jpg";
+
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(BUCKET_NAME)
+                .key(key)
+                .contentType("image/jpeg")
+                .build();
+        s3Client.putObject(putObjectRequest,
+                RequestBody.fromInputStream(new ByteArrayInputStream(picture), picture.length));
+
+        return s3Client.utilities().getUrl(builder -> builder.bucket(BUCKET_NAME).key(key)).toString();
+    }
+
+    /**
+     * Answers a PutObject request of the stub, once its body is read.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException if the connection fails.
+     */
+    private static void storeObject(HttpExchange exchange) throws IOException {
+        try (InputStream requestBody = exchange.getRequestBody()) {
+            requestBody.transferTo(OutputStream.nullOutputStream());
+        }
+
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(S3UploadBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,114 @@
+package com.openclassrooms.p3.benchmark;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.openclassrooms.p3.utils.TokenBucketLimiter;
+
+/**
+ * Measures the login attempts checked per second by the token buckets of the
+ * login throttling, from several threads: on a single key, as during a flood
+ * on one account, and on many keys, as during a credential-stuffing attack.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class TokenBucketLimiterBenchmark {
+
+    private static final int KEYS = 100_000;
+
+    /**
+     * Buckets that are almost never empty, every attempt taking a token.
+     */
+    private TokenBucketLimiter allowingLimiter;
+
+    /**
+     * Buckets emptied at once, every attempt being refused.
+     */
+    private TokenBucketLimiter refusingLimiter;
+
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        allowingLimiter = new TokenBucketLimiter(Integer.MAX_VALUE, Duration.ofNanos(1), KEYS);
+        refusingLimiter = new TokenBucketLimiter(1, Duration.ofDays(1), KEYS);
+
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "user" + i + "@example.com";
+        }
+    }
+
+    /**
+     * Random key picked by each thread.
+     */
+    @State(Scope.Thread)
+    public static class KeyPicker {
+
+        private final SplittableRandom random = new SplittableRandom();
+
+        int nextKey() {
+            return random.nextInt(KEYS);
+        }
+    }
+
+    /**
+     * Takes a token from a single bucket shared by every thread.
+     *
+     * @return Whether the token was taken.
+     */
+    @Benchmark
+    public boolean sameKey() {
+        return allowingLimiter.tryAcquire(keys[0]);
+    }
+
+    /**
+     * Takes a token from the bucket of a random key.
+     *
+     * @param keyPicker The random key generator of the thread.
+     * @return Whether the token was taken.
+     */
+    @Benchmark
+    public boolean manyKeys(KeyPicker keyPicker) {
+        return allowingLimiter.tryAcquire(keys[keyPicker.nextKey()]);
+    }
+
+    /**
+     * Attempts to take a token from the empty bucket of a random key.
+     *
+     * @param keyPicker The random key generator of the thread.
+     * @return Whether the token was taken.
+     */
+    @Benchmark
+    public boolean manyKeysRefused(KeyPicker keyPicker) {
+        return refusingLimiter.tryAcquire(keys[keyPicker.nextKey()]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TokenBucketLimiterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
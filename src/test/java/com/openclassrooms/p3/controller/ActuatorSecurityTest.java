@@ -0,0 +1,108 @@
+package com.openclassrooms.p3.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.openclassrooms.p3.utils.JwtUtil;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * This class checks who may call the actuator endpoints, served here on the
+ * API port, user 2 being the only administrator.
+ */
+@SpringBootTest(properties = {
+        "management.server.port=",
+        "management.endpoints.web.exposure.include=health,caches,tokens",
+        "auth.admin-user-ids=2" })
+@AutoConfigureMockMvc
+public class ActuatorSecurityTest {
+
+    private static final long UNKNOWN_USER_ID = 999_999L;
+
+    @Autowired
+    private MockMvc mvc;
+
+    /**
+     * HAPPY PATH:
+     * Test method for checking the health without authorization header.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testHealthIsPublic() throws Exception {
+        mvc.perform(get("/actuator/health"))
+                .andExpect(status().isOk());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for revoking the tokens of a user without authorization header.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRevokingTokensWithoutAuthorizationHeader() throws Exception {
+        mvc.perform(post("/actuator/tokens/{userId}", 1))
+                .andExpect(status().isUnauthorized());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for revoking the tokens of a user as a user who is not an
+     * administrator.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRevokingTokensAsUser() throws Exception {
+        mvc.perform(post("/actuator/tokens/{userId}", 1)
+                .header("Authorization", "Bearer " + JwtUtil.generateJwtToken(1L)))
+                .andExpect(status().isForbidden());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for clearing the caches as a user who is not an administrator.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testClearingCachesAsUser() throws Exception {
+        mvc.perform(delete("/actuator/caches")
+                .header("Authorization", "Bearer " + JwtUtil.generateJwtToken(1L)))
+                .andExpect(status().isForbidden());
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for counting the revocations as a user who is not an
+     * administrator.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testCountingRevocationsAsUser() throws Exception {
+        mvc.perform(get("/actuator/tokens")
+                .header("Authorization", "Bearer " + JwtUtil.generateJwtToken(1L)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.revoked_users").isNumber());
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for revoking the tokens of an unknown user as an administrator.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRevokingTokensOfUnknownUserAsAdministrator() throws Exception {
+        mvc.perform(post("/actuator/tokens/{userId}", UNKNOWN_USER_ID)
+                .header("Authorization", "Bearer " + JwtUtil.generateJwtToken(2L)))
+                .andExpect(status().isNotFound());
+    }
+}
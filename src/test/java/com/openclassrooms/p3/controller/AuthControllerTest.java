@@ -5,17 +5,27 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.openclassrooms.p3.payload.request.AuthLoginRequest;
 import com.openclassrooms.p3.payload.request.AuthRegisterRequest;
 import com.openclassrooms.p3.utils.JwtUtil;
 
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import jakarta.servlet.ServletException;
+
 import java.util.HashMap;
 import java.util.Map;
 
@@ -54,7 +64,7 @@ public class AuthControllerTest {
                 String validRequestJson = objectMapper.writeValueAsString(validRequest);
 
                 // Perform the registration validRequest
-                mvc.perform(post("/api/auth/register")
+                performAsync(post("/api/auth/register")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(validRequestJson))
                                 .andExpect(status().isCreated())
@@ -79,12 +89,36 @@ public class AuthControllerTest {
                 String validRequestJson = objectMapper.writeValueAsString(validRequest);
 
                 // Perform the registration validRequest
-                mvc.perform(post("/api/auth/register")
+                performAsync(post("/api/auth/register")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(validRequestJson))
                                 .andExpect(status().isConflict());
         }
 
+        /**
+         * EDGE CASE:
+         * Test method for registering a user whose email is too long for its column,
+         * which is not reported as an email already in use but left to the server
+         * error handling.
+         * 
+         * @throws Exception if an error occurs during the test
+         */
+        @Test
+        public void testRegisterUserWithTooLongEmail() throws Exception {
+                AuthRegisterRequest tooLongRequest = new AuthRegisterRequest(
+                                "a".repeat(300) + "@example.com",
+                                "Valid Name",
+                                "p@ssword123");
+
+                String tooLongRequestJson = objectMapper.writeValueAsString(tooLongRequest);
+
+                ServletException exception = assertThrows(ServletException.class,
+                                () -> performAsync(post("/api/auth/register")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(tooLongRequestJson)));
+                assertInstanceOf(DataIntegrityViolationException.class, exception.getCause());
+        }
+
         /**
          * EDGE CASE:
          * Test method for registering a new user with invalid input.
@@ -101,7 +135,7 @@ public class AuthControllerTest {
                 String invalidRequestJson = objectMapper.writeValueAsString(invalidRequest);
 
                 // Perform the registration validRequest
-                mvc.perform(post("/api/auth/register")
+                performAsync(post("/api/auth/register")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(invalidRequestJson))
                                 .andExpect(status().isBadRequest());
@@ -128,7 +162,7 @@ public class AuthControllerTest {
                 String validRequestJson = objectMapper.writeValueAsString(validRequest);
 
                 // Perform the login request
-                mvc.perform(post("/api/auth/login")
+                performAsync(post("/api/auth/login")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(validRequestJson))
                                 .andExpect(status().isOk())
@@ -152,7 +186,7 @@ public class AuthControllerTest {
                 String invalidRequestJson = objectMapper.writeValueAsString(invalidRequest);
 
                 // Perform the login request
-                mvc.perform(post("/api/auth/login")
+                performAsync(post("/api/auth/login")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(invalidRequestJson))
                                 .andExpect(status().isUnauthorized());
@@ -198,4 +232,89 @@ public class AuthControllerTest {
                                 .header("Authorization", "Bearer " + invalidJwt))
                                 .andExpect(status().isUnauthorized());
         }
+
+        /*
+         * /logout
+         */
+
+        /**
+         * HAPPY PATH:
+         * Test method for logging out, the token being rejected afterwards.
+         * 
+         * @throws Exception if an error occurs during the test
+         */
+        @Test
+        public void testLogoutWithValidInput() throws Exception {
+                String mockJwt = JwtUtil.generateJwtToken(1L);
+
+                mvc.perform(post("/api/auth/logout")
+                                .header("Authorization", "Bearer " + mockJwt))
+                                .andExpect(status().isNoContent());
+
+                mvc.perform(get("/api/auth/me")
+                                .header("Authorization", "Bearer " + mockJwt))
+                                .andExpect(status().isUnauthorized());
+        }
+
+        /**
+         * EDGE CASE:
+         * Test method for logging out without token.
+         * 
+         * @throws Exception if an error occurs during the test
+         */
+        @Test
+        public void testLogoutWithInvalidInput() throws Exception {
+                mvc.perform(post("/api/auth/logout"))
+                                .andExpect(status().isUnauthorized());
+        }
+
+        /*
+         * /logout-all
+         */
+
+        /**
+         * HAPPY PATH:
+         * Test method for logging out of all the sessions of a newly registered
+         * user, every token issued before being rejected afterwards.
+         * 
+         * @throws Exception if an error occurs during the test
+         */
+        @Test
+        public void testLogoutAllWithValidInput() throws Exception {
+                AuthRegisterRequest validRequest = new AuthRegisterRequest(
+                                "logout." + System.currentTimeMillis() + "@example.com",
+                                "Valid Name",
+                                "p@ssword123");
+
+                String registrationJson = performAsync(post("/api/auth/register")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(validRequest)))
+                                .andExpect(status().isCreated())
+                                .andReturn().getResponse().getContentAsString();
+                String jwt = objectMapper.readTree(registrationJson).get("token").asText();
+
+                mvc.perform(post("/api/auth/logout-all")
+                                .header("Authorization", "Bearer " + jwt))
+                                .andExpect(status().isNoContent());
+
+                mvc.perform(get("/api/auth/me")
+                                .header("Authorization", "Bearer " + jwt))
+                                .andExpect(status().isUnauthorized());
+        }
+
+        /**
+         * Performs a request answered asynchronously, such as a registration or a
+         * login, and dispatches its result.
+         *
+         * @param requestBuilder The request to perform.
+         * @return The actions on the dispatched result.
+         * @throws Exception if an error occurs during the request
+         */
+        private ResultActions performAsync(RequestBuilder requestBuilder) throws Exception {
+                MvcResult mvcResult = mvc.perform(requestBuilder)
+                                .andExpect(request().asyncStarted())
+                                .andReturn();
+
+                return mvc.perform(asyncDispatch(mvcResult));
+        }
 }
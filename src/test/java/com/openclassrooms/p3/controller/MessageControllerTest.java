@@ -6,15 +6,22 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import com.openclassrooms.p3.payload.request.MessageRequest;
+import com.openclassrooms.p3.payload.request.RentalUpdateRequest;
+import com.openclassrooms.p3.service.RentalService;
 import com.openclassrooms.p3.utils.JwtUtil;
 
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
+import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -26,6 +33,12 @@ public class MessageControllerTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private RentalService rentalService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     /**
      * HAPPY PATH:
      * Test case for successfully creating a new message.
@@ -139,6 +152,263 @@ public class MessageControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    /**
+     * HAPPY PATH:
+     * Test case for an owner whose ID is above 127, and therefore not a cached
+     * Long, posting a message about their rental and reading its messages.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testOwnerWithHighIdReadsRentalMessages() throws Exception {
+        Long ownerId = createUserWithHighId();
+        Long rentalId = createRentalOwnedBy(ownerId);
+        String ownerJwt = JwtUtil.generateJwtToken(ownerId);
+
+        try {
+            mvc.perform(post("/api/messages")
+                    .header("Authorization", "Bearer " + ownerJwt)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(new MessageRequest(rentalId, ownerId, "Owner message"))))
+                    .andExpect(status().isCreated());
+
+            mvc.perform(get("/api/rentals/{id}/messages", rentalId)
+                    .header("Authorization", "Bearer " + ownerJwt))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.messages[0].message").value("Owner message"));
+        } finally {
+            deleteRentalAndOwner(rentalId, ownerId);
+        }
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test case for paging through the inbox of an owner with the cursor of the
+     * previous page.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testPagesThroughInbox() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+        for (int i = 0; i < 2; i++) {
+            mvc.perform(post("/api/messages")
+                    .header("Authorization", "Bearer " + validMockJwt)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(new MessageRequest(1L, 1L, "Inbox message " + i))))
+                    .andExpect(status().isCreated());
+        }
+
+        String firstPageJson = mvc.perform(get("/api/messages/inbox")
+                .header("Authorization", "Bearer " + validMockJwt)
+                .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages.length()").value(1))
+                .andExpect(jsonPath("$.next").isString())
+                .andReturn().getResponse().getContentAsString();
+
+        String nextCursor = objectMapper.readTree(firstPageJson).get("next").asText();
+        mvc.perform(get("/api/messages/inbox")
+                .header("Authorization", "Bearer " + validMockJwt)
+                .param("limit", "1")
+                .param("cursor", nextCursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages.length()").value(1));
+    }
+
+    /**
+     * EDGE CASE:
+     * Test case for validating that a malformed inbox cursor is rejected with a
+     * bad request status.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRejectsMalformedInboxCursor() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+        mvc.perform(get("/api/messages/inbox")
+                .header("Authorization", "Bearer " + validMockJwt)
+                .param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test case for delivering a new message to the stream of the owner of the
+     * rental.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testStreamsNewMessageToOwner() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+        MvcResult streamResult = mvc.perform(get("/api/messages/stream")
+                .header("Authorization", "Bearer " + validMockJwt))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(post("/api/messages")
+                .header("Authorization", "Bearer " + validMockJwt)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new MessageRequest(1L, 1L, "Streamed message"))))
+                .andExpect(status().isCreated());
+
+        // The event is written by another thread
+        long deadline = System.currentTimeMillis() + 5_000;
+        String streamContent = streamResult.getResponse().getContentAsString();
+        while (!streamContent.contains("Streamed message") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            streamContent = streamResult.getResponse().getContentAsString();
+        }
+
+        assertTrue(streamContent.contains("event:message"));
+        assertTrue(streamContent.contains("Streamed message"));
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test case for resetting the unread count of a rental once its owner marks
+     * its messages as read.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testMarksRentalMessagesRead() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+        mvc.perform(post("/api/rentals/{id}/messages/read", 1)
+                .header("Authorization", "Bearer " + validMockJwt))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.message").value("Messages marked as read!"));
+
+        mvc.perform(get("/api/messages/unread")
+                .header("Authorization", "Bearer " + validMockJwt))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.unread").isNumber())
+                .andExpect(jsonPath("$.rentals['1']").doesNotExist());
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test case for an owner whose ID is above 127, and therefore not a cached
+     * Long, marking the messages of their rental as read.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testOwnerWithHighIdMarksRentalMessagesRead() throws Exception {
+        Long ownerId = createUserWithHighId();
+        Long rentalId = createRentalOwnedBy(ownerId);
+        String ownerJwt = JwtUtil.generateJwtToken(ownerId);
+
+        try {
+            mvc.perform(post("/api/messages")
+                    .header("Authorization", "Bearer " + getMockJwtWithIdOfOne())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(new MessageRequest(rentalId, 1L, "Unread message"))))
+                    .andExpect(status().isCreated());
+
+            mvc.perform(get("/api/messages/unread")
+                    .header("Authorization", "Bearer " + ownerJwt))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.rentals['" + rentalId + "']").value(1));
+
+            mvc.perform(post("/api/rentals/{id}/messages/read", rentalId)
+                    .header("Authorization", "Bearer " + ownerJwt))
+                    .andExpect(status().isOk());
+
+            mvc.perform(get("/api/messages/unread")
+                    .header("Authorization", "Bearer " + ownerJwt))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.rentals['" + rentalId + "']").doesNotExist());
+        } finally {
+            deleteRentalAndOwner(rentalId, ownerId);
+        }
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test case for returning the first response to a retry carrying the same
+     * Idempotency-Key, without posting the message again.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testReplaysRetriedMessageWithIdempotencyKey() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+        String idempotencyKey = UUID.randomUUID().toString();
+        String messageJson = objectMapper.writeValueAsString(new MessageRequest(1L, 1L, "Retried message"));
+
+        mvc.perform(post("/api/messages")
+                .header("Authorization", "Bearer " + validMockJwt)
+                .header("Idempotency-Key", idempotencyKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(messageJson))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"));
+
+        mvc.perform(post("/api/messages")
+                .header("Authorization", "Bearer " + validMockJwt)
+                .header("Idempotency-Key", idempotencyKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(messageJson))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.message").value("Successfully created a new message!"));
+    }
+
+    /**
+     * EDGE CASE:
+     * Test case for validating that an Idempotency-Key reused with another
+     * message is rejected with an unprocessable entity status.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRejectsIdempotencyKeyReusedWithOtherMessage() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        mvc.perform(post("/api/messages")
+                .header("Authorization", "Bearer " + validMockJwt)
+                .header("Idempotency-Key", idempotencyKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new MessageRequest(1L, 1L, "First message"))))
+                .andExpect(status().isCreated());
+
+        mvc.perform(post("/api/messages")
+                .header("Authorization", "Bearer " + validMockJwt)
+                .header("Idempotency-Key", idempotencyKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new MessageRequest(1L, 1L, "Other message"))))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    /**
+     * Creates a user whose ID is above 127 and above the IDs of the existing
+     * users.
+     *
+     * @return The ID of the user.
+     */
+    private Long createUserWithHighId() {
+        Long userId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) + 1000 FROM users", Long.class);
+        jdbcTemplate.update("INSERT INTO users (id, name, email, password, created_at, updated_at, token_version) "
+                + "VALUES (?, 'High ID owner', ?, 'password', CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, 0)",
+                userId, "owner-" + UUID.randomUUID() + "@example.com");
+
+        return userId;
+    }
+
+    private Long createRentalOwnedBy(Long ownerId) {
+        return rentalService.saveRental(new RentalUpdateRequest("High ID owner rental", 40, BigDecimal.valueOf(750),
+                "Description", "https://example.com/picture.jpg", ownerId)).getId();
+    }
+
+    private void deleteRentalAndOwner(Long rentalId, Long ownerId) {
+        jdbcTemplate.update("DELETE FROM messages WHERE rental_id = ?", rentalId);
+        rentalService.deleteRental(rentalId);
+        jdbcTemplate.update("DELETE FROM users WHERE id = ?", ownerId);
+    }
+
     /**
      * Generates a mock JWT token with a user ID of 1 in the claim.
      *
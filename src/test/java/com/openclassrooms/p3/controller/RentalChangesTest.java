@@ -0,0 +1,242 @@
+package com.openclassrooms.p3.controller;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import com.jayway.jsonpath.JsonPath;
+import com.openclassrooms.p3.payload.request.RentalUpdateRequest;
+import com.openclassrooms.p3.service.RentalService;
+import com.openclassrooms.p3.utils.CursorUtil;
+import com.openclassrooms.p3.utils.JwtUtil;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * This class tests the delta endpoint of the rentals, paging through the rentals
+ * created, updated and deleted since a synchronization time.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+public class RentalChangesTest {
+
+    private static final long UNKNOWN_RENTAL_ID = 999_999L;
+
+    private static final Comparator<Change> CHANGE_ORDER = Comparator.comparing(Change::changedAt)
+            .thenComparingLong(Change::rentalId);
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private RentalService rentalService;
+
+    /**
+     * Time before the changes of the test, rentals changed in the same second by
+     * other tests being ignored.
+     */
+    private LocalDateTime since;
+
+    private final List<Long> rentalIds = new ArrayList<>();
+
+    /**
+     * Change of a rental listed by the endpoint.
+     *
+     * @param kind      "upsert" for a rental created or updated, "tombstone" for a
+     *                  rental deleted.
+     * @param rentalId  The ID of the rental.
+     * @param changedAt The time of the change.
+     */
+    private record Change(String kind, long rentalId, LocalDateTime changedAt) {
+    }
+
+    @BeforeEach
+    public void createRentals() {
+        since = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).minusSeconds(1);
+
+        for (int i = 0; i < 4; i++) {
+            rentalIds.add(rentalService.saveRental(new RentalUpdateRequest("Changed rental " + i, 40,
+                    BigDecimal.valueOf(750), "Description", "https://example.com/picture.jpg", 1L)).getId());
+        }
+        rentalService.deleteRental(rentalIds.get(1));
+        rentalService.deleteRental(rentalIds.get(3));
+    }
+
+    @AfterEach
+    public void deleteRentals() {
+        rentalService.deleteRental(rentalIds.get(0));
+        rentalService.deleteRental(rentalIds.get(2));
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for following the cursors of the changes one by one, every
+     * upsert and tombstone being listed once in change order.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testPagingThroughUpsertsAndTombstones() throws Exception {
+        List<Change> changes = listAllChanges(1);
+
+        assertEquals(Set.of("upsert " + rentalIds.get(0), "upsert " + rentalIds.get(2),
+                "tombstone " + rentalIds.get(1), "tombstone " + rentalIds.get(3)), describeTestChanges(changes));
+        assertEquals(changes.stream().sorted(CHANGE_ORDER).toList(), changes);
+        assertEquals(changes.size(), Set.copyOf(changes).size());
+
+        // Larger pages list the same changes, the upserts of a page before its tombstones
+        List<Change> pagedChanges = listAllChanges(3);
+        assertEquals(changes.size(), pagedChanges.size());
+        assertEquals(Set.copyOf(changes), Set.copyOf(pagedChanges));
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for the changes made before the synchronization time, which are
+     * not listed again.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testChangesBeforeSinceAreNotListed() throws Exception {
+        since = LocalDateTime.now().plusMinutes(1);
+
+        assertEquals(List.of(), listAllChanges(10));
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for deleting a rental which does not exist, which leaves no
+     * tombstone.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testDeletingUnknownRentalLeavesNoTombstone() throws Exception {
+        rentalService.deleteRental(UNKNOWN_RENTAL_ID);
+
+        assertTrue(listAllChanges(100).stream()
+                .noneMatch(change -> change.rentalId() == UNKNOWN_RENTAL_ID));
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for retrieving the changes with a limit lower than one.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingChangesWithInvalidLimit() throws Exception {
+        mvc.perform(changesRequest().param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for retrieving the changes with malformed cursors: not Base64,
+     * with a missing value, or with values which are not a time and an ID.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingChangesWithInvalidCursor() throws Exception {
+        for (String cursor : new String[] { "not a cursor!", CursorUtil.encodeCursor(since.toString()),
+                CursorUtil.encodeCursor("yesterday", "1"), CursorUtil.encodeCursor(since.toString(), "one") }) {
+            mvc.perform(changesRequest().param("cursor", cursor))
+                    .andExpect(status().isBadRequest());
+        }
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for retrieving the changes without a valid synchronization time.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingChangesWithInvalidSince() throws Exception {
+        mvc.perform(get("/api/rentals/changes")
+                .header("Authorization", "Bearer " + JwtUtil.generateJwtToken(1L)))
+                .andExpect(status().isBadRequest());
+
+        mvc.perform(get("/api/rentals/changes")
+                .param("since", "yesterday")
+                .header("Authorization", "Bearer " + JwtUtil.generateJwtToken(1L)))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Follows the cursors of the changes since the synchronization time of the
+     * test.
+     *
+     * @param limit The number of changes per page.
+     * @return The changes of every page, in the order of the pages.
+     * @throws Exception if a request fails.
+     */
+    private List<Change> listAllChanges(int limit) throws Exception {
+        List<Change> changes = new ArrayList<>();
+        String cursor = null;
+
+        do {
+            MockHttpServletRequestBuilder request = changesRequest().param("limit", String.valueOf(limit));
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+
+            String body = mvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+
+            List<Map<String, Object>> upserts = JsonPath.read(body, "$.rentals");
+            List<Map<String, Object>> tombstones = JsonPath.read(body, "$.deleted");
+            assertTrue(upserts.size() + tombstones.size() <= limit);
+
+            upserts.forEach(upsert -> changes.add(new Change("upsert", ((Number) upsert.get("id")).longValue(),
+                    LocalDateTime.parse((String) upsert.get("updated_at")))));
+            tombstones.forEach(tombstone -> changes.add(new Change("tombstone",
+                    ((Number) tombstone.get("id")).longValue(),
+                    LocalDateTime.parse((String) tombstone.get("deleted_at")))));
+            cursor = JsonPath.read(body, "$.next");
+        } while (cursor != null);
+
+        return changes;
+    }
+
+    /**
+     * Describes the changes of the rentals of the test, ignoring the ones of the
+     * other tests.
+     *
+     * @param changes The listed changes.
+     * @return The changes of the test, as "upsert <ID>" or "tombstone <ID>".
+     */
+    private Set<String> describeTestChanges(List<Change> changes) {
+        return changes.stream()
+                .filter(change -> rentalIds.contains(change.rentalId()))
+                .map(change -> change.kind() + " " + change.rentalId())
+                .collect(Collectors.toSet());
+    }
+
+    private MockHttpServletRequestBuilder changesRequest() {
+        return get("/api/rentals/changes")
+                .param("since", since.toString())
+                .header("Authorization", "Bearer " + JwtUtil.generateJwtToken(1L));
+    }
+}
@@ -4,6 +4,8 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
 import com.openclassrooms.p3.utils.JwtUtil;
@@ -50,6 +52,95 @@ public class RentalControllerTest {
                 .andExpect(status().isUnauthorized());
     }
 
+    /**
+     * HAPPY PATH:
+     * Test method for retrieving the rentals within a price and surface range,
+     * sorted by price.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingFilteredAndSortedRentals() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+
+        mvc.perform(get("/api/rentals")
+                .param("min_price", "100")
+                .param("max_price", "5000")
+                .param("min_surface", "20")
+                .param("sort", "-price")
+                .header("Authorization", "Bearer " + validMockJwt))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rentals").isArray());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for retrieving the rentals with an unknown order.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingRentalsWithUnknownSort() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+
+        mvc.perform(get("/api/rentals")
+                .param("sort", "name")
+                .header("Authorization", "Bearer " + validMockJwt))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for retrieving the statistics of the rentals within a price
+     * range.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingRentalStats() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+
+        mvc.perform(get("/api/rentals/stats")
+                .param("min_price", "100")
+                .header("Authorization", "Bearer " + validMockJwt))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").isNumber());
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for searching rentals by their name and description.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testSearchingRentals() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+
+        mvc.perform(get("/api/rentals/search")
+                .param("q", "appartement")
+                .header("Authorization", "Bearer " + validMockJwt))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rentals").isArray())
+                .andExpect(jsonPath("$.total").isNumber());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for searching rentals with a blank query.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testSearchingRentalsWithBlankQuery() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+
+        mvc.perform(get("/api/rentals/search")
+                .param("q", " ")
+                .header("Authorization", "Bearer " + validMockJwt))
+                .andExpect(status().isBadRequest());
+    }
+
     /**
      * HAPPY PATH:
      * Test method for retrieving a specific rental by ID with valid authorization
@@ -66,6 +157,29 @@ public class RentalControllerTest {
                 .andExpect(jsonPath("$.id").value(1));
     }
 
+    /**
+     * HAPPY PATH:
+     * Test method for retrieving a specific rental with the entity tag of its
+     * current version.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingNotModifiedRental() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+        String eTag = mvc.perform(get("/api/rentals/{id}", 1)
+                .header("Authorization", "Bearer " + validMockJwt))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(get("/api/rentals/{id}", 1)
+                .header("Authorization", "Bearer " + validMockJwt)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
     /**
      * EDGE CASE:
      * Test method for retrieving a specific rental with an invalid authorization
@@ -95,6 +209,54 @@ public class RentalControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    /**
+     * HAPPY PATH:
+     * Test method for retrieving the messages of a rental as its owner.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingRentalMessagesAsOwner() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+
+        mvc.perform(get("/api/rentals/{id}/messages", 1)
+                .header("Authorization", "Bearer " + validMockJwt)
+                .param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages").isArray());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for retrieving the messages of a rental owned by another user.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingRentalMessagesOfAnotherOwner() throws Exception {
+        String otherUserMockJwt = JwtUtil.generateJwtToken(2L);
+
+        mvc.perform(get("/api/rentals/{id}/messages", 1)
+                .header("Authorization", "Bearer " + otherUserMockJwt))
+                .andExpect(status().isForbidden());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for marking as read the messages of a rental owned by another
+     * user.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testMarkingRentalMessagesReadOfAnotherOwner() throws Exception {
+        String otherUserMockJwt = JwtUtil.generateJwtToken(2L);
+
+        mvc.perform(post("/api/rentals/{id}/messages/read", 1)
+                .header("Authorization", "Bearer " + otherUserMockJwt))
+                .andExpect(status().isForbidden());
+    }
+
     /**
      * HAPPY PATH:
      * Test method for adding a new rental with valid parameters and authorization
@@ -115,6 +277,90 @@ public class RentalControllerTest {
                 .andExpect(status().isCreated());
     }
 
+    /**
+     * HAPPY PATH:
+     * Test method for importing rentals from a CSV file.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testImportingRentalsFromCsv() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+
+        mvc.perform(post("/api/rentals/bulk")
+                .header("Authorization", "Bearer " + validMockJwt)
+                .contentType("text/csv")
+                .content("name,surface,price,description,picture\n"
+                        + "TEST Imported rental,40,750.00,\"Imported, through the test class\",https://example.com/image.jpg\n"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.imported").value(1));
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for importing rentals with an invalid one.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testImportingRentalsWithInvalidRental() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+
+        mvc.perform(post("/api/rentals/bulk")
+                .header("Authorization", "Bearer " + validMockJwt)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"name\":\"TEST Imported rental\",\"surface\":40,\"price\":750.00,\"picture\":\"not a URL\"}]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for importing more rentals than allowed, the array being
+     * rejected without being read entirely.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testImportingTooManyRentals() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+
+        // The array is left unclosed: reading it entirely would fail on malformed JSON
+        StringBuilder content = new StringBuilder("[");
+        for (int i = 0; i <= 10_000; i++) {
+            content.append("{},");
+        }
+        content.append("{\"name\":");
+
+        mvc.perform(post("/api/rentals/bulk")
+                .header("Authorization", "Bearer " + validMockJwt)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(content.toString()))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("An import must hold between 1 and 10000 rentals"));
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for importing rentals from malformed JSON or from JSON which is
+     * not an array.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testImportingRentalsWithMalformedJson() throws Exception {
+        String validMockJwt = getMockJwtWithIdOfOne();
+
+        for (String content : new String[] { "{\"name\":\"TEST Imported rental\"}", "[{\"name\":",
+                "[{\"surface\":\"forty\"}]" }) {
+            mvc.perform(post("/api/rentals/bulk")
+                    .header("Authorization", "Bearer " + validMockJwt)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(content))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.message").value("Malformed JSON"));
+        }
+    }
+
     /**
      * EDGE CASE:
      * Test method for adding a new rental without a valid JWT in the authorization
@@ -0,0 +1,93 @@
+package com.openclassrooms.p3.controller;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMultipartHttpServletRequestBuilder;
+
+import com.openclassrooms.p3.service.IdempotencyService;
+import com.openclassrooms.p3.service.S3Service;
+import com.openclassrooms.p3.utils.JwtUtil;
+
+import jakarta.servlet.ServletException;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * This class tests the failures of the creation of a rental, with the upload of
+ * the pictures to S3 mocked.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+public class RentalCreationTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @MockBean
+    private S3Service s3Service;
+
+    /**
+     * EDGE CASE:
+     * Test method for a failed upload of the picture, whose exception is left to
+     * the server error handling rather than cast to an ApiException, and which
+     * lets a retry with the same Idempotency-Key run again.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testUploadFailureIsNotCastToApiException() throws Exception {
+        IllegalStateException uploadFailure = new IllegalStateException("S3 unreachable");
+        when(s3Service.uploadFile(any(), anyString())).thenThrow(uploadFailure);
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        for (int attempt = 1; attempt <= 2; attempt++) {
+            ServletException exception = assertThrows(ServletException.class,
+                    () -> mvc.perform(rentalRequest("image/jpeg")
+                            .header(IdempotencyService.IDEMPOTENCY_KEY_HEADER, idempotencyKey)));
+            assertSame(uploadFailure, exception.getCause());
+        }
+
+        verify(s3Service, times(2)).uploadFile(any(), anyString());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for adding a rental whose picture is not an image.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testAddingRentalWithoutImage() throws Exception {
+        mvc.perform(rentalRequest("text/plain"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private MockMultipartHttpServletRequestBuilder rentalRequest(String pictureContentType) {
+        MockMultipartFile picture = new MockMultipartFile("picture", "picture.jpg", pictureContentType,
+                new byte[] { 1, 2, 3 });
+
+        MockMultipartHttpServletRequestBuilder request = multipart("/api/rentals").file(picture);
+        request.param("name", "Created rental")
+                .param("surface", "40")
+                .param("price", "750.00")
+                .param("description", "Description")
+                .header("Authorization", "Bearer " + JwtUtil.generateJwtToken(1L));
+
+        return request;
+    }
+}
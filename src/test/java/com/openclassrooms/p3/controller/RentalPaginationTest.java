@@ -0,0 +1,261 @@
+package com.openclassrooms.p3.controller;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
+import com.openclassrooms.p3.payload.request.RentalUpdateRequest;
+import com.openclassrooms.p3.service.RentalService;
+import com.openclassrooms.p3.utils.CursorUtil;
+import com.openclassrooms.p3.utils.JwtUtil;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * This class tests the keyset pagination of the rentals, following the "next"
+ * cursors as the clients do, and the streamed catalog. The rentals of the test
+ * are the only ones with their surface.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+public class RentalPaginationTest {
+
+    private static final int PAGED_SURFACE = 876_543;
+
+    private static final String[] PRICES = { "500.00", "100.00", "500.00", "300.00", "100.00", "700.00", "300.00" };
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private RentalService rentalService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * IDs of the rentals of the test, in creation order.
+     */
+    private final List<Long> rentalIds = new ArrayList<>();
+
+    /**
+     * Rental ID -> price.
+     */
+    private final Map<Long, BigDecimal> rentalPrices = new HashMap<>();
+
+    @BeforeEach
+    public void createRentals() {
+        for (String price : PRICES) {
+            Long rentalId = rentalService.saveRental(newRentalRequest(new BigDecimal(price))).getId();
+            rentalIds.add(rentalId);
+            rentalPrices.put(rentalId, new BigDecimal(price));
+        }
+    }
+
+    @AfterEach
+    public void deleteRentals() {
+        rentalIds.forEach(rentalService::deleteRental);
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for following the cursors of the rentals in creation order,
+     * every rental being listed once.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testFollowingCursorsByCreationDate() throws Exception {
+        for (int limit : new int[] { 1, 3, 7, 20 }) {
+            assertEquals(rentalIds, listAllPages("created_at", limit));
+        }
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for following the cursors of the rentals sorted by price, the
+     * rentals with the same price being ordered by ID.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testFollowingCursorsByPrice() throws Exception {
+        Comparator<Long> priceOrder = Comparator.comparing(rentalPrices::get);
+        List<Long> ascendingIds = rentalIds.stream().sorted(priceOrder.thenComparing(id -> id)).toList();
+        List<Long> descendingIds = rentalIds.stream()
+                .sorted(priceOrder.reversed().thenComparing(Comparator.<Long>reverseOrder())).toList();
+
+        for (int limit : new int[] { 1, 2, 4 }) {
+            assertEquals(ascendingIds, listAllPages("price", limit));
+            assertEquals(descendingIds, listAllPages("-price", limit));
+        }
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for a limit higher than the maximum page size, capped to 100
+     * rentals.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testLimitIsCapped() throws Exception {
+        List<RentalUpdateRequest> rentalRequests = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            rentalRequests.add(newRentalRequest(BigDecimal.valueOf(900)));
+        }
+        rentalIds.addAll(rentalService.importRentals(rentalRequests));
+
+        String body = mvc.perform(rentalsRequest("created_at").param("limit", "1000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rentals.length()").value(100))
+                .andReturn().getResponse().getContentAsString();
+        assertNotNull(JsonPath.read(body, "$.next"));
+
+        assertEquals(rentalIds, listAllPages("created_at", 1000));
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for retrieving the rentals with a limit lower than one.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingRentalsWithInvalidLimit() throws Exception {
+        for (String limit : new String[] { "0", "-1" }) {
+            mvc.perform(rentalsRequest("created_at").param("limit", limit))
+                    .andExpect(status().isBadRequest());
+        }
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for retrieving the rentals with malformed cursors: not Base64,
+     * with a missing value, or with values which do not match the sort.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingRentalsWithInvalidCursor() throws Exception {
+        for (String cursor : new String[] { "not a cursor!", CursorUtil.encodeCursor("2024-01-01T12:00"),
+                CursorUtil.encodeCursor("yesterday", "1"), CursorUtil.encodeCursor("2024-01-01T12:00", "one") }) {
+            mvc.perform(rentalsRequest("created_at").param("cursor", cursor))
+                    .andExpect(status().isBadRequest());
+        }
+
+        mvc.perform(rentalsRequest("price").param("cursor", CursorUtil.encodeCursor("cheap", "1")))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for streaming the whole catalog as newline-delimited JSON, one
+     * rental per line in creation order.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testStreamingRentals() throws Exception {
+        MvcResult asyncResult = mvc.perform(get("/api/rentals")
+                .accept("application/x-ndjson")
+                .header("Authorization", "Bearer " + JwtUtil.generateJwtToken(1L)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mvc.perform(asyncDispatch(asyncResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+
+        assertTrue(body.endsWith("\n"));
+        String[] lines = body.split("\n");
+        assertEquals(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM rentals", Integer.class), lines.length);
+
+        List<Long> streamedIds = new ArrayList<>();
+        for (String line : lines) {
+            JsonNode rental = objectMapper.readTree(line);
+            Boolean isTestRental = rental.get("surface").asInt() == PAGED_SURFACE;
+            if (isTestRental) {
+                assertEquals("Paged rental", rental.get("name").asText());
+                assertEquals(0, rentalPrices.get(rental.get("id").asLong())
+                        .compareTo(rental.get("price").decimalValue()));
+                assertEquals(1L, rental.get("owner_id").asLong());
+                assertTrue(rental.hasNonNull("created_at"));
+            }
+            streamedIds.add(rental.get("id").asLong());
+        }
+
+        assertEquals(streamedIds.size(), Set.copyOf(streamedIds).size());
+        assertEquals(rentalIds, streamedIds.stream().filter(rentalIds::contains).toList());
+    }
+
+    /**
+     * Follows the cursors of the rentals of the test.
+     *
+     * @param sort  The order of the rentals.
+     * @param limit The number of rentals per page.
+     * @return The IDs of the rentals of every page, in order.
+     * @throws Exception if a request fails.
+     */
+    private List<Long> listAllPages(String sort, int limit) throws Exception {
+        List<Long> pagedIds = new ArrayList<>();
+        String cursor = null;
+
+        do {
+            MockHttpServletRequestBuilder request = rentalsRequest(sort).param("limit", String.valueOf(limit));
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+
+            String body = mvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+
+            List<Number> pageIds = JsonPath.read(body, "$.rentals[*].id");
+            assertTrue(pageIds.size() <= Math.min(limit, 100));
+            pageIds.forEach(id -> pagedIds.add(id.longValue()));
+            cursor = JsonPath.read(body, "$.next");
+        } while (cursor != null);
+
+        return pagedIds;
+    }
+
+    private MockHttpServletRequestBuilder rentalsRequest(String sort) {
+        return get("/api/rentals")
+                .param("min_surface", String.valueOf(PAGED_SURFACE))
+                .param("max_surface", String.valueOf(PAGED_SURFACE))
+                .param("sort", sort)
+                .header("Authorization", "Bearer " + JwtUtil.generateJwtToken(1L));
+    }
+
+    private RentalUpdateRequest newRentalRequest(BigDecimal price) {
+        return new RentalUpdateRequest("Paged rental", PAGED_SURFACE, price, "Description",
+                "https://example.com/picture.jpg", 1L);
+    }
+}
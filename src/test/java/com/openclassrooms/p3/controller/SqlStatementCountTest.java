@@ -0,0 +1,329 @@
+package com.openclassrooms.p3.controller;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.p3.model.Rental;
+import com.openclassrooms.p3.payload.request.AuthLoginRequest;
+import com.openclassrooms.p3.payload.request.AuthRegisterRequest;
+import com.openclassrooms.p3.payload.request.MessageRequest;
+import com.openclassrooms.p3.payload.response.UserInfoResponse;
+import com.openclassrooms.p3.utils.JwtUtil;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * This class checks the number of SQL statements sent to the database by each
+ * endpoint, so that an eager association or an N+1 query does not silently
+ * creep back in.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+public class SqlStatementCountTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void clearStatisticsAndCaches() {
+        cacheManager.getCacheNames().forEach(cacheName -> cacheManager.getCache(cacheName).clear());
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    /**
+     * Listing the rentals costs the catalog version aggregate and a single page
+     * query, whatever the number of owners in the page. The JWT is validated
+     * without looking the user up.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingAllRentalsStatementCount() throws Exception {
+        mvc.perform(get("/api/rentals")
+                .header("Authorization", "Bearer " + getMockJwtWithIdOfOne()))
+                .andExpect(status().isOk());
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Listing the rentals with an up to date entity tag skips the page query.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingNotModifiedRentalsStatementCount() throws Exception {
+        String eTag = mvc.perform(get("/api/rentals")
+                .header("Authorization", "Bearer " + getMockJwtWithIdOfOne()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        statistics.clear();
+
+        mvc.perform(get("/api/rentals")
+                .header("Authorization", "Bearer " + getMockJwtWithIdOfOne())
+                .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Streaming the catalog costs a single streamed query.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testStreamingAllRentalsStatementCount() throws Exception {
+        MvcResult mvcResult = mvc.perform(get("/api/rentals")
+                .header("Authorization", "Bearer " + getMockJwtWithIdOfOne())
+                .accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Retrieving a rental costs the rental lookup, without joining its owner.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingSpecificRentalStatementCount() throws Exception {
+        mvc.perform(get("/api/rentals/{id}", 1)
+                .header("Authorization", "Bearer " + getMockJwtWithIdOfOne()))
+                .andExpect(status().isOk());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityStatistics(Rental.class.getName()).getLoadCount());
+    }
+
+    /**
+     * Retrieving a rental a second time is served by the rental cache, without any
+     * statement.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingCachedRentalStatementCount() throws Exception {
+        mvc.perform(get("/api/rentals/{id}", 1)
+                .header("Authorization", "Bearer " + getMockJwtWithIdOfOne()))
+                .andExpect(status().isOk());
+        statistics.clear();
+
+        mvc.perform(get("/api/rentals/{id}", 1)
+                .header("Authorization", "Bearer " + getMockJwtWithIdOfOne()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(1));
+
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Posting a message costs the rental lookup and the insert.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testPostingMessageStatementCount() throws Exception {
+        MessageRequest messageRequest = new MessageRequest(1L, 1L, "Statement count message");
+
+        mvc.perform(post("/api/messages")
+                .header("Authorization", "Bearer " + getMockJwtWithIdOfOne())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(messageRequest)))
+                .andExpect(status().isCreated());
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Retrieving the inbox of an owner costs a single query joining the messages
+     * to the rentals.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingInboxStatementCount() throws Exception {
+        mvc.perform(get("/api/messages/inbox")
+                .header("Authorization", "Bearer " + getMockJwtWithIdOfOne()))
+                .andExpect(status().isOk());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Retrieving the messages of a rental costs the rental lookup and a single
+     * query of the messages.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingRentalMessagesStatementCount() throws Exception {
+        mvc.perform(get("/api/rentals/{id}/messages", 1)
+                .header("Authorization", "Bearer " + getMockJwtWithIdOfOne()))
+                .andExpect(status().isOk());
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Posting a message to a rental already in the rental cache costs only the
+     * insert.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testPostingMessageToCachedRentalStatementCount() throws Exception {
+        mvc.perform(get("/api/rentals/{id}", 1)
+                .header("Authorization", "Bearer " + getMockJwtWithIdOfOne()))
+                .andExpect(status().isOk());
+        statistics.clear();
+
+        MessageRequest messageRequest = new MessageRequest(1L, 1L, "Statement count message");
+        mvc.perform(post("/api/messages")
+                .header("Authorization", "Bearer " + getMockJwtWithIdOfOne())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(messageRequest)))
+                .andExpect(status().isCreated());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Retrieving the authenticated user costs a single user lookup.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingAuthenticatedUserStatementCount() throws Exception {
+        mvc.perform(get("/api/auth/me")
+                .header("Authorization", "Bearer " + getMockJwtWithIdOfOne()))
+                .andExpect(status().isOk());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Retrieving the authenticated user with a token embedding their information
+     * does not reach the database.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingAuthenticatedUserFromTokenStatementCount() throws Exception {
+        LocalDateTime createdAt = LocalDateTime.of(2023, 12, 7, 12, 0);
+        UserInfoResponse user = new UserInfoResponse(1L, "Token User", "token.user@example.com", createdAt,
+                createdAt);
+
+        mvc.perform(get("/api/auth/me")
+                .header("Authorization", "Bearer " + JwtUtil.generateJwtToken(user)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Token User"));
+
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Retrieving a user costs a single user lookup.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRetrievingUserStatementCount() throws Exception {
+        mvc.perform(get("/api/user/{id}", 1)
+                .header("Authorization", "Bearer " + getMockJwtWithIdOfOne()))
+                .andExpect(status().isOk());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Registering costs the insert alone, an email already in use being detected
+     * by its unique constraint.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRegisteringStatementCount() throws Exception {
+        AuthRegisterRequest registerRequest = new AuthRegisterRequest(
+                "statement.count." + System.currentTimeMillis() + "@example.com",
+                "Valid Name",
+                "p@ssword123");
+
+        MvcResult mvcResult = mvc.perform(post("/api/auth/register")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(registerRequest)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isCreated());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Logging in with an unknown email is answered by the email filter, without
+     * any statement.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testLoggingInWithUnknownEmailStatementCount() throws Exception {
+        AuthLoginRequest loginRequest = new AuthLoginRequest("unknown.user@example.com", "p@ssword123");
+
+        MvcResult mvcResult = mvc.perform(post("/api/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(loginRequest)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isNotFound());
+
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Generates a mock JWT token with a user ID of 1 in the claim.
+     *
+     * @return A mock JWT token.
+     */
+    private String getMockJwtWithIdOfOne() {
+        return JwtUtil.generateJwtToken(1L);
+    }
+}
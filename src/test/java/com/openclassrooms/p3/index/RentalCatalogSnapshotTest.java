@@ -0,0 +1,81 @@
+package com.openclassrooms.p3.index;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.openclassrooms.p3.model.RentalFilter;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * This class tests the RentalCatalogSnapshot class, with rentals created within
+ * the same second, which are ordered by their full creation date as in MySQL.
+ */
+public class RentalCatalogSnapshotTest {
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    private static final RentalFilter NO_FILTER = new RentalFilter(null, null, null, null);
+
+    /**
+     * HAPPY PATH:
+     * Test method for listing the rentals created within the same second by
+     * creation date, and not by ID.
+     */
+    @Test
+    public void testRowsKeepSubSecondOrder() {
+        RentalCatalogSnapshot snapshot = RentalCatalogSnapshot.of(List.of(
+                newRental(1L, CREATED_AT.plusNanos(500_000_000)),
+                newRental(2L, CREATED_AT.plusNanos(200_000)),
+                newRental(3L, CREATED_AT.plusNanos(1_000))));
+
+        assertEquals(List.of(3L, 2L, 1L), snapshot.findPage(NO_FILTER, null, null, 10));
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for following a keyset whose creation date has a fraction of a
+     * second.
+     */
+    @Test
+    public void testPageStartsAfterSubSecondKeyset() {
+        RentalCatalogSnapshot snapshot = RentalCatalogSnapshot.of(List.of(
+                newRental(1L, CREATED_AT.plusNanos(500_000_000)),
+                newRental(2L, CREATED_AT.plusNanos(200_000_000)),
+                newRental(3L, CREATED_AT.plusNanos(200_000_000))));
+
+        assertEquals(List.of(3L, 1L), snapshot.findPage(NO_FILTER, CREATED_AT.plusNanos(200_000_000), 2L, 10));
+        assertEquals(List.of(1L), snapshot.findPage(NO_FILTER, CREATED_AT.plusNanos(300_000_000), 1L, 10));
+        assertEquals(List.of(), snapshot.findPage(NO_FILTER, CREATED_AT.plusNanos(500_000_000), 1L, 10));
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for merging rentals created within the same second as existing
+     * rows at their place.
+     */
+    @Test
+    public void testApplyMergesSubSecondUpserts() {
+        RentalCatalogSnapshot snapshot = RentalCatalogSnapshot.of(List.of(
+                newRental(1L, CREATED_AT.plusNanos(100_000_000)),
+                newRental(2L, CREATED_AT.plusNanos(700_000_000))));
+
+        Map<Long, RentalSingleResponse> changes = new HashMap<>();
+        changes.put(3L, newRental(3L, CREATED_AT.plusNanos(400_000_000)));
+        changes.put(4L, newRental(4L, CREATED_AT.plusNanos(50_000_000)));
+        changes.put(1L, null);
+
+        assertEquals(List.of(4L, 3L, 2L), snapshot.apply(changes).findPage(NO_FILTER, null, null, 10));
+    }
+
+    private static RentalSingleResponse newRental(Long id, LocalDateTime createdAt) {
+        return new RentalSingleResponse(id, "Rental " + id, 40, BigDecimal.valueOf(750), "picture.jpg",
+                "Description", 1L, createdAt, createdAt);
+    }
+}
@@ -0,0 +1,129 @@
+package com.openclassrooms.p3.index;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.openclassrooms.p3.model.RentalFilter;
+import com.openclassrooms.p3.model.RentalSort;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * This class tests the RentalRangeIndex class, paging through the rentals as
+ * the clients do, with rentals lacking a price or a surface.
+ */
+public class RentalRangeIndexTest {
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    private static final RentalFilter NO_FILTER = new RentalFilter(null, null, null, null);
+
+    private final RentalRangeIndex rentalRangeIndex = new RentalRangeIndex();
+
+    private final Map<Long, RentalSingleResponse> rentals = new HashMap<>();
+
+    @BeforeEach
+    public void indexRentals() {
+        indexRental(1L, "500.00", 30);
+        indexRental(2L, null, 40);
+        indexRental(3L, "300.00", null);
+        indexRental(4L, "500.00", 20);
+        indexRental(5L, null, null);
+        indexRental(6L, "100.00", 50);
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for paging through the rentals by price, those without a price
+     * coming last.
+     */
+    @Test
+    public void testRentalsWithoutPriceAreListedLast() {
+        assertEquals(List.of(6L, 3L, 1L, 4L, 2L, 5L), listAllPages(NO_FILTER, RentalSort.PRICE, 2));
+        assertEquals(List.of(6L, 3L, 1L, 4L, 2L, 5L), listAllPages(NO_FILTER, RentalSort.PRICE, 5));
+        assertEquals(List.of(4L, 1L, 3L, 6L, 5L, 2L), listAllPages(NO_FILTER, RentalSort.PRICE_DESC, 1));
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for paging through the rentals by surface, those without a
+     * surface coming last.
+     */
+    @Test
+    public void testRentalsWithoutSurfaceAreListedLast() {
+        assertEquals(List.of(4L, 1L, 2L, 6L, 3L, 5L), listAllPages(NO_FILTER, RentalSort.SURFACE, 4));
+        assertEquals(List.of(6L, 2L, 1L, 4L, 5L, 3L), listAllPages(NO_FILTER, RentalSort.SURFACE_DESC, 3));
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for filtering the rentals sorted by price: a price range
+     * excludes the rentals without a price, a surface range does not.
+     */
+    @Test
+    public void testFilteredRentalsWithoutSortValue() {
+        RentalFilter priceFilter = new RentalFilter(null, new BigDecimal("400"), null, null);
+        RentalFilter surfaceFilter = new RentalFilter(null, null, 25, null);
+
+        assertEquals(List.of(6L, 3L), listAllPages(priceFilter, RentalSort.PRICE, 1));
+        assertEquals(List.of(6L, 1L, 2L), listAllPages(surfaceFilter, RentalSort.PRICE, 1));
+        assertEquals(List.of(1L, 6L, 2L), listAllPages(surfaceFilter, RentalSort.PRICE_DESC, 2));
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for rentals gaining, then losing a price.
+     */
+    @Test
+    public void testUpdatedRentalsMoveBetweenParts() {
+        indexRental(2L, "200.00", 40);
+        indexRental(1L, null, 30);
+        rentalRangeIndex.removeRental(5L);
+
+        assertEquals(List.of(6L, 2L, 3L, 4L, 1L), listAllPages(NO_FILTER, RentalSort.PRICE, 2));
+        assertEquals(5, rentalRangeIndex.size());
+    }
+
+    /**
+     * Pages through the rentals from the keyset of the last rental of each page,
+     * as the cursors do.
+     *
+     * @param filter The price and surface ranges.
+     * @param sort   The order of the rentals.
+     * @param limit  The number of rentals per page.
+     * @return The IDs of the rentals of every page, in order.
+     */
+    private List<Long> listAllPages(RentalFilter filter, RentalSort sort, int limit) {
+        List<Long> rentalIds = new ArrayList<>();
+        Comparable<?> sortValue = null;
+        Long id = null;
+
+        while (true) {
+            List<Long> pageIds = rentalRangeIndex.findPage(filter, sort, sortValue, id, limit);
+            rentalIds.addAll(pageIds);
+            if (pageIds.size() < limit) {
+                return rentalIds;
+            }
+
+            id = pageIds.get(pageIds.size() - 1);
+            sortValue = sort.parseSortValue(sort.formatSortValue(rentals.get(id)));
+        }
+    }
+
+    private void indexRental(Long id, String price, Integer surface) {
+        RentalSingleResponse rental = new RentalSingleResponse(id, "Rental " + id, surface,
+                price == null ? null : new BigDecimal(price), "picture.jpg", "Description", 1L, CREATED_AT,
+                CREATED_AT.plusSeconds(rentals.size()));
+
+        rentals.put(id, rental);
+        rentalRangeIndex.indexRental(rental);
+    }
+}
@@ -0,0 +1,129 @@
+package com.openclassrooms.p3.index;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.openclassrooms.p3.event.RentalChangedEvent;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * This class tests the RentalSearchIndex class: the normalization of the terms,
+ * the BM25 ranking, and the changes of the catalog applied to the index.
+ */
+public class RentalSearchIndexTest {
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    private final RentalSearchIndex rentalSearchIndex = new RentalSearchIndex();
+
+    /**
+     * HAPPY PATH:
+     * Test method for splitting a text into lower case terms without accents nor
+     * punctuation, the one-character terms being dropped.
+     */
+    @Test
+    public void testTokenizeNormalizesTerms() {
+        assertEquals(List.of("chateau", "ete", "vue", "mer", "chambres"),
+                RentalSearchIndex.tokenize("Château d'ÉTÉ, Vue-mer: 2 chambres!"));
+        assertEquals(List.of("t3", "lyon"), RentalSearchIndex.tokenize("  T3 à Lyon  "));
+        assertEquals(List.of(), RentalSearchIndex.tokenize(null));
+        assertEquals(List.of(), RentalSearchIndex.tokenize("- a -"));
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for searching whatever the case and the accents of the query
+     * and of the rentals.
+     */
+    @Test
+    public void testSearchIgnoresCaseAndAccents() {
+        indexRental(1L, "Château de la Loire", "Grand parc");
+        indexRental(2L, "Studio", "Proche du CHATEAU");
+        indexRental(3L, "Maison", "Jardin");
+
+        assertEquals(List.of(1L, 2L), rentalSearchIndex.search("chateau", 0, 10).rentalIds());
+        assertEquals(List.of(1L, 2L), rentalSearchIndex.search("CHÂTEAU", 0, 10).rentalIds());
+        assertEquals(List.of(3L), rentalSearchIndex.search("jardín", 0, 10).rentalIds());
+        assertEquals(0, rentalSearchIndex.search("piscine", 0, 10).total());
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for ranking the rentals: a term of the name weighs more than the
+     * same term in the description, more query terms matched rank higher, and a
+     * rare term weighs more than a common one.
+     */
+    @Test
+    public void testSearchRanksWithBm25() {
+        indexRental(1L, "Appartement", "Loft lumineux en centre ville");
+        indexRental(2L, "Loft", "Appartement lumineux en centre ville");
+        indexRental(3L, "Maison", "Maison avec terrasse en centre ville");
+        indexRental(4L, "Loft terrasse", "Appartement lumineux en centre ville");
+
+        // In the name of the 2, in the description of the 1, the 4 being longer
+        assertEquals(List.of(2L, 4L, 1L), rentalSearchIndex.search("loft", 0, 10).rentalIds());
+        assertEquals(4L, rentalSearchIndex.search("loft terrasse", 0, 10).rentalIds().get(0));
+        // "terrasse" is rarer than "appartement", so the rentals with it come first
+        assertEquals(List.of(4L, 3L, 1L, 2L),
+                rentalSearchIndex.search("terrasse appartement", 0, 10).rentalIds());
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for paging through the results, the rentals with the same score
+     * being ordered by ID.
+     */
+    @Test
+    public void testSearchPagesResults() {
+        for (long id = 5; id >= 1; id--) {
+            indexRental(id, "Studio", "Meublé");
+        }
+
+        assertEquals(List.of(1L, 2L), rentalSearchIndex.search("studio", 0, 2).rentalIds());
+        assertEquals(List.of(3L, 4L), rentalSearchIndex.search("studio", 2, 2).rentalIds());
+        assertEquals(List.of(5L), rentalSearchIndex.search("studio", 4, 2).rentalIds());
+        assertEquals(List.of(), rentalSearchIndex.search("studio", 5, 2).rentalIds());
+        assertEquals(5, rentalSearchIndex.search("studio", 4, 2).total());
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for the rentals created, updated then deleted, applied to the
+     * index through their change events.
+     */
+    @Test
+    public void testChangeEventsUpdateIndex() {
+        rentalSearchIndex.onRentalChanged(new RentalChangedEvent(1L, newRental(1L, "Péniche", "Sur la Seine")));
+        rentalSearchIndex.onRentalChanged(new RentalChangedEvent(2L, newRental(2L, "Péniche", "Sur le canal")));
+        assertEquals(List.of(1L, 2L), rentalSearchIndex.search("peniche", 0, 10).rentalIds());
+
+        // The terms of the previous version are no longer matched
+        rentalSearchIndex.onRentalChanged(new RentalChangedEvent(1L, newRental(1L, "Bateau", "Sur la Seine")));
+        assertEquals(List.of(2L), rentalSearchIndex.search("peniche", 0, 10).rentalIds());
+        assertEquals(List.of(1L), rentalSearchIndex.search("bateau", 0, 10).rentalIds());
+        assertEquals(2, rentalSearchIndex.size());
+
+        rentalSearchIndex.onRentalChanged(new RentalChangedEvent(2L, null));
+        assertEquals(0, rentalSearchIndex.search("peniche canal", 0, 10).total());
+        assertEquals(List.of(1L), rentalSearchIndex.search("sur", 0, 10).rentalIds());
+        assertEquals(1, rentalSearchIndex.size());
+
+        // Removing an unknown rental changes nothing
+        rentalSearchIndex.onRentalChanged(new RentalChangedEvent(3L, null));
+        assertEquals(1, rentalSearchIndex.size());
+    }
+
+    private void indexRental(Long id, String name, String description) {
+        rentalSearchIndex.indexRental(newRental(id, name, description));
+    }
+
+    private static RentalSingleResponse newRental(Long id, String name, String description) {
+        return new RentalSingleResponse(id, name, 40, BigDecimal.valueOf(750), "picture.jpg", description, 1L,
+                CREATED_AT, CREATED_AT);
+    }
+}
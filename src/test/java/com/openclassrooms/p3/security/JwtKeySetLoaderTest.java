@@ -0,0 +1,187 @@
+package com.openclassrooms.p3.security;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.p3.utils.JwtKeySet;
+import com.openclassrooms.p3.utils.JwtUtil;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the JwtKeySetLoader class, loading then rotating the keys of
+ * a keyset file.
+ */
+public class JwtKeySetLoaderTest {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final String previousSecret = newSecret(JwtKeySet.MIN_KEY_LENGTH);
+
+    private final String nextSecret = newSecret(JwtKeySet.MIN_KEY_LENGTH);
+
+    private final JwtKeySetLoader jwtKeySetLoader = new JwtKeySetLoader();
+
+    @TempDir
+    private Path directory;
+
+    private Path keySetPath;
+
+    private JwtKeySet initialKeySet;
+
+    @BeforeEach
+    public void createLoader() {
+        initialKeySet = JwtUtil.getKeySet();
+        keySetPath = directory.resolve("jwt-keyset.json");
+
+        ReflectionTestUtils.setField(jwtKeySetLoader, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(jwtKeySetLoader, "keySetFile", keySetPath.toString());
+    }
+
+    @AfterEach
+    public void restoreKeySet() {
+        JwtUtil.setKeySet(initialKeySet);
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for loading the keyset file at startup.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testLoadsKeySetFile() throws Exception {
+        writeKeySet("{\"active_kid\":\"previous\",\"keys\":[" + keyEntry("previous", previousSecret) + ","
+                + keyEntry("next", nextSecret) + "]}");
+
+        jwtKeySetLoader.loadKeySet();
+
+        assertEquals("previous", JwtUtil.getKeySet().activeKeyId());
+        assertEquals(2, JwtUtil.getKeySet().keys().size());
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for rotating the keys by changing the file: the new tokens are
+     * signed by the next key, then the tokens of the removed key are rejected.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testReloadsModifiedKeySetFile() throws Exception {
+        writeKeySet("{\"active_kid\":\"previous\",\"keys\":[" + keyEntry("previous", previousSecret) + "]}");
+        jwtKeySetLoader.loadKeySet();
+        String previousToken = JwtUtil.generateJwtToken(1L);
+
+        // Unchanged, the file is not read again
+        JwtKeySet loadedKeySet = JwtUtil.getKeySet();
+        jwtKeySetLoader.reloadKeySetIfModified();
+        assertSame(loadedKeySet, JwtUtil.getKeySet());
+
+        writeKeySet("{\"active_kid\":\"next\",\"keys\":[" + keyEntry("previous", previousSecret) + ","
+                + keyEntry("next", nextSecret) + "]}");
+        jwtKeySetLoader.reloadKeySetIfModified();
+        assertEquals("next", JwtUtil.getKeySet().activeKeyId());
+        assertTrue(JwtUtil.isTokenValid(previousToken));
+
+        writeKeySet("{\"active_kid\":\"next\",\"keys\":[" + keyEntry("next", nextSecret) + "]}");
+        jwtKeySetLoader.reloadKeySetIfModified();
+        assertFalse(JwtUtil.isTokenValid(previousToken));
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for a keyset file changed to invalid content, the current keys
+     * being kept.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testKeepsKeysWhenModifiedFileIsInvalid() throws Exception {
+        writeKeySet("{\"active_kid\":\"previous\",\"keys\":[" + keyEntry("previous", previousSecret) + "]}");
+        jwtKeySetLoader.loadKeySet();
+        JwtKeySet loadedKeySet = JwtUtil.getKeySet();
+
+        for (String invalidContent : new String[] { "{\"active_kid\":", "{\"active_kid\":\"missing\",\"keys\":["
+                + keyEntry("previous", previousSecret) + "]}", "{\"active_kid\":\"previous\",\"keys\":[]}" }) {
+            writeKeySet(invalidContent);
+            jwtKeySetLoader.reloadKeySetIfModified();
+            assertSame(loadedKeySet, JwtUtil.getKeySet());
+        }
+
+        Files.delete(keySetPath);
+        jwtKeySetLoader.reloadKeySetIfModified();
+        assertSame(loadedKeySet, JwtUtil.getKeySet());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for a key shorter than required for HMAC-SHA512, rejected at
+     * startup.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRejectsShortKey() throws Exception {
+        writeKeySet("{\"active_kid\":\"short\",\"keys\":["
+                + keyEntry("short", newSecret(JwtKeySet.MIN_KEY_LENGTH - 1)) + "]}");
+        assertThrows(IllegalArgumentException.class, jwtKeySetLoader::loadKeySet);
+        assertSame(initialKeySet, JwtUtil.getKeySet());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for a key ID defined twice, rejected at startup.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRejectsDuplicatedKeyId() throws Exception {
+        writeKeySet("{\"active_kid\":\"previous\",\"keys\":[" + keyEntry("previous", previousSecret) + ","
+                + keyEntry("previous", nextSecret) + "]}");
+        assertThrows(IllegalArgumentException.class, jwtKeySetLoader::loadKeySet);
+        assertSame(initialKeySet, JwtUtil.getKeySet());
+    }
+
+    /**
+     * Writes the keyset file, moving its modification time forward so that the
+     * change is seen whatever the precision of the file system.
+     *
+     * @param content The JSON content of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    private void writeKeySet(String content) throws IOException {
+        FileTime lastModifiedTime = Files.exists(keySetPath) ? Files.getLastModifiedTime(keySetPath)
+                : FileTime.from(Instant.now());
+
+        Files.writeString(keySetPath, content);
+        Files.setLastModifiedTime(keySetPath, FileTime.from(lastModifiedTime.toInstant().plusSeconds(1)));
+    }
+
+    private static String keyEntry(String kid, String secret) {
+        return "{\"kid\":\"" + kid + "\",\"secret\":\"" + secret + "\"}";
+    }
+
+    private static String newSecret(int length) {
+        byte[] secret = new byte[length];
+        RANDOM.nextBytes(secret);
+
+        return Base64.getEncoder().encodeToString(secret);
+    }
+}
@@ -0,0 +1,126 @@
+package com.openclassrooms.p3.service;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.openclassrooms.p3.exception.ApiException;
+import com.openclassrooms.p3.payload.response.ResponseMessage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This class tests the IdempotencyService class with the keys claimed in the
+ * "idempotency_keys" table, as the instances sharing it do.
+ */
+@SpringBootTest(properties = {
+        "idempotency.database.enabled=true",
+        "idempotency.wait-timeout=1s" })
+public class IdempotencyServiceTest {
+
+    private static final String ROUTE = "POST /api/messages";
+
+    private static final Long USER_ID = 1L;
+
+    private static final String FINGERPRINT = IdempotencyService.fingerprint("payload");
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * EDGE CASE:
+     * Test method for a key claimed by an instance which died before answering,
+     * taken over by the next retry once the claim is older than the wait
+     * timeout.
+     */
+    @Test
+    public void testStaleClaimIsTakenOver() {
+        String idempotencyKey = UUID.randomUUID().toString();
+        insertClaim(idempotencyKey, LocalDateTime.now().minusMinutes(1));
+        AtomicInteger runCount = new AtomicInteger();
+
+        ResponseEntity<?> response = idempotencyService.execute(ROUTE, USER_ID, idempotencyKey, FINGERPRINT,
+                () -> {
+                    runCount.incrementAndGet();
+                    return ResponseEntity.status(HttpStatus.CREATED).body(new ResponseMessage("Success!"));
+                });
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertEquals(1, runCount.get());
+        assertEquals(201, jdbcTemplate.queryForObject(
+                "SELECT status_code FROM idempotency_keys WHERE key_hash = ?", Integer.class,
+                keyHash(idempotencyKey)));
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for a key claimed recently by another instance, its retries
+     * waiting for its response instead of running the request again.
+     */
+    @Test
+    public void testRecentClaimIsNotTakenOver() {
+        String idempotencyKey = UUID.randomUUID().toString();
+        insertClaim(idempotencyKey, LocalDateTime.now().plusMinutes(1));
+        AtomicInteger runCount = new AtomicInteger();
+
+        ApiException exception = assertThrows(ApiException.class,
+                () -> idempotencyService.execute(ROUTE, USER_ID, idempotencyKey, FINGERPRINT, () -> {
+                    runCount.incrementAndGet();
+                    return ResponseEntity.status(HttpStatus.CREATED).body(new ResponseMessage("Success!"));
+                }));
+
+        assertEquals(HttpStatus.CONFLICT, exception.getHttpStatus());
+        assertEquals(0, runCount.get());
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for the fingerprint of two pictures of the same size, computed
+     * from their content.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testFingerprintContentHashesBytes() throws Exception {
+        String firstFingerprint = IdempotencyService.fingerprintContent(
+                new ByteArrayInputStream("first picture".getBytes(StandardCharsets.UTF_8)));
+        String secondFingerprint = IdempotencyService.fingerprintContent(
+                new ByteArrayInputStream("other picture".getBytes(StandardCharsets.UTF_8)));
+
+        assertNotEquals(firstFingerprint, secondFingerprint);
+        assertEquals(firstFingerprint, IdempotencyService.fingerprintContent(
+                new ByteArrayInputStream("first picture".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    /**
+     * Inserts the claim of a key left without response by another instance.
+     *
+     * @param idempotencyKey The key sent by the client.
+     * @param claimedAt      The time at which the key was claimed.
+     */
+    private void insertClaim(String idempotencyKey, LocalDateTime claimedAt) {
+        jdbcTemplate.update(
+                "INSERT INTO idempotency_keys (key_hash, fingerprint, claimed_at, expires_at) VALUES (?, ?, ?, ?)",
+                keyHash(idempotencyKey), FINGERPRINT, Timestamp.valueOf(claimedAt),
+                Timestamp.valueOf(LocalDateTime.now().plusDays(1)));
+    }
+
+    private String keyHash(String idempotencyKey) {
+        return IdempotencyService.fingerprint(ROUTE, USER_ID, idempotencyKey);
+    }
+}
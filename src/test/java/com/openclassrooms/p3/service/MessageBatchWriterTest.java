@@ -0,0 +1,273 @@
+package com.openclassrooms.p3.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.openclassrooms.p3.exception.ApiException;
+import com.openclassrooms.p3.payload.request.MessageRequest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the MessageBatchWriter class against an in-memory H2
+ * database in MySQL mode, whose messages reference the rentals, so that a
+ * message of an unknown rental is rejected by a constraint.
+ */
+public class MessageBatchWriterTest {
+
+    private static final Long RENTAL_ID = 1L;
+
+    private static final Long UNKNOWN_RENTAL_ID = 999L;
+
+    private final ControlledDataSource dataSource = new ControlledDataSource();
+
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final MessageBatchWriter messageBatchWriter = new MessageBatchWriter();
+
+    /**
+     * Data source whose connections can be held back, or refused once a number
+     * of them was given, as when the database becomes unreachable.
+     */
+    private static class ControlledDataSource extends DelegatingDataSource {
+
+        private volatile CountDownLatch openLatch = new CountDownLatch(0);
+
+        private final AtomicInteger remainingConnections = new AtomicInteger(Integer.MAX_VALUE);
+
+        ControlledDataSource() {
+            super(new DriverManagerDataSource(
+                    "jdbc:h2:mem:message-writer-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1"));
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            try {
+                openLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException(e);
+            }
+
+            Boolean isUnreachable = remainingConnections.getAndDecrement() <= 0;
+            if (isUnreachable) {
+                throw new SQLException("Database unreachable");
+            }
+            return super.getConnection();
+        }
+    }
+
+    @BeforeEach
+    public void createTables() {
+        jdbcTemplate.execute("CREATE TABLE rentals (id BIGINT PRIMARY KEY)");
+        jdbcTemplate.execute("CREATE TABLE messages (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id BIGINT, "
+                + "rental_id BIGINT REFERENCES rentals (id), message VARCHAR(2000), created_at TIMESTAMP, "
+                + "updated_at TIMESTAMP)");
+        jdbcTemplate.update("INSERT INTO rentals (id) VALUES (?)", RENTAL_ID);
+
+        ReflectionTestUtils.setField(messageBatchWriter, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(messageBatchWriter, "transactionTemplate",
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+        ReflectionTestUtils.setField(messageBatchWriter, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(messageBatchWriter, "queueCapacity", 10);
+        ReflectionTestUtils.setField(messageBatchWriter, "batchSize", 3);
+        ReflectionTestUtils.setField(messageBatchWriter, "flushInterval", Duration.ofMillis(200));
+        ReflectionTestUtils.setField(messageBatchWriter, "enqueueTimeout", Duration.ofMillis(50));
+        ReflectionTestUtils.setField(messageBatchWriter, "shutdownTimeout", Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    public void dropTables() throws InterruptedException {
+        dataSource.openLatch.countDown();
+        messageBatchWriter.stopWriter();
+
+        dataSource.remainingConnections.set(Integer.MAX_VALUE);
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for writing the queued messages in batches of at most the
+     * batch size.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testQueuedMessagesAreWrittenInBatches() throws Exception {
+        messageBatchWriter.startWriter();
+        for (int i = 0; i < 7; i++) {
+            messageBatchWriter.queueMessage(newMessageRequest(RENTAL_ID, "Message " + i), 1L);
+        }
+
+        awaitMessageCount(7);
+        assertEquals(7, meterRegistry.get("messages.write-behind.batch.size").summary().totalAmount());
+        assertTrue(meterRegistry.get("messages.write-behind.batch.size").summary().max() <= 3);
+        assertEquals(7, meterRegistry.get("messages.write-behind.lag").timer().count());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for a message queued while the queue stays full, rejected with
+     * a 503 error.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testFullQueueRejectsMessages() throws Exception {
+        ReflectionTestUtils.setField(messageBatchWriter, "queueCapacity", 1);
+        ReflectionTestUtils.setField(messageBatchWriter, "batchSize", 1);
+        dataSource.openLatch = new CountDownLatch(1);
+        messageBatchWriter.startWriter();
+
+        // The first message is held by the writer, the second one fills the queue
+        messageBatchWriter.queueMessage(newMessageRequest(RENTAL_ID, "Written"), 1L);
+        awaitQueueSize(0);
+        messageBatchWriter.queueMessage(newMessageRequest(RENTAL_ID, "Queued"), 1L);
+
+        ApiException exception = assertThrows(ApiException.class,
+                () -> messageBatchWriter.queueMessage(newMessageRequest(RENTAL_ID, "Rejected"), 1L));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getHttpStatus());
+        assertEquals(1, meterRegistry.get("messages.write-behind.rejected").counter().count());
+
+        dataSource.openLatch.countDown();
+        awaitMessageCount(2);
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for a batch rejected by a constraint, written row by row to only
+     * drop the message of an unknown rental.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRejectedBatchIsWrittenRowByRow() throws Exception {
+        ReflectionTestUtils.setField(messageBatchWriter, "flushInterval", Duration.ofSeconds(5));
+        messageBatchWriter.startWriter();
+
+        messageBatchWriter.queueMessage(newMessageRequest(RENTAL_ID, "First"), 1L);
+        messageBatchWriter.queueMessage(newMessageRequest(UNKNOWN_RENTAL_ID, "Faulty"), 1L);
+        messageBatchWriter.queueMessage(newMessageRequest(RENTAL_ID, "Third"), 1L);
+
+        awaitMessageCount(2);
+        awaitDroppedCount(1);
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM messages WHERE rental_id = ?",
+                Integer.class, UNKNOWN_RENTAL_ID));
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for the database becoming unreachable while a rejected batch is
+     * written row by row: the messages already written are recorded, only the
+     * others being counted as dropped.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testRowByRowFailureKeepsWrittenMessages() throws Exception {
+        ReflectionTestUtils.setField(messageBatchWriter, "flushInterval", Duration.ofSeconds(5));
+        // One connection for the batch, then one for the first row only
+        dataSource.remainingConnections.set(2);
+        messageBatchWriter.startWriter();
+
+        messageBatchWriter.queueMessage(newMessageRequest(RENTAL_ID, "Written"), 1L);
+        messageBatchWriter.queueMessage(newMessageRequest(UNKNOWN_RENTAL_ID, "Faulty"), 1L);
+        messageBatchWriter.queueMessage(newMessageRequest(RENTAL_ID, "Lost"), 1L);
+
+        awaitDroppedCount(2);
+        assertEquals(1, meterRegistry.get("messages.write-behind.batch.size").summary().totalAmount());
+        assertEquals(1, meterRegistry.get("messages.write-behind.lag").timer().count());
+
+        dataSource.remainingConnections.set(Integer.MAX_VALUE);
+        assertEquals(1, countMessages());
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for the messages still queued when the application stops,
+     * written before the writer stops, and the ones queued afterwards rejected.
+     *
+     * @throws Exception if an error occurs during the test
+     */
+    @Test
+    public void testStopWritesQueuedMessages() throws Exception {
+        dataSource.openLatch = new CountDownLatch(1);
+        messageBatchWriter.startWriter();
+        for (int i = 0; i < 5; i++) {
+            messageBatchWriter.queueMessage(newMessageRequest(RENTAL_ID, "Message " + i), 1L);
+        }
+
+        Thread stopThread = Thread.ofPlatform().start(() -> {
+            try {
+                messageBatchWriter.stopWriter();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        awaitCondition(() -> !(Boolean) ReflectionTestUtils.getField(messageBatchWriter, "isRunning"));
+        assertThrows(ApiException.class,
+                () -> messageBatchWriter.queueMessage(newMessageRequest(RENTAL_ID, "Too late"), 1L));
+
+        dataSource.openLatch.countDown();
+        stopThread.join();
+        assertEquals(5, countMessages());
+    }
+
+    private MessageRequest newMessageRequest(Long rentalId, String message) {
+        return new MessageRequest(rentalId, 2L, message);
+    }
+
+    private int countMessages() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM messages", Integer.class);
+    }
+
+    private void awaitMessageCount(int messageCount) throws InterruptedException {
+        awaitCondition(() -> countMessages() == messageCount);
+    }
+
+    private void awaitDroppedCount(int droppedCount) throws InterruptedException {
+        awaitCondition(() -> meterRegistry.get("messages.write-behind.dropped").counter().count() == droppedCount);
+    }
+
+    private void awaitQueueSize(int queueSize) throws InterruptedException {
+        awaitCondition(() -> meterRegistry.get("messages.write-behind.queue.size").gauge().value() == queueSize);
+    }
+
+    /**
+     * Waits for the writer thread to reach a state, failing after five seconds.
+     *
+     * @param condition The state to reach.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Writer state not reached after five seconds");
+            Thread.sleep(10);
+        }
+    }
+}
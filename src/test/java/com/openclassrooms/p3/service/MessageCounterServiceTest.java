@@ -0,0 +1,180 @@
+package com.openclassrooms.p3.service;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.openclassrooms.p3.payload.request.RentalUpdateRequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * This class tests the MessageCounterService class against the database. A
+ * second instance of the service, sharing the table, stands for another
+ * instance of the application.
+ */
+@SpringBootTest
+public class MessageCounterServiceTest {
+
+    private static final Long OWNER_ID = 1L;
+
+    private static final Long SENDER_ID = 2L;
+
+    @Autowired
+    private MessageCounterService messageCounterService;
+
+    @Autowired
+    private RentalService rentalService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    private MessageCounterService otherInstance;
+
+    private Long rentalId;
+
+    @BeforeEach
+    public void createRental() {
+        rentalId = rentalService.saveRental(new RentalUpdateRequest("Counted rental", 40, BigDecimal.valueOf(750),
+                "Description", "https://example.com/picture.jpg", OWNER_ID)).getId();
+
+        otherInstance = new MessageCounterService();
+        applicationContext.getAutowireCapableBeanFactory().autowireBean(otherInstance);
+    }
+
+    @AfterEach
+    public void deleteRental() {
+        rentalService.deleteRental(rentalId);
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for counting the messages sent to an owner, not those the owner
+     * sends.
+     */
+    @Test
+    public void testCountsMessagesOfOtherUsers() {
+        messageCounterService.countMessage(OWNER_ID, rentalId, SENDER_ID);
+        messageCounterService.countMessage(OWNER_ID, rentalId, SENDER_ID);
+        messageCounterService.countMessage(OWNER_ID, rentalId, OWNER_ID);
+
+        assertEquals(2L, getUnreadCount(messageCounterService));
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for marking the messages of a rental read, the messages sent
+     * afterwards being counted again.
+     */
+    @Test
+    public void testMarkReadResetsCount() {
+        messageCounterService.countMessage(OWNER_ID, rentalId, SENDER_ID);
+        messageCounterService.countMessage(OWNER_ID, rentalId, SENDER_ID);
+
+        messageCounterService.markRead(rentalId);
+        assertNull(getUnreadCount(messageCounterService));
+
+        messageCounterService.countMessage(OWNER_ID, rentalId, SENDER_ID);
+        assertEquals(1L, getUnreadCount(messageCounterService));
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for writing the counts to the table.
+     */
+    @Test
+    public void testFlushWritesCounts() {
+        for (int i = 0; i < 3; i++) {
+            messageCounterService.countMessage(OWNER_ID, rentalId, SENDER_ID);
+        }
+        messageCounterService.flushCounters();
+        assertEquals(3L, getStoredCount());
+
+        messageCounterService.markRead(rentalId);
+        messageCounterService.countMessage(OWNER_ID, rentalId, SENDER_ID);
+        messageCounterService.flushCounters();
+        assertEquals(1L, getStoredCount());
+        assertEquals(1L, getUnreadCount(messageCounterService));
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for the messages counted and read on another instance, seen
+     * once the counters are reloaded.
+     */
+    @Test
+    public void testReloadSeesOtherInstances() {
+        otherInstance.reloadCounters();
+
+        messageCounterService.countMessage(OWNER_ID, rentalId, SENDER_ID);
+        messageCounterService.countMessage(OWNER_ID, rentalId, SENDER_ID);
+        messageCounterService.flushCounters();
+        otherInstance.countMessage(OWNER_ID, rentalId, SENDER_ID);
+
+        otherInstance.reloadCounters();
+        assertEquals(3L, getUnreadCount(otherInstance));
+
+        otherInstance.markRead(rentalId);
+        otherInstance.flushCounters();
+        messageCounterService.countMessage(OWNER_ID, rentalId, SENDER_ID);
+
+        // The message counted meanwhile was not read on the other instance
+        messageCounterService.reloadCounters();
+        assertEquals(1L, getUnreadCount(messageCounterService));
+        assertEquals(1L, getStoredCount());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for the counter of a deleted rental, dropped on every instance.
+     */
+    @Test
+    public void testDeletedRentalIsNotCounted() {
+        Long deletedRentalId = rentalService.saveRental(new RentalUpdateRequest("Deleted rental", 40,
+                BigDecimal.valueOf(750), "Description", "https://example.com/picture.jpg", OWNER_ID)).getId();
+        messageCounterService.countMessage(OWNER_ID, deletedRentalId, SENDER_ID);
+        messageCounterService.flushCounters();
+        otherInstance.reloadCounters();
+
+        rentalService.deleteRental(deletedRentalId);
+        messageCounterService.flushCounters();
+
+        assertFalse(messageCounterService.getUnreadMessages(OWNER_ID).rentals().containsKey(deletedRentalId));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM message_counters WHERE rental_id = ?", Integer.class, deletedRentalId));
+
+        otherInstance.reloadCounters();
+        assertFalse(otherInstance.getUnreadMessages(OWNER_ID).rentals().containsKey(deletedRentalId));
+    }
+
+    /**
+     * Gets the unread messages of the rental of the test, as seen by an instance.
+     *
+     * @param instance The instance of the service.
+     * @return The number of unread messages, null if there is none.
+     */
+    private Long getUnreadCount(MessageCounterService instance) {
+        return instance.getUnreadMessages(OWNER_ID).rentals().get(rentalId);
+    }
+
+    /**
+     * Gets the count of the rental of the test written to the table.
+     *
+     * @return The stored number of unread messages.
+     */
+    private Long getStoredCount() {
+        return jdbcTemplate.queryForObject("SELECT unread_count FROM message_counters WHERE rental_id = ?",
+                Long.class, rentalId);
+    }
+}
@@ -0,0 +1,189 @@
+package com.openclassrooms.p3.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.openclassrooms.p3.configuration.CacheConfig;
+import com.openclassrooms.p3.model.Rental;
+import com.openclassrooms.p3.model.RentalFilter;
+import com.openclassrooms.p3.model.RentalSort;
+import com.openclassrooms.p3.payload.request.RentalUpdateRequest;
+import com.openclassrooms.p3.payload.response.RentalSingleResponse;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the RentalService class against the database, with the
+ * rental cache. The range index is disabled, so that the listings are answered
+ * by the database.
+ */
+@SpringBootTest(properties = "rentals.range-index.enabled=false")
+public class RentalServiceTest {
+
+    /**
+     * Surface of the rentals listed by the tests, which no other rental has.
+     */
+    private static final int LISTED_SURFACE = 987_654;
+
+    @Autowired
+    private RentalService rentalService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * EDGE CASE:
+     * Test method for checking the row of the ID generator of the rentals, which
+     * fails when the row is missing or would allocate IDs already taken.
+     */
+    @Test
+    public void testIdGeneratorBehindRentalsIsRejected() {
+        Long rentalId = rentalService.saveRental(newRentalRequest()).getId();
+        Long nextIdValue = jdbcTemplate.queryForObject(
+                "SELECT next_val FROM id_generators WHERE name = 'rentals'", Long.class);
+
+        try {
+            assertDoesNotThrow(rentalService::checkIdGenerator);
+
+            jdbcTemplate.update("UPDATE id_generators SET next_val = ? WHERE name = 'rentals'",
+                    rentalId + Rental.ID_ALLOCATION_SIZE - 1);
+            assertThrows(IllegalStateException.class, rentalService::checkIdGenerator);
+
+            jdbcTemplate.update("DELETE FROM id_generators WHERE name = 'rentals'");
+            assertThrows(IllegalStateException.class, rentalService::checkIdGenerator);
+        } finally {
+            jdbcTemplate.update("DELETE FROM id_generators WHERE name = 'rentals'");
+            jdbcTemplate.update("INSERT INTO id_generators (name, next_val) VALUES ('rentals', ?)", nextIdValue);
+            rentalService.deleteRental(rentalId);
+        }
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for a rental read by another thread while its deletion is not
+     * committed yet.
+     */
+    @Test
+    public void testDeletedRentalIsNotCachedAgainBeforeCommit() {
+        Long rentalId = rentalService.saveRental(newRentalRequest()).getId();
+        Cache rentalsCache = cacheManager.getCache(CacheConfig.RENTALS_CACHE);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            rentalService.deleteRental(rentalId);
+
+            // Still committed, the rental is read and cached by the other thread
+            Optional<RentalSingleResponse> rentalResponse = CompletableFuture
+                    .supplyAsync(() -> rentalService.getRentalResponse(rentalId)).join();
+            assertTrue(rentalResponse.isPresent());
+        });
+
+        assertNull(rentalsCache.get(rentalId));
+        assertTrue(rentalService.getRentalResponse(rentalId).isEmpty());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for a rental read by another thread while its update is not
+     * committed yet.
+     */
+    @Test
+    public void testUpdatedRentalIsNotCachedStaleBeforeCommit() {
+        Rental rental = rentalService.saveRental(newRentalRequest());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            rentalService.updateRental(rental, new RentalUpdateRequest("Renamed rental", 40,
+                    BigDecimal.valueOf(750), "Description", rental.getPicture(), rental.getOwnerId()));
+
+            CompletableFuture.supplyAsync(() -> rentalService.getRentalResponse(rental.getId())).join();
+        });
+
+        assertTrue(rentalService.getRentalResponse(rental.getId())
+                .filter(rentalResponse -> rentalResponse.name().equals("Renamed rental"))
+                .isPresent());
+
+        rentalService.deleteRental(rental.getId());
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for paging through the rentals by price, those without a price
+     * coming last.
+     */
+    @Test
+    public void testRentalsWithoutPriceAreListedLast() {
+        List<Long> rentalIds = new ArrayList<>();
+        for (String price : new String[] { null, "500.00", null, "100.00", "500.00" }) {
+            rentalIds.add(rentalService.saveRental(new RentalUpdateRequest("Listed rental", LISTED_SURFACE,
+                    price == null ? null : new BigDecimal(price), "Description", "https://example.com/picture.jpg",
+                    1L)).getId());
+        }
+
+        RentalFilter filter = new RentalFilter(null, null, LISTED_SURFACE, LISTED_SURFACE);
+        assertEquals(List.of(rentalIds.get(3), rentalIds.get(1), rentalIds.get(4), rentalIds.get(0),
+                rentalIds.get(2)), listAllPages(filter, RentalSort.PRICE, 2));
+        assertEquals(List.of(rentalIds.get(4), rentalIds.get(1), rentalIds.get(3), rentalIds.get(2),
+                rentalIds.get(0)), listAllPages(filter, RentalSort.PRICE_DESC, 1));
+        assertEquals(List.of(rentalIds.get(3)),
+                listAllPages(new RentalFilter(null, new BigDecimal("200"), LISTED_SURFACE, LISTED_SURFACE),
+                        RentalSort.PRICE, 1));
+
+        rentalIds.forEach(rentalService::deleteRental);
+    }
+
+    /**
+     * Pages through the rentals from the cursor of the last rental of each page.
+     *
+     * @param filter The price and surface ranges.
+     * @param sort   The order of the rentals.
+     * @param limit  The number of rentals per page.
+     * @return The IDs of the rentals of every page, in order.
+     */
+    private List<Long> listAllPages(RentalFilter filter, RentalSort sort, int limit) {
+        List<Long> rentalIds = new ArrayList<>();
+        Comparable<?> sortValue = null;
+        Long id = null;
+
+        while (true) {
+            List<RentalSingleResponse> rentals = rentalService.getRentals(filter, sort, sortValue, id, limit);
+            rentals.forEach(rental -> rentalIds.add(rental.id()));
+            if (rentals.size() < limit) {
+                return rentalIds;
+            }
+
+            RentalSingleResponse lastRental = rentals.get(rentals.size() - 1);
+            sortValue = sort.parseSortValue(sort.formatSortValue(lastRental));
+            id = lastRental.id();
+        }
+    }
+
+    /**
+     * Builds the request of a rental of the user with an ID of one.
+     *
+     * @return The rental request.
+     */
+    private RentalUpdateRequest newRentalRequest() {
+        return new RentalUpdateRequest("Cached rental", 40, BigDecimal.valueOf(750), "Description",
+                "https://example.com/picture.jpg", 1L);
+    }
+}
@@ -0,0 +1,98 @@
+package com.openclassrooms.p3.utils;
+
+import java.security.Key;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the JwtKeySet class through the JwtUtil class, the tokens
+ * being verified by the key named by their "kid" header.
+ */
+public class JwtKeySetTest {
+
+    private final Key previousKey = Keys.secretKeyFor(SignatureAlgorithm.HS512);
+
+    private final Key nextKey = Keys.secretKeyFor(SignatureAlgorithm.HS512);
+
+    private JwtKeySet initialKeySet;
+
+    @BeforeEach
+    public void saveKeySet() {
+        initialKeySet = JwtUtil.getKeySet();
+    }
+
+    @AfterEach
+    public void restoreKeySet() {
+        JwtUtil.setKeySet(initialKeySet);
+    }
+
+    /**
+     * HAPPY PATH:
+     * Test method for rotating the active key: the tokens signed by the previous
+     * key are still verified by it, the new ones being signed by the next key.
+     */
+    @Test
+    public void testTokensAreVerifiedByTheirKeyId() {
+        JwtUtil.setKeySet(new JwtKeySet("previous", Map.of("previous", previousKey)));
+        String previousToken = JwtUtil.generateJwtToken(1L);
+
+        JwtUtil.setKeySet(new JwtKeySet("next", Map.of("previous", previousKey, "next", nextKey)));
+        String nextToken = JwtUtil.generateJwtToken(2L);
+
+        assertEquals(1L, JwtUtil.extractUserId(previousToken).orElseThrow());
+        assertEquals(2L, JwtUtil.extractUserId(nextToken).orElseThrow());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for a token signed by a key removed from the keyset, rejected
+     * even though it was verified before.
+     */
+    @Test
+    public void testRemovedKeyIdIsRejected() {
+        JwtUtil.setKeySet(new JwtKeySet("previous", Map.of("previous", previousKey, "next", nextKey)));
+        String previousToken = JwtUtil.generateJwtToken(1L);
+        assertTrue(JwtUtil.isTokenValid(previousToken));
+
+        JwtUtil.setKeySet(new JwtKeySet("next", Map.of("next", nextKey)));
+        assertFalse(JwtUtil.isTokenValid(previousToken));
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for a token naming a key unknown to the keyset, or a known key
+     * ID with another secret.
+     */
+    @Test
+    public void testUnknownKeyIdIsRejected() {
+        JwtUtil.setKeySet(new JwtKeySet("other", Map.of("other", previousKey)));
+        String unknownKeyToken = JwtUtil.generateJwtToken(1L);
+        JwtUtil.setKeySet(new JwtKeySet("next", Map.of("next", previousKey)));
+        String otherSecretToken = JwtUtil.generateJwtToken(1L);
+
+        JwtUtil.setKeySet(new JwtKeySet("next", Map.of("next", nextKey)));
+        assertFalse(JwtUtil.isTokenValid(unknownKeyToken));
+        assertFalse(JwtUtil.isTokenValid(otherSecretToken));
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for a keyset whose active key is not one of its keys.
+     */
+    @Test
+    public void testActiveKeyMustBeInKeySet() {
+        assertThrows(IllegalArgumentException.class, () -> new JwtKeySet("next", Map.of("previous", previousKey)));
+        assertThrows(IllegalArgumentException.class, () -> new JwtKeySet(null, Map.of("previous", previousKey)));
+    }
+}
@@ -0,0 +1,135 @@
+package com.openclassrooms.p3.utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class tests the TokenBucketLimiter class, alone and under contention,
+ * with a manual clock.
+ */
+public class TokenBucketLimiterTest {
+
+    private static final int THREADS = 16;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * HAPPY PATH:
+     * Test method for a bucket emptied then refilled over time.
+     */
+    @Test
+    public void testBucketRefillsOverTime() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(2, Duration.ofSeconds(1), 100, clock::get);
+
+        assertTrue(limiter.tryAcquire("a@b.com"));
+        assertTrue(limiter.tryAcquire("a@b.com"));
+        assertFalse(limiter.tryAcquire("a@b.com"));
+        // Other keys have their own bucket
+        assertTrue(limiter.tryAcquire("c@d.com"));
+
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertTrue(limiter.tryAcquire("a@b.com"));
+        assertFalse(limiter.tryAcquire("a@b.com"));
+
+        // A bucket never holds more than its capacity
+        clock.addAndGet(Duration.ofMinutes(1).toNanos());
+        assertTrue(limiter.tryAcquire("a@b.com"));
+        assertTrue(limiter.tryAcquire("a@b.com"));
+        assertFalse(limiter.tryAcquire("a@b.com"));
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for many threads taking tokens from the same bucket at once.
+     *
+     * @throws Exception if a thread fails
+     */
+    @Test
+    public void testConcurrentAttemptsOnSameKeyTakeExactlyCapacity() throws Exception {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(50, Duration.ofMinutes(1), 100, clock::get);
+
+        List<Long> acquiredPerThread = runConcurrently(thread -> {
+            long acquired = 0;
+            for (int i = 0; i < 10_000; i++) {
+                if (limiter.tryAcquire("a@b.com")) {
+                    acquired++;
+                }
+            }
+            return acquired;
+        });
+
+        assertEquals(50, acquiredPerThread.stream().mapToLong(Long::longValue).sum());
+    }
+
+    /**
+     * EDGE CASE:
+     * Test method for more keys than the limiter keeps, and for idle keys.
+     *
+     * @throws Exception if a thread fails
+     */
+    @Test
+    public void testBucketsAreBoundedAndDecay() throws Exception {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(5, Duration.ofSeconds(1), 1_000, clock::get);
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < 10_000; i++) {
+                assertTrue(limiter.tryAcquire(thread + "-" + i + "@example.com"));
+            }
+            return 0L;
+        });
+
+        assertTrue(limiter.size() <= 1_000);
+
+        // Idle for the time to refill completely
+        clock.addAndGet(Duration.ofSeconds(5).toNanos());
+        assertEquals(0, limiter.size());
+    }
+
+    /**
+     * Runs a task on several threads started together.
+     *
+     * @param task The task, receiving the index of its thread.
+     * @return The result of each thread.
+     * @throws Exception if a thread fails
+     */
+    private List<Long> runConcurrently(ThreadTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int threadIndex = thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.run(threadIndex);
+                }));
+            }
+            start.countDown();
+
+            List<Long> results = new ArrayList<>();
+            for (Future<Long> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThreadTask {
+        long run(int threadIndex);
+    }
+}